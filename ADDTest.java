@@ -0,0 +1,141 @@
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks ADDs against explicit tables of values: the arithmetic
+ * operators, abstraction, thresholds and minimum and maximum give the
+ * tables they should, equal tables give equal ADDs, terminals are shared
+ * and collected, and domains are encoded as their values.</p>
+ */
+public class ADDTest {
+
+    static final int V = 6, N = 1 << V;
+
+    static ADDFactory af;
+    static BDDFactory bf;
+
+    public static void main(String[] args) throws Exception {
+        af = ADDFactory.init(500, 100);
+        af.setVarNum(V);
+        bf = af.getBDDFactory();
+        Random r = new Random(1);
+        for (int n = 0; n < 300; n++) {
+            double[] a = random(r), b = random(r);
+            ADD x = build(a), y = build(b);
+            double[] plus = new double[N], minus = new double[N], times = new double[N];
+            double[] max = new double[N], min = new double[N];
+            double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+            for (int m = 0; m < N; m++) {
+                plus[m] = a[m] + b[m];
+                minus[m] = a[m] - b[m];
+                times[m] = a[m] * b[m];
+                max[m] = Math.max(a[m], b[m]);
+                min[m] = Math.min(a[m], b[m]);
+                lo = Math.min(lo, a[m]);
+                hi = Math.max(hi, a[m]);
+            }
+            check(x.plus(y), plus, "plus in round "+n);
+            check(x.minus(y), minus, "minus in round "+n);
+            check(x.times(y), times, "times in round "+n);
+            check(x.max(y), max, "max in round "+n);
+            check(x.min(y), min, "min in round "+n);
+            TestUtil.check(x.findMin() == lo && x.findMax() == hi, "findMin/findMax in round "+n);
+
+            /* Abstraction over a random set of variables */
+            int qs = r.nextInt(N);
+            BDD cube = bf.one();
+            for (int v = 0; v < V; v++)
+                if ((qs & (1 << v)) != 0)
+                    cube.andWith(bf.ithVar(v));
+            double[] sum = new double[N], amax = new double[N];
+            for (int m = 0; m < N; m++) {
+                amax[m] = Double.NEGATIVE_INFINITY;
+                for (int k = 0; k < N; k++)
+                    if ((k & ~qs) == (m & ~qs)) {
+                        sum[m] += a[k];
+                        amax[m] = Math.max(amax[m], a[k]);
+                    }
+            }
+            check(x.sumAbstract(cube), sum, "sumAbstract in round "+n);
+            check(x.maxAbstract(cube), amax, "maxAbstract in round "+n);
+            cube.free();
+
+            double t = r.nextInt(4) - 1;
+            BDD ge = x.threshold(t), gt = x.strictThreshold(t);
+            for (int m = 0; m < N; m++) {
+                BDD mt = minterm(m);
+                TestUtil.check(!mt.and(ge).isZero() == (a[m] >= t), "threshold in round "+n);
+                TestUtil.check(!mt.and(gt).isZero() == (a[m] > t), "strictThreshold in round "+n);
+                mt.free();
+            }
+            ge.free(); gt.free(); x.free(); y.free();
+        }
+        TestUtil.check(bf.getGCStats().num > 0, "collections happened");
+
+        ADD c = af.constant(2.5), d = af.constant(2.5);
+        TestUtil.check(c.isConstant() && c.value() == 2.5, "constant");
+        TestUtil.check(c.equals(d) && c.nodeCount() == 1, "terminals are shared");
+        ADD v = af.ithVar(0);
+        TestUtil.check(!v.isConstant() && v.findMin() == 0 && v.findMax() == 1, "ithVar()");
+        c.free(); d.free(); v.free();
+
+        /* Many distinct terminals, freed again */
+        for (int i = 0; i < 20000; i++)
+            af.constant(i + 0.5).free();
+        TestUtil.check(bf.getNodeTableSize() < 20000, "terminals are collected");
+        ADD e = af.constant(7);
+        TestUtil.check(e.value() == 7, "terminal after many collected ones");
+        e.free();
+
+        BDDDomain dom = bf.extDomain(new long[] { 8 })[0];
+        ADD dv = af.domain(dom);
+        TestUtil.check(dv.findMin() == 0 && dv.findMax() == 7, "domain range");
+        for (int i = 0; i < 8; i++) {
+            BDD g = dv.threshold(i), h = bf.zero();
+            for (int k = i; k < 8; k++)
+                h.orWith(dom.ithVar(k));
+            TestUtil.check(g.equals(h), "domain value "+i);
+            g.free(); h.free();
+        }
+        dv.free();
+        bf.done();
+        TestUtil.done("ADDTest");
+    }
+
+    static double[] random(Random r) {
+        double[] t = new double[N];
+        int k = 1 + r.nextInt(5);
+        for (int m = 0; m < N; m++)
+            t[m] = r.nextInt(k) - 1;
+        return t;
+    }
+
+    static BDD minterm(int m) {
+        BDD b = bf.one();
+        for (int v = 0; v < V; v++)
+            b.andWith((m & (1 << v)) != 0 ? bf.ithVar(v) : bf.nithVar(v));
+        return b;
+    }
+
+    /* Sum of value times minterm, for each minterm */
+    static ADD build(double[] t) {
+        ADD r = af.constant(0);
+        for (int m = 0; m < N; m++) {
+            if (t[m] == 0)
+                continue;
+            BDD b = minterm(m);
+            ADD a = af.fromBDD(b), c = af.constant(t[m]), p = a.times(c), s = r.plus(p);
+            b.free(); a.free(); c.free(); p.free(); r.free();
+            r = s;
+        }
+        return r;
+    }
+
+    static void check(ADD a, double[] t, String what) {
+        ADD b = build(t);
+        TestUtil.check(a.equals(b), what);
+        a.free();
+        b.free();
+    }
+}
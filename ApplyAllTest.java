@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks andAll(), orAll() and applyBatch(): the results equal a plain
+ * fold over the operands in any order, the operands are left alone, empty
+ * collections give the neutral element, and a batch gives the same results
+ * as one operation at a time, also breadth-first.</p>
+ */
+public class ApplyAllTest {
+
+    static final String[] PACKAGES = { "java", "breadthfirst", "micro" };
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        for (int p = 0; p < PACKAGES.length; p++) {
+            BDDFactory f;
+            if (PACKAGES[p].equals("breadthfirst")) {
+                f = JFactory.init(1000, 100);
+                ((JFactory) f).setBreadthFirst(true);
+            } else
+                f = BDDFactory.init(PACKAGES[p], 1000, 100);
+            f.setVarNum(V);
+            test(f, PACKAGES[p]);
+            f.done();
+        }
+        TestUtil.done("ApplyAllTest");
+    }
+
+    static void test(BDDFactory f, String name) {
+        Random r = new Random(1);
+        TestUtil.check(f.andAll(new ArrayList()).isOne(), name+": empty andAll");
+        TestUtil.check(f.orAll(new ArrayList()).isZero(), name+": empty orAll");
+        for (int n = 0; n < 200; n++) {
+            List l = new ArrayList();
+            BDD and = f.one(), or = f.zero();
+            for (int i = r.nextInt(12); i > 0; i--) {
+                BDD b;
+                if (r.nextInt(20) == 0)
+                    b = r.nextBoolean() ? f.zero() : f.one();
+                else
+                    b = TestUtil.random(f, r.nextLong(), V, 1 + r.nextInt(6));
+                l.add(b);
+                and.andWith(b.id());
+                or.orWith(b.id());
+            }
+            Collections.shuffle(l, r);
+            List copies = new ArrayList();
+            for (int i = 0; i < l.size(); i++)
+                copies.add(((BDD) l.get(i)).id());
+            BDD x = f.andAll(l), y = f.orAll(l);
+            TestUtil.check(x.equals(and), name+": andAll of "+l.size()+" in round "+n);
+            TestUtil.check(y.equals(or), name+": orAll of "+l.size()+" in round "+n);
+            for (int i = 0; i < l.size(); i++)
+                TestUtil.check(l.get(i).equals(copies.get(i)), name+": operand "+i+" unchanged");
+            x.free(); y.free(); and.free(); or.free();
+            for (int i = 0; i < l.size(); i++) {
+                ((BDD) l.get(i)).free();
+                ((BDD) copies.get(i)).free();
+            }
+        }
+
+        /* Batches */
+        BDDFactory.BDDOp[] ops = { BDDFactory.and, BDDFactory.or, BDDFactory.xor, BDDFactory.imp,
+                                   BDDFactory.biimp, BDDFactory.diff, BDDFactory.less, BDDFactory.invimp };
+        for (int n = 0; n < 50; n++) {
+            int size = r.nextInt(20);
+            BDD[] a = new BDD[size], b = new BDD[size];
+            for (int i = 0; i < size; i++) {
+                a[i] = TestUtil.random(f, r.nextLong(), V, 1 + r.nextInt(10));
+                b[i] = r.nextInt(4) == 0 ? a[i].id() : TestUtil.random(f, r.nextLong(), V, 1 + r.nextInt(10));
+            }
+            BDDFactory.BDDOp op = ops[n % ops.length];
+            BDD[] c = f.applyBatch(a, b, op);
+            TestUtil.check(c.length == size, name+": batch size");
+            for (int i = 0; i < size; i++) {
+                BDD d = a[i].apply(b[i], op);
+                TestUtil.check(c[i].equals(d), name+": "+op+" in batch "+n);
+                d.free(); a[i].free(); b[i].free(); c[i].free();
+            }
+        }
+        try {
+            f.applyBatch(new BDD[1], new BDD[2], BDDFactory.and);
+            TestUtil.check(false, name+": operand arrays of different lengths are refused");
+        } catch (BDDException x) {
+        }
+    }
+}
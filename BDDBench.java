@@ -0,0 +1,368 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Runs a set of standard workloads on one or more BDD packages and
+ * reports throughput, allocation rate and node table size for each, so
+ * that the packages can be compared and performance regressions caught.</p>
+ *
+ * <p>Usage:  java BDDBench [package ...]</p>
+ *
+ * <p>The packages are the names accepted by
+ * {@link BDDFactory#init(String, int, int)}; the default is to run all of
+ * them.  Packages whose native library cannot be loaded are reported and
+ * skipped.  The following system properties control the run:</p>
+ *
+ * <ul>
+ * <li>workloads: comma-separated list of workloads to run
+ *     (queens, relprod, satcount, replace, reorder, saveload)</li>
+ * <li>warmup: number of untimed iterations per workload (default 3)</li>
+ * <li>iterations: number of timed iterations per workload (default 5)</li>
+ * <li>queens: board size of the N-queens workloads (default 8)</li>
+ * <li>bddnodes, bddcache: initial node table and cache sizes</li>
+ * </ul>
+ *
+ * <p>This is a plain main program rather than a JMH module because the
+ * project is built with Maven 1 (project.xml and maven.xml) and the
+ * Makefile, and neither can run the JMH annotation processor that
+ * generates the benchmark harness.  Warm-up and timed iterations are
+ * therefore done here by hand; run it with 'make bench'.</p>
+ *
+ * <p>The results are not statistically rigorous.  All packages and
+ * workloads run in one JVM, so JIT and garbage collector state carry over
+ * from one measurement to the next; there are few iterations, and no
+ * confidence interval is computed.  ms/op is the median of the timed
+ * iterations and +-% is half the spread between the fastest and the
+ * slowest of them, relative to the median.  Treat differences that are
+ * not well outside that spread, or that do not show up again in a fresh
+ * run, as noise.</p>
+ */
+public class BDDBench {
+
+    static final String[] PACKAGES = { "java", "micro", "jdd", "buddy", "cudd", "cal" };
+    static final String[] WORKLOADS = { "queens", "relprod", "satcount", "replace", "reorder", "saveload" };
+
+    static int N;
+    static int nodenum;
+    static int cachesize;
+
+    public static void main(String[] args) {
+        String[] packages = args.length > 0 ? args : PACKAGES;
+        String[] workloads = split(System.getProperty("workloads"), WORKLOADS);
+        int warmup = Integer.getInteger("warmup", 3).intValue();
+        int iterations = Integer.getInteger("iterations", 5).intValue();
+        N = Integer.getInteger("queens", 8).intValue();
+        nodenum = Integer.getInteger("bddnodes", 100000).intValue();
+        cachesize = Integer.getInteger("bddcache", 10000).intValue();
+        if (N <= 0 || iterations <= 0 || warmup < 0) {
+            System.err.println("USAGE:  java [-Dworkloads=...] [-Dwarmup=n] [-Diterations=n] [-Dqueens=n] BDDBench [package ...]");
+            return;
+        }
+
+        System.out.println("Not statistically rigorous; see the BDDBench documentation.");
+        System.out.println(pad("package", 8)+pad("workload", 10)+lpad("ops/s", 12)+lpad("ms/op", 10)
+                           +lpad("+-%", 8)+lpad("MB/s alloc", 12)+lpad("nodes", 10)+lpad("table", 10));
+        for (int i = 0; i < packages.length; i++) {
+            for (int j = 0; j < workloads.length; j++) {
+                run(packages[i], workloads[j], warmup, iterations);
+            }
+        }
+    }
+
+    static void run(String pkg, String workload, int warmup, int iterations) {
+        BDDFactory B;
+        try {
+            B = BDDFactory.init(pkg, nodenum, cachesize);
+        } catch (Throwable t) {
+            System.out.println(pad(pkg, 8)+pad(workload, 10)+"  skipped: "+t);
+            return;
+        }
+        String actual = B.getClass().getName();
+        if (!actual.toLowerCase().endsWith(name(pkg))) {
+            /* init() silently falls back to JFactory */
+            System.out.println(pad(pkg, 8)+pad(workload, 10)+"  skipped: got "+actual);
+            B.done();
+            return;
+        }
+        try {
+            for (int i = 0; i < warmup; i++)
+                workload(B, workload);
+            long[] times = new long[iterations];
+            long time = 0;
+            long alloc = allocatedBytes();
+            for (int i = 0; i < iterations; i++) {
+                long t = System.nanoTime();
+                workload(B, workload);
+                times[i] = System.nanoTime() - t;
+                time += times[i];
+            }
+            if (alloc >= 0)
+                alloc = allocatedBytes() - alloc;
+
+            Arrays.sort(times);
+            double median = (times[(iterations - 1) / 2] + times[iterations / 2]) / 2e6;
+            double spread = (times[iterations - 1] - times[0]) / 2e6;
+            double secs = time / 1e9;
+            String rate = alloc < 0 ? "n/a" : format(alloc / secs / (1024 * 1024));
+            System.out.println(pad(pkg, 8)+pad(workload, 10)+lpad(format(iterations / secs), 12)
+                               +lpad(format(median), 10)
+                               +lpad(median > 0 ? format(100 * spread / median) : "n/a", 8)+lpad(rate, 12)
+                               +lpad(Integer.toString(B.getNodeNum()), 10)
+                               +lpad(Integer.toString(B.getNodeTableSize()), 10));
+        } catch (Throwable t) {
+            System.out.println(pad(pkg, 8)+pad(workload, 10)+"  failed: "+t);
+        } finally {
+            B.done();
+        }
+    }
+
+    static String name(String pkg) {
+        if (pkg.equals("java") || pkg.equals("j")) return "jfactory";
+        if (pkg.equals("micro") || pkg.equals("u")) return "microfactory";
+        if (pkg.equals("buddy")) return "buddyfactory";
+        return pkg.toLowerCase()+"factory";
+    }
+
+    static void workload(BDDFactory B, String w) throws IOException {
+        if (w.equals("queens")) {
+            BDD q = queens(B);
+            q.free();
+        } else if (w.equals("relprod")) {
+            relprod(B);
+        } else if (w.equals("satcount")) {
+            satcount(B);
+        } else if (w.equals("replace")) {
+            replace(B);
+        } else if (w.equals("reorder")) {
+            reorder(B);
+        } else if (w.equals("saveload")) {
+            saveload(B);
+        } else {
+            throw new IllegalArgumentException("Unknown workload "+w);
+        }
+    }
+
+    /* N-queens, the same formulation as NQueens */
+    static BDD queens(BDDFactory B) {
+        if (B.varNum() < N * N) B.setVarNum(N * N);
+        BDD queen = B.one();
+        BDD[][] X = new BDD[N][N];
+        int i, j, k;
+        for (i = 0; i < N; i++)
+            for (j = 0; j < N; j++)
+                X[i][j] = B.ithVar(i * N + j);
+        for (i = 0; i < N; i++) {
+            BDD e = B.zero();
+            for (j = 0; j < N; j++)
+                e.orWith(X[i][j].id());
+            queen.andWith(e);
+        }
+        for (i = 0; i < N; i++) {
+            for (j = 0; j < N; j++) {
+                BDD a = B.one();
+                for (k = 0; k < N; k++) {
+                    int up = k - i + j, down = i + j - k;
+                    if (k != j) a.andWith(X[i][j].apply(X[i][k], BDDFactory.nand));
+                    if (k != i) a.andWith(X[i][j].apply(X[k][j], BDDFactory.nand));
+                    if (k != i && up >= 0 && up < N) a.andWith(X[i][j].apply(X[k][up], BDDFactory.nand));
+                    if (k != i && down >= 0 && down < N) a.andWith(X[i][j].apply(X[k][down], BDDFactory.nand));
+                }
+                queen.andWith(a);
+            }
+        }
+        for (i = 0; i < N; i++)
+            for (j = 0; j < N; j++)
+                X[i][j].free();
+        return queen;
+    }
+
+    static BDDDomain[] domains(BDDFactory B, int n, int bits) {
+        if (B.numberOfDomains() >= 2 * n) {
+            BDDDomain[] d = new BDDDomain[2 * n];
+            for (int i = 0; i < d.length; i++)
+                d[i] = B.getDomain(i);
+            return d;
+        }
+        long[] sizes = new long[2 * n];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = 1L << bits;
+        return B.extDomain(sizes);
+    }
+
+    /* Reachable states of four interleaved counters, by image computation */
+    static void relprod(BDDFactory B) {
+        int n = 4;
+        BDDDomain[] d = domains(B, n, 4);
+        BDDPairing pair = B.makePair();
+        for (int i = 0; i < n; i++)
+            pair.set(d[n + i], d[i]);
+        BDD curset = B.makeSet(copy(d, 0, n));
+
+        BDD trans = B.zero();
+        for (int i = 0; i < n; i++) {
+            BDD t = d[i].buildAdd(d[n + i], 1);
+            for (int j = 0; j < n; j++)
+                if (j != i) t.andWith(d[j].buildEquals(d[n + j]));
+            trans.orWith(t);
+        }
+
+        BDD reach = B.one();
+        for (int i = 0; i < n; i++)
+            reach.andWith(d[i].ithVar(0));
+        for (;;) {
+            BDD img = reach.relprod(trans, curset);
+            img.replaceWith(pair);
+            BDD r = reach.or(img);
+            img.free();
+            if (r.equals(reach)) {
+                r.free();
+                break;
+            }
+            reach.free();
+            reach = r;
+        }
+        reach.free();
+        trans.free();
+        curset.free();
+        pair.reset();
+    }
+
+    static BDDDomain[] copy(BDDDomain[] d, int from, int n) {
+        BDDDomain[] r = new BDDDomain[n];
+        System.arraycopy(d, from, r, 0, n);
+        return r;
+    }
+
+    /* Random functions over a fixed set of variables */
+    static BDD random(BDDFactory B, Random rng, int vars, int terms) {
+        if (B.varNum() < vars) B.setVarNum(vars);
+        BDD f = B.zero();
+        for (int i = 0; i < terms; i++) {
+            BDD t = B.one();
+            for (int j = 0; j < 6; j++) {
+                int v = rng.nextInt(vars);
+                t.andWith(rng.nextBoolean() ? B.ithVar(v) : B.nithVar(v));
+            }
+            f.orWith(t);
+        }
+        return f;
+    }
+
+    static void satcount(BDDFactory B) {
+        Random rng = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            BDD f = random(B, rng, 24, 40);
+            f.satCount();
+            f.free();
+        }
+    }
+
+    /* Swap the variables of two domains back and forth */
+    static void replace(BDDFactory B) {
+        BDDDomain[] d = domains(B, 4, 4);
+        BDDPairing there = B.makePair(), back = B.makePair();
+        for (int i = 0; i < 4; i++) {
+            there.set(d[i], d[4 + i]);
+            back.set(d[4 + i], d[i]);
+        }
+        Random rng = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            BDD f = B.zero();
+            for (int j = 0; j < 50; j++) {
+                BDD t = B.one();
+                for (int k = 0; k < 4; k++)
+                    t.andWith(d[k].ithVar(rng.nextInt(16)));
+                f.orWith(t);
+            }
+            f.replaceWith(there);
+            f.replaceWith(back);
+            f.free();
+        }
+        there.reset();
+        back.reset();
+    }
+
+    /* Build N-queens under an interleaved order and sift it */
+    static void reorder(BDDFactory B) {
+        if (B.varNum() < N * N) B.setVarNum(N * N);
+        int[] order = new int[N * N];
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                order[i * N + j] = j * N + i;
+        B.setVarOrder(order);
+        BDD q = queens(B);
+        B.reorder(BDDFactory.REORDER_SIFT);
+        q.free();
+    }
+
+    static void saveload(BDDFactory B) throws IOException {
+        BDD q = queens(B);
+        StringWriter sw = new StringWriter();
+        BufferedWriter out = new BufferedWriter(sw);
+        B.save(out, q);
+        out.flush();
+        BDD r = B.load(new BufferedReader(new StringReader(sw.toString())));
+        if (!r.equals(q))
+            throw new InternalError("saveload mismatch");
+        r.free();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        B.save(Channels.newChannel(bytes), q);
+        r = B.load(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        if (!r.equals(q))
+            throw new InternalError("binary saveload mismatch");
+        r.free();
+        q.free();
+    }
+
+    /* Bytes allocated by this thread so far, or -1 if the JVM cannot tell */
+    static long allocatedBytes() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            Class c = Class.forName("com.sun.management.ThreadMXBean");
+            Method m = c.getMethod("getThreadAllocatedBytes", new Class[] { long.class });
+            Object o = m.invoke(bean, new Object[] { Long.valueOf(Thread.currentThread().getId()) });
+            return ((Long) o).longValue();
+        } catch (Exception x) {
+            return -1;
+        }
+    }
+
+    static String[] split(String s, String[] def) {
+        if (s == null) return def;
+        java.util.StringTokenizer st = new java.util.StringTokenizer(s, ", ");
+        String[] r = new String[st.countTokens()];
+        for (int i = 0; i < r.length; i++)
+            r[i] = st.nextToken();
+        return r;
+    }
+
+    static String format(double d) {
+        long l = Math.round(d * 100);
+        return (l / 100)+"."+(l % 100 < 10 ? "0" : "")+(l % 100);
+    }
+
+    static String pad(String s, int n) {
+        StringBuffer sb = new StringBuffer(s);
+        while (sb.length() < n) sb.append(' ');
+        return sb.toString();
+    }
+
+    static String lpad(String s, int n) {
+        StringBuffer sb = new StringBuffer();
+        while (sb.length() + s.length() < n) sb.append(' ');
+        return sb.append(s).toString();
+    }
+}
@@ -0,0 +1,42 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks that every BDDBench workload runs, more than once on the same
+ * factory as the benchmark does, on each pure Java package, and that the
+ * N-queens workload computes the right number of solutions.</p>
+ */
+public class BenchTest {
+
+    static final String[] PACKAGES = { "java", "micro", "jdd" };
+
+    public static void main(String[] args) {
+        BDDBench.N = 6;
+        for (int i = 0; i < PACKAGES.length; i++) {
+            BDDFactory B;
+            try {
+                B = BDDFactory.init(PACKAGES[i], 10000, 1000);
+            } catch (Throwable t) {
+                System.out.println("BenchTest: skipping "+PACKAGES[i]+": "+t);
+                continue;
+            }
+            TestUtil.check(B.getClass().getName().toLowerCase().endsWith(BDDBench.name(PACKAGES[i])),
+                           PACKAGES[i]+" gives "+B.getClass().getName());
+            BDD q = BDDBench.queens(B);
+            TestUtil.check(q.satCount() == 4, PACKAGES[i]+": "+q.satCount()+" solutions of 6-queens");
+            q.free();
+            for (int j = 0; j < BDDBench.WORKLOADS.length; j++) {
+                String w = BDDBench.WORKLOADS[j];
+                if (w.equals("reorder") && PACKAGES[i].equals("jdd"))
+                    continue; /* JDD cannot reorder */
+                try {
+                    BDDBench.workload(B, w);
+                    BDDBench.workload(B, w);
+                } catch (Throwable t) {
+                    TestUtil.fail(PACKAGES[i]+" "+w, t);
+                }
+            }
+            B.done();
+        }
+        TestUtil.done("BenchTest");
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the binary save and load format: BDDs come back unchanged in
+ * the factory that saved them and in other packages, with and without
+ * complement edges, through files and with a variable translation, and
+ * truncated input is refused.</p>
+ */
+public class BinaryIOTest {
+
+    static final int V = 16;
+
+    public static void main(String[] args) throws Exception {
+        JFactory plain = (JFactory) JFactory.init(1000, 1000);
+        plain.setVarNum(V);
+        JFactory cmpl = (JFactory) JFactory.init(1000, 1000);
+        cmpl.setComplementEdges(true);
+        cmpl.setVarNum(V);
+        BDDFactory micro = BDDFactory.init("micro", 1000, 1000);
+        micro.setVarNum(V);
+        BDDFactory[] from = { plain, cmpl, micro };
+
+        for (int i = 0; i < from.length; i++) {
+            for (int seed = 0; seed < 20; seed++) {
+                BDD b = TestUtil.random(from[i], seed, V, 10 * seed);
+                byte[] data = save(b);
+                for (int j = 0; j < from.length; j++) {
+                    BDD c = load(from[j], data);
+                    TestUtil.check(TestUtil.same(c, b), "from "+i+" to "+j+" seed "+seed);
+                    c.free();
+                }
+                b.free();
+            }
+            BDD zero = load(from[i], save(from[i].zero()));
+            BDD one = load(from[i], save(from[i].one()));
+            TestUtil.check(zero.isZero() && one.isOne(), "constants in "+i);
+        }
+
+        /* Files */
+        File file = File.createTempFile("javabdd", ".bin");
+        BDD b = TestUtil.random(cmpl, 99, V, 100);
+        cmpl.saveBinary(file.getPath(), b);
+        BDD c = plain.loadBinary(file.getPath());
+        TestUtil.check(TestUtil.same(c, b), "file");
+        c.free();
+        file.delete();
+
+        /* Translation reverses the variables */
+        int[] translate = new int[V];
+        BDDPairing p = plain.makePair();
+        for (int v = 0; v < V; v++) {
+            translate[v] = V - 1 - v;
+            p.set(v, V - 1 - v);
+        }
+        BDD d = TestUtil.random(plain, 5, V, 40);
+        BDD e = plain.load(Channels.newChannel(new ByteArrayInputStream(save(d))), translate);
+        BDD f = d.replace(p);
+        TestUtil.check(e.equals(f), "translation");
+        d.free(); e.free(); f.free();
+
+        /* Truncated input */
+        byte[] data = save(b);
+        for (int n = 0; n < data.length; n += 1 + n / 4) {
+            byte[] part = new byte[n];
+            System.arraycopy(data, 0, part, 0, n);
+            try {
+                BDD x = load(plain, part);
+                TestUtil.check(false, "truncated to "+n+" of "+data.length+" bytes");
+                x.free();
+            } catch (BDDException x) {
+            } catch (IOException x) {
+            }
+        }
+        b.free();
+        plain.done();
+        cmpl.done();
+        micro.done();
+        TestUtil.done("BinaryIOTest");
+    }
+
+    static byte[] save(BDD b) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        b.getFactory().save(Channels.newChannel(out), b);
+        return out.toByteArray();
+    }
+
+    static BDD load(BDDFactory f, byte[] data) throws IOException {
+        return f.load(Channels.newChannel(new ByteArrayInputStream(data)));
+    }
+}
@@ -0,0 +1,56 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the breadth-first apply engine: results agree with the
+ * depth-first apply while the table is collected and grown, on large
+ * operands, off-heap, in concurrent mode, and complement edges are
+ * refused.</p>
+ */
+public class BreadthFirstTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        TestUtil.check(!f.setBreadthFirst(true), "off by default");
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 3000);
+
+        f.setOffHeap(true);
+        TestUtil.compare(f, ref, 2, V, 1000);
+        f.setOffHeap(false);
+
+        f.setGenerational(true);
+        TestUtil.compare(f, ref, 3, V, 1000);
+        f.setGenerational(false);
+
+        f.setConcurrent(true);
+        TestUtil.compare(f, ref, 4, V, 500);
+        f.setConcurrent(false);
+        TestUtil.check(f.setBreadthFirst(false), "was on");
+        f.done();
+
+        /* Large operands */
+        BDDBench.N = 8;
+        JFactory g = (JFactory) JFactory.init(1000, 1000);
+        g.setBreadthFirst(true);
+        BDD q = BDDBench.queens(g);
+        TestUtil.check(q.satCount() == 92, q.satCount()+" solutions of 8-queens");
+        BDD c = TestUtil.copy(q, ref);
+        BDD r = BDDBench.queens(ref);
+        TestUtil.check(c.equals(r), "8-queens");
+        q.free(); c.free(); r.free();
+        g.done();
+
+        JFactory h = (JFactory) JFactory.init(1000, 100);
+        h.setBreadthFirst(true);
+        try {
+            h.setComplementEdges(true);
+            TestUtil.check(false, "complement edges are refused");
+        } catch (BDDException x) {
+        }
+        h.done();
+        TestUtil.done("BreadthFirstTest");
+    }
+}
@@ -0,0 +1,56 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks adaptive cache sizing: results stay right while the caches are
+ * resized within a budget too small for any cache to grow and within a
+ * generous one, setCacheBudget() returns the old budget, and a negative
+ * budget is refused.</p>
+ */
+public class CacheBudgetTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.check(f.setCacheBudget(1) == 0, "no budget by default");
+        TestUtil.compare(f, ref, 1, V, 2000);
+
+        TestUtil.check(f.setCacheBudget(1 << 20) == 1, "old budget");
+        TestUtil.compare(f, ref, 2, V, 3000);
+        /* The same operations over and over, so the caches grow */
+        BDD a = TestUtil.random(f, 3, V, 40), b = TestUtil.random(ref, 3, V, 40);
+        for (int n = 0; n < 200; n++) {
+            BDD s = TestUtil.randomSet(f, n % 4, V), t = TestUtil.randomSet(ref, n % 4, V);
+            BDD x = a.exist(s), y = b.exist(t);
+            TestUtil.check(TestUtil.same(x, y), "exist() in round "+n);
+            x.free(); y.free(); s.free(); t.free();
+        }
+        a.free(); b.free();
+        TestUtil.check(f.getCacheStats().opHit > 0, "hits");
+
+        f.setCacheRatio(4);
+        TestUtil.check(f.setCacheBudget(0) == 1 << 20, "old budget");
+        int size = f.getCacheSize();
+        f.setCacheRatio(4);
+        TestUtil.check(f.getCacheSize() == size, "cache ratio applies again without a budget");
+        TestUtil.compare(f, ref, 3, V, 1000);
+        f.setCacheSize(3000);
+        TestUtil.check(f.getCacheSize() >= 3000, "getCacheSize() after setCacheSize()");
+
+        f.setConcurrent(true);
+        f.setCacheBudget(1 << 16);
+        TestUtil.compare(f, ref, 4, V, 500);
+        f.setConcurrent(false);
+        TestUtil.compare(f, ref, 5, V, 500);
+
+        try {
+            f.setCacheBudget(-1);
+            TestUtil.check(false, "a negative budget is refused");
+        } catch (BDDException x) {
+        }
+        f.done();
+        TestUtil.done("CacheBudgetTest");
+    }
+}
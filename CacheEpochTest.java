@@ -0,0 +1,80 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the epoch tags of the operation caches: results stay right
+ * through many collections whether or not a collection flushes the caches,
+ * valid results survive a collection when it does not, and replace() and
+ * exist() give the right results when their pairings and variable sets
+ * change all the time.</p>
+ */
+public class CacheEpochTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        boolean flush = JFactory.FLUSH_CACHE_ON_GC;
+        try {
+            for (int i = 0; i < 2; i++) {
+                JFactory.FLUSH_CACHE_ON_GC = i == 1;
+                test(i == 1);
+            }
+        } finally {
+            JFactory.FLUSH_CACHE_ON_GC = flush;
+        }
+        TestUtil.done("CacheEpochTest");
+    }
+
+    static void test(boolean flush) throws Exception {
+        String name = flush ? "flushing" : "not flushing";
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 3000);
+        f.setGenerational(true);
+        TestUtil.compare(f, ref, 2, V, 1000);
+        f.setGenerational(false);
+
+        /* A result that is still valid after a full collection */
+        BDD a = TestUtil.random(f, 3, V, 30), b = TestUtil.random(f, 4, V, 30);
+        BDD x = a.and(b);
+        int gcs = f.getGCStats().num;
+        for (int n = 0; f.getGCStats().num == gcs; n++)
+            TestUtil.random(f, n, V, 20).free();
+        long hits = f.getCacheStats().opHit;
+        BDD y = a.and(b);
+        TestUtil.check(x.equals(y), name+": and() after a collection");
+        TestUtil.check(flush || f.getCacheStats().opHit > hits, name+": result survives a collection");
+        x.free(); y.free();
+
+        /* Pairings and variable sets used in turn */
+        BDDPairing[] p = new BDDPairing[3], q = new BDDPairing[3];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = f.makePair();
+            q[i] = ref.makePair();
+            for (int v = 0; v < V; v++) {
+                p[i].set(v, (v + i + 1) % V);
+                q[i].set(v, (v + i + 1) % V);
+            }
+        }
+        BDD c = TestUtil.random(ref, 3, V, 30);
+        for (int n = 0; n < 300; n++) {
+            int i = n % p.length;
+            x = a.replace(p[i]);
+            y = c.replace(q[i]);
+            TestUtil.check(TestUtil.same(x, y), name+": replace() with pairing "+i+" in round "+n);
+            x.free(); y.free();
+            if (n % 7 == 0)
+                p[i].set(0, (i + 1) % V); /* changes nothing, but resets the pairing */
+            BDD s = TestUtil.randomSet(f, n % 5, V), t = TestUtil.randomSet(ref, n % 5, V);
+            x = a.exist(s);
+            y = c.exist(t);
+            TestUtil.check(TestUtil.same(x, y), name+": exist() in round "+n);
+            x.free(); y.free(); s.free(); t.free();
+            if (n % 50 == 0)
+                TestUtil.random(f, n, V, 200).free();
+        }
+        a.free(); b.free(); c.free();
+        f.done();
+        ref.done();
+    }
+}
@@ -0,0 +1,50 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the operation caches of JFactory: results stay right with a
+ * cache so small that entries collide all the time and after the cache is
+ * resized, the caches count their hits, and a cloned factory starts out
+ * with a copy of them.</p>
+ */
+public class CacheTest {
+
+    static final int V = 12;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(1000, 3);
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 1500);
+
+        f.setCacheSize(5000);
+        TestUtil.compare(f, ref, 2, V, 1500);
+
+        BDDFactory.CacheStats s = f.getCacheStats();
+        TestUtil.check(s.opHit > 0 && s.opMiss > 0, "hits "+s.opHit+" misses "+s.opMiss);
+
+        /* The same operation again is answered from the cache */
+        BDD a = TestUtil.random(f, 5, V, 20), b = TestUtil.random(f, 6, V, 20);
+        BDD x = a.and(b);
+        long hits = f.getCacheStats().opHit;
+        BDD y = a.and(b);
+        TestUtil.check(f.getCacheStats().opHit > hits, "repeated and() hits the cache");
+        TestUtil.check(x.equals(y), "repeated and()");
+        double count = a.satCount();
+        TestUtil.check(a.satCount() == count, "repeated satCount()");
+
+        /* The clone copies the nodes and the caches */
+        BDD e = a.applyEx(b, BDDFactory.and, f.ithVar(1));
+        JFactory g = f.cloneFactory();
+        BDD ga = g.copyNode(a), gb = g.copyNode(b);
+        BDD gx = ga.and(gb);
+        TestUtil.check(TestUtil.same(gx, x), "and() in the clone");
+        TestUtil.check(ga.satCount() == count, "satCount() in the clone");
+        BDD ge = ga.applyEx(gb, BDDFactory.and, g.ithVar(1));
+        TestUtil.check(TestUtil.same(ge, e), "applyEx() in the clone");
+        g.done();
+
+        a.free(); b.free(); x.free(); y.free(); e.free();
+        f.done();
+        TestUtil.done("CacheTest");
+    }
+}
@@ -0,0 +1,54 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the compact node layout: results agree with the normal layout
+ * while the table is collected, grown and reordered, with generational
+ * collection, after switching back and forth, and the modes that cannot be
+ * combined with it are refused.</p>
+ */
+public class CompactLayoutTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        TestUtil.check(!f.setCompactLayout(true), "normal layout by default");
+        TestUtil.check(f.isCompactLayout(), "switched to the compact layout");
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 3000);
+
+        BDD a = TestUtil.random(f, 2, V, 40), b = TestUtil.random(ref, 2, V, 40);
+        f.reorder(BDDFactory.REORDER_SIFT);
+        TestUtil.check(f.isCompactLayout(), "compact layout after reordering");
+        TestUtil.check(TestUtil.same(a, b), "function kept through reordering");
+        f.setVarOrder(ref.getVarOrder());
+
+        f.setGenerational(true);
+        TestUtil.compare(f, ref, 3, V, 1000);
+        f.setGenerational(false);
+
+        TestUtil.check(f.setCompactLayout(false), "was compact");
+        TestUtil.check(TestUtil.same(a, b), "function kept in the normal layout");
+        TestUtil.compare(f, ref, 4, V, 500);
+        f.setCompactLayout(true);
+        TestUtil.check(TestUtil.same(a, b), "function kept in the compact layout");
+        TestUtil.compare(f, ref, 5, V, 500);
+        a.free();
+        b.free();
+
+        try {
+            f.setConcurrent(true);
+            TestUtil.check(false, "concurrent mode is refused");
+        } catch (BDDException x) {
+        }
+        try {
+            f.setOffHeap(true);
+            TestUtil.check(false, "an off-heap table is refused");
+        } catch (BDDException x) {
+        }
+        TestUtil.check(!f.isOffHeap(), "table stays on the heap");
+        f.done();
+        TestUtil.done("CompactLayoutTest");
+    }
+}
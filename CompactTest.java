@@ -0,0 +1,87 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks compaction of the node table: after a peak, compact() shrinks
+ * the table in either order, tracked and untracked BDDs, pairings, quant
+ * sets and handles keep their meaning, the factory works on afterwards, and
+ * compaction is refused in concurrent mode.</p>
+ */
+public class CompactTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        int[] orders = { JFactory.COMPACT_DEPTH_FIRST, JFactory.COMPACT_LEVEL };
+        for (int o = 0; o < orders.length; o++) {
+            JFactory f = (JFactory) JFactory.init(500, 100);
+            f.setVarNum(V);
+            BDDFactory ref = TestUtil.reference(V);
+            BDD untracked = TestUtil.random(f, 99, V, 30);
+            TestUtil.check(!f.setTrackBDDs(true), "tracking is off by default");
+            TestUtil.check(f.setCompactSlack(0.5) >= 0, "slack");
+
+            /* Keep a few BDDs, and let a peak of garbage grow the table */
+            BDD[] a = new BDD[8];
+            for (int i = 0; i < a.length; i++)
+                a[i] = TestUtil.random(f, i, V, 30);
+            BDD[] peak = new BDD[200];
+            for (int i = 0; i < peak.length; i++)
+                peak[i] = TestUtil.random(f, 1000 + i, V, 40);
+            for (int i = 0; i < peak.length; i++)
+                peak[i].free();
+            BDDPairing p = f.makePair(), q = ref.makePair();
+            for (int v = 0; v < V; v++) {
+                p.set(v, (v + 3) % V);
+                q.set(v, (v + 3) % V);
+            }
+            BDD set = TestUtil.randomSet(f, 5, V), refset = TestUtil.randomSet(ref, 5, V);
+            BDDQuantSet qs = f.makeQuantSet(set);
+            int h = f.handle(a[0]);
+
+            int before = f.getNodeTableSize();
+            int after = f.compact(orders[o]);
+            TestUtil.check(after == f.getNodeTableSize(), "order "+o+": returns the new size");
+            TestUtil.check(after < before, "order "+o+": table shrunk from "+before+" to "+after);
+
+            for (int i = 0; i < a.length; i++) {
+                BDD b = TestUtil.random(ref, i, V, 30);
+                TestUtil.check(TestUtil.same(a[i], b), "order "+o+": tracked BDD "+i);
+                BDD x = a[i].replace(p), y = b.replace(q);
+                TestUtil.check(TestUtil.same(x, y), "order "+o+": pairing on "+i);
+                x.free(); y.free();
+                x = a[i].exist(qs);
+                y = b.exist(refset);
+                TestUtil.check(TestUtil.same(x, y), "order "+o+": quant set on "+i);
+                x.free(); y.free(); b.free();
+            }
+            BDD b = TestUtil.random(ref, 99, V, 30);
+            TestUtil.check(TestUtil.same(untracked, b), "order "+o+": untracked BDD");
+            b.free();
+            BDD c = f.handleToBDD(h);
+            TestUtil.check(c.equals(a[0]), "order "+o+": handle");
+            c.free();
+            f.handleDelRef(h);
+
+            TestUtil.compare(f, ref, o, V, 1000);
+            f.compact(orders[1 - o]);
+            TestUtil.compare(f, ref, o + 2, V, 500);
+
+            for (int i = 0; i < a.length; i++)
+                a[i].free();
+            untracked.free(); set.free(); refset.free(); qs.free();
+            p.reset(); q.reset();
+            f.done();
+            ref.done();
+        }
+
+        JFactory g = (JFactory) JFactory.init(500, 100);
+        g.setConcurrent(true);
+        try {
+            g.compact(JFactory.COMPACT_LEVEL);
+            TestUtil.check(false, "concurrent mode is refused");
+        } catch (BDDException x) {
+        }
+        g.done();
+        TestUtil.done("CompactTest");
+    }
+}
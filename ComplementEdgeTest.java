@@ -0,0 +1,71 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks complement edges: results agree with a factory without them,
+ * a function and its negation share their nodes, xor chains take half the
+ * nodes, reordering keeps the functions, and the modes that cannot be
+ * combined with complement edges are refused.</p>
+ */
+public class ComplementEdgeTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        TestUtil.check(!f.setComplementEdges(true), "off by default");
+        TestUtil.check(f.isComplementEdges(), "switched on");
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 3000);
+
+        /* not() shares all nodes */
+        BDD a = TestUtil.random(f, 2, V, 40);
+        int nodes = f.getNodeNum();
+        BDD n = a.not();
+        TestUtil.check(f.getNodeNum() == nodes, "not() builds no nodes");
+        TestUtil.check(n.nodeCount() == a.nodeCount(), "not() has the same nodes");
+        TestUtil.check(n.not().equals(a), "double negation");
+        TestUtil.check(n.and(a).isZero() && n.or(a).isOne(), "negation");
+        n.free();
+
+        /* One node per variable for a xor chain */
+        BDD c = f.zero(), d = ref.zero();
+        for (int v = 0; v < V; v++) {
+            c.xorWith(f.ithVar(v));
+            d.xorWith(ref.ithVar(v));
+        }
+        TestUtil.check(c.nodeCount() == V, c.nodeCount()+" nodes for a xor chain");
+        TestUtil.check(d.nodeCount() == 2 * V - 1, d.nodeCount()+" nodes without complement edges");
+        TestUtil.check(TestUtil.same(c, d), "xor chain");
+        c.free();
+        d.free();
+
+        f.reorder(BDDFactory.REORDER_SIFT);
+        BDD b = TestUtil.random(ref, 2, V, 40);
+        TestUtil.check(TestUtil.same(a, b), "function kept through reordering");
+        a.free();
+        b.free();
+        TestUtil.compare(f, ref, 3, V, 1000);
+
+        try {
+            f.setComplementEdges(false);
+            TestUtil.check(false, "changing the setting after setVarNum() is refused");
+        } catch (BDDException x) {
+        }
+        try {
+            f.getADDFactory();
+            TestUtil.check(false, "ADDs are refused");
+        } catch (BDDException x) {
+        }
+        JFactory g = (JFactory) JFactory.init(500, 100);
+        g.setConcurrent(true);
+        try {
+            g.setComplementEdges(true);
+            TestUtil.check(false, "concurrent mode is refused");
+        } catch (BDDException x) {
+        }
+        g.done();
+        f.done();
+        TestUtil.done("ComplementEdgeTest");
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks concurrent mode of JFactory: apply and quantification from
+ * several threads on shared BDDs give the same results as a sequential
+ * factory, also while the node table is collected and grown, and the
+ * factory works sequentially again afterwards.</p>
+ */
+public class ConcurrentTest {
+
+    static final int V = 16;
+    static final int INPUTS = 8;
+    static final int THREADS = 4;
+    static final int ROUNDS = 60;
+
+    static BDD[] in;
+    static BDD[][] out = new BDD[THREADS][ROUNDS];
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(1000, 1000);
+        TestUtil.check(!f.setConcurrent(true), "concurrent mode starts off");
+        TestUtil.check(f.isConcurrent(), "concurrent mode is on");
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+
+        in = new BDD[INPUTS];
+        BDD[] refin = new BDD[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            in[i] = TestUtil.random(f, i, V, 40);
+            refin[i] = TestUtil.random(ref, i, V, 40);
+        }
+
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int r = 0; r < ROUNDS; r++)
+                            out[id][r] = op(in, id, r);
+                    } catch (Throwable x) {
+                        TestUtil.fail("thread "+id, x);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; t++)
+            threads[t].join();
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int r = 0; r < ROUNDS; r++) {
+                if (out[t][r] == null)
+                    continue;
+                BDD e = op(refin, t, r);
+                TestUtil.check(TestUtil.same(out[t][r], e), "thread "+t+" round "+r);
+                e.free();
+            }
+        }
+        TestUtil.check(f.getNodeNum() > 0 && f.getNodeNum() <= f.getNodeTableSize(),
+                       "node count "+f.getNodeNum()+" of "+f.getNodeTableSize());
+
+        TestUtil.check(f.setConcurrent(false), "concurrent mode was on");
+        TestUtil.check(!f.isConcurrent(), "concurrent mode is off");
+        BDD a = in[0].and(in[1]), b = refin[0].and(refin[1]);
+        TestUtil.check(TestUtil.same(a, b), "sequential apply afterwards");
+        a.free();
+        b.free();
+        for (int t = 0; t < THREADS; t++)
+            for (int r = 0; r < ROUNDS; r++)
+                if (out[t][r] != null)
+                    out[t][r].free();
+        for (int i = 0; i < INPUTS; i++)
+            in[i].free();
+        TestUtil.check(f.getNodeNum() <= f.getNodeTableSize(), "node count afterwards");
+        f.done();
+        TestUtil.done("ConcurrentTest");
+    }
+
+    /* The operation of a thread in a round, on the given inputs */
+    static BDD op(BDD[] in, int thread, int round) {
+        Random r = new Random(thread * 1000 + round);
+        BDD a = in[r.nextInt(INPUTS)], b = in[r.nextInt(INPUTS)];
+        BDDFactory f = a.getFactory();
+        BDD set, res;
+        switch (r.nextInt(6)) {
+            case 0: return a.and(b);
+            case 1: return a.or(b);
+            case 2: return a.xor(b);
+            case 3:
+                set = TestUtil.randomSet(f, round, V);
+                res = a.exist(set);
+                break;
+            case 4:
+                set = TestUtil.randomSet(f, round, V);
+                res = a.forAll(set);
+                break;
+            default:
+                set = TestUtil.randomSet(f, round, V);
+                res = a.relprod(b, set);
+                break;
+        }
+        set.free();
+        return res;
+    }
+}
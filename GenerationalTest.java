@@ -0,0 +1,48 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks generational garbage collection: results stay right through
+ * many young and full collections, after a reordering, off-heap, and when
+ * the setting is switched off and on again.</p>
+ */
+public class GenerationalTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        TestUtil.check(!f.setGenerational(true), "off by default");
+        TestUtil.check(f.isGenerational(), "switched on");
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 3000);
+        TestUtil.check(f.getGCStats().num > 10, f.getGCStats().num+" collections");
+
+        /* Results that outlive many collections */
+        BDD a = TestUtil.random(f, 11, V, 60), b = TestUtil.random(ref, 11, V, 60);
+        TestUtil.compare(f, ref, 2, V, 1000);
+        TestUtil.check(TestUtil.same(a, b), "function kept through collections");
+
+        f.reorder(BDDFactory.REORDER_SIFT);
+        TestUtil.check(TestUtil.same(a, b), "function kept through reordering");
+        BDDFactory same = TestUtil.reference(V);
+        same.setVarOrder(f.getVarOrder());
+        TestUtil.compare(f, same, 3, V, 1000);
+        same.done();
+        f.setVarOrder(ref.getVarOrder());
+
+        f.setOffHeap(true);
+        TestUtil.compare(f, ref, 4, V, 1000);
+        f.setOffHeap(false);
+
+        TestUtil.check(f.setGenerational(false), "was on");
+        TestUtil.compare(f, ref, 5, V, 500);
+        f.setGenerational(true);
+        TestUtil.compare(f, ref, 6, V, 1000);
+        TestUtil.check(TestUtil.same(a, b), "function kept to the end");
+        a.free();
+        b.free();
+        f.done();
+        TestUtil.done("GenerationalTest");
+    }
+}
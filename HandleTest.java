@@ -0,0 +1,112 @@
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the int-handle API against the BDD objects in each pure Java
+ * package: every operation gives the same function, and handles keep their
+ * nodes alive through collections and resizes.</p>
+ */
+public class HandleTest {
+
+    static final String[] PACKAGES = { "java", "micro", "jdd" };
+    static final int V = 12;
+
+    public static void main(String[] args) throws Exception {
+        for (int p = 0; p < PACKAGES.length; p++) {
+            BDDFactory f;
+            try {
+                f = BDDFactory.init(PACKAGES[p], 500, 100);
+            } catch (Throwable t) {
+                System.out.println("HandleTest: skipping "+PACKAGES[p]+": "+t);
+                continue;
+            }
+            f.setVarNum(V);
+            test(f, PACKAGES[p]);
+            f.done();
+        }
+        TestUtil.done("HandleTest");
+    }
+
+    static void test(BDDFactory f, String name) {
+        final int P = 8;
+        Random r = new Random(1);
+        BDD[] a = new BDD[P];
+        int[] h = new int[P];
+        for (int i = 0; i < P; i++) {
+            a[i] = TestUtil.random(f, i, V, 10);
+            h[i] = f.handle(a[i]);
+        }
+        BDDPairing pair = f.makePair();
+        for (int v = 0; v < V / 2; v++) {
+            pair.set(v, v + V / 2);
+            pair.set(v + V / 2, v);
+        }
+        for (int n = 0; n < 2000; n++) {
+            int i = r.nextInt(P), j = r.nextInt(P), k = r.nextInt(P);
+            BDD s = TestUtil.randomSet(f, n, V);
+            int hs = f.handle(s);
+            BDD x;
+            int y;
+            switch (r.nextInt(9)) {
+                case 0: x = a[i].and(a[j]); y = f.handleApply(h[i], h[j], BDDFactory.and); break;
+                case 1: x = a[i].xor(a[j]); y = f.handleApply(h[i], h[j], BDDFactory.xor); break;
+                case 2: x = a[i].not(); y = f.handleNot(h[i]); break;
+                case 3: x = a[i].ite(a[j], a[k]); y = f.handleIte(h[i], h[j], h[k]); break;
+                case 4: x = a[i].exist(s); y = f.handleExist(h[i], hs); break;
+                case 5: x = a[i].forAll(s); y = f.handleForAll(h[i], hs); break;
+                case 6: x = a[i].relprod(a[j], s); y = f.handleRelprod(h[i], h[j], hs); break;
+                case 7: x = a[i].applyEx(a[j], BDDFactory.or, s);
+                    y = f.handleApplyEx(h[i], h[j], BDDFactory.or, hs); break;
+                default: x = a[i].replace(pair); y = f.handleReplace(h[i], pair); break;
+            }
+            s.free();
+            f.handleDelRef(hs);
+            if (x.isZero() || x.isOne()) {
+                int v = r.nextInt(V);
+                BDD w = f.ithVar(v);
+                x.xorWith(w.id());
+                int hw = f.handle(w);
+                int z = f.handleApply(y, hw, BDDFactory.xor);
+                f.handleDelRef(y);
+                f.handleDelRef(hw);
+                w.free();
+                y = z;
+            }
+            BDD c = f.handleToBDD(y);
+            TestUtil.check(c.equals(x), name+": round "+n);
+            c.free();
+            TestUtil.check(f.handleSatCount(y) == x.satCount(), name+": satCount in round "+n);
+            TestUtil.check(f.handleNodeCount(y) == x.nodeCount(), name+": nodeCount in round "+n);
+            TestUtil.check(f.handleVar(y) == x.var(), name+": var in round "+n);
+            int lo = f.handleLow(y), hi = f.handleHigh(y);
+            BDD xl = x.low(), xh = x.high();
+            int hl = f.handle(xl), hh = f.handle(xh);
+            TestUtil.check(f.handleEquals(lo, hl) && f.handleEquals(hi, hh),
+                           name+": children in round "+n);
+            xl.free(); xh.free();
+            f.handleDelRef(lo); f.handleDelRef(hi);
+            f.handleDelRef(hl); f.handleDelRef(hh);
+            a[k].free();
+            f.handleDelRef(h[k]);
+            a[k] = x;
+            h[k] = y;
+        }
+
+        /* Constants and variables */
+        int zero = f.handleZero(), one = f.handleOne();
+        TestUtil.check(f.handleIsZero(zero) && f.handleIsOne(one), name+": constants");
+        int v = f.handleIthVar(3), nv = f.handleNithVar(3), nn = f.handleNot(nv);
+        TestUtil.check(f.handleEquals(v, nn) && !f.handleEquals(v, nv), name+": variables");
+        TestUtil.check(f.handleAddRef(v) == v, name+": addRef");
+        f.handleDelRef(v);
+        int[] done = { zero, one, v, nv, nn };
+        for (int i = 0; i < done.length; i++)
+            f.handleDelRef(done[i]);
+        for (int i = 0; i < P; i++) {
+            a[i].free();
+            f.handleDelRef(h[i]);
+        }
+        pair.reset();
+    }
+}
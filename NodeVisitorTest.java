@@ -0,0 +1,80 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks node traversal in each pure Java package: visitNodes() numbers
+ * the nodes densely, children before parents, and describes the BDD
+ * exactly, and visitNodesByLevel() reports the same nodes in order of
+ * level.</p>
+ */
+public class NodeVisitorTest {
+
+    static final String[] PACKAGES = { "java", "complement", "micro", "jdd" };
+    static final int V = 12;
+
+    public static void main(String[] args) throws Exception {
+        for (int p = 0; p < PACKAGES.length; p++) {
+            BDDFactory f;
+            try {
+                if (PACKAGES[p].equals("complement")) {
+                    f = JFactory.init(1000, 100);
+                    ((JFactory) f).setComplementEdges(true);
+                } else
+                    f = BDDFactory.init(PACKAGES[p], 1000, 100);
+            } catch (Throwable t) {
+                System.out.println("NodeVisitorTest: skipping "+PACKAGES[p]+": "+t);
+                continue;
+            }
+            f.setVarNum(V);
+            TestUtil.check(f.visitNodes(f.zero(), new BDDFactory.NodeArrays()) == 0, PACKAGES[p]+": zero");
+            TestUtil.check(f.visitNodes(f.one(), new BDDFactory.NodeArrays()) == 1, PACKAGES[p]+": one");
+            for (int seed = 0; seed < 30; seed++) {
+                BDD b = TestUtil.random(f, seed, V, 2 * seed + 1);
+                if (!b.isZero() && !b.isOne())
+                    test(f, b, PACKAGES[p]+" seed "+seed, !PACKAGES[p].equals("complement"));
+                b.free();
+            }
+            f.done();
+        }
+        TestUtil.done("NodeVisitorTest");
+    }
+
+    static void test(BDDFactory f, BDD b, final String name, boolean counts) {
+        final BDDFactory.NodeArrays a = new BDDFactory.NodeArrays();
+        final int[] next = { 2 };
+        int root = f.visitNodes(b, new BDDFactory.NodeVisitor() {
+            public void visit(int node, int level, int low, int high) {
+                TestUtil.check(node == next[0]++, name+": dense numbers");
+                TestUtil.check(low < node && high < node && low != high, name+": children first");
+                TestUtil.check((low < 2 || a.level[low] > level) && (high < 2 || a.level[high] > level),
+                               name+": children below");
+                a.visit(node, level, low, high);
+            }
+        });
+        TestUtil.check(root == next[0] - 1, name+": root visited last");
+        TestUtil.check(!counts || root == b.nodeCount() + 1, name+": "+(root - 1)+" nodes of "+b.nodeCount());
+
+        /* Rebuild the function from the nodes */
+        BDD[] g = new BDD[root + 1];
+        g[0] = f.zero();
+        g[1] = f.one();
+        for (int n = 2; n <= root; n++)
+            g[n] = f.ithVar(f.level2Var(a.level[n])).ite(g[a.high[n]], g[a.low[n]]);
+        TestUtil.check(g[root].equals(b), name+": nodes describe the BDD");
+        for (int n = 0; n <= root; n++)
+            g[n].free();
+
+        final boolean[] seen = new boolean[root + 1];
+        final int[] last = { -1 }, count = { 0 };
+        int r = f.visitNodesByLevel(b, new BDDFactory.NodeVisitor() {
+            public void visit(int node, int level, int low, int high) {
+                TestUtil.check(level >= last[0], name+": increasing levels");
+                TestUtil.check(!seen[node] && level == a.level[node] && low == a.low[node]
+                               && high == a.high[node], name+": same nodes by level");
+                last[0] = level;
+                seen[node] = true;
+                count[0]++;
+            }
+        });
+        TestUtil.check(r == root && count[0] == root - 1, name+": all nodes by level");
+    }
+}
@@ -0,0 +1,35 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the off-heap node table of JFactory: operations give the same
+ * results as with the heap table while the table is collected and grown,
+ * and the table can be moved back to the heap with its nodes.</p>
+ */
+public class OffHeapTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        TestUtil.check(!f.setOffHeap(true), "table starts on the heap");
+        TestUtil.check(f.isOffHeap(), "table is off-heap");
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 2000);
+        TestUtil.check(f.getNodeTableSize() > 500, "table has grown");
+
+        BDD a = TestUtil.random(f, 7, V, 30);
+        BDD b = TestUtil.random(ref, 7, V, 30);
+        TestUtil.check(f.setOffHeap(false), "table was off-heap");
+        TestUtil.check(!f.isOffHeap(), "table is back on the heap");
+        TestUtil.check(TestUtil.same(a, b), "nodes moved back to the heap");
+        TestUtil.compare(f, ref, 2, V, 500);
+        a.free();
+        b.free();
+
+        f.setOffHeap(true);
+        TestUtil.compare(f, ref, 3, V, 500);
+        f.done();
+        TestUtil.done("OffHeapTest");
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks parallel reordering: with nested variable blocks and several
+ * reorder threads, the functions are unchanged, each block keeps its
+ * variables together, and the order found is the same as with one
+ * thread.</p>
+ */
+public class ParallelReorderTest {
+
+    static final int V = 24, B = 6;
+
+    public static void main(String[] args) throws Exception {
+        BDDFactory ref = TestUtil.reference(V);
+        int[] order = null;
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            JFactory f = (JFactory) JFactory.init(10000, 1000);
+            f.setVarNum(V);
+            f.setReorderThreads(threads);
+            f.addVarBlock(0, V / 2 - 1, false);
+            f.addVarBlock(V / 2, V - 1, false);
+            for (int v = 0; v < V; v += B)
+                f.addVarBlock(v, v + B - 1, false);
+            BDD[] a = new BDD[8];
+            for (int i = 0; i < a.length; i++)
+                a[i] = TestUtil.random(f, i, V, 40);
+
+            f.reorder(BDDFactory.REORDER_SIFT);
+            for (int i = 0; i < a.length; i++) {
+                BDD b = TestUtil.random(ref, i, V, 40);
+                TestUtil.check(TestUtil.same(a[i], b), threads+" threads: function "+i);
+                b.free();
+            }
+            for (int v = 0; v < V; v += B) {
+                int min = V, max = -1;
+                for (int w = v; w < v + B; w++) {
+                    min = Math.min(min, f.var2Level(w));
+                    max = Math.max(max, f.var2Level(w));
+                }
+                TestUtil.check(max - min == B - 1, threads+" threads: block of "+v+" kept together");
+            }
+            int[] o = f.getVarOrder();
+            if (order == null)
+                order = o;
+            else
+                TestUtil.check(Arrays.equals(o, order), threads+" threads: same order as one thread");
+
+            /* Operations after reordering, against the same order */
+            BDDFactory same = TestUtil.reference(V);
+            same.setVarOrder(o);
+            TestUtil.compare(f, same, threads, V, 300);
+            same.done();
+            for (int i = 0; i < a.length; i++)
+                a[i].free();
+            f.setReorderThreads(1);
+            f.done();
+        }
+        TestUtil.done("ParallelReorderTest");
+    }
+}
@@ -0,0 +1,62 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the parallel apply and relational product of JFactory against
+ * a sequential factory, and that turning parallelism off restores the
+ * previous mode.</p>
+ */
+public class ParallelTest {
+
+    static final int V = 24;
+    static final int INPUTS = 6;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(2000, 1000);
+        f.setVarNum(V);
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.check(f.setParallelism(4) == 1, "parallelism starts at 1");
+        TestUtil.check(f.isConcurrent(), "parallelism turns on concurrent mode");
+
+        BDD[] in = new BDD[INPUTS], refin = new BDD[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            in[i] = TestUtil.random(f, i, V, 120);
+            refin[i] = TestUtil.random(ref, i, V, 120);
+        }
+        BDD[] keep = new BDD[INPUTS * INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            for (int j = 0; j < INPUTS; j++) {
+                BDDFactory.BDDOp op = (i + j) % 3 == 0 ? BDDFactory.and
+                                    : (i + j) % 3 == 1 ? BDDFactory.or : BDDFactory.xor;
+                BDD a = in[i].apply(in[j], op), b = refin[i].apply(refin[j], op);
+                TestUtil.check(TestUtil.same(a, b), "apply "+op+" "+i+" "+j);
+                b.free();
+                keep[i * INPUTS + j] = a;
+
+                BDD s = TestUtil.randomSet(f, i * INPUTS + j, V);
+                BDD rs = TestUtil.randomSet(ref, i * INPUTS + j, V);
+                a = in[i].relprod(in[j], s);
+                b = refin[i].relprod(refin[j], rs);
+                TestUtil.check(TestUtil.same(a, b), "relprod "+i+" "+j);
+                a.free(); b.free(); s.free(); rs.free();
+            }
+        }
+
+        TestUtil.check(f.setParallelism(1) == 4, "old parallelism");
+        TestUtil.check(!f.isConcurrent(), "sequential mode is restored");
+        BDD a = keep[1].and(keep[2]);
+        BDD b = refin[0].or(refin[1]);
+        BDD c = refin[0].xor(refin[2]);
+        BDD d = b.and(c);
+        TestUtil.check(TestUtil.same(a, d), "results made in parallel still work");
+        a.free(); b.free(); c.free(); d.free();
+        for (int i = 0; i < keep.length; i++)
+            keep[i].free();
+
+        f.setConcurrent(true);
+        f.setParallelism(2);
+        f.setParallelism(1);
+        TestUtil.check(f.isConcurrent(), "concurrent mode set by hand is kept");
+        f.done();
+        TestUtil.done("ParallelTest");
+    }
+}
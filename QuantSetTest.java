@@ -0,0 +1,88 @@
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks quant sets: exist(), forAll(), relprod() and applyEx() with a
+ * quant set give the same results as with the variable set as a BDD, in
+ * each pure Java package, with several quant sets used in turn, after
+ * reordering and after adding variables.</p>
+ */
+public class QuantSetTest {
+
+    static final String[] PACKAGES = { "java", "complement", "micro" };
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        for (int p = 0; p < PACKAGES.length; p++) {
+            BDDFactory f;
+            if (PACKAGES[p].equals("complement")) {
+                f = JFactory.init(500, 100);
+                ((JFactory) f).setComplementEdges(true);
+            } else
+                f = BDDFactory.init(PACKAGES[p], 500, 100);
+            f.setVarNum(V);
+            BDD[] sets = new BDD[6];
+            BDDQuantSet[] q = new BDDQuantSet[sets.length];
+            for (int i = 0; i < sets.length; i++) {
+                sets[i] = TestUtil.randomSet(f, 100 + i, V);
+                q[i] = f.makeQuantSet(sets[i]);
+                BDD b = q[i].toBDD();
+                TestUtil.check(b.equals(sets[i]) && q[i].getFactory() == f, PACKAGES[p]+": toBDD()");
+                b.free();
+            }
+            test(f, sets, q, PACKAGES[p], 1);
+            if (f instanceof JFactory) {
+                f.reorder(BDDFactory.REORDER_SIFT);
+                f.setVarOrder(reverse(V));
+                test(f, sets, q, PACKAGES[p]+" after reordering", 2);
+            }
+            f.setVarNum(V + 4);
+            test(f, sets, q, PACKAGES[p]+" after setVarNum()", 3);
+            for (int i = 0; i < sets.length; i++) {
+                q[i].free();
+                sets[i].free();
+            }
+
+            /* Domains */
+            BDDDomain[] d = f.extDomain(new long[] { 16, 16 });
+            BDDQuantSet qd = f.makeQuantSet(new BDDDomain[] { d[1] });
+            BDD e = d[0].buildEquals(d[1]), x = e.exist(qd), y = e.exist(d[1].set());
+            TestUtil.check(x.equals(y) && x.isOne(), PACKAGES[p]+": domain quant set");
+            e.free(); x.free(); y.free(); qd.free();
+            f.done();
+        }
+        TestUtil.done("QuantSetTest");
+    }
+
+    static int[] reverse(int n) {
+        int[] o = new int[n];
+        for (int i = 0; i < n; i++)
+            o[i] = n - 1 - i;
+        return o;
+    }
+
+    static void test(BDDFactory f, BDD[] sets, BDDQuantSet[] q, String name, long seed) {
+        Random r = new Random(seed);
+        BDDFactory.BDDOp[] ops = { BDDFactory.and, BDDFactory.or, BDDFactory.xor, BDDFactory.imp };
+        for (int n = 0; n < 500; n++) {
+            BDD a = TestUtil.random(f, r.nextLong(), V, 4 + r.nextInt(20));
+            BDD b = TestUtil.random(f, r.nextLong(), V, 4 + r.nextInt(20));
+            int i = r.nextInt(sets.length);
+            BDD x, y;
+            int op = r.nextInt(4);
+            switch (op) {
+                case 0: x = a.exist(q[i]); y = a.exist(sets[i]); break;
+                case 1: x = a.forAll(q[i]); y = a.forAll(sets[i]); break;
+                case 2: x = a.relprod(b, q[i]); y = a.relprod(b, sets[i]); break;
+                default:
+                    BDDFactory.BDDOp o = ops[r.nextInt(ops.length)];
+                    x = a.applyEx(b, o, q[i]);
+                    y = a.applyEx(b, o, sets[i]);
+                    break;
+            }
+            TestUtil.check(x.equals(y), name+": operation "+op+" in round "+n);
+            a.free(); b.free(); x.free(); y.free();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks partitioned transition relations: image() and preImage() agree
+ * with the monolithic relation for any cluster limit, inputs are quantified
+ * in both directions, and the relation does not depend on the partitions
+ * given to it.</p>
+ */
+public class RelationTest {
+
+    static final int K = 5, SIZE = 8;
+
+    public static void main(String[] args) throws Exception {
+        BDDFactory f = JFactory.init(10000, 1000);
+        Random r = new Random(1);
+        long[] sizes = new long[2 * K + 1];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = i < 2 * K ? SIZE : 2;
+        BDDDomain[] d = f.extDomain(sizes);
+        BDDDomain[] cur = new BDDDomain[K], next = new BDDDomain[K];
+        for (int i = 0; i < K; i++) {
+            cur[i] = d[2 * i];
+            next[i] = d[2 * i + 1];
+        }
+        BDDDomain in = d[2 * K];
+
+        /* Component i moves depending on itself and its right neighbour,
+         * or stays put when the input says so. */
+        List parts = new ArrayList();
+        for (int i = 0; i < K; i++) {
+            BDD p = f.zero();
+            for (int j = 0; j < 12; j++) {
+                BDD t = cur[i].ithVar(r.nextInt(SIZE));
+                t.andWith(cur[(i + 1) % K].ithVar(r.nextInt(SIZE)));
+                t.andWith(next[i].ithVar(r.nextInt(SIZE)));
+                p.orWith(t);
+            }
+            BDD stay = in.ithVar(i % 2);
+            stay.andWith(next[i].buildEquals(cur[i]));
+            p.orWith(stay);
+            parts.add(p);
+        }
+        BDD mono = f.andAll(parts);
+        BDD curVars = f.makeSet(cur).andWith(in.set());
+        BDD nextVars = f.makeSet(next).andWith(in.set());
+        BDDPairing toCur = f.makePair(), toNext = f.makePair();
+        toCur.set(next, cur);
+        toNext.set(cur, next);
+
+        BDDRelation rel = f.makeRelation(parts, cur, next);
+        for (int i = 0; i < parts.size(); i++)
+            ((BDD) parts.get(i)).free(); /* the relation keeps its own copies */
+        TestUtil.check(rel.relation().equals(mono), "relation()");
+        TestUtil.check(rel.getFactory() == f, "getFactory()");
+
+        int[] limits = { 0, 100, 1000, BDDRelation.DEFAULT_CLUSTER_LIMIT, Integer.MAX_VALUE };
+        int clusters = Integer.MAX_VALUE;
+        for (int l = 0; l < limits.length; l++) {
+            TestUtil.check(rel.setClusterLimit(limits[l])
+                           == (l == 0 ? BDDRelation.DEFAULT_CLUSTER_LIMIT : limits[l - 1]), "old limit");
+            int c = rel.clusterCount();
+            TestUtil.check(c >= 1 && c <= K && c <= clusters, c+" clusters with limit "+limits[l]);
+            clusters = c;
+            for (int n = 0; n < 30; n++) {
+                BDD s = f.zero();
+                for (int j = r.nextInt(20); j >= 0; j--) {
+                    BDD t = f.one();
+                    for (int i = 0; i < K; i++)
+                        if (r.nextInt(3) > 0)
+                            t.andWith(cur[i].ithVar(r.nextInt(SIZE)));
+                    s.orWith(t);
+                }
+                BDD x = rel.image(s);
+                BDD y = s.relprod(mono, curVars).replaceWith(toCur);
+                TestUtil.check(x.equals(y), "image with limit "+limits[l]+" in round "+n);
+                x.free(); y.free();
+                x = rel.preImage(s);
+                BDD sn = s.replace(toNext);
+                y = sn.relprod(mono, nextVars);
+                TestUtil.check(x.equals(y), "preImage with limit "+limits[l]+" in round "+n);
+                x.free(); y.free(); sn.free(); s.free();
+            }
+        }
+        TestUtil.check(clusters == 1, "one cluster without a limit");
+
+        /* Reachable states from one state, both ways */
+        BDD init = f.one();
+        for (int i = 0; i < K; i++)
+            init.andWith(cur[i].ithVar(0));
+        BDD reach = init.id(), front = init.id();
+        while (!front.isZero()) {
+            BDD img = rel.image(front);
+            front.free();
+            front = img.apply(reach, BDDFactory.diff);
+            img.free();
+            reach.orWith(front.id());
+        }
+        BDD img = rel.image(reach);
+        TestUtil.check(img.imp(reach).isOne(), "reachable states are closed under image()");
+        /* So a reachable state has a successor iff it has a reachable one */
+        BDD any = f.one();
+        BDD pre = rel.preImage(reach).andWith(reach.id());
+        BDD live = rel.preImage(any).andWith(reach.id());
+        TestUtil.check(pre.equals(live), "preImage() of the reachable states");
+        img.free(); any.free(); pre.free(); live.free();
+        front.free(); reach.free(); init.free();
+
+        try {
+            f.makeRelation(new ArrayList(), cur, new BDDDomain[] { next[0] });
+            TestUtil.check(false, "different numbers of domains are refused");
+        } catch (BDDException x) {
+        }
+        rel.free();
+        mono.free(); curVars.free(); nextVars.free();
+        f.done();
+        TestUtil.done("RelationTest");
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks saturation: for random asynchronous systems, reachable() finds
+ * the same states as a breadth-first fixpoint over the monolithic
+ * relation, from any set of initial states and with repeated calls, and
+ * bad domains are refused.</p>
+ */
+public class SaturationTest {
+
+    static final int C = 5, S = 5;
+
+    public static void main(String[] args) throws Exception {
+        for (long seed = 0; seed < 20; seed++)
+            test(seed);
+
+        BDDFactory f = JFactory.init(1000, 100);
+        BDDDomain[] d = f.extDomain(new long[] { 4, 4, BDDSaturation.MAX_DOMAIN_SIZE * 2 });
+        try {
+            f.makeSaturation(new BDDDomain[] { d[0] }, new BDDDomain[] { d[1], d[2] });
+            TestUtil.check(false, "different numbers of domains are refused");
+        } catch (BDDException x) {
+        }
+        try {
+            f.makeSaturation(new BDDDomain[] { d[2] }, new BDDDomain[] { d[1] });
+            TestUtil.check(false, "domains that are too large are refused");
+        } catch (BDDException x) {
+        }
+        f.done();
+        TestUtil.done("SaturationTest");
+    }
+
+    static void test(long seed) {
+        Random r = new Random(seed);
+        BDDFactory f = JFactory.init(10000, 1000);
+        long[] sizes = new long[2 * C];
+        Arrays.fill(sizes, S);
+        BDDDomain[] d = f.extDomain(sizes);
+        BDDDomain[] cur = new BDDDomain[C], next = new BDDDomain[C];
+        for (int c = 0; c < C; c++) {
+            cur[c] = d[2 * c];
+            next[c] = d[2 * c + 1];
+        }
+        BDDSaturation sat = f.makeSaturation(cur, next);
+        TestUtil.check(sat.getFactory() == f, "getFactory()");
+
+        /* Events touching one or two components */
+        BDD trans = f.zero();
+        int events = 4 + r.nextInt(12);
+        for (int k = 0; k < events; k++) {
+            int c1 = r.nextInt(C), c2 = r.nextInt(C);
+            BDD rel = f.zero();
+            for (int m = 0; m < 3; m++) {
+                BDD t = cur[c1].ithVar(r.nextInt(S)).andWith(next[c1].ithVar(r.nextInt(S)));
+                if (c2 != c1)
+                    t.andWith(cur[c2].ithVar(r.nextInt(S)).andWith(next[c2].ithVar(r.nextInt(S))));
+                rel.orWith(t);
+            }
+            sat.addEvent(rel);
+            for (int c = 0; c < C; c++)
+                if (c != c1 && c != c2)
+                    rel.andWith(cur[c].buildEquals(next[c]));
+            trans.orWith(rel);
+        }
+        TestUtil.check(sat.eventCount() <= events, sat.eventCount()+" of "+events+" events");
+
+        BDDPairing toCur = f.makePair();
+        toCur.set(next, cur);
+        BDD curVars = f.makeSet(cur);
+        for (int n = 0; n < 3; n++) {
+            BDD init = f.zero();
+            for (int j = 0; j <= n; j++) {
+                BDD s = f.one();
+                for (int c = 0; c < C; c++)
+                    s.andWith(cur[c].ithVar(r.nextInt(S)));
+                init.orWith(s);
+            }
+            BDD x = sat.reachable(init);
+            BDD y = init.id();
+            for (;;) {
+                BDD img = y.relprod(trans, curVars).replaceWith(toCur);
+                BDD z = y.or(img);
+                img.free();
+                if (z.equals(y)) {
+                    z.free();
+                    break;
+                }
+                y.free();
+                y = z;
+            }
+            TestUtil.check(x.equals(y), "seed "+seed+": reachable states from "+(n + 1)+" states");
+            x.free(); y.free(); init.free();
+        }
+        sat.free();
+        trans.free();
+        curVars.free();
+        f.done();
+    }
+}
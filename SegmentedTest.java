@@ -0,0 +1,58 @@
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the segmented node table: results agree with the single array
+ * while the table is collected, grown, reordered and compacted, in the
+ * compact layout, with generational collection and in concurrent mode, and
+ * nodes are kept when the table moves between a single array, pages and
+ * off-heap memory.</p>
+ */
+public class SegmentedTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        f.setVarNum(V);
+        TestUtil.check(!f.setSegmented(true), "single array by default");
+        TestUtil.check(f.isSegmented(), "segmented");
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 3000);
+        TestUtil.check(f.getNodeTableSize() > 500, "table has grown");
+
+        BDD a = TestUtil.random(f, 2, V, 40), b = TestUtil.random(ref, 2, V, 40);
+        f.reorder(BDDFactory.REORDER_SIFT);
+        TestUtil.check(TestUtil.same(a, b), "function kept through reordering");
+        f.setVarOrder(ref.getVarOrder());
+
+        f.setCompactLayout(true);
+        TestUtil.compare(f, ref, 3, V, 1000);
+        f.setCompactLayout(false);
+        f.setGenerational(true);
+        TestUtil.compare(f, ref, 4, V, 1000);
+        f.setGenerational(false);
+        f.setConcurrent(true);
+        TestUtil.compare(f, ref, 5, V, 500);
+        f.setConcurrent(false);
+        TestUtil.check(f.isSegmented(), "still segmented");
+
+        f.compact(JFactory.COMPACT_DEPTH_FIRST);
+        TestUtil.check(TestUtil.same(a, b), "function kept through compaction");
+        TestUtil.compare(f, ref, 6, V, 500);
+
+        TestUtil.check(f.setSegmented(false), "was segmented");
+        TestUtil.check(TestUtil.same(a, b), "function kept in a single array");
+        f.setSegmented(true);
+        f.setOffHeap(true);
+        TestUtil.check(f.isOffHeap() && !f.isSegmented(), "moved off-heap");
+        TestUtil.check(TestUtil.same(a, b), "function kept off-heap");
+        f.setOffHeap(false);
+        TestUtil.check(!f.isSegmented(), "moved back to the heap as a single array");
+        TestUtil.check(TestUtil.same(a, b), "function kept back on the heap");
+        TestUtil.compare(f, ref, 7, V, 500);
+        a.free();
+        b.free();
+        f.done();
+        TestUtil.done("SegmentedTest");
+    }
+}
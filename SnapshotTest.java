@@ -0,0 +1,66 @@
+import java.io.File;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks node table snapshots: the roots of a mapped snapshot are the
+ * BDDs that were saved, new nodes can be built on top of them and
+ * collected without touching them, the variable order is fixed, and more
+ * variables can be added.</p>
+ */
+public class SnapshotTest {
+
+    static final int V = 16;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(1000, 1000);
+        f.setVarNum(V);
+        BDD[] roots = new BDD[3];
+        for (int i = 0; i < roots.length; i++)
+            roots[i] = TestUtil.random(f, i, V, 60);
+        File file = File.createTempFile("javabdd", ".snap");
+        f.saveSnapshot(file.getPath(), roots);
+
+        JFactory s = JFactory.initFromSnapshot(file.getPath(), 1000, 1000);
+        TestUtil.check(s.varNum() == V, "number of variables");
+        BDD[] mapped = s.getSnapshotRoots();
+        TestUtil.check(mapped.length == roots.length, "number of roots");
+        for (int i = 0; i < mapped.length; i++)
+            TestUtil.check(TestUtil.same(mapped[i], roots[i]), "root "+i);
+
+        /* New nodes on top of the snapshot, with collections */
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(s, ref, 1, V, 1500);
+        BDD r = mapped[0].and(mapped[1]), t = roots[0].and(roots[1]);
+        TestUtil.check(TestUtil.same(r, t), "and() of two roots");
+        r.free(); t.free();
+        for (int i = 0; i < mapped.length; i++)
+            TestUtil.check(TestUtil.same(mapped[i], roots[i]), "root "+i+" after collections");
+
+        try {
+            s.reorder(BDDFactory.REORDER_SIFT);
+            TestUtil.check(false, "reordering a snapshot is refused");
+        } catch (BDDException x) {
+        }
+
+        s.setVarNum(V + 2);
+        r = mapped[2].and(s.ithVar(V + 1));
+        TestUtil.check(r.satCount() * 2 == mapped[2].satCount(), "new variable");
+        r.free();
+
+        JFactory c = (JFactory) JFactory.init(1000, 1000);
+        c.setComplementEdges(true);
+        c.setVarNum(V);
+        try {
+            c.saveSnapshot(file.getPath(), new BDD[] { c.ithVar(0) });
+            TestUtil.check(false, "snapshots of complement edges are refused");
+        } catch (BDDException x) {
+        }
+
+        s.done();
+        f.done();
+        c.done();
+        file.delete();
+        TestUtil.done("SnapshotTest");
+    }
+}
@@ -0,0 +1,72 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks the statistics of JFactory: cache statistics are snapshots,
+ * and the statistics bean shows the counters of the factory on the platform
+ * MBean server, sends a notification for every collection, reordering and
+ * resize, and is unregistered again.</p>
+ */
+public class StatsTest {
+
+    static final int V = 14;
+
+    public static void main(String[] args) throws Exception {
+        JFactory f = (JFactory) JFactory.init(500, 100);
+        f.setVarNum(V);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        BDDStats stats = f.registerMBean("StatsTest");
+        ObjectName name = stats.getObjectName();
+        TestUtil.check(server.isRegistered(name), "registered");
+        final int[] counts = new int[3];
+        server.addNotificationListener(name, new NotificationListener() {
+            public void handleNotification(Notification n, Object handback) {
+                if (n.getType().equals(BDDStats.GC)) counts[0]++;
+                else if (n.getType().equals(BDDStats.REORDER)) counts[1]++;
+                else if (n.getType().equals(BDDStats.RESIZE)) counts[2]++;
+            }
+        }, null, null);
+
+        BDDFactory.CacheStats before = f.getCacheStats();
+        long hits = before.opHit;
+        BDDFactory ref = TestUtil.reference(V);
+        TestUtil.compare(f, ref, 1, V, 1500);
+        BDDFactory.CacheStats after = f.getCacheStats();
+        TestUtil.check(after != before && before.opHit == hits, "cache statistics are snapshots");
+        TestUtil.check(after.opHit > hits, "hits counted");
+
+        BDD a = TestUtil.random(f, 3, V, 40);
+        f.reorder(BDDFactory.REORDER_SIFT);
+        a.free();
+
+        BDDFactory.GCStats gc = f.getGCStats();
+        TestUtil.check(((Integer) server.getAttribute(name, "GCCount")).intValue() == gc.num, "GCCount");
+        TestUtil.check(((Integer) server.getAttribute(name, "VarNum")).intValue() == V, "VarNum");
+        TestUtil.check(((Integer) server.getAttribute(name, "NodeTableSize")).intValue()
+                       == f.getNodeTableSize(), "NodeTableSize");
+        TestUtil.check(((Integer) server.getAttribute(name, "ReorderCount")).intValue() == 1, "ReorderCount");
+        TestUtil.check(((Long) server.getAttribute(name, "OpHit")).longValue()
+                       == f.getCacheStats().opHit, "OpHit");
+        int resizes = ((Integer) server.getAttribute(name, "ResizeCount")).intValue();
+        TestUtil.check(resizes > 0, "ResizeCount");
+
+        /* Notifications are sent synchronously */
+        TestUtil.check(counts[0] == gc.num, counts[0]+" gc notifications for "+gc.num);
+        TestUtil.check(counts[1] == 1, counts[1]+" reorder notifications");
+        TestUtil.check(counts[2] == resizes, counts[2]+" resize notifications for "+resizes);
+
+        f.unregisterMBean();
+        TestUtil.check(!server.isRegistered(name), "unregistered");
+        f.registerMBean("StatsTest");
+        TestUtil.check(server.isRegistered(name), "registered again");
+        f.done();
+        TestUtil.check(!server.isRegistered(name), "done() unregisters");
+        TestUtil.done("StatsTest");
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Helpers shared by the behaviour tests that 'make check' runs.  Each
+ * test is a main program that prints the checks that failed and exits with
+ * status 1 if there were any.</p>
+ *
+ * <p>Most tests build the same random functions in the factory under test
+ * and in a plain reference JFactory, and compare the results.</p>
+ */
+public class TestUtil {
+
+    static int failures;
+
+    /* Records a failure unless the condition holds */
+    static synchronized void check(boolean b, String what) {
+        if (!b) {
+            failures++;
+            System.out.println("FAILED: "+what);
+        }
+    }
+
+    /* Records an unexpected exception */
+    static synchronized void fail(String what, Throwable t) {
+        failures++;
+        System.out.println("FAILED: "+what+": "+t);
+    }
+
+    /* Prints the outcome and exits with status 1 if a check failed */
+    static void done(String test) {
+        if (failures > 0) {
+            System.out.println(test+": "+failures+" failed");
+            System.exit(1);
+        }
+        System.out.println(test+": ok");
+    }
+
+    /* Plain JFactory to compare against */
+    static BDDFactory reference(int vars) {
+        BDDFactory f = JFactory.init(10000, 10000);
+        f.setVarNum(vars);
+        return f;
+    }
+
+    /* A random function of the first vars variables.  The same seed gives
+     * the same function in every factory. */
+    static BDD random(BDDFactory f, long seed, int vars, int terms) {
+        Random r = new Random(seed);
+        BDD b = f.zero();
+        for (int i = 0; i < terms; i++) {
+            BDD t = f.one();
+            for (int k = r.nextInt(3); k >= 0; k--) {
+                int v = r.nextInt(vars);
+                t.andWith(r.nextBoolean() ? f.ithVar(v) : f.nithVar(v));
+            }
+            if (r.nextBoolean()) b.orWith(t);
+            else b.xorWith(t);
+        }
+        return b;
+    }
+
+    /* A random set of the first vars variables */
+    static BDD randomSet(BDDFactory f, long seed, int vars) {
+        Random r = new Random(seed);
+        BDD b = f.one();
+        for (int v = 0; v < vars; v++)
+            if (r.nextInt(3) == 0)
+                b.andWith(f.ithVar(v));
+        return b;
+    }
+
+    /* Runs the same random operations in f and in ref, checking that the
+     * results agree.  Both factories need exactly vars variables. */
+    static void compare(BDDFactory f, BDDFactory ref, long seed, int vars, int rounds)
+        throws IOException {
+        final int P = 16;
+        Random r = new Random(seed);
+        BDD[] a = new BDD[P], b = new BDD[P];
+        for (int i = 0; i < P; i++) {
+            a[i] = random(f, seed + i, vars, 8);
+            b[i] = random(ref, seed + i, vars, 8);
+        }
+        BDDPairing pa = f.makePair(), pb = ref.makePair();
+        for (int v = 0; v < vars / 2; v++) {
+            pa.set(v, v + vars / 2);
+            pa.set(v + vars / 2, v);
+            pb.set(v, v + vars / 2);
+            pb.set(v + vars / 2, v);
+        }
+        for (int n = 0; n < rounds; n++) {
+            int i = r.nextInt(P), j = r.nextInt(P), k = r.nextInt(P);
+            int op = r.nextInt(10);
+            BDD sa = randomSet(f, n, vars), sb = randomSet(ref, n, vars);
+            BDD x, y;
+            switch (op) {
+                case 0: x = a[i].and(a[j]); y = b[i].and(b[j]); break;
+                case 1: x = a[i].or(a[j]); y = b[i].or(b[j]); break;
+                case 2: x = a[i].xor(a[j]); y = b[i].xor(b[j]); break;
+                case 3: x = a[i].not(); y = b[i].not(); break;
+                case 4: x = a[i].ite(a[j], a[k]); y = b[i].ite(b[j], b[k]); break;
+                case 5: x = a[i].exist(sa); y = b[i].exist(sb); break;
+                case 6: x = a[i].forAll(sa); y = b[i].forAll(sb); break;
+                case 7: x = a[i].relprod(a[j], sa); y = b[i].relprod(b[j], sb); break;
+                case 8: x = a[i].replace(pa); y = b[i].replace(pb); break;
+                default: x = a[i].imp(a[j]); y = b[i].imp(b[j]); break;
+            }
+            sa.free();
+            sb.free();
+            /* Keep the pool from collapsing to constants */
+            if (y.isZero() || y.isOne()) {
+                int v = r.nextInt(vars);
+                x.xorWith(f.ithVar(v));
+                y.xorWith(ref.ithVar(v));
+            }
+            check(same(x, y), "operation "+op+" in round "+n);
+            check(x.satCount() == y.satCount(), "satCount in round "+n);
+            check(x.nodeCount() == y.nodeCount() || f instanceof JFactory
+                  && ((JFactory) f).isComplementEdges(), "nodeCount in round "+n);
+            a[k].free();
+            b[k].free();
+            a[k] = x;
+            b[k] = y;
+        }
+        for (int i = 0; i < P; i++) {
+            a[i].free();
+            b[i].free();
+        }
+        pa.reset();
+        pb.reset();
+    }
+
+    /* Copies a BDD into another factory through the text format */
+    static BDD copy(BDD b, BDDFactory f) throws IOException {
+        StringWriter s = new StringWriter();
+        BufferedWriter w = new BufferedWriter(s);
+        b.getFactory().save(w, b);
+        w.flush();
+        return f.load(new BufferedReader(new StringReader(s.toString())));
+    }
+
+    /* Whether two BDDs, possibly of different factories, are the same
+     * function */
+    static boolean same(BDD a, BDD b) throws IOException {
+        if (a.getFactory() == b.getFactory())
+            return a.equals(b);
+        BDD c = copy(a, b.getFactory());
+        boolean res = c.equals(b);
+        c.free();
+        return res;
+    }
+}
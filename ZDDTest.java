@@ -0,0 +1,146 @@
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * <p>Checks ZDDs against explicit families of sets: every operation gives
+ * the family it should, equal families give equal ZDDs, conversion to and
+ * from BDDs keeps the family, ZDDs survive collections of the shared node
+ * table, and reordering is refused while ZDDs are alive.</p>
+ */
+public class ZDDTest {
+
+    static final int V = 8, N = 1 << V;
+
+    public static void main(String[] args) throws Exception {
+        ZDDFactory z = ZDDFactory.init(500, 100);
+        z.setVarNum(V);
+        JFactory f = (JFactory) z.getBDDFactory();
+        ZDD e = z.empty(), b = z.base();
+        TestUtil.check(e.isEmpty() && !e.isBase() && b.isBase() && !b.isEmpty(), "constants");
+        TestUtil.check(e.count() == 0 && b.count() == 1, "constant counts");
+        e.free();
+        b.free();
+
+        Random r = new Random(1);
+        final int P = 8;
+        boolean[][] fam = new boolean[P][];
+        ZDD[] a = new ZDD[P];
+        for (int i = 0; i < P; i++) {
+            fam[i] = randomFamily(r);
+            a[i] = build(z, fam[i]);
+        }
+        for (int n = 0; n < 2000; n++) {
+            int i = r.nextInt(P), j = r.nextInt(P), k = r.nextInt(P), v = r.nextInt(V);
+            boolean[] x = new boolean[N];
+            ZDD y;
+            int op = r.nextInt(7);
+            switch (op) {
+                case 0:
+                    for (int s = 0; s < N; s++) x[s] = fam[i][s] || fam[j][s];
+                    y = a[i].union(a[j]);
+                    break;
+                case 1:
+                    for (int s = 0; s < N; s++) x[s] = fam[i][s] && fam[j][s];
+                    y = a[i].intersect(a[j]);
+                    break;
+                case 2:
+                    for (int s = 0; s < N; s++) x[s] = fam[i][s] && !fam[j][s];
+                    y = a[i].diff(a[j]);
+                    break;
+                case 3:
+                    for (int s = 0; s < N; s++)
+                        for (int t = 0; t < N; t++)
+                            if (fam[i][s] && fam[j][t]) x[s | t] = true;
+                    y = a[i].join(a[j]);
+                    break;
+                case 4:
+                    for (int s = 0; s < N; s++) x[s ^ (1 << v)] = fam[i][s];
+                    y = a[i].change(v);
+                    break;
+                case 5:
+                    for (int s = 0; s < N; s++)
+                        if (fam[i][s] && (s & (1 << v)) != 0) x[s & ~(1 << v)] = true;
+                    y = a[i].onset(v);
+                    break;
+                default:
+                    for (int s = 0; s < N; s++) x[s] = fam[i][s] && (s & (1 << v)) == 0;
+                    y = a[i].offset(v);
+                    break;
+            }
+            /* Keep the families from emptying out */
+            if (count(x) < 4) {
+                y.free();
+                x = randomFamily(r);
+                y = build(z, x);
+            }
+            ZDD c = build(z, x);
+            TestUtil.check(y.equals(c), "operation "+op+" in round "+n);
+            TestUtil.check(y.count() == count(x), "count in round "+n);
+            c.free();
+            a[k].free();
+            a[k] = y;
+            fam[k] = x;
+        }
+        TestUtil.check(f.getGCStats().num > 0, "collections happened");
+
+        /* Conversion to and from BDDs */
+        for (int i = 0; i < P; i++) {
+            BDD d = a[i].toBDD();
+            TestUtil.check(d.satCount() == a[i].count(), "toBDD() of "+i);
+            for (int s = 0; s < N; s++) {
+                BDD m = f.one();
+                for (int v = 0; v < V; v++)
+                    m.andWith((s & (1 << v)) != 0 ? f.ithVar(v) : f.nithVar(v));
+                TestUtil.check(fam[i][s] == !m.and(d).isZero(), "set "+s+" of "+i);
+                m.free();
+            }
+            ZDD c = z.fromBDD(d);
+            TestUtil.check(c.equals(a[i]), "fromBDD() of "+i);
+            c.free();
+            d.free();
+        }
+
+        try {
+            f.reorder(BDDFactory.REORDER_SIFT);
+            TestUtil.check(false, "reordering with live ZDDs is refused");
+        } catch (BDDException x) {
+        }
+        for (int i = 0; i < P; i++)
+            a[i].free();
+        f.reorder(BDDFactory.REORDER_SIFT);
+        f.done();
+        TestUtil.done("ZDDTest");
+    }
+
+    static boolean[] randomFamily(Random r) {
+        boolean[] x = new boolean[N];
+        for (int i = 4 + r.nextInt(20); i > 0; i--)
+            x[r.nextInt(N) & r.nextInt(N)] = true; /* sparse sets */
+        return x;
+    }
+
+    static ZDD build(ZDDFactory z, boolean[] x) {
+        ZDD r = z.empty();
+        for (int s = 0; s < N; s++) {
+            if (!x[s])
+                continue;
+            int[] vars = new int[Integer.bitCount(s)];
+            for (int v = 0, i = 0; v < V; v++)
+                if ((s & (1 << v)) != 0)
+                    vars[i++] = v;
+            ZDD t = z.makeSet(vars), u = r.union(t);
+            t.free();
+            r.free();
+            r = u;
+        }
+        return r;
+    }
+
+    static int count(boolean[] x) {
+        int n = 0;
+        for (int s = 0; s < N; s++)
+            if (x[s]) n++;
+        return n;
+    }
+}
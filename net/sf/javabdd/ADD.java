@@ -0,0 +1,259 @@
+// ADD.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * <p>An algebraic decision diagram, which represents a function from
+ * variable assignments to double values.</p>
+ *
+ * <p>As with BDDs, operations return new objects and leave their operands
+ * alone.  An ADD should be freed when it is no longer used, since the BDD
+ * factory cannot reorder while there are live ADDs.</p>
+ *
+ * <p>Use an {@link ADDFactory} to create ADDs.</p>
+ *
+ * @version $Id$
+ */
+public class ADD {
+
+    protected final ADDFactory factory;
+    protected int _index;
+
+    /**
+     * <p>Create an ADD for the given root, which must already carry a
+     * reference for this object.</p>
+     */
+    protected ADD(ADDFactory factory, int index) {
+        this.factory = factory;
+        this._index = index;
+    }
+
+    /**
+     * <p>Returns the factory of this ADD.</p>
+     *
+     * @return  ADD factory
+     */
+    public ADDFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * <p>Returns true if this ADD is a constant.</p>
+     *
+     * @return  true if this ADD is a constant
+     */
+    public boolean isConstant() {
+        return factory.factory.ISADDTERM(_index);
+    }
+
+    /**
+     * <p>Returns the value of this constant ADD.</p>
+     *
+     * @return  value
+     * @throws BDDException  if this ADD is not a constant
+     */
+    public double value() {
+        if (!isConstant())
+            throw new BDDException("ADD is not a constant");
+        return factory.factory.ADDVALUE(_index);
+    }
+
+    /**
+     * <p>Returns the sum of this ADD and that one.</p>
+     *
+     * @param that  ADD of the same factory
+     * @return  this + that
+     */
+    public ADD plus(ADD that) {
+        return factory.apply(JFactory.ADDOP_PLUS, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the difference of this ADD and that one.</p>
+     *
+     * @param that  ADD of the same factory
+     * @return  this - that
+     */
+    public ADD minus(ADD that) {
+        return factory.apply(JFactory.ADDOP_MINUS, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the product of this ADD and that one.  Multiplying by a
+     * 0/1 ADD restricts this ADD to where the other one is 1.</p>
+     *
+     * @param that  ADD of the same factory
+     * @return  this * that
+     */
+    public ADD times(ADD that) {
+        return factory.apply(JFactory.ADDOP_TIMES, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the pointwise maximum of this ADD and that one.</p>
+     *
+     * @param that  ADD of the same factory
+     * @return  max(this, that)
+     */
+    public ADD max(ADD that) {
+        return factory.apply(JFactory.ADDOP_MAX, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the pointwise minimum of this ADD and that one.</p>
+     *
+     * @param that  ADD of the same factory
+     * @return  min(this, that)
+     */
+    public ADD min(ADD that) {
+        return factory.apply(JFactory.ADDOP_MIN, _index, that._index);
+    }
+
+    /**
+     * <p>Sums this ADD over the given variables: the result for an
+     * assignment of the other variables is the sum of the values over all
+     * assignments of the given variables.</p>
+     *
+     * @param varset  BDD variable set, as made by makeSet()
+     * @return  the sum over varset
+     */
+    public ADD sumAbstract(BDD varset) {
+        return factory.apply(JFactory.ADDOP_SUMABSTRACT, _index,
+                             factory.factory.nodeRoot(varset));
+    }
+
+    /**
+     * <p>Maximizes this ADD over the given variables: the result for an
+     * assignment of the other variables is the largest value over all
+     * assignments of the given variables.</p>
+     *
+     * @param varset  BDD variable set, as made by makeSet()
+     * @return  the maximum over varset
+     */
+    public ADD maxAbstract(BDD varset) {
+        return factory.apply(JFactory.ADDOP_MAXABSTRACT, _index,
+                             factory.factory.nodeRoot(varset));
+    }
+
+    /**
+     * <p>Returns the BDD of the assignments where this ADD is at least the
+     * given value.</p>
+     *
+     * @param value  threshold
+     * @return  BDD of this >= value
+     */
+    public BDD threshold(double value) {
+        return factory.factory.add_tobdd(JFactory.ADDOP_THRESHOLD, _index, value);
+    }
+
+    /**
+     * <p>Returns the BDD of the assignments where this ADD is greater than
+     * the given value.</p>
+     *
+     * @param value  threshold
+     * @return  BDD of this > value
+     */
+    public BDD strictThreshold(double value) {
+        return factory.factory.add_tobdd(JFactory.ADDOP_STRICTTHRESHOLD, _index, value);
+    }
+
+    /**
+     * <p>Returns the smallest value of this ADD.</p>
+     *
+     * @return  smallest value
+     */
+    public double findMin() {
+        return factory.factory.add_minmax(_index, false);
+    }
+
+    /**
+     * <p>Returns the largest value of this ADD.</p>
+     *
+     * @return  largest value
+     */
+    public double findMax() {
+        return factory.factory.add_minmax(_index, true);
+    }
+
+    /**
+     * <p>Returns the number of nodes of this ADD, counting each terminal
+     * it reaches.</p>
+     *
+     * @return  number of nodes
+     */
+    public int nodeCount() {
+        return factory.factory.diagram_nodecount(_index);
+    }
+
+    /**
+     * <p>Returns a copy of this ADD.</p>
+     *
+     * @return  copy of this ADD
+     */
+    public ADD id() {
+        return factory.makeADD(factory.factory.diagram_addref(_index));
+    }
+
+    /**
+     * <p>Frees this ADD.  It must not be used afterwards.</p>
+     */
+    public void free() {
+        factory.factory.diagram_delref(_index);
+        _index = -1;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof ADD))
+            return false;
+        ADD that = (ADD) o;
+        return factory == that.factory && _index == that._index;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return _index;
+    }
+
+    /**
+     * <p>Returns the paths of this ADD with their values, for example
+     * "&lt;0:0&gt;=1.0&lt;0:1, 1:1&gt;=2.5".</p>
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        toString_rec(sb, _index, new int[factory.varNum()]);
+        return sb.toString();
+    }
+
+    private void toString_rec(StringBuffer sb, int r, int[] set) {
+        JFactory f = factory.factory;
+        if (f.ISADDTERM(r)) {
+            sb.append('<');
+            boolean first = true;
+            for (int n = 0; n < set.length; n++) {
+                if (set[n] > 0) {
+                    if (!first)
+                        sb.append(", ");
+                    first = false;
+                    sb.append(f.level2Var(n));
+                    sb.append(':');
+                    sb.append(set[n] == 2 ? 1 : 0);
+                }
+            }
+            sb.append(">=");
+            sb.append(f.ADDVALUE(r));
+            return;
+        }
+        int level = f.nodeLevel(r);
+        set[level] = 1;
+        toString_rec(sb, f.nodeLow(r), set);
+        set[level] = 2;
+        toString_rec(sb, f.nodeHigh(r), set);
+        set[level] = 0;
+    }
+
+}
@@ -0,0 +1,151 @@
+// ADDFactory.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * <p>Factory for algebraic decision diagrams (ADDs, also known as
+ * multi-terminal BDDs), in pure Java.</p>
+ *
+ * <p>An ADD represents a function from variable assignments to numbers.
+ * It is a BDD whose terminals carry double values instead of true and
+ * false; each value has a single terminal, which all ADDs share.  A numeric
+ * function over domains, such as a cost or a probability, is one ADD
+ * instead of one BDD per bit of a {@link BDDBitVector}.</p>
+ *
+ * <p>An ADD factory runs on the node table of a {@link JFactory}: ADD nodes
+ * share the unique table, the operator caches and the garbage collector with
+ * the BDD nodes, and the ADD variables are the variables of that factory.
+ * The BDD factory refuses to reorder or duplicate variables as long as there
+ * are ADD objects that have not been freed.</p>
+ *
+ * <p>Use {@link JFactory#getADDFactory()} to get the ADD factory of a BDD
+ * factory, or {@link #init(int, int)} to create both at once.</p>
+ *
+ * @see ADD
+ * @version $Id$
+ */
+public class ADDFactory {
+
+    protected final JFactory factory;
+
+    protected ADDFactory(JFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * <p>Creates a new BDD factory and returns its ADD factory.</p>
+     *
+     * @param nodenum  initial node table size
+     * @param cachesize  operator cache size
+     * @return  ADD factory
+     */
+    public static ADDFactory init(int nodenum, int cachesize) {
+        return ((JFactory) JFactory.init(nodenum, cachesize)).getADDFactory();
+    }
+
+    /**
+     * <p>Returns the BDD factory that this ADD factory runs on.</p>
+     *
+     * @return  BDD factory
+     */
+    public BDDFactory getBDDFactory() {
+        return factory;
+    }
+
+    /**
+     * <p>Sets the number of variables.  The number of variables can only be
+     * increased; existing ADDs keep their meaning.</p>
+     *
+     * @param num  number of variables
+     * @return  old number of variables
+     */
+    public int setVarNum(int num) {
+        return factory.setVarNum(num);
+    }
+
+    /**
+     * <p>Returns the number of variables.</p>
+     *
+     * @return  number of variables
+     */
+    public int varNum() {
+        return factory.varNum();
+    }
+
+    /**
+     * <p>Returns the constant ADD with the given value.</p>
+     *
+     * @param value  value
+     * @return  constant ADD
+     */
+    public ADD constant(double value) {
+        return makeADD(factory.add_constant(value));
+    }
+
+    /**
+     * <p>Returns the ADD that is 1 where the given variable is true and 0
+     * elsewhere.</p>
+     *
+     * @param var  variable
+     * @return  0/1 ADD of the variable
+     */
+    public ADD ithVar(int var) {
+        BDD b = factory.ithVar(var);
+        ADD r = fromBDD(b);
+        b.free();
+        return r;
+    }
+
+    /**
+     * <p>Converts a BDD to the ADD that is 1 where the BDD is true and 0
+     * elsewhere.</p>
+     *
+     * @param b  BDD of the BDD factory of this ADD factory
+     * @return  0/1 ADD of b
+     */
+    public ADD fromBDD(BDD b) {
+        return apply(JFactory.ADDOP_FROMBDD, factory.nodeRoot(b), 0);
+    }
+
+    /**
+     * <p>Returns the ADD whose value is the value of the given domain, that
+     * is, the number encoded by the variables of the domain.</p>
+     *
+     * @param d  domain of the BDD factory of this ADD factory
+     * @return  ADD of the value of d
+     */
+    public ADD domain(BDDDomain d) {
+        int[] vars = d.vars();
+        ADD r = constant(0);
+        double weight = 1;
+        for (int i = 0; i < vars.length; i++) {
+            ADD v = ithVar(vars[i]);
+            ADD w = constant(weight);
+            ADD t = v.times(w);
+            v.free();
+            w.free();
+            ADD s = r.plus(t);
+            t.free();
+            r.free();
+            r = s;
+            weight *= 2;
+        }
+        return r;
+    }
+
+    /**
+     * Runs an ADD operation of the BDD factory and wraps the result.
+     */
+    ADD apply(int op, int a, int b) {
+        return makeADD(factory.add_apply(op, a, b, 0));
+    }
+
+    /**
+     * <p>Creates an ADD object for a root that already carries a reference,
+     * which the new object takes over.</p>
+     */
+    protected ADD makeADD(int r) {
+        return new ADD(this, r);
+    }
+
+}
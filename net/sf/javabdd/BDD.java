@@ -4,9 +4,7 @@
 package net.sf.javabdd;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
 import java.io.PrintStream;
 import java.math.BigInteger;
@@ -271,6 +269,19 @@ public abstract class BDD {
      */
     public abstract BDD relprod(BDD that, BDD var);
     
+    /**
+     * <p>Relational product with a prepared variable set.  Same as
+     * relprod(that, var.toBDD()).</p>
+     * 
+     * @param that the BDD to 'and' with
+     * @param var the variables to existentially quantify
+     * @return the result of the relational product
+     * @see net.sf.javabdd.BDDFactory#makeQuantSet(BDD)
+     */
+    public BDD relprod(BDD that, BDDQuantSet var) {
+        return relprod(that, var.set);
+    }
+    
     /**
      * <p>Functional composition.  Substitutes the variable var with the BDD that
      * in this BDD: result = f[g/var].</p>
@@ -323,6 +334,18 @@ public abstract class BDD {
      */
     public abstract BDD exist(BDD var);
 
+    /**
+     * <p>Existential quantification of a prepared variable set.  Same as
+     * exist(var.toBDD()).</p>
+     * 
+     * @param var the variables to be existentially quantified
+     * @return the result of the existential quantification
+     * @see net.sf.javabdd.BDDFactory#makeQuantSet(BDD)
+     */
+    public BDD exist(BDDQuantSet var) {
+        return exist(var.set);
+    }
+
     /**
      * <p>Universal quantification of variables.  Removes all occurrences of this
      * BDD in variables in the set var by universal quantification.</p>
@@ -335,6 +358,18 @@ public abstract class BDD {
      */
     public abstract BDD forAll(BDD var);
 
+    /**
+     * <p>Universal quantification of a prepared variable set.  Same as
+     * forAll(var.toBDD()).</p>
+     * 
+     * @param var the variables to be universally quantified
+     * @return the result of the universal quantification
+     * @see net.sf.javabdd.BDDFactory#makeQuantSet(BDD)
+     */
+    public BDD forAll(BDDQuantSet var) {
+        return forAll(var.set);
+    }
+
     /**
      * <p>Unique quantification of variables.  This type of quantification uses a
      * XOR operator instead of an OR operator as in the existential
@@ -457,6 +492,21 @@ public abstract class BDD {
      */
     public abstract BDD applyEx(BDD that, BDDFactory.BDDOp opr, BDD var);
 
+    /**
+     * <p>Applies the binary operator <tt>opr</tt> to two BDDs and then
+     * existentially quantifies a prepared variable set.  Same as
+     * applyEx(that, opr, var.toBDD()).</p>
+     * 
+     * @param that the BDD to apply the operator on
+     * @param opr the operator to apply
+     * @param var the variables to quantify
+     * @return the result
+     * @see net.sf.javabdd.BDDFactory#makeQuantSet(BDD)
+     */
+    public BDD applyEx(BDD that, BDDFactory.BDDOp opr, BDDQuantSet var) {
+        return applyEx(that, opr, var.set);
+    }
+
     /**
      * <p>Applies the binary operator <tt>opr</tt> to two BDDs and then performs
      * a unique quantification of the variables from the variable set
@@ -529,7 +579,9 @@ public abstract class BDD {
     public static class AllSatIterator implements Iterator {
 
         protected final BDDFactory f;
-        protected LinkedList loStack, hiStack;
+        protected final BDDFactory.NodeArrays nodes;
+        protected int[] loStack, hiStack;
+        protected int loSize, hiSize;
         protected byte[] allsatProfile;
         protected final boolean useLevel;
 
@@ -555,50 +607,52 @@ public abstract class BDD {
         public AllSatIterator(BDD r, boolean lev) {
             f = r.getFactory();
             useLevel = lev;
-            if (r.isZero()) return;
+            nodes = new BDDFactory.NodeArrays();
+            int root = f.visitNodes(r, nodes);
+            if (root == 0) return;
             allsatProfile = new byte[f.varNum()];
             Arrays.fill(allsatProfile, (byte) -1);
-            loStack = new LinkedList();
-            hiStack = new LinkedList();
-            if (!r.isOne()) {
-                loStack.addLast(r.id());
+            loStack = new int[f.varNum() + 1];
+            hiStack = new int[f.varNum() + 1];
+            if (root != 1) {
+                loStack[loSize++] = root;
                 if (!gotoNext()) allsatProfile = null;
             }
         }
         
+        private int level(int r) {
+            return r < 2 ? f.varNum() : nodes.level[r];
+        }
+        
         private boolean gotoNext() {
-            BDD r;
+            int r;
             for (;;) {
-                boolean lo_empty = loStack.isEmpty();
+                boolean lo_empty = loSize == 0;
                 if (lo_empty) {
-                    if (hiStack.isEmpty()) {
+                    if (hiSize == 0) {
                         return false;
                     }
-                    r = (BDD) hiStack.removeLast();
+                    r = hiStack[--hiSize];
                 } else {
-                    r = (BDD) loStack.removeLast();
+                    r = loStack[--loSize];
                 }
-                int LEVEL_r = r.level();
+                int LEVEL_r = nodes.level[r];
                 allsatProfile[useLevel?LEVEL_r:f.level2Var(LEVEL_r)] =
                     lo_empty ? (byte)1 : (byte)0;
-                BDD rn = lo_empty ? r.high() : r.low();
-                for (int v = rn.level() - 1; v > LEVEL_r; --v) {
+                int rn = lo_empty ? nodes.high[r] : nodes.low[r];
+                for (int v = level(rn) - 1; v > LEVEL_r; --v) {
                     allsatProfile[useLevel?v:f.level2Var(v)] = -1;
                 }
                 if (!lo_empty) {
-                    hiStack.addLast(r);
-                } else {
-                    r.free();
+                    hiStack[hiSize++] = r;
                 }
-                if (rn.isOne()) {
-                    rn.free();
+                if (rn == 1) {
                     return true;
                 }
-                if (rn.isZero()) {
-                    rn.free();
+                if (rn == 0) {
                     continue;
                 }
-                loStack.addLast(rn);
+                loStack[loSize++] = rn;
             }
         }
         
@@ -652,24 +706,10 @@ public abstract class BDD {
             return null;
         }
         
-        int num = 0;
-        BDD n = this.id();
-        do {
-            num++;
-            BDD n2 = n.high();
-            n.free(); n = n2;
-        } while (!n.isZero() && !n.isOne());
-
-        int[] varset = new int[num];
-   
-        num = 0;
-        n = this.id();
-        do {
-            varset[num++] = n.var();
-            BDD n2 = n.high();
-            n.free(); n = n2;
-        } while (!n.isZero() && !n.isOne());
-        
+        BDDFactory f = getFactory();
+        int[] varset = varset2levels(this);
+        for (int i = 0; i < varset.length; i++)
+            varset[i] = f.level2Var(varset[i]);
         return varset;
     }
 
@@ -809,25 +849,38 @@ public abstract class BDD {
      * @return  array of levels
      */
     private static int[] varset2levels(BDD r) {
-        int size = 0;
-        BDD p = r.id();
-        while (!p.isOne() && !p.isZero()) {
-            ++size;
-            BDD p2 = p.high();
+        BDDFactory f = r.getFactory();
+        int n = f.nodeRoot(r);
+        if (n == -1) {
+            /* No node numbers, walk the BDD objects. */
+            int size = 0;
+            BDD p = r.id();
+            while (!p.isOne() && !p.isZero()) {
+                ++size;
+                BDD p2 = p.high();
+                p.free();
+                p = p2;
+            }
             p.free();
-            p = p2;
-        }
-        p.free();
-        int[] result = new int[size];
-        size = -1;
-        p = r.id();
-        while (!p.isOne() && !p.isZero()) {
-            result[++size] = p.level();
-            BDD p2 = p.high();
+            int[] result = new int[size];
+            size = -1;
+            p = r.id();
+            while (!p.isOne() && !p.isZero()) {
+                result[++size] = p.level();
+                BDD p2 = p.high();
+                p.free();
+                p = p2;
+            }
             p.free();
-            p = p2;
+            return result;
         }
-        p.free();
+        int size = 0;
+        for (int p = n; (p >>> 1) != 0; p = f.nodeHigh(p))
+            ++size;
+        int[] result = new int[size];
+        size = 0;
+        for (int p = n; (p >>> 1) != 0; p = f.nodeHigh(p))
+            result[size++] = f.nodeLevel(p);
         return result;
     }
     
@@ -1200,60 +1253,23 @@ public abstract class BDD {
      * <p>Compare to bdd_printdot.</p>
      */
     public void printDot() {
-        PrintStream out = System.out;
+        final PrintStream out = System.out;
+        final BDDFactory f = getFactory();
         out.println("digraph G {");
         out.println("0 [shape=box, label=\"0\", style=filled, shape=box, height=0.3, width=0.3];");
         out.println("1 [shape=box, label=\"1\", style=filled, shape=box, height=0.3, width=0.3];");
 
-        boolean[] visited = new boolean[nodeCount()+2];
-        visited[0] = true; visited[1] = true;
-        HashMap map = new HashMap();
-        map.put(getFactory().zero(), new Integer(0));
-        map.put(getFactory().one(), new Integer(1));
-        printdot_rec(out, 1, visited, map);
-        
-        for (Iterator i = map.keySet().iterator(); i.hasNext(); ) {
-            BDD b = (BDD) i.next();
-            b.free();
-        }
+        f.visitNodes(this, new BDDFactory.NodeVisitor() {
+            public void visit(int node, int level, int low, int high) {
+                // TODO: support labelling of vars.
+                out.println(node+" [label=\""+f.level2Var(level)+"\"];");
+                out.println(node+" -> "+low+" [style=dotted];");
+                out.println(node+" -> "+high+" [style=filled];");
+            }
+        });
         out.println("}");
     }
 
-    protected int printdot_rec(PrintStream out, int current, boolean[] visited, HashMap map) {
-        Integer ri = ((Integer) map.get(this));
-        if (ri == null) {
-            map.put(this.id(), ri = new Integer(++current));
-        }
-        int r = ri.intValue();
-        if (visited[r])
-            return current;
-        visited[r] = true;
-        
-        // TODO: support labelling of vars.
-        out.println(r+" [label=\""+this.var()+"\"];");
-        
-        BDD l = this.low(), h = this.high();
-        Integer li = (Integer) map.get(l);
-        if (li == null) {
-            map.put(l.id(), li = new Integer(++current));
-        }
-        int low = li.intValue();
-        Integer hi = (Integer) map.get(h);
-        if (hi == null) {
-            map.put(h.id(), hi = new Integer(++current));
-        }
-        int high = hi.intValue();
-
-        out.println(r+" -> "+low+" [style=dotted];");
-        out.println(r+" -> "+high+" [style=filled];");
-
-        current = l.printdot_rec(out, current, visited, map);
-        l.free();
-        current = h.printdot_rec(out, current, visited, map);
-        h.free();
-        return current;
-    }
-
     /**
      * <p>Counts the number of distinct nodes used for this BDD.</p>
      * 
@@ -1298,13 +1314,7 @@ public abstract class BDD {
         if (varset.isZero() || varset.isOne() || isZero()) /* empty set */
             return 0.;
 
-        BDD n = varset.id();
-        do {
-            BDD n2 = n.high();
-            n.free(); n = n2;
-            unused--;
-        } while (!n.isOne() && !n.isZero());
-        n.free();
+        unused -= varset2levels(varset).length;
 
         unused = satCount() / Math.pow(2.0, unused);
 
@@ -1372,17 +1382,19 @@ public abstract class BDD {
         BDDFactory f = this.getFactory();
         int[] set = new int[f.varNum()];
         StringBuffer sb = new StringBuffer();
-        bdd_printset_rec(f, sb, this, set);
+        BDDFactory.NodeArrays nodes = new BDDFactory.NodeArrays();
+        int root = f.visitNodes(this, nodes);
+        bdd_printset_rec(f, sb, nodes, root, set);
         return sb.toString();
     }
     
-    private static void bdd_printset_rec(BDDFactory f, StringBuffer sb, BDD r, int[] set) {
+    private static void bdd_printset_rec(BDDFactory f, StringBuffer sb, BDDFactory.NodeArrays nodes, int r, int[] set) {
         int n;
         boolean first;
 
-        if (r.isZero())
+        if (r == 0)
             return;
-        else if (r.isOne()) {
+        else if (r == 1) {
             sb.append('<');
             first = true;
 
@@ -1398,17 +1410,14 @@ public abstract class BDD {
             }
             sb.append('>');
         } else {
-            set[f.var2Level(r.var())] = 1;
-            BDD rl = r.low();
-            bdd_printset_rec(f, sb, rl, set);
-            rl.free();
+            int level = nodes.level[r];
+            set[level] = 1;
+            bdd_printset_rec(f, sb, nodes, nodes.low[r], set);
 
-            set[f.var2Level(r.var())] = 2;
-            BDD rh = r.high();
-            bdd_printset_rec(f, sb, rh, set);
-            rh.free();
+            set[level] = 2;
+            bdd_printset_rec(f, sb, nodes, nodes.high[r], set);
 
-            set[f.var2Level(r.var())] = 0;
+            set[level] = 0;
         }
     }
     
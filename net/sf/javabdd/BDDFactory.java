@@ -10,12 +10,16 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.BitSet;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -35,7 +39,7 @@ public abstract class BDDFactory {
     public static final String getProperty(String key, String def) {
         try {
             return System.getProperty(key, def);
-        } catch (AccessControlException _) {
+        } catch (AccessControlException x) {
             return def;
         }
     }
@@ -92,10 +96,10 @@ public abstract class BDDFactory {
             Method m = c.getMethod("init", new Class[] { int.class, int.class });
             return (BDDFactory) m.invoke(null, new Object[] { new Integer(nodenum), new Integer(cachesize) });
         }
-        catch (ClassNotFoundException _) {}
-        catch (NoSuchMethodException _) {}
-        catch (IllegalAccessException _) {}
-        catch (InvocationTargetException _) {}
+        catch (ClassNotFoundException x) {}
+        catch (NoSuchMethodException x) {}
+        catch (IllegalAccessException x) {}
+        catch (InvocationTargetException x) {}
         // falling back to default java implementation.
         return JFactory.init(nodenum, cachesize);
     }
@@ -247,6 +251,164 @@ public abstract class BDDFactory {
         return res;
     }
     
+    /**
+     * <p>Returns the conjunction of a collection of BDDs.  Instead of
+     * combining the operands in the order given, they are combined bottom-up:
+     * the two operands whose top variables are deepest in the variable order
+     * are combined first, and among operands with the same top variable the
+     * smallest go first.  This keeps the intermediate results small no
+     * matter how the collection is ordered.  Stops early once the result is
+     * false.  The operands are not freed.</p>
+     * 
+     * @param bdds  BDDs to combine
+     * @return  conjunction of the BDDs, or one() if there are none
+     */
+    public BDD andAll(Collection/*<BDD>*/ bdds) {
+        return applyAll(bdds.toArray(), and);
+    }
+    
+    /**
+     * <p>Returns the disjunction of a collection of BDDs.  The operands are
+     * scheduled as for andAll(), and the computation stops early once the
+     * result is true.  The operands are not freed.</p>
+     * 
+     * @param bdds  BDDs to combine
+     * @return  disjunction of the BDDs, or zero() if there are none
+     */
+    public BDD orAll(Collection/*<BDD>*/ bdds) {
+        return applyAll(bdds.toArray(), or);
+    }
+    
+    /**
+     * Combines the BDDs with "and" or "or" through a binary heap ordered by
+     * top level (deepest first) and then by size.
+     */
+    protected BDD applyAll(Object[] bdds, BDDOp op) {
+        boolean isAnd = op == and;
+        ApplyAllOperand[] heap = new ApplyAllOperand[bdds.length];
+        int num = 0;
+        ApplyAllOperand a = null, b = null;
+        try {
+            for (int i = 0; i < bdds.length; i++) {
+                BDD x = (BDD) bdds[i];
+                if (isAnd ? x.isZero() : x.isOne())
+                    return x.id();
+                if (isAnd ? x.isOne() : x.isZero())
+                    continue;
+                heap[num] = new ApplyAllOperand(x.id());
+                ApplyAllOperand.up(heap, num++);
+            }
+            if (num == 0)
+                return isAnd ? one() : zero();
+            
+            while (num > 1) {
+                a = ApplyAllOperand.poll(heap, num--);
+                b = ApplyAllOperand.poll(heap, num--);
+                a.bdd.applyWith(b.bdd, op);
+                b = null;
+                if (isAnd ? a.bdd.isZero() : a.bdd.isOne())
+                    break;
+                a.update();
+                heap[num] = a;
+                ApplyAllOperand.up(heap, num++);
+                a = null;
+            }
+            if (a == null)
+                a = ApplyAllOperand.poll(heap, num--);
+            BDD r = a.bdd;
+            a = null;
+            return r;
+        } finally {
+            if (a != null) a.bdd.free();
+            if (b != null) b.bdd.free();
+            for (int i = 0; i < num; i++)
+                heap[i].bdd.free();
+        }
+    }
+    
+    /**
+     * An operand of applyAll(), with its top level and size.
+     */
+    private static class ApplyAllOperand {
+        BDD bdd;
+        int level;
+        int size;
+        
+        ApplyAllOperand(BDD bdd) {
+            this.bdd = bdd;
+            update();
+        }
+        
+        void update() {
+            level = bdd.level();
+            size = bdd.nodeCount();
+        }
+        
+        /** Whether this operand goes before that one. */
+        boolean before(ApplyAllOperand that) {
+            if (level != that.level)
+                return level > that.level;
+            return size < that.size;
+        }
+        
+        /** Moves the operand at index i of the heap up to its place. */
+        static void up(ApplyAllOperand[] heap, int i) {
+            ApplyAllOperand x = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (!x.before(heap[parent]))
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = x;
+        }
+        
+        /** Removes and returns the first operand of a heap of num operands. */
+        static ApplyAllOperand poll(ApplyAllOperand[] heap, int num) {
+            ApplyAllOperand first = heap[0];
+            ApplyAllOperand x = heap[--num];
+            heap[num] = null;
+            if (num == 0)
+                return first;
+            int i = 0;
+            for (;;) {
+                int child = 2 * i + 1;
+                if (child >= num)
+                    break;
+                if (child + 1 < num && heap[child + 1].before(heap[child]))
+                    child++;
+                if (!heap[child].before(x))
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = x;
+            return first;
+        }
+    }
+    
+    /**
+     * <p>Applies the given operation to each pair of operands: the result at
+     * index i is left[i].apply(right[i], op).  A factory may compute the
+     * whole batch at once; JFactory computes it breadth-first when its
+     * breadth-first engine is enabled, sharing the work between the
+     * operations.</p>
+     * 
+     * @param left  left operands
+     * @param right  right operands, as many as left operands
+     * @param op  operation
+     * @return  the results
+     */
+    public BDD[] applyBatch(BDD[] left, BDD[] right, BDDOp op) {
+        if (left.length != right.length)
+            throw new BDDException("Operand arrays differ in length");
+        BDD[] r = new BDD[left.length];
+        for (int i = 0; i < left.length; i++)
+            r[i] = left[i].apply(right[i], op);
+        return r;
+    }
+    
     
     
     /**** STARTUP / SHUTDOWN ****/
@@ -470,7 +632,7 @@ public abstract class BDDFactory {
             BDD result = load(r);
             return result;
         } finally {
-            if (r != null) try { r.close(); } catch (IOException _) { }
+            if (r != null) try { r.close(); } catch (IOException x) { }
         }
     }
     // TODO: error code from bdd_load (?)
@@ -632,7 +794,7 @@ public abstract class BDDFactory {
             is = new BufferedWriter(new FileWriter(filename));
             save(is, var);
         } finally {
-            if (is != null) try { is.close(); } catch (IOException _) { }
+            if (is != null) try { is.close(); } catch (IOException x) { }
         }
     }
     // TODO: error code from bdd_save (?)
@@ -654,14 +816,35 @@ public abstract class BDDFactory {
             out.write(var2Level(x) + " ");
         out.write("\n");
 
-        //Map visited = new HashMap();
-        BitSet visited = new BitSet(getNodeTableSize());
-        save_rec(out, visited, r.id());
+        SaveVisitor v = new SaveVisitor(this, out);
+        visitNodes(r, v);
+        if (v.error != null) throw v.error;
+    }
+
+    /**
+     * Writes the nodes for save(BufferedWriter, BDD).
+     */
+    private static class SaveVisitor implements NodeVisitor {
+        final BDDFactory factory;
+        final BufferedWriter out;
+        IOException error;
         
-        //for (Iterator it = visited.keySet().iterator(); it.hasNext(); ) {
-        //    BDD b = (BDD) it.next();
-        //    if (b != r) b.free();
-        //}
+        SaveVisitor(BDDFactory factory, BufferedWriter out) {
+            this.factory = factory;
+            this.out = out;
+        }
+        
+        public void visit(int node, int level, int low, int high) {
+            if (error != null) return;
+            try {
+                out.write(node + " ");
+                out.write(factory.level2Var(level) + " ");
+                out.write(low + " ");
+                out.write(high + "\n");
+            } catch (IOException x) {
+                error = x;
+            }
+        }
     }
 
     /**
@@ -699,49 +882,318 @@ public abstract class BDDFactory {
     }
 
 
+    /**** BINARY SAVE/LOAD ****/
+    
+    /*
+     * The binary format is a compact alternative to the text format of
+     * save(BufferedWriter, BDD).  All numbers are unsigned variable-length
+     * integers (seven bits per byte, low bits first, high bit set on all
+     * but the last byte):
+     * 
+     *   magic ("JBDD") and format version (one byte)
+     *   number of nodes, number of variables
+     *   the level of each variable
+     *   the nodes, children before parents, each as:
+     *     variable, low reference, high reference
+     * 
+     * Nodes are numbered from 2 in the order they appear; the last one is
+     * the root.  A reference is 0 or 1 for the constants, and otherwise the
+     * distance back to the referenced node plus one, which keeps most
+     * references down to one or two bytes.  A constant BDD is saved as zero
+     * nodes and variables followed by its value.
+     */
+    
+    static final byte[] BINARY_MAGIC = { 'J', 'B', 'D', 'D' };
+    static final int BINARY_VERSION = 1;
+    
     /**
-     * Helper function for save().
+     * <p>Loads a BDD that was saved in binary format from a file.</p>
+     * 
+     * @param filename  file name
+     * @return BDD
+     * @see #saveBinary(String, BDD)
      */
-    protected int save_rec(BufferedWriter out, BitSet visited, BDD root) throws IOException {
-        if (root.isZero()) {
-            root.free();
-            return 0;
+    public BDD loadBinary(String filename) throws IOException {
+        return loadBinary(filename, null);
+    }
+    
+    /**
+     * <p>Loads a BDD that was saved in binary format from a file,
+     * translating BDD variables according to the given map.</p>
+     * 
+     * @param filename  file name
+     * @param translate  variable translation map
+     * @return BDD
+     * @see #saveBinary(String, BDD)
+     */
+    public BDD loadBinary(String filename, int[] translate) throws IOException {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(filename);
+            return load(in.getChannel(), translate);
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException x) { }
         }
-        if (root.isOne()) {
-            root.free();
-            return 1;
+    }
+    
+    /**
+     * <p>Loads a BDD in binary format from the given channel.</p>
+     * 
+     * @param in  channel
+     * @return BDD
+     * @see #save(WritableByteChannel, BDD)
+     */
+    public BDD load(ReadableByteChannel in) throws IOException {
+        return load(in, null);
+    }
+    
+    /**
+     * <p>Loads a BDD in binary format from the given channel, translating
+     * BDD variables according to the given map.</p>
+     * 
+     * @param in  channel
+     * @param translate  variable translation map
+     * @return BDD
+     * @see #save(WritableByteChannel, BDD)
+     */
+    public BDD load(ReadableByteChannel in, int[] translate) throws IOException {
+        BinaryReader r = new BinaryReader(in);
+        int nodenum = r.readHeader();
+        int vnum = r.readInt();
+
+        // Check for constant true / false
+        if (nodenum == 0 && vnum == 0)
+            return r.readInt() == 0 ? zero() : one();
+
+        if (nodenum < 0 || nodenum > Integer.MAX_VALUE - 2 || vnum < 0)
+            throw new BDDException("Incorrect file format");
+
+        // Not actually used.
+        for (int n = 0; n < vnum; n++)
+            r.readInt();
+
+        if (vnum > varNum())
+            setVarNum(vnum);
+
+        /* The node count comes from the file, so the array grows as the
+         * nodes are read rather than being allocated for it up front. */
+        int num = nodenum + 2;
+        BDD[] nodes = new BDD[Math.min(num, 1024)];
+        nodes[0] = zero();
+        nodes[1] = one();
+        try {
+            for (int n = 2; n < num; n++) {
+                if (n == nodes.length) {
+                    BDD[] t = new BDD[(int) Math.min(num, 2L * n)];
+                    System.arraycopy(nodes, 0, t, 0, n);
+                    nodes = t;
+                }
+                int var = r.readInt();
+                if (translate != null) {
+                    if (var < 0 || var >= translate.length)
+                        throw new BDDException("Incorrect file format");
+                    var = translate[var];
+                }
+                int low = r.readRef(n);
+                int high = r.readRef(n);
+
+                if (var < 0 || var >= varNum())
+                    throw new BDDException("Incorrect file format");
+
+                BDD b = ithVar(var);
+                nodes[n] = b.ite(nodes[high], nodes[low]);
+                b.free();
+            }
+            return nodes[num - 1].id();
+        } finally {
+            for (int n = 0; n < nodes.length; n++)
+                if (nodes[n] != null) nodes[n].free();
         }
-        //Integer i = (Integer) visited.get(root);
-        int i = root.hashCode();
-        //if (i != null) {
-        if (visited.get(i)) {
-            root.free();
-            //return i.intValue();
-            return i;
+    }
+    
+    /**
+     * <p>Saves a BDD to a file in binary format.</p>
+     * 
+     * @param filename  file name
+     * @param var  BDD
+     * @see #loadBinary(String)
+     */
+    public void saveBinary(String filename, BDD var) throws IOException {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(filename);
+            save(out.getChannel(), var);
+        } finally {
+            if (out != null) try { out.close(); } catch (IOException x) { }
+        }
+    }
+    
+    /**
+     * <p>Saves a BDD in binary format to the given channel.  The binary
+     * format is much smaller and faster to read and write than the text
+     * format, and can be loaded by any factory.</p>
+     * 
+     * @param out  channel
+     * @param r  BDD
+     * @see #load(ReadableByteChannel, int[])
+     */
+    public void save(WritableByteChannel out, BDD r) throws IOException {
+        BinaryWriter w = new BinaryWriter(out);
+        if (r.isOne() || r.isZero()) {
+            w.writeHeader(0, 0);
+            w.writeInt(r.isOne() ? 1 : 0);
+            w.flush();
+            return;
         }
-        //int v = visited.size() + 2;
-        int v = i;
-        //visited.put(root, new Integer(v));
-        visited.set(i);
-        
-        BDD h = root.high();
-
-        BDD l = root.low();
 
-        int rootvar = root.var();
-        root.free();
+        w.writeHeader(r.nodeCount(), varNum());
+        for (int x = 0; x < varNum(); x++)
+            w.writeInt(var2Level(x));
 
-        int lo = save_rec(out, visited, l);
+        SaveBinaryVisitor v = new SaveBinaryVisitor(this, w);
+        visitNodes(r, v);
+        if (v.error != null) throw v.error;
+        w.flush();
+    }
+    
+    /**
+     * Writes the nodes for save(WritableByteChannel, BDD).  The visit
+     * numbers are the node numbers of the binary format.
+     */
+    private static class SaveBinaryVisitor implements NodeVisitor {
+        final BDDFactory factory;
+        final BinaryWriter w;
+        IOException error;
         
-        int hi = save_rec(out, visited, h);
-
-        //out.write(v + " ");
-        out.write(i + " ");
-        out.write(rootvar + " ");
-        out.write(lo + " ");
-        out.write(hi + "\n");
+        SaveBinaryVisitor(BDDFactory factory, BinaryWriter w) {
+            this.factory = factory;
+            this.w = w;
+        }
         
-        return v;
+        public void visit(int node, int level, int low, int high) {
+            if (error != null) return;
+            try {
+                w.writeInt(factory.level2Var(level));
+                w.writeRef(node, low);
+                w.writeRef(node, high);
+            } catch (IOException x) {
+                error = x;
+            }
+        }
+    }
+    
+    /**
+     * Buffered writer for the binary BDD format.
+     */
+    protected static class BinaryWriter {
+        final WritableByteChannel out;
+        final ByteBuffer buf;
+        
+        protected BinaryWriter(WritableByteChannel out) {
+            this.out = out;
+            this.buf = ByteBuffer.allocate(1 << 16);
+        }
+        
+        protected void writeHeader(int nodenum, int vnum) throws IOException {
+            buf.put(BINARY_MAGIC);
+            buf.put((byte) BINARY_VERSION);
+            writeInt(nodenum);
+            writeInt(vnum);
+        }
+        
+        /**
+         * Writes a reference from node number n to node number ref.
+         */
+        protected void writeRef(int n, int ref) throws IOException {
+            writeInt(ref < 2 ? ref : n - ref + 1);
+        }
+        
+        protected void writeInt(int v) throws IOException {
+            if (buf.remaining() < 5)
+                drain();
+            while ((v & ~0x7F) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+        
+        void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining())
+                out.write(buf);
+            buf.clear();
+        }
+        
+        protected void flush() throws IOException {
+            drain();
+        }
+    }
+    
+    /**
+     * Buffered reader for the binary BDD format.
+     */
+    protected static class BinaryReader {
+        final ReadableByteChannel in;
+        final ByteBuffer buf;
+        
+        protected BinaryReader(ReadableByteChannel in) {
+            this.in = in;
+            this.buf = ByteBuffer.allocate(1 << 16);
+            this.buf.flip();
+        }
+        
+        /**
+         * Checks the magic number and version and returns the number of
+         * nodes.
+         */
+        protected int readHeader() throws IOException {
+            for (int i = 0; i < BINARY_MAGIC.length; i++)
+                if (readByte() != BINARY_MAGIC[i])
+                    throw new BDDException("Incorrect file format");
+            if (readByte() != BINARY_VERSION)
+                throw new BDDException("Unsupported file format version");
+            return readInt();
+        }
+        
+        /**
+         * Reads a reference from node number n, and returns the number of
+         * the referenced node.
+         */
+        protected int readRef(int n) throws IOException {
+            int ref = readInt();
+            if (ref < 2)
+                return ref;
+            ref = n - ref + 1;
+            if (ref < 2 || ref >= n)
+                throw new BDDException("Incorrect file format");
+            return ref;
+        }
+        
+        protected int readInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                v |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    return v;
+            }
+            throw new BDDException("Incorrect file format");
+        }
+        
+        byte readByte() throws IOException {
+            if (!buf.hasRemaining()) {
+                buf.clear();
+                int n;
+                do {
+                    n = in.read(buf);
+                } while (n == 0);
+                buf.flip();
+                if (n < 0)
+                    throw new BDDException("Incorrect file format");
+            }
+            return buf.get();
+        }
     }
     
     // TODO: bdd_blockfile_hook
@@ -750,6 +1202,680 @@ public abstract class BDDFactory {
     
     
     
+    /**** INTEGER HANDLES ****/
+    
+    /*
+     * The handle interface works on plain ints instead of BDD objects, so
+     * that inner loops can combine BDDs without allocating.  Every handle
+     * returned by one of these methods carries one reference, which the
+     * caller owns and must give back with handleDelRef.  handleAddRef takes
+     * another reference to a handle.
+     * 
+     * Factories whose nodes are ints (JFactory, MicroFactory, BuDDyFactory)
+     * use the node numbers as handles.  Equal functions then have equal
+     * handles, and constants and variables never need releasing.  The
+     * implementation below is used by the other factories: it keeps a table
+     * of BDD objects, so equal functions may have different handles there;
+     * use handleEquals to compare them.
+     */
+    
+    /** Fallback handle table: BDD object of each handle */
+    private BDD[] handlebdds;
+    /** Fallback handle table: references of each handle, or next free slot */
+    private int[] handlerefs;
+    /** Fallback handle table: first free slot, or -1 */
+    private int handlefree = -1;
+    
+    /**
+     * <p>Stores a BDD in the fallback handle table and returns its handle with
+     * one reference.  The table takes over the BDD object.</p>
+     * 
+     * @param b  BDD to store
+     * @return  new handle
+     */
+    protected int handleNew(BDD b) {
+        if (handlefree < 0) {
+            int n = handlebdds == null ? 0 : handlebdds.length;
+            int size = n == 0 ? 64 : n * 2;
+            BDD[] bdds = new BDD[size];
+            int[] refs = new int[size];
+            if (n > 0) {
+                System.arraycopy(handlebdds, 0, bdds, 0, n);
+                System.arraycopy(handlerefs, 0, refs, 0, n);
+            }
+            for (int i = size - 1; i >= n; --i) {
+                refs[i] = handlefree;
+                handlefree = i;
+            }
+            handlebdds = bdds;
+            handlerefs = refs;
+        }
+        int h = handlefree;
+        handlefree = handlerefs[h];
+        handlebdds[h] = b;
+        handlerefs[h] = 1;
+        return h;
+    }
+    
+    /**
+     * <p>Returns the BDD object stored for a handle in the fallback handle
+     * table.  The object still belongs to the table.</p>
+     * 
+     * @param h  handle
+     * @return  BDD of the handle
+     */
+    protected BDD handleGet(int h) {
+        if (handlebdds == null || h < 0 || h >= handlebdds.length || handlebdds[h] == null)
+            throw new BDDException("Unknown BDD handle "+h);
+        return handlebdds[h];
+    }
+    
+    /**
+     * <p>Returns a handle to the given BDD.  The BDD object stays owned by the
+     * caller.</p>
+     * 
+     * @param b  BDD
+     * @return  handle with one reference
+     */
+    public int handle(BDD b) {
+        return handleNew(b.id());
+    }
+    
+    /**
+     * <p>Returns a new BDD object for a handle.  The handle keeps its own
+     * reference; the BDD object must be freed separately.</p>
+     * 
+     * @param h  handle
+     * @return  new BDD object
+     */
+    public BDD handleToBDD(int h) {
+        return handleGet(h).id();
+    }
+    
+    /**
+     * <p>Takes another reference to a handle, and returns the handle.</p>
+     * 
+     * @param h  handle
+     * @return  h
+     */
+    public int handleAddRef(int h) {
+        handleGet(h);
+        handlerefs[h]++;
+        return h;
+    }
+    
+    /**
+     * <p>Gives back a reference to a handle.  The handle must not be used
+     * after its last reference has been given back.</p>
+     * 
+     * @param h  handle
+     */
+    public void handleDelRef(int h) {
+        BDD b = handleGet(h);
+        if (--handlerefs[h] == 0) {
+            b.free();
+            handlebdds[h] = null;
+            handlerefs[h] = handlefree;
+            handlefree = h;
+        }
+    }
+    
+    /**
+     * <p>Returns a handle to the constant false.</p>
+     * 
+     * @return  handle with one reference
+     */
+    public int handleZero() {
+        return handleNew(zero());
+    }
+    
+    /**
+     * <p>Returns a handle to the constant true.</p>
+     * 
+     * @return  handle with one reference
+     */
+    public int handleOne() {
+        return handleNew(one());
+    }
+    
+    /**
+     * <p>Returns a handle to the I'th variable.  See ithVar.</p>
+     * 
+     * @param var  the variable number
+     * @return  handle with one reference
+     */
+    public int handleIthVar(int var) {
+        return handleNew(ithVar(var));
+    }
+    
+    /**
+     * <p>Returns a handle to the negation of the I'th variable.  See
+     * nithVar.</p>
+     * 
+     * @param var  the variable number
+     * @return  handle with one reference
+     */
+    public int handleNithVar(int var) {
+        return handleNew(nithVar(var));
+    }
+    
+    /**
+     * <p>Returns true if the handle is the constant false.</p>
+     * 
+     * @param h  handle
+     * @return  whether h is false
+     */
+    public boolean handleIsZero(int h) {
+        return handleGet(h).isZero();
+    }
+    
+    /**
+     * <p>Returns true if the handle is the constant true.</p>
+     * 
+     * @param h  handle
+     * @return  whether h is true
+     */
+    public boolean handleIsOne(int h) {
+        return handleGet(h).isOne();
+    }
+    
+    /**
+     * <p>Returns true if two handles denote the same function.</p>
+     * 
+     * @param a  first handle
+     * @param b  second handle
+     * @return  whether a and b are equal
+     */
+    public boolean handleEquals(int a, int b) {
+        return a == b || handleGet(a).equals(handleGet(b));
+    }
+    
+    /**
+     * <p>Returns the variable labeling the root node of a handle.  See
+     * BDD.var.</p>
+     * 
+     * @param h  handle
+     * @return  variable number
+     */
+    public int handleVar(int h) {
+        return handleGet(h).var();
+    }
+    
+    /**
+     * <p>Returns the false branch of the root node of a handle.  See
+     * BDD.low.</p>
+     * 
+     * @param h  handle
+     * @return  handle with one reference
+     */
+    public int handleLow(int h) {
+        return handleNew(handleGet(h).low());
+    }
+    
+    /**
+     * <p>Returns the true branch of the root node of a handle.  See
+     * BDD.high.</p>
+     * 
+     * @param h  handle
+     * @return  handle with one reference
+     */
+    public int handleHigh(int h) {
+        return handleNew(handleGet(h).high());
+    }
+    
+    /**
+     * <p>Negates a handle.  See BDD.not.</p>
+     * 
+     * @param h  handle
+     * @return  handle with one reference
+     */
+    public int handleNot(int h) {
+        return handleNew(handleGet(h).not());
+    }
+    
+    /**
+     * <p>Applies a binary operator to two handles.  See BDD.apply.</p>
+     * 
+     * @param a  first operand
+     * @param b  second operand
+     * @param op  operator
+     * @return  handle with one reference
+     */
+    public int handleApply(int a, int b, BDDOp op) {
+        return handleNew(handleGet(a).apply(handleGet(b), op));
+    }
+    
+    /**
+     * <p>If-then-else on handles.  See BDD.ite.</p>
+     * 
+     * @param f  condition
+     * @param g  then branch
+     * @param h  else branch
+     * @return  handle with one reference
+     */
+    public int handleIte(int f, int g, int h) {
+        return handleNew(handleGet(f).ite(handleGet(g), handleGet(h)));
+    }
+    
+    /**
+     * <p>Existential quantification of a handle.  See BDD.exist.</p>
+     * 
+     * @param h  handle
+     * @param varset  handle of the variable set
+     * @return  handle with one reference
+     */
+    public int handleExist(int h, int varset) {
+        return handleNew(handleGet(h).exist(handleGet(varset)));
+    }
+    
+    /**
+     * <p>Universal quantification of a handle.  See BDD.forAll.</p>
+     * 
+     * @param h  handle
+     * @param varset  handle of the variable set
+     * @return  handle with one reference
+     */
+    public int handleForAll(int h, int varset) {
+        return handleNew(handleGet(h).forAll(handleGet(varset)));
+    }
+    
+    /**
+     * <p>Applies a binary operator to two handles and quantifies the result
+     * existentially.  See BDD.applyEx.</p>
+     * 
+     * @param a  first operand
+     * @param b  second operand
+     * @param op  operator
+     * @param varset  handle of the variable set
+     * @return  handle with one reference
+     */
+    public int handleApplyEx(int a, int b, BDDOp op, int varset) {
+        return handleNew(handleGet(a).applyEx(handleGet(b), op, handleGet(varset)));
+    }
+    
+    /**
+     * <p>Relational product of two handles.  See BDD.relprod.</p>
+     * 
+     * @param a  first operand
+     * @param b  second operand
+     * @param varset  handle of the variable set
+     * @return  handle with one reference
+     */
+    public int handleRelprod(int a, int b, int varset) {
+        return handleNew(handleGet(a).relprod(handleGet(b), handleGet(varset)));
+    }
+    
+    /**
+     * <p>Renames the variables of a handle.  See BDD.replace.</p>
+     * 
+     * @param h  handle
+     * @param pair  variable pairing
+     * @return  handle with one reference
+     */
+    public int handleReplace(int h, BDDPairing pair) {
+        return handleNew(handleGet(h).replace(pair));
+    }
+    
+    /**
+     * <p>Counts the satisfying assignments of a handle.  See
+     * BDD.satCount.</p>
+     * 
+     * @param h  handle
+     * @return  number of satisfying assignments
+     */
+    public double handleSatCount(int h) {
+        return handleGet(h).satCount();
+    }
+    
+    /**
+     * <p>Counts the nodes of a handle.  See BDD.nodeCount.</p>
+     * 
+     * @param h  handle
+     * @return  number of nodes
+     */
+    public int handleNodeCount(int h) {
+        return handleGet(h).nodeCount();
+    }
+    
+    /**** NODE TRAVERSAL ****/
+    
+    /**
+     * <p>Callback for visitNodes() and visitNodesByLevel().</p>
+     * 
+     * <p>The nodes of the traversed BDD are numbered densely from 2 in the
+     * order in which visitNodes() reports them; 0 and 1 stand for the
+     * constant false and true and are never visited.  A node is always
+     * numbered after its two children, so the numbers can be used directly
+     * as indices into arrays of per-node results.</p>
+     */
+    public static interface NodeVisitor {
+        /**
+         * <p>Called once for each node.</p>
+         * 
+         * @param node  number of the node
+         * @param level  level of the node's variable
+         * @param low  number of the low child
+         * @param high  number of the high child
+         */
+        void visit(int node, int level, int low, int high);
+    }
+    
+    /**
+     * <p>Visits every node of a BDD once, children before parents.  The root
+     * is visited last.  Factories that expose their node storage through
+     * nodeRoot() do this without creating any BDD objects.</p>
+     * 
+     * <p>The BDD must stay referenced, and the factory must not reorder,
+     * during the traversal.</p>
+     * 
+     * @param r  BDD to traverse
+     * @param v  visitor
+     * @return  number of the root: 0 or 1 for a constant, otherwise the
+     *          number of nodes plus one
+     */
+    public int visitNodes(BDD r, NodeVisitor v) {
+        int root = nodeRoot(r);
+        if (root == -1)
+            return visitNodes_fallback(r, v);
+        if ((root >>> 1) == 0)
+            return root;
+        
+        NodeNumbers numbers = new NodeNumbers();
+        int[] stack = new int[varNum() + 2];
+        int sp = 0, next = 2;
+        stack[sp++] = root;
+        /* The stack always holds a path from the root, so it is never deeper
+         * than the number of levels. */
+        while (sp > 0) {
+            int n = stack[sp-1];
+            int lo = nodeLow(n);
+            int lon = (lo >>> 1) == 0 ? lo : numbers.get(lo);
+            if (lon < 0) {
+                stack[sp++] = lo;
+                continue;
+            }
+            int hi = nodeHigh(n);
+            int hin = (hi >>> 1) == 0 ? hi : numbers.get(hi);
+            if (hin < 0) {
+                stack[sp++] = hi;
+                continue;
+            }
+            --sp;
+            numbers.put(n, next);
+            v.visit(next, nodeLevel(n), lon, hin);
+            ++next;
+        }
+        return next - 1;
+    }
+    
+    /**
+     * Traversal for factories without node numbers.  This has to go through
+     * low() and high(), so it creates an object per node.
+     */
+    private int visitNodes_fallback(BDD r, NodeVisitor v) {
+        if (r.isZero()) return 0;
+        if (r.isOne()) return 1;
+        
+        BDDNumbers numbers = new BDDNumbers();
+        BDD[] stack = new BDD[varNum() + 2];
+        int sp = 0, next = 2;
+        stack[sp++] = r.id();
+        try {
+            while (sp > 0) {
+                BDD n = stack[sp-1];
+                BDD lo = n.low();
+                int lon = fallbackNumber(numbers, lo);
+                if (lon < 0) {
+                    stack[sp++] = lo;
+                    continue;
+                }
+                lo.free();
+                BDD hi = n.high();
+                int hin = fallbackNumber(numbers, hi);
+                if (hin < 0) {
+                    stack[sp++] = hi;
+                    continue;
+                }
+                hi.free();
+                stack[--sp] = null;
+                numbers.put(n, next);
+                v.visit(next, n.level(), lon, hin);
+                ++next;
+            }
+        } finally {
+            while (sp > 0)
+                stack[--sp].free();
+            numbers.free();
+        }
+        return next - 1;
+    }
+    
+    private static int fallbackNumber(BDDNumbers numbers, BDD b) {
+        if (b.isZero()) return 0;
+        if (b.isOne()) return 1;
+        return numbers.get(b);
+    }
+    
+    /**
+     * Open-addressing map from BDD objects to visit numbers, for the
+     * traversal of factories without node numbers.  The keys are owned by
+     * the map and freed by free().
+     */
+    private static class BDDNumbers {
+        BDD[] keys = new BDD[64];
+        int[] values = new int[64];
+        int size;
+        
+        int get(BDD key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                BDD k = keys[i];
+                if (k == null) return -1;
+                if (k.equals(key)) return values[i];
+            }
+        }
+        
+        void put(BDD key, int value) {
+            if (2 * (size + 1) > keys.length) {
+                BDD[] oldkeys = keys;
+                int[] oldvalues = values;
+                keys = new BDD[oldkeys.length * 2];
+                values = new int[oldkeys.length * 2];
+                for (int i = 0; i < oldkeys.length; i++)
+                    if (oldkeys[i] != null) insert(oldkeys[i], oldvalues[i]);
+            }
+            insert(key, value);
+            size++;
+        }
+        
+        private static int hash(BDD key) {
+            int h = key.hashCode() * 0x9E3779B1;
+            return h ^ (h >>> 16);
+        }
+        
+        private void insert(BDD key, int value) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = value;
+        }
+        
+        void free() {
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] != null) keys[i].free();
+        }
+    }
+    
+    /**
+     * <p>Visits every node of a BDD once, in order of increasing level, so
+     * the root comes first.  Nodes are numbered as in visitNodes().</p>
+     * 
+     * @param r  BDD to traverse
+     * @param v  visitor
+     * @return  number of the root, as for visitNodes()
+     */
+    public int visitNodesByLevel(BDD r, NodeVisitor v) {
+        NodeArrays a = new NodeArrays();
+        int root = visitNodes(r, a);
+        if (root < 2)
+            return root;
+        
+        /* Counting sort by level; within a level, children-first order. */
+        int vnum = varNum();
+        int[] start = new int[vnum + 1];
+        for (int n = 2; n <= root; n++)
+            start[a.level[n] + 1]++;
+        for (int l = 0; l < vnum; l++)
+            start[l + 1] += start[l];
+        int[] order = new int[root - 1];
+        for (int n = 2; n <= root; n++)
+            order[start[a.level[n]]++] = n;
+        for (int i = 0; i < order.length; i++) {
+            int n = order[i];
+            v.visit(n, a.level[n], a.low[n], a.high[n]);
+        }
+        return root;
+    }
+    
+    /**
+     * <p>Flag on the node numbers of a factory with complement edges that
+     * marks a complemented reference.  The constants are always 0 and 1 and
+     * never carry the flag.</p>
+     * 
+     * <p>nodeLow() and nodeHigh() of a flagged number return the children
+     * of the complemented function, flagged as needed, and nodeLevel()
+     * ignores the flag.  A node and its complement thus look like two
+     * distinct nodes, so traversals see the BDD without complement
+     * edges.</p>
+     */
+    protected static final int NODE_COMPLEMENT = 0x80000000;
+    
+    /**
+     * <p>Returns the node number that this factory uses for the root of the
+     * given BDD, or -1 if the factory does not expose its node storage.  A
+     * factory that returns node numbers must use 0 and 1 for the constants
+     * and must implement nodeLevel(), nodeLow() and nodeHigh().  With
+     * complement edges, node numbers may carry NODE_COMPLEMENT; they are
+     * never -1.</p>
+     * 
+     * @param r  BDD
+     * @return  node number of r, or -1
+     */
+    protected int nodeRoot(BDD r) {
+        return -1;
+    }
+    
+    /**
+     * <p>Returns the level of a node.  Only called for node numbers handed out
+     * by nodeRoot(), nodeLow() and nodeHigh().</p>
+     * 
+     * @param n  node number
+     * @return  level of n
+     */
+    protected int nodeLevel(int n) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns the low child of a node.</p>
+     * 
+     * @param n  node number
+     * @return  node number of the low child
+     */
+    protected int nodeLow(int n) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns the high child of a node.</p>
+     * 
+     * @param n  node number
+     * @return  node number of the high child
+     */
+    protected int nodeHigh(int n) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * Open-addressing map from factory node numbers to visit numbers.  Keys
+     * are never 0 or 1, so 0 marks an empty slot.
+     */
+    private static class NodeNumbers {
+        int[] keys = new int[64];
+        int[] values = new int[64];
+        int size;
+        
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                int k = keys[i];
+                if (k == key) return values[i];
+                if (k == 0) return -1;
+            }
+        }
+        
+        void put(int key, int value) {
+            if (2 * (size + 1) > keys.length) {
+                int[] oldkeys = keys, oldvalues = values;
+                keys = new int[oldkeys.length * 2];
+                values = new int[oldkeys.length * 2];
+                for (int i = 0; i < oldkeys.length; i++)
+                    if (oldkeys[i] != 0) insert(oldkeys[i], oldvalues[i]);
+            }
+            insert(key, value);
+            size++;
+        }
+        
+        private static int hash(int key) {
+            int h = key * 0x9E3779B1;
+            return h ^ (h >>> 16);
+        }
+        
+        private void insert(int key, int value) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != 0)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+    
+    /**
+     * <p>Collects the nodes of a traversal into arrays indexed by node
+     * number.  After visitNodes(), entries 2 to the returned root are
+     * filled in.</p>
+     */
+    public static class NodeArrays implements NodeVisitor {
+        /** Level of each node. */
+        public int[] level = new int[16];
+        /** Low child of each node. */
+        public int[] low = new int[16];
+        /** High child of each node. */
+        public int[] high = new int[16];
+        
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDFactory.NodeVisitor#visit(int, int, int, int)
+         */
+        public void visit(int node, int lev, int lo, int hi) {
+            if (node >= level.length) {
+                int size = level.length * 2;
+                int[] a;
+                a = new int[size]; System.arraycopy(level, 0, a, 0, level.length); level = a;
+                a = new int[size]; System.arraycopy(low, 0, a, 0, low.length); low = a;
+                a = new int[size]; System.arraycopy(high, 0, a, 0, high.length); high = a;
+            }
+            level[node] = lev;
+            low[node] = lo;
+            high[node] = hi;
+        }
+    }
+    
+    
+    
+    
     /**** REORDERING ****/
     
     /**
@@ -971,6 +2097,62 @@ public abstract class BDDFactory {
         p.set(oldvar, newvar);
         return p;
     }
+
+    /**
+     * <p>Prepares a set of variables for repeated quantification.  The cube
+     * is copied.</p>
+     * 
+     * @param var  the variables, as a cube of positive literals
+     * @return  new quant set
+     * @see net.sf.javabdd.BDDQuantSet
+     */
+    public BDDQuantSet makeQuantSet(BDD var) {
+        return new BDDQuantSet(var.id());
+    }
+
+    /**
+     * <p>Prepares the variables of the given domains for repeated
+     * quantification.</p>
+     * 
+     * @param v  the domains
+     * @return  new quant set
+     * @see net.sf.javabdd.BDDQuantSet
+     */
+    public BDDQuantSet makeQuantSet(BDDDomain[] v) {
+        BDD var = makeSet(v);
+        BDDQuantSet q = makeQuantSet(var);
+        var.free();
+        return q;
+    }
+    
+    /**
+     * <p>Make a partitioned transition relation.  The relation is the
+     * conjunction of the given partitions; image and preimage are computed
+     * without building it.  The partitions are copied.</p>
+     * 
+     * @param parts  partitions of the relation
+     * @param current  current state domains
+     * @param next  next state domains, in the same order as current
+     * @return  transition relation
+     * @see BDDRelation
+     */
+    public BDDRelation makeRelation(Collection/*<BDD>*/ parts, BDDDomain[] current, BDDDomain[] next) {
+        return new BDDRelation(this, parts.toArray(), current, next);
+    }
+    
+    /**
+     * <p>Make a saturation engine for an asynchronous system whose state is
+     * made of the given components.  Add the events of the system with
+     * BDDSaturation.addEvent().</p>
+     * 
+     * @param current  current state domain of each component, top first
+     * @param next  next state domain of each component
+     * @return  saturation engine
+     * @see BDDSaturation
+     */
+    public BDDSaturation makeSaturation(BDDDomain[] current, BDDDomain[] next) {
+        return new BDDSaturation(this, current, next);
+    }
     
     /**
      * <p>Swap two variables.</p>
@@ -1165,6 +2347,8 @@ public abstract class BDDFactory {
         
         public long time;
         public int usednum_before, usednum_after;
+        public long sumtime;
+        public int num;
         
         protected ReorderStats() { }
         
@@ -1211,13 +2395,17 @@ public abstract class BDDFactory {
      * @version $Id: BDDFactory.java,v 1.18 2005/10/12 10:27:08 joewhaley Exp $
      */
     public static class CacheStats {
-        public int uniqueAccess;
-        public int uniqueChain;
-        public int uniqueHit;
-        public int uniqueMiss;
-        public int opHit;
-        public int opMiss;
-        public int swapCount;
+        public long uniqueAccess;
+        public long uniqueChain;
+        public long uniqueHit;
+        public long uniqueMiss;
+        public long opHit;
+        public long opMiss;
+        public long swapCount;
+        /** Names of the individual operator caches, or null if not kept. */
+        public String[] cacheName;
+        /** Hits and misses of each cache in cacheName. */
+        public long[] cacheHit, cacheMiss;
         
         protected CacheStats() { }
         
@@ -1229,6 +2417,9 @@ public abstract class BDDFactory {
             this.opHit = that.opHit;
             this.opMiss = that.opMiss;
             this.swapCount = that.swapCount;
+            this.cacheName = that.cacheName;
+            this.cacheHit = that.cacheHit;
+            this.cacheMiss = that.cacheMiss;
         }
         
         /* (non-Javadoc)
@@ -1273,6 +2464,20 @@ public abstract class BDDFactory {
             else
                 sb.append((float)0);
             sb.append(newLine);
+            if (cacheName != null) {
+                for (int i = 0; i < cacheName.length; ++i) {
+                    if (cacheHit[i] + cacheMiss[i] == 0)
+                        continue;
+                    sb.append("  ");
+                    sb.append(cacheName[i]);
+                    sb.append(": ");
+                    sb.append(cacheHit[i]);
+                    sb.append(" hits / ");
+                    sb.append(cacheMiss[i]);
+                    sb.append(" misses");
+                    sb.append(newLine);
+                }
+            }
             sb.append("Swap count =    ");
             sb.append(swapCount);
             sb.append(newLine);
@@ -1776,12 +2981,45 @@ public abstract class BDDFactory {
             throw new BDDException();
     }
     
+    /**
+     * Statistics bean registered for this factory, or null.  It is told about
+     * every garbage collection, reordering and resize in addition to (not
+     * instead of) the registered callbacks.
+     */
+    BDDStats monitor;
+    
+    /**
+     * <p>Publish the statistics of this factory as a JMX MBean named
+     * "net.sf.javabdd:type=BDDFactory,name=<i>name</i>" on the platform MBean
+     * server.  Besides the counters, the bean emits a notification after each
+     * garbage collection, reordering and node table resize.  Returns the
+     * bean.</p>
+     * 
+     * @param name  name to register the bean under
+     * @return  the registered statistics bean
+     */
+    public BDDStats registerMBean(String name) {
+        if (monitor != null) monitor.unregister();
+        monitor = BDDStats.register(this, name);
+        return monitor;
+    }
+    
+    /**
+     * <p>Remove the statistics bean registered by registerMBean, if any.</p>
+     */
+    public void unregisterMBean() {
+        if (monitor == null) return;
+        monitor.unregister();
+        monitor = null;
+    }
+    
     protected void gbc_handler(boolean pre, GCStats s) {
         if (gc_callbacks == null) {
             bdd_default_gbchandler(pre, s);
         } else {
             doCallbacks(gc_callbacks, new Integer(pre?1:0), s);
         }
+        if (!pre && monitor != null) monitor.gcDone(s);
     }
     
     protected static void bdd_default_gbchandler(boolean pre, GCStats s) {
@@ -1797,12 +3035,15 @@ public abstract class BDDFactory {
         } else {
             s.time = System.currentTimeMillis() - s.time;
             s.usednum_after = getNodeNum();
+            s.sumtime += s.time;
+            s.num++;
         }
         if (reorder_callbacks == null) {
             bdd_default_reohandler(b, s);
         } else {
             doCallbacks(reorder_callbacks, new Boolean(b), s);
         }
+        if (!b && monitor != null) monitor.reorderDone(s);
     }
 
     protected void bdd_default_reohandler(boolean prestate, ReorderStats s) {
@@ -1822,6 +3063,7 @@ public abstract class BDDFactory {
         } else {
             doCallbacks(resize_callbacks, new Integer(oldsize), new Integer(newsize));
         }
+        if (monitor != null) monitor.resizeDone(oldsize, newsize);
     }
 
     protected static void bdd_default_reshandler(int oldsize, int newsize) {
@@ -0,0 +1,68 @@
+// BDDQuantSet.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * <p>A set of variables prepared for repeated quantification.  Passing a
+ * variable set as a BDD cube makes the factory walk the cube and derive a
+ * fresh operation cache id on every call.  A factory that supports quant sets
+ * instead keeps the table of quantified levels and a cache id with the set,
+ * so that loops quantifying the same variables over and over skip that work,
+ * and find the results of earlier calls in the cache even when other
+ * variable sets were used in between.</p>
+ *
+ * <p>Use {@link BDDFactory#makeQuantSet(BDD)} or {@link
+ * BDDFactory#makeQuantSet(BDDDomain[])} to create a quant set, and pass it
+ * to {@link BDD#exist(BDDQuantSet)}, {@link BDD#forAll(BDDQuantSet)},
+ * {@link BDD#relprod(BDD, BDDQuantSet)} or {@link BDD#applyEx(BDD,
+ * BDDFactory.BDDOp, BDDQuantSet)}.  A quant set holds on to its cube until
+ * it is freed.</p>
+ *
+ * @version $Id$
+ */
+public class BDDQuantSet {
+
+    protected BDD set;
+
+    /**
+     * <p>Create a quant set for the given variable set, which it takes over.</p>
+     *
+     * @param set  the variables, as a cube of positive literals
+     */
+    protected BDDQuantSet(BDD set) {
+        this.set = set;
+    }
+
+    /**
+     * <p>Returns the factory of this quant set.</p>
+     *
+     * @return  BDD factory
+     */
+    public BDDFactory getFactory() {
+        return set.getFactory();
+    }
+
+    /**
+     * <p>Returns the variables of this quant set as a cube.</p>
+     *
+     * @return  copy of the variable set
+     */
+    public BDD toBDD() {
+        return set.id();
+    }
+
+    /**
+     * <p>Frees the variable set held by this quant set.</p>
+     */
+    public void free() {
+        set.free();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return set.toString();
+    }
+
+}
@@ -0,0 +1,328 @@
+// BDDRelation.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * <p>A transition relation given as a conjunction of partitions over current
+ * state and next state domains.  The monolithic relation is never built.
+ * Instead, the partitions are ordered and clustered, and image() and
+ * preImage() conjoin the clusters one at a time, quantifying each variable
+ * right after the last cluster that mentions it.</p>
+ *
+ * <p>The partitions are ordered greedily in the spirit of IWLS95: the next
+ * partition is the one that lets the most variables be quantified, and among
+ * those the one that brings in the fewest new variables.  Consecutive
+ * partitions are then conjoined into clusters as long as a cluster stays
+ * below the cluster limit.  Image and preimage quantify different variables,
+ * so each gets its own schedule, computed on first use.</p>
+ *
+ * <p>Variables that are neither current state nor next state variables (for
+ * example inputs) are quantified in both directions.</p>
+ *
+ * <p>Use {@link BDDFactory#makeRelation(Collection, BDDDomain[], BDDDomain[])}
+ * to create a relation.</p>
+ *
+ * @version $Id$
+ */
+public class BDDRelation {
+
+    /** Default limit on the size of a cluster, in nodes. */
+    public static final int DEFAULT_CLUSTER_LIMIT = 5000;
+
+    protected final BDDFactory factory;
+    protected BDD[] parts;
+    protected final BitSet currentVars, nextVars;
+    protected final BDDPairing nextToCurrent, currentToNext;
+    protected int clusterLimit = DEFAULT_CLUSTER_LIMIT;
+    protected Schedule imageSchedule, preImageSchedule;
+
+    /**
+     * <p>Create a relation from its partitions.  The partitions are copied,
+     * so the caller keeps ownership of the given BDDs.</p>
+     *
+     * @param factory  BDD factory
+     * @param parts  partitions of the relation, BDD objects
+     * @param current  current state domains
+     * @param next  next state domains, in the same order as current
+     */
+    protected BDDRelation(BDDFactory factory, Object[] parts, BDDDomain[] current, BDDDomain[] next) {
+        if (current.length != next.length)
+            throw new BDDException("Current and next state domains differ in number");
+        this.factory = factory;
+        this.parts = new BDD[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            this.parts[i] = ((BDD) parts[i]).id();
+        this.currentVars = new BitSet();
+        this.nextVars = new BitSet();
+        for (int i = 0; i < current.length; i++) {
+            addVars(currentVars, current[i].vars());
+            addVars(nextVars, next[i].vars());
+        }
+        this.nextToCurrent = factory.makePair();
+        this.nextToCurrent.set(next, current);
+        this.currentToNext = factory.makePair();
+        this.currentToNext.set(current, next);
+    }
+
+    private static void addVars(BitSet set, int[] vars) {
+        for (int i = 0; i < vars.length; i++)
+            set.set(vars[i]);
+    }
+
+    /**
+     * <p>Returns the factory of this relation.</p>
+     *
+     * @return  BDD factory
+     */
+    public BDDFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * <p>Sets the largest size, in nodes, up to which partitions are
+     * conjoined into one cluster.  Setting the limit discards the current
+     * schedules.</p>
+     *
+     * @param nodes  cluster limit
+     * @return  the previous cluster limit
+     */
+    public int setClusterLimit(int nodes) {
+        int old = clusterLimit;
+        clusterLimit = nodes;
+        freeSchedules();
+        return old;
+    }
+
+    /**
+     * <p>Returns the number of clusters in the image schedule.</p>
+     *
+     * @return  number of clusters
+     */
+    public int clusterCount() {
+        return schedule(true).clusters.length;
+    }
+
+    /**
+     * <p>Computes the states that can be reached in one step from the given
+     * set of current states.  The result is over the current state
+     * domains.</p>
+     *
+     * @param states  set of current states
+     * @return  set of successor states
+     */
+    public BDD image(BDD states) {
+        Schedule s = schedule(true);
+        BDD r = run(s, states.exist(s.prequant));
+        r.replaceWith(nextToCurrent);
+        return r;
+    }
+
+    /**
+     * <p>Computes the states that have a successor in the given set of
+     * states.  Both the argument and the result are over the current state
+     * domains.</p>
+     *
+     * @param states  set of current states
+     * @return  set of predecessor states
+     */
+    public BDD preImage(BDD states) {
+        Schedule s = schedule(false);
+        BDD next = states.replace(currentToNext);
+        BDD r = next.exist(s.prequant);
+        next.free();
+        return run(s, r);
+    }
+
+    /**
+     * Conjoins r with the clusters of the schedule and quantifies as
+     * scheduled.  Consumes r.
+     */
+    private BDD run(Schedule s, BDD r) {
+        for (int i = 0; i < s.clusters.length && !r.isZero(); i++) {
+            BDD t = r.relprod(s.clusters[i], s.quant[i]);
+            r.free();
+            r = t;
+        }
+        return r;
+    }
+
+    /**
+     * <p>Returns the monolithic relation, the conjunction of all
+     * partitions.</p>
+     *
+     * @return  the relation
+     */
+    public BDD relation() {
+        return factory.applyAll(parts, BDDFactory.and);
+    }
+
+    /**
+     * <p>Frees the BDDs held by this relation.</p>
+     */
+    public void free() {
+        freeSchedules();
+        for (int i = 0; i < parts.length; i++)
+            parts[i].free();
+        parts = new BDD[0];
+        nextToCurrent.reset();
+        currentToNext.reset();
+    }
+
+    protected void freeSchedules() {
+        if (imageSchedule != null) imageSchedule.free();
+        if (preImageSchedule != null) preImageSchedule.free();
+        imageSchedule = preImageSchedule = null;
+    }
+
+    /**
+     * Clusters and quantification sets for one direction.
+     */
+    protected static class Schedule {
+        /** Clusters, in the order they are applied */
+        BDD[] clusters;
+        /** Variables to quantify after each cluster */
+        BDDQuantSet[] quant;
+        /** Variables that no cluster mentions, quantified up front */
+        BDD prequant;
+
+        void free() {
+            for (int i = 0; i < clusters.length; i++) {
+                clusters[i].free();
+                quant[i].free();
+            }
+            prequant.free();
+        }
+    }
+
+    protected Schedule schedule(boolean forward) {
+        if (forward) {
+            if (imageSchedule == null)
+                imageSchedule = buildSchedule(nextVars);
+            return imageSchedule;
+        } else {
+            if (preImageSchedule == null)
+                preImageSchedule = buildSchedule(currentVars);
+            return preImageSchedule;
+        }
+    }
+
+    /**
+     * Orders and clusters the partitions, and computes when each variable
+     * other than the kept ones can be quantified.
+     */
+    protected Schedule buildSchedule(BitSet keep) {
+        int n = parts.length;
+        BitSet[] support = new BitSet[n];
+        int[] size = new int[n];
+        int varnum = factory.varNum();
+        int[] count = new int[varnum];
+        for (int i = 0; i < n; i++) {
+            support[i] = supportOf(parts[i]);
+            support[i].andNot(keep);
+            size[i] = parts[i].nodeCount();
+            for (int v = support[i].nextSetBit(0); v >= 0; v = support[i].nextSetBit(v+1))
+                count[v]++;
+        }
+
+        /* Greedy order: most variables that die here, then fewest new
+         * variables, then smallest. */
+        int[] order = new int[n];
+        boolean[] used = new boolean[n];
+        BitSet seen = new BitSet();
+        for (int k = 0; k < n; k++) {
+            int best = -1, bestDead = 0, bestNew = 0;
+            for (int i = 0; i < n; i++) {
+                if (used[i]) continue;
+                int dead = 0, fresh = 0;
+                for (int v = support[i].nextSetBit(0); v >= 0; v = support[i].nextSetBit(v+1)) {
+                    if (count[v] == 1) dead++;
+                    if (!seen.get(v)) fresh++;
+                }
+                if (best < 0 || dead > bestDead ||
+                    (dead == bestDead && (fresh < bestNew ||
+                                          (fresh == bestNew && size[i] < size[best])))) {
+                    best = i;
+                    bestDead = dead;
+                    bestNew = fresh;
+                }
+            }
+            used[best] = true;
+            order[k] = best;
+            seen.or(support[best]);
+            for (int v = support[best].nextSetBit(0); v >= 0; v = support[best].nextSetBit(v+1))
+                count[v]--;
+        }
+
+        /* Conjoin consecutive partitions while the cluster stays small. */
+        BDD[] clusters = new BDD[n];
+        BitSet[] supports = new BitSet[n];
+        int m = 0;
+        BDD cluster = null;
+        BitSet clusterSupport = null;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            if (cluster != null) {
+                BDD c = cluster.and(parts[i]);
+                if (c.nodeCount() <= clusterLimit) {
+                    cluster.free();
+                    cluster = c;
+                    clusterSupport.or(support[i]);
+                    continue;
+                }
+                c.free();
+                clusters[m] = cluster;
+                supports[m++] = clusterSupport;
+            }
+            cluster = parts[i].id();
+            clusterSupport = (BitSet) support[i].clone();
+        }
+        if (cluster != null) {
+            clusters[m] = cluster;
+            supports[m++] = clusterSupport;
+        }
+
+        /* Each variable is quantified after the last cluster that has it. */
+        Schedule s = new Schedule();
+        s.clusters = new BDD[m];
+        System.arraycopy(clusters, 0, s.clusters, 0, m);
+        s.quant = new BDDQuantSet[m];
+        BitSet later = new BitSet();
+        for (int i = m - 1; i >= 0; i--) {
+            BitSet q = supports[i];
+            BitSet dead = (BitSet) q.clone();
+            dead.andNot(later);
+            BDD cube = makeSet(dead);
+            s.quant[i] = factory.makeQuantSet(cube);
+            cube.free();
+            later.or(q);
+        }
+        BitSet rest = new BitSet();
+        rest.set(0, varnum);
+        rest.andNot(keep);
+        rest.andNot(later);
+        s.prequant = makeSet(rest);
+        return s;
+    }
+
+    private BitSet supportOf(BDD b) {
+        BitSet s = new BitSet();
+        BDD supp = b.support();
+        int[] vars = supp.scanSet();
+        supp.free();
+        if (vars != null)
+            addVars(s, vars);
+        return s;
+    }
+
+    private BDD makeSet(BitSet vars) {
+        int[] v = new int[vars.cardinality()];
+        int k = 0;
+        for (int i = vars.nextSetBit(0); i >= 0; i = vars.nextSetBit(i+1))
+            v[k++] = i;
+        return factory.makeSet(v);
+    }
+
+}
@@ -0,0 +1,479 @@
+// BDDSaturation.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * <p>Reachable state space computation by saturation, for systems made of
+ * components that change asynchronously through local events.</p>
+ *
+ * <p>The state is split into components, one current state domain and one
+ * next state domain each; the first component is the top one.  An event is
+ * a relation over the current and next domains of the components it
+ * touches; every component it does not mention keeps its value.  The top
+ * of an event is the topmost component it touches.</p>
+ *
+ * <p>Instead of applying all events to the whole frontier breadth-first,
+ * saturation works bottom-up: the part of a state set below a component is
+ * first saturated, that is, closed under all events whose top is below,
+ * before the events whose top is that component are fired on it.  The
+ * intermediate sets are therefore close to the final ones and stay small.
+ * Saturation has its own caches, which are cleared after each call to
+ * reachable().</p>
+ *
+ * <p>Each component is split into its values, so the domains should be
+ * small.  For best results the components should be given in variable order,
+ * with each component's current and next variables next to each other.</p>
+ *
+ * <p>Use {@link BDDFactory#makeSaturation(BDDDomain[], BDDDomain[])} to
+ * create a saturation engine.</p>
+ *
+ * @version $Id$
+ */
+public class BDDSaturation {
+
+    /**
+     * Largest domain size that saturation will split a component into.  Each
+     * saturation step restricts its set to every value of the component, so
+     * the cost grows with the domain size.
+     */
+    public static final int MAX_DOMAIN_SIZE = 1 << 8;
+
+    protected final BDDFactory factory;
+    protected final BDDDomain[] current, next;
+    /** Number of components */
+    protected final int compnum;
+    /** Number of values of each component */
+    protected final int[] size;
+    /** Component of each variable, or -1 */
+    protected final int[] compOf;
+    /** Minterms of the current and next state values of each component */
+    protected BDD[][] curValue, nextValue;
+    /** Events, by top component, as linked lists */
+    protected Event[] events;
+    protected Cache[] satCache, fireCache;
+
+    /**
+     * <p>Create a saturation engine for the given components.</p>
+     *
+     * @param factory  BDD factory
+     * @param current  current state domain of each component, top first
+     * @param next  next state domain of each component
+     */
+    protected BDDSaturation(BDDFactory factory, BDDDomain[] current, BDDDomain[] next) {
+        if (current.length != next.length)
+            throw new BDDException("Current and next state domains differ in number");
+        this.factory = factory;
+        this.current = current;
+        this.next = next;
+        this.compnum = current.length;
+        this.size = new int[compnum];
+        this.compOf = new int[factory.varNum()];
+        Arrays.fill(compOf, -1);
+        this.curValue = new BDD[compnum][];
+        this.nextValue = new BDD[compnum][];
+        this.events = new Event[compnum];
+        for (int c = 0; c < compnum; c++) {
+            BigInteger s = current[c].size();
+            if (s.compareTo(BigInteger.valueOf(MAX_DOMAIN_SIZE)) > 0 ||
+                !s.equals(next[c].size()))
+                throw new BDDException("Bad domain size for saturation: "+current[c]);
+            size[c] = s.intValue();
+            int[] v = current[c].vars();
+            for (int i = 0; i < v.length; i++) compOf[v[i]] = c;
+            v = next[c].vars();
+            for (int i = 0; i < v.length; i++) compOf[v[i]] = c;
+            curValue[c] = new BDD[size[c]];
+            nextValue[c] = new BDD[size[c]];
+            for (int i = 0; i < size[c]; i++) {
+                curValue[c][i] = current[c].ithVar(i);
+                nextValue[c][i] = next[c].ithVar(i);
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the factory of this engine.</p>
+     *
+     * @return  BDD factory
+     */
+    public BDDFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * <p>Adds an event.  Variables that belong to no component are
+     * quantified out.  The relation is copied.</p>
+     *
+     * @param relation  relation over the current and next domains of the
+     *                  components the event touches
+     */
+    public void addEvent(BDD relation) {
+        BDD other = factory.one();
+        int top = compnum;
+        int[] vars = support(relation);
+        for (int i = 0; i < vars.length; i++) {
+            int c = compOf[vars[i]];
+            if (c < 0)
+                other.andWith(factory.ithVar(vars[i]));
+            else if (c < top)
+                top = c;
+        }
+        BDD rel = relation.exist(other);
+        other.free();
+        if (top == compnum || rel.isZero()) {
+            /* Identity or empty, nothing to fire. */
+            rel.free();
+            return;
+        }
+        /* Only the pairs of top component values with a non-empty
+         * relation are kept. */
+        Event e = new Event();
+        int[] from = values(rel, top, current[top]);
+        for (int k = 0; k < from.length; k++) {
+            int i = from[k];
+            BDD ri = rel.restrict(curValue[top][i]);
+            int[] to = values(ri, top, next[top]);
+            for (int l = 0; l < to.length; l++) {
+                int j = to[l];
+                e.add(i, j, ri.restrict(nextValue[top][j]));
+            }
+            ri.free();
+        }
+        rel.free();
+        e.next = events[top];
+        events[top] = e;
+    }
+
+    /**
+     * <p>Returns the number of events.</p>
+     *
+     * @return  number of events
+     */
+    public int eventCount() {
+        int n = 0;
+        for (int c = 0; c < compnum; c++)
+            for (Event e = events[c]; e != null; e = e.next)
+                n++;
+        return n;
+    }
+
+    /**
+     * <p>Computes the states reachable from the given initial states through
+     * any number of events.</p>
+     *
+     * @param initial  initial states, over the current state domains
+     * @return  reachable states
+     */
+    public BDD reachable(BDD initial) {
+        satCache = new Cache[compnum];
+        fireCache = new Cache[compnum];
+        for (int c = 0; c < compnum; c++) {
+            satCache[c] = new Cache();
+            fireCache[c] = new Cache();
+        }
+        try {
+            return saturate(0, initial);
+        } finally {
+            freeCaches();
+        }
+    }
+
+    /**
+     * <p>Frees the BDDs held by this engine.</p>
+     */
+    public void free() {
+        for (int c = 0; c < compnum; c++) {
+            for (Event e = events[c]; e != null; e = e.next)
+                e.free();
+            events[c] = null;
+            for (int i = 0; i < size[c]; i++) {
+                curValue[c][i].free();
+                nextValue[c][i].free();
+            }
+        }
+    }
+
+    /**
+     * An event, split by the values of its top component.
+     */
+    protected static class Event {
+        /** Number of pairs of top component values */
+        int num;
+        /** rel[k] is the relation for top component value from[k] to to[k] */
+        int[] from = new int[4], to = new int[4];
+        BDD[] rel = new BDD[4];
+        /** Next event with the same top component */
+        Event next;
+
+        void add(int i, int j, BDD r) {
+            if (r.isZero()) {
+                r.free();
+                return;
+            }
+            if (num == rel.length) {
+                from = grow(from);
+                to = grow(to);
+                BDD[] a = new BDD[num * 2];
+                System.arraycopy(rel, 0, a, 0, num);
+                rel = a;
+            }
+            from[num] = i;
+            to[num] = j;
+            rel[num++] = r;
+        }
+
+        private static int[] grow(int[] a) {
+            int[] b = new int[a.length * 2];
+            System.arraycopy(a, 0, b, 0, a.length);
+            return b;
+        }
+
+        void free() {
+            for (int k = 0; k < num; k++)
+                rel[k].free();
+            num = 0;
+        }
+    }
+
+    /**
+     * Cache for saturate() and fire(), keyed by a set and, for fire(), a
+     * relation.  Keys and values are copies, freed by free().
+     */
+    protected static class Cache {
+        Entry[] table = new Entry[64];
+        int size;
+
+        static class Entry {
+            BDD s, r, value;
+            Entry next;
+        }
+
+        private static int hash(BDD s, BDD r) {
+            int h = s.hashCode() * 31 + (r != null ? r.hashCode() : 0);
+            return h ^ (h >>> 16);
+        }
+
+        BDD get(BDD s, BDD r) {
+            Entry e = table[hash(s, r) & (table.length - 1)];
+            for ( ; e != null; e = e.next)
+                if (e.s.equals(s) && (r == null ? e.r == null : r.equals(e.r)))
+                    return e.value;
+            return null;
+        }
+
+        void put(BDD s, BDD r, BDD value) {
+            if (4 * (size + 1) > 3 * table.length) {
+                Entry[] old = table;
+                table = new Entry[old.length * 2];
+                for (int i = 0; i < old.length; i++) {
+                    Entry e = old[i];
+                    while (e != null) {
+                        Entry n = e.next;
+                        insert(e);
+                        e = n;
+                    }
+                }
+            }
+            Entry e = new Entry();
+            e.s = s;
+            e.r = r;
+            e.value = value;
+            insert(e);
+            size++;
+        }
+
+        private void insert(Entry e) {
+            int i = hash(e.s, e.r) & (table.length - 1);
+            e.next = table[i];
+            table[i] = e;
+        }
+
+        void free() {
+            for (int i = 0; i < table.length; i++) {
+                for (Entry e = table[i]; e != null; e = e.next) {
+                    e.s.free();
+                    if (e.r != null)
+                        e.r.free();
+                    e.value.free();
+                }
+                table[i] = null;
+            }
+            size = 0;
+        }
+    }
+
+    private void freeCaches() {
+        for (int c = 0; c < compnum; c++) {
+            satCache[c].free();
+            fireCache[c].free();
+        }
+        satCache = fireCache = null;
+    }
+
+    /**
+     * Closes s, a set over components c and below, under all events whose
+     * top is c or below.
+     */
+    protected BDD saturate(int c, BDD s) {
+        if (c == compnum || s.isZero())
+            return s.id();
+        BDD r = satCache[c].get(s, null);
+        if (r != null)
+            return r.id();
+
+        int n = size[c];
+        BDD[] t = new BDD[n];
+        for (int i = 0; i < n; i++) {
+            BDD si = s.restrict(curValue[c][i]);
+            t[i] = saturate(c + 1, si);
+            si.free();
+        }
+        fireLocal(c, t);
+        r = combine(c, t);
+        satCache[c].put(s.id(), null, r.id());
+        return r;
+    }
+
+    /**
+     * Fires the events whose top is c on the saturated cofactors t until
+     * nothing changes.  The cofactors stay saturated.
+     */
+    protected void fireLocal(int c, BDD[] t) {
+        if (events[c] == null)
+            return;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Event e = events[c]; e != null; e = e.next) {
+                for (int k = 0; k < e.num; k++) {
+                    int i = e.from[k], j = e.to[k];
+                    if (t[i].isZero())
+                        continue;
+                    BDD img = fire(c + 1, t[i], e.rel[k]);
+                    BDD u = t[j].or(img);
+                    img.free();
+                    if (!u.equals(t[j])) {
+                        t[j].free();
+                        t[j] = saturate(c + 1, u);
+                        changed = true;
+                    }
+                    u.free();
+                }
+            }
+        }
+    }
+
+    /**
+     * Image of the saturated set s, over components c and below, under the
+     * relation r, which leaves the components it does not mention unchanged.
+     * The result is saturated.
+     */
+    protected BDD fire(int c, BDD s, BDD r) {
+        if (s.isZero() || r.isZero())
+            return factory.zero();
+        if (c == compnum || r.isOne())
+            return s.id();
+        BDD res = fireCache[c].get(s, r);
+        if (res != null)
+            return res.id();
+
+        int n = size[c];
+        BDD[] t = new BDD[n];
+        if (dependsOn(r, c)) {
+            for (int j = 0; j < n; j++)
+                t[j] = factory.zero();
+            int[] from = values(r, c, current[c]);
+            for (int k = 0; k < from.length; k++) {
+                int i = from[k];
+                BDD si = s.restrict(curValue[c][i]);
+                if (!si.isZero()) {
+                    BDD ri = r.restrict(curValue[c][i]);
+                    int[] to = values(ri, c, next[c]);
+                    for (int l = 0; l < to.length; l++) {
+                        int j = to[l];
+                        BDD rij = ri.restrict(nextValue[c][j]);
+                        t[j].orWith(fire(c + 1, si, rij));
+                        rij.free();
+                    }
+                    ri.free();
+                }
+                si.free();
+            }
+            /* A union of saturated sets need not be saturated. */
+            for (int j = 0; j < n; j++) {
+                BDD tj = saturate(c + 1, t[j]);
+                t[j].free();
+                t[j] = tj;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                BDD si = s.restrict(curValue[c][i]);
+                t[i] = fire(c + 1, si, r);
+                si.free();
+            }
+        }
+        fireLocal(c, t);
+        res = combine(c, t);
+        fireCache[c].put(s.id(), r.id(), res.id());
+        return res;
+    }
+
+    /**
+     * Whether r mentions a variable of component c.
+     */
+    private boolean dependsOn(BDD r, int c) {
+        int[] vars = support(r);
+        for (int i = 0; i < vars.length; i++)
+            if (compOf[vars[i]] == c) return true;
+        return false;
+    }
+
+    /**
+     * Values of domain d, of component c, for which r is not false.
+     */
+    private int[] values(BDD r, int c, BDDDomain d) {
+        BDD dset = d.set();
+        BDD sup = r.support();
+        BDD rest = sup.exist(dset);
+        BDD p = r.exist(rest);
+        sup.free();
+        rest.free();
+        int[] v = new int[size[c]];
+        int num = 0;
+        for (BDD.BDDIterator i = p.iterator(dset); i.hasNext(); ) {
+            int j = i.nextValue(d).intValue();
+            if (j < size[c])
+                v[num++] = j;
+        }
+        p.free();
+        dset.free();
+        int[] result = new int[num];
+        System.arraycopy(v, 0, result, 0, num);
+        return result;
+    }
+
+    private static int[] support(BDD r) {
+        BDD s = r.support();
+        int[] vars = s.scanSet();
+        s.free();
+        return vars != null ? vars : new int[0];
+    }
+
+    /**
+     * Builds the set whose cofactor for value i of component c is t[i], and
+     * frees the cofactors.
+     */
+    private BDD combine(int c, BDD[] t) {
+        BDD r = factory.zero();
+        for (int i = 0; i < t.length; i++) {
+            if (!t[i].isZero())
+                r.orWith(curValue[c][i].and(t[i]));
+            t[i].free();
+        }
+        return r;
+    }
+
+}
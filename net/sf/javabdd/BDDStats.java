@@ -0,0 +1,137 @@
+// BDDStats.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+
+/**
+ * <p>Publishes the statistics of a BDD factory over JMX.  The attributes are
+ * read from the factory on demand, so looking at them costs nothing while no
+ * one is watching.  In addition, a notification is sent after each garbage
+ * collection, reordering and node table resize; its user data is the duration
+ * in milliseconds (for GC and reordering) or the new node table size (for
+ * resizes).</p>
+ *
+ * <p>Use {@link BDDFactory#registerMBean(String)} to create and register a
+ * bean.</p>
+ *
+ * @version $Id$
+ */
+public class BDDStats extends NotificationBroadcasterSupport implements BDDStatsMBean {
+
+    /** Notification type sent after a garbage collection. */
+    public static final String GC = "net.sf.javabdd.gc";
+    /** Notification type sent after a reordering. */
+    public static final String REORDER = "net.sf.javabdd.reorder";
+    /** Notification type sent after a node table resize. */
+    public static final String RESIZE = "net.sf.javabdd.resize";
+
+    protected final BDDFactory factory;
+    protected ObjectName name;
+    protected long sequence;
+    protected int resizes;
+
+    protected BDDStats(BDDFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * <p>Create a statistics bean for the given factory and register it on the
+     * platform MBean server under
+     * "net.sf.javabdd:type=BDDFactory,name=<i>name</i>".</p>
+     *
+     * @param factory  factory to publish
+     * @param name  value of the name key
+     * @return  the registered bean
+     */
+    static BDDStats register(BDDFactory factory, String name) {
+        BDDStats s = new BDDStats(factory);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            s.name = new ObjectName("net.sf.javabdd:type=BDDFactory,name="+ObjectName.quote(name));
+            server.registerMBean(s, s.name);
+        } catch (JMException x) {
+            throw new BDDException("Cannot register MBean: "+x);
+        }
+        return s;
+    }
+
+    /**
+     * <p>Remove this bean from the platform MBean server.</p>
+     */
+    void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException x) {
+            throw new BDDException("Cannot unregister MBean: "+x);
+        }
+    }
+
+    /**
+     * <p>Return the name this bean is registered under.</p>
+     *
+     * @return  the object name
+     */
+    public ObjectName getObjectName() {
+        return name;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.NotificationBroadcaster#getNotificationInfo()
+     */
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return new MBeanNotificationInfo[] {
+            new MBeanNotificationInfo(new String[] { GC, REORDER, RESIZE },
+                                      Notification.class.getName(),
+                                      "BDD garbage collection, reordering and resize events")
+        };
+    }
+
+    synchronized void gcDone(BDDFactory.GCStats s) {
+        send(GC, s.toString(), Long.valueOf(s.time));
+    }
+
+    synchronized void reorderDone(BDDFactory.ReorderStats s) {
+        send(REORDER, s.toString(), Long.valueOf(s.time));
+    }
+
+    synchronized void resizeDone(int oldsize, int newsize) {
+        resizes++;
+        send(RESIZE, "Resized node table from "+oldsize+" to "+newsize, Integer.valueOf(newsize));
+    }
+
+    protected void send(String type, String message, Object data) {
+        Notification n = new Notification(type, name, ++sequence,
+                                          System.currentTimeMillis(), message);
+        n.setUserData(data);
+        sendNotification(n);
+    }
+
+    public int getVarNum() { return factory.varNum(); }
+    public int getNodeTableSize() { return factory.getNodeTableSize(); }
+    public int getNodeNum() { return factory.getNodeNum(); }
+    public int getCacheSize() { return factory.getCacheSize(); }
+
+    public long getUniqueAccess() { return factory.getCacheStats().uniqueAccess; }
+    public long getUniqueChain() { return factory.getCacheStats().uniqueChain; }
+    public long getUniqueHit() { return factory.getCacheStats().uniqueHit; }
+    public long getUniqueMiss() { return factory.getCacheStats().uniqueMiss; }
+    public long getOpHit() { return factory.getCacheStats().opHit; }
+    public long getOpMiss() { return factory.getCacheStats().opMiss; }
+    public String[] getCacheNames() { return factory.getCacheStats().cacheName; }
+    public long[] getCacheHits() { return factory.getCacheStats().cacheHit; }
+    public long[] getCacheMisses() { return factory.getCacheStats().cacheMiss; }
+
+    public int getGCCount() { return factory.getGCStats().num; }
+    public long getGCTime() { return factory.getGCStats().sumtime; }
+    public int getReorderCount() { return factory.getReorderStats().num; }
+    public long getReorderTime() { return factory.getReorderStats().sumtime; }
+    public synchronized int getResizeCount() { return resizes; }
+
+}
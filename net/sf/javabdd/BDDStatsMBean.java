@@ -0,0 +1,52 @@
+// BDDStatsMBean.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * Management interface of the statistics of a BDD factory.  See
+ * {@link BDDStats}.
+ * 
+ * @version $Id$
+ */
+public interface BDDStatsMBean {
+    
+    /** Number of variables. */
+    int getVarNum();
+    /** Number of entries in the node table. */
+    int getNodeTableSize();
+    /** Number of nodes in use. */
+    int getNodeNum();
+    /** Number of entries in each operator cache. */
+    int getCacheSize();
+    
+    /** Calls to the unique table. */
+    long getUniqueAccess();
+    /** Chain links followed in the unique table. */
+    long getUniqueChain();
+    /** Nodes found in the unique table. */
+    long getUniqueHit();
+    /** Nodes that had to be built. */
+    long getUniqueMiss();
+    /** Operator cache hits, over all caches. */
+    long getOpHit();
+    /** Operator cache misses, over all caches. */
+    long getOpMiss();
+    /** Names of the individual operator caches. */
+    String[] getCacheNames();
+    /** Hits of each cache in getCacheNames. */
+    long[] getCacheHits();
+    /** Misses of each cache in getCacheNames. */
+    long[] getCacheMisses();
+    
+    /** Number of garbage collections. */
+    int getGCCount();
+    /** Total time spent in garbage collection, in milliseconds. */
+    long getGCTime();
+    /** Number of reorderings. */
+    int getReorderCount();
+    /** Total time spent reordering, in milliseconds. */
+    long getReorderTime();
+    /** Number of node table resizes. */
+    int getResizeCount();
+    
+}
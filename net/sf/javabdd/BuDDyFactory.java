@@ -355,6 +355,208 @@ public class BuDDyFactory extends BDDFactory {
     }
     private static native int nithVar0(int var);
 
+    /* Handles are BuDDy node numbers.  BuDDy hands back unreferenced
+     * results, so every result gets a reference before it is returned. */
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handle(net.sf.javabdd.BDD)
+     */
+    public int handle(BDD b) {
+        int id = ((BuDDyBDD) b)._id;
+        BuDDyBDD.addRef(id);
+        return id;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleToBDD(int)
+     */
+    public BDD handleToBDD(int h) {
+        return makeBDD(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleAddRef(int)
+     */
+    public int handleAddRef(int h) {
+        BuDDyBDD.addRef(h);
+        return h;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleDelRef(int)
+     */
+    public void handleDelRef(int h) {
+        BuDDyBDD.delRef(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleZero()
+     */
+    public int handleZero() {
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleOne()
+     */
+    public int handleOne() {
+        return 1;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIthVar(int)
+     */
+    public int handleIthVar(int var) {
+        return handleAddRef(ithVar0(var));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNithVar(int)
+     */
+    public int handleNithVar(int var) {
+        return handleAddRef(nithVar0(var));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIsZero(int)
+     */
+    public boolean handleIsZero(int h) {
+        return h == 0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIsOne(int)
+     */
+    public boolean handleIsOne(int h) {
+        return h == 1;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleEquals(int, int)
+     */
+    public boolean handleEquals(int a, int b) {
+        return a == b;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleVar(int)
+     */
+    public int handleVar(int h) {
+        return BuDDyBDD.var0(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleLow(int)
+     */
+    public int handleLow(int h) {
+        return handleAddRef(BuDDyBDD.low0(h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleHigh(int)
+     */
+    public int handleHigh(int h) {
+        return handleAddRef(BuDDyBDD.high0(h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNot(int)
+     */
+    public int handleNot(int h) {
+        return handleAddRef(BuDDyBDD.not0(h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleApply(int, int, net.sf.javabdd.BDDFactory.BDDOp)
+     */
+    public int handleApply(int a, int b, BDDOp op) {
+        return handleAddRef(BuDDyBDD.apply0(a, b, op.id));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIte(int, int, int)
+     */
+    public int handleIte(int f, int g, int h) {
+        return handleAddRef(BuDDyBDD.ite0(f, g, h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleExist(int, int)
+     */
+    public int handleExist(int h, int varset) {
+        return handleAddRef(BuDDyBDD.exist0(h, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleForAll(int, int)
+     */
+    public int handleForAll(int h, int varset) {
+        return handleAddRef(BuDDyBDD.forAll0(h, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleApplyEx(int, int, net.sf.javabdd.BDDFactory.BDDOp, int)
+     */
+    public int handleApplyEx(int a, int b, BDDOp op, int varset) {
+        return handleAddRef(BuDDyBDD.applyEx0(a, b, op.id, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleRelprod(int, int, int)
+     */
+    public int handleRelprod(int a, int b, int varset) {
+        return handleAddRef(BuDDyBDD.relprod0(a, b, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleReplace(int, net.sf.javabdd.BDDPairing)
+     */
+    public int handleReplace(int h, BDDPairing pair) {
+        return handleAddRef(BuDDyBDD.replace0(h, ((BuDDyBDDPairing) pair)._ptr));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleSatCount(int)
+     */
+    public double handleSatCount(int h) {
+        return BuDDyBDD.satCount0(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNodeCount(int)
+     */
+    public int handleNodeCount(int h) {
+        return BuDDyBDD.nodeCount0(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeRoot(net.sf.javabdd.BDD)
+     */
+    protected int nodeRoot(BDD r) {
+        return ((BuDDyBDD) r)._id;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeLevel(int)
+     */
+    protected int nodeLevel(int n) {
+        return var2Level0(BuDDyBDD.var0(n));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeLow(int)
+     */
+    protected int nodeLow(int n) {
+        return BuDDyBDD.low0(n);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeHigh(int)
+     */
+    protected int nodeHigh(int n) {
+        return BuDDyBDD.high0(n);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#swapVar(int, int)
      */
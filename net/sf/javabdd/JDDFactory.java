@@ -687,6 +687,36 @@ public class JDDFactory extends BDDFactory {
         return new bdd(bdd.not(vars[v]));
     }
 
+    /* JDD numbers its nodes, with 0 and 1 as the constants. */
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeRoot(net.sf.javabdd.BDD)
+     */
+    protected int nodeRoot(BDD r) {
+        return ((bdd) r)._index;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeLevel(int)
+     */
+    protected int nodeLevel(int n) {
+        return bdd.getVar(n);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeLow(int)
+     */
+    protected int nodeLow(int n) {
+        return bdd.getLow(n);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeHigh(int)
+     */
+    protected int nodeHigh(int n) {
+        return bdd.getHigh(n);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#printAll()
      */
@@ -12,11 +12,27 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * <p>This is a 100% Java implementation of the BDD factory.  It is based on
@@ -48,6 +64,10 @@ public class JFactory extends BDDFactory {
     }
 
     static final boolean USE_FINALIZER = false;
+    /* Whether a garbage collection clears the operation caches.  Setting it
+     * to false lets the entries whose nodes are all still alive survive a
+     * full collection, which is usually faster; young collections always
+     * keep them */
     public static boolean FLUSH_CACHE_ON_GC = true;
     
     /**
@@ -61,9 +81,13 @@ public class JFactory extends BDDFactory {
                 System.out.println("Created "+System.identityHashCode(b)+" id "+id);
                 new Exception().printStackTrace(System.out);
             }
+        } else if (bddconcurrent) {
+            b = new bddConcurrent(id);
         } else {
             b = new bdd(id);
         }
+        if (trackedbdds != null)
+            bdd_track(b);
         return b;
     }
     
@@ -154,6 +178,15 @@ public class JFactory extends BDDFactory {
             return makeBDD(bdd_relprod(x, y, z));
         }
 
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#relprod(net.sf.javabdd.BDD, net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD relprod(BDD that, BDDQuantSet var) {
+            int x = _index;
+            int y = ((bdd) that)._index;
+            return makeBDD(bdd_appex_set(x, y, bddop_and, (bddQuantSet) var));
+        }
+
         /* (non-Javadoc)
          * @see net.sf.javabdd.BDD#compose(net.sf.javabdd.BDD, int)
          */
@@ -189,6 +222,14 @@ public class JFactory extends BDDFactory {
             return makeBDD(bdd_exist(x, y));
         }
 
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#exist(net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD exist(BDDQuantSet var) {
+            int x = _index;
+            return makeBDD(bdd_quant_set(x, (bddQuantSet) var, false));
+        }
+
         /* (non-Javadoc)
          * @see net.sf.javabdd.BDD#forAll(net.sf.javabdd.BDD)
          */
@@ -198,6 +239,14 @@ public class JFactory extends BDDFactory {
             return makeBDD(bdd_forall(x, y));
         }
 
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#forAll(net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD forAll(BDDQuantSet var) {
+            int x = _index;
+            return makeBDD(bdd_quant_set(x, (bddQuantSet) var, true));
+        }
+
         /* (non-Javadoc)
          * @see net.sf.javabdd.BDD#unique(net.sf.javabdd.BDD)
          */
@@ -296,6 +345,16 @@ public class JFactory extends BDDFactory {
             return makeBDD(bdd_appex(x, y, z, a));
         }
 
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyEx(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD applyEx(BDD that, BDDOp opr, BDDQuantSet var) {
+            int x = _index;
+            int y = ((bdd) that)._index;
+            int z = opr.id;
+            return makeBDD(bdd_appex_set(x, y, z, (bddQuantSet) var));
+        }
+
         /* (non-Javadoc)
          * @see net.sf.javabdd.BDD#applyUni(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
          */
@@ -428,198 +487,660 @@ public class JFactory extends BDDFactory {
         
     }
     
-    static final int REF_MASK = 0xFFC00000;
-    static final int MARK_MASK = 0x00200000;
-    static final int LEV_MASK = 0x001FFFFF;
-    static final int MAXVAR = LEV_MASK;
-    static final int INVALID_BDD = -1;
-
-    static final int REF_INC = 0x00400000;
-    
-    static final int offset__refcou_and_level = 0;
-    static final int offset__low = 1;
-    static final int offset__high = 2;
-    static final int offset__hash = 3;
-    static final int offset__next = 4;
-    static final int __node_size = 5;
-    
-    private final boolean HASREF(int node) {
-        boolean r = (bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK) != 0;
-        return r;
-    }
-
-    private final void SETMAXREF(int node) {
-        bddnodes[node*__node_size + offset__refcou_and_level] |= REF_MASK;
-    }
+    /**
+     * Wrapper used when the factory is in concurrent mode.  Apply, quantification
+     * and relational product run on the shared node table under the kernel read
+     * lock; all other operations hold the kernel write lock.  Objects that are
+     * still used after concurrent mode has been turned off run sequentially.
+     */
+    private class bddConcurrent extends bdd {
 
-    private final void CLEARREF(int node) {
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~REF_MASK;
-    }
+        bddConcurrent(int index) {
+            super(index);
+        }
 
-    private final void INCREF(int node) {
-        if ((bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK) != REF_MASK)
-            bddnodes[node*__node_size + offset__refcou_and_level] += REF_INC;
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#apply(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp)
+         */
+        public BDD apply(BDD that, BDDOp opr) {
+            if (!bddconcurrent)
+                return super.apply(that, opr);
+            int x = _index;
+            int y = ((bdd) that)._index;
+            return makeBDDConcurrent(concurrent_run(CONCURRENT_APPLY, x, y, opr.id, 0));
+        }
 
-    private final void DECREF(int node) {
-        int rc = bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK;
-        if (rc != REF_MASK && rc != 0)
-            bddnodes[node*__node_size + offset__refcou_and_level] -= REF_INC;
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyWith(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp)
+         */
+        public BDD applyWith(BDD that, BDDOp opr) {
+            if (!bddconcurrent)
+                return super.applyWith(that, opr);
+            int x = _index;
+            int y = ((bdd) that)._index;
+            int a = concurrent_run(CONCURRENT_APPLY, x, y, opr.id, 0);
+            bdd_delref(x);
+            if (this != that)
+                that.free();
+            this._index = a;
+            return this;
+        }
 
-    private final int GETREF(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] >>> 22;
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#exist(net.sf.javabdd.BDD)
+         */
+        public BDD exist(BDD var) {
+            if (!bddconcurrent)
+                return super.exist(var);
+            int x = _index;
+            int y = ((bdd) var)._index;
+            return makeBDDConcurrent(concurrent_run(CONCURRENT_EXIST, x, 0, bddop_or, y));
+        }
 
-    private final int LEVEL(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] & LEV_MASK;
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#forAll(net.sf.javabdd.BDD)
+         */
+        public BDD forAll(BDD var) {
+            if (!bddconcurrent)
+                return super.forAll(var);
+            int x = _index;
+            int y = ((bdd) var)._index;
+            return makeBDDConcurrent(concurrent_run(CONCURRENT_FORALL, x, 0, bddop_and, y));
+        }
 
-    private final int LEVELANDMARK(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] & (LEV_MASK | MARK_MASK);
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#relprod(net.sf.javabdd.BDD, net.sf.javabdd.BDD)
+         */
+        public BDD relprod(BDD that, BDD var) {
+            if (!bddconcurrent)
+                return super.relprod(that, var);
+            int x = _index;
+            int y = ((bdd) that)._index;
+            int z = ((bdd) var)._index;
+            return makeBDDConcurrent(concurrent_run(CONCURRENT_APPEX, x, y, bddop_and, z));
+        }
 
-    private final void SETLEVEL(int node, int val) {
-        if (VERIFY_ASSERTIONS) _assert(val == (val & LEV_MASK));
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~LEV_MASK;
-        bddnodes[node*__node_size + offset__refcou_and_level] |= val;
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyEx(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
+         */
+        public BDD applyEx(BDD that, BDDOp opr, BDD var) {
+            if (!bddconcurrent)
+                return super.applyEx(that, opr, var);
+            int x = _index;
+            int y = ((bdd) that)._index;
+            int z = ((bdd) var)._index;
+            return makeBDDConcurrent(concurrent_run(CONCURRENT_APPEX, x, y, opr.id, z));
+        }
 
-    private final void SETLEVELANDMARK(int node, int val) {
-        if (VERIFY_ASSERTIONS) _assert(val == (val & (LEV_MASK | MARK_MASK)));
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~(LEV_MASK | MARK_MASK);
-        bddnodes[node*__node_size + offset__refcou_and_level] |= val;
-    }
+        /* Quant sets keep their table in the factory, which the workers
+         * do not share; use the cube instead. */
 
-    private final void SETMARK(int n) {
-        bddnodes[n*__node_size + offset__refcou_and_level] |= MARK_MASK;
-    }
-    
-    private final void UNMARK(int n) {
-        bddnodes[n*__node_size + offset__refcou_and_level] &= ~MARK_MASK;
-    }
-    
-    private final boolean MARKED(int n) {
-        return (bddnodes[n*__node_size + offset__refcou_and_level] & MARK_MASK) != 0;
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#exist(net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD exist(BDDQuantSet var) {
+            if (!bddconcurrent)
+                return super.exist(var);
+            return exist(var.set);
+        }
 
-    private final int LOW(int r) {
-        return bddnodes[r*__node_size + offset__low];
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#forAll(net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD forAll(BDDQuantSet var) {
+            if (!bddconcurrent)
+                return super.forAll(var);
+            return forAll(var.set);
+        }
 
-    private final void SETLOW(int r, int v) {
-        bddnodes[r*__node_size + offset__low] = v;
-    }
-    
-    private final int HIGH(int r) {
-        return bddnodes[r*__node_size + offset__high];
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#relprod(net.sf.javabdd.BDD, net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD relprod(BDD that, BDDQuantSet var) {
+            if (!bddconcurrent)
+                return super.relprod(that, var);
+            return relprod(that, var.set);
+        }
 
-    private final void SETHIGH(int r, int v) {
-        bddnodes[r*__node_size + offset__high] = v;
-    }
-    
-    private final int HASH(int r) {
-        return bddnodes[r*__node_size + offset__hash];
-    }
-    
-    private final void SETHASH(int r, int v) {
-        bddnodes[r*__node_size + offset__hash] = v;
-    }
-    
-    private final int NEXT(int r) {
-        return bddnodes[r*__node_size + offset__next];
-    }
-    
-    private final void SETNEXT(int r, int v) {
-        bddnodes[r*__node_size + offset__next] = v;
-    }
-    
-    private final int VARr(int n) {
-        return LEVELANDMARK(n);
-    }
-    
-    void SETVARr(int n, int val) {
-        SETLEVELANDMARK(n, val);
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyEx(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDDQuantSet)
+         */
+        public BDD applyEx(BDD that, BDDOp opr, BDDQuantSet var) {
+            if (!bddconcurrent)
+                return super.applyEx(that, opr, var);
+            return applyEx(that, opr, var.set);
+        }
 
-    static final void _assert(boolean b) {
-        if (!b)
-            throw new InternalError();
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#not()
+         */
+        public BDD not() {
+            concurrent_lock();
+            try {
+                return super.not();
+            } finally {
+                concurrent_unlock();
+            }
+        }
 
-    private abstract static class BddCacheData {
-        int a, b, c;
-        abstract BddCacheData copy();
-    }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#ite(net.sf.javabdd.BDD, net.sf.javabdd.BDD)
+         */
+        public BDD ite(BDD thenBDD, BDD elseBDD) {
+            concurrent_lock();
+            try {
+                return super.ite(thenBDD, elseBDD);
+            } finally {
+                concurrent_unlock();
+            }
+        }
 
-    private static class BddCacheDataI extends BddCacheData {
-        int res;
-        BddCacheData copy() {
-            BddCacheDataI that = new BddCacheDataI();
-            that.a = this.a;
-            that.b = this.b;
-            that.c = this.c;
-            that.res = this.res;
-            return that;
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#compose(net.sf.javabdd.BDD, int)
+         */
+        public BDD compose(BDD g, int var) {
+            concurrent_lock();
+            try {
+                return super.compose(g, var);
+            } finally {
+                concurrent_unlock();
+            }
         }
-    }
 
-    private static class BddCacheDataD extends BddCacheData {
-        double dres;
-        BddCacheData copy() {
-            BddCacheDataD that = new BddCacheDataD();
-            that.a = this.a;
-            that.b = this.b;
-            that.c = this.c;
-            that.dres = this.dres;
-            return that;
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#veccompose(net.sf.javabdd.BDDPairing)
+         */
+        public BDD veccompose(BDDPairing pair) {
+            concurrent_lock();
+            try {
+                return super.veccompose(pair);
+            } finally {
+                concurrent_unlock();
+            }
         }
-    }
 
-    private static class BddCache {
-        BddCacheData table[];
-        int tablesize;
-        
-        BddCache copy() {
-            BddCache that = new BddCache();
-            boolean is_d = this.table instanceof BddCacheDataD[];
-            if (is_d) {
-                that.table = new BddCacheDataD[this.table.length];
-            } else {
-                that.table = new BddCacheDataI[this.table.length];
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#constrain(net.sf.javabdd.BDD)
+         */
+        public BDD constrain(BDD that) {
+            concurrent_lock();
+            try {
+                return super.constrain(that);
+            } finally {
+                concurrent_unlock();
             }
-            that.tablesize = this.tablesize;
-            for (int i = 0; i < table.length; ++i) {
-                that.table[i] = this.table[i].copy();
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#unique(net.sf.javabdd.BDD)
+         */
+        public BDD unique(BDD var) {
+            concurrent_lock();
+            try {
+                return super.unique(var);
+            } finally {
+                concurrent_unlock();
             }
-            return that;
         }
-    }
 
-    private static class JavaBDDException extends BDDException {
-        /**
-         * Version ID for serialization.
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#restrict(net.sf.javabdd.BDD)
          */
-        private static final long serialVersionUID = 3257289144995952950L;
+        public BDD restrict(BDD var) {
+            concurrent_lock();
+            try {
+                return super.restrict(var);
+            } finally {
+                concurrent_unlock();
+            }
+        }
 
-        public JavaBDDException(int x) {
-            super(errorstrings[-x]);
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#restrictWith(net.sf.javabdd.BDD)
+         */
+        public BDD restrictWith(BDD that) {
+            concurrent_lock();
+            try {
+                return super.restrictWith(that);
+            } finally {
+                concurrent_unlock();
+            }
         }
-    }
 
-    private static class ReorderException extends RuntimeException {
-        /**
-         * Version ID for serialization.
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#simplify(net.sf.javabdd.BDD)
          */
-        private static final long serialVersionUID = 3256727264505772345L;
-    }
-    
-    static final int bddtrue = 1;
-    static final int bddfalse = 0;
+        public BDD simplify(BDD d) {
+            concurrent_lock();
+            try {
+                return super.simplify(d);
+            } finally {
+                concurrent_unlock();
+            }
+        }
 
-    static final int BDDONE = 1;
-    static final int BDDZERO = 0;
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#support()
+         */
+        public BDD support() {
+            concurrent_lock();
+            try {
+                return super.support();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyAll(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
+         */
+        public BDD applyAll(BDD that, BDDOp opr, BDD var) {
+            concurrent_lock();
+            try {
+                return super.applyAll(that, opr, var);
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyUni(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
+         */
+        public BDD applyUni(BDD that, BDDOp opr, BDD var) {
+            concurrent_lock();
+            try {
+                return super.applyUni(that, opr, var);
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#satOne()
+         */
+        public BDD satOne() {
+            concurrent_lock();
+            try {
+                return super.satOne();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#fullSatOne()
+         */
+        public BDD fullSatOne() {
+            concurrent_lock();
+            try {
+                return super.fullSatOne();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#satOne(net.sf.javabdd.BDD, boolean)
+         */
+        public BDD satOne(BDD var, boolean pol) {
+            concurrent_lock();
+            try {
+                return super.satOne(var, pol);
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#replace(net.sf.javabdd.BDDPairing)
+         */
+        public BDD replace(BDDPairing pair) {
+            concurrent_lock();
+            try {
+                return super.replace(pair);
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#replaceWith(net.sf.javabdd.BDDPairing)
+         */
+        public BDD replaceWith(BDDPairing pair) {
+            concurrent_lock();
+            try {
+                return super.replaceWith(pair);
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#nodeCount()
+         */
+        public int nodeCount() {
+            concurrent_lock();
+            try {
+                return super.nodeCount();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#pathCount()
+         */
+        public double pathCount() {
+            concurrent_lock();
+            try {
+                return super.pathCount();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#satCount()
+         */
+        public double satCount() {
+            concurrent_lock();
+            try {
+                return super.satCount();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#varProfile()
+         */
+        public int[] varProfile() {
+            concurrent_lock();
+            try {
+                return super.varProfile();
+            } finally {
+                concurrent_unlock();
+            }
+        }
+
+    }
+    
+    /* Takes the kernel write lock, if the factory is still in concurrent
+     * mode */
+    void concurrent_lock() {
+        ReentrantReadWriteLock l = kernellock;
+        if (l != null)
+            l.writeLock().lock();
+    }
+
+    void concurrent_unlock() {
+        ReentrantReadWriteLock l = kernellock;
+        if (l != null)
+            l.writeLock().unlock();
+    }
+
+    /**
+     * Creates a BDD object for a result of concurrent_run(), which already
+     * carries a reference.
+     */
+    private bdd makeBDDConcurrent(int id) {
+        bdd b = makeBDD(id);
+        bdd_delref(id);
+        return b;
+    }
+
+    static final int REF_MASK = 0xFFC00000;
+    static final int MARK_MASK = 0x00200000;
+    static final int LEV_MASK = 0x001FFFFF;
+    static final int MAXVAR = LEV_MASK;
+    static final int INVALID_BDD = -1;
+
+    static final int REF_INC = 0x00400000;
+
+    /* With complement edges, the sign bit of a reference is the tag */
+    static final int CMPL_MASK = 0x80000000;
+    static final int NODE_MASK = 0x7FFFFFFF;
+    
+    static final int offset__refcou_and_level = 0;
+    static final int offset__low = 1;
+    static final int offset__high = 2;
+    static final int offset__hash = 3;
+    static final int offset__next = 4;
+    static final int __node_size = 5;
+    /* The compact layout leaves out hash and next; free nodes are linked
+     * through their high field instead. */
+    static final int __compact_node_size = 3;
+    
+    /* Nodes per page when the node table is kept off-heap */
+    static final int NODE_PAGE_BITS = 16;
+    static final int NODE_PAGE_SIZE = 1 << NODE_PAGE_BITS;
+    static final int NODE_PAGE_MASK = NODE_PAGE_SIZE - 1;
+
+    private final int GETNODE(int node, int offset) {
+        node &= NODE_MASK;
+        int[] nodes = bddnodes;
+        if (nodes != null)
+            return nodes[node*nodestride + offset];
+        if (nodepages != null)
+            return nodepages[node >>> NODE_PAGE_BITS][(node & NODE_PAGE_MASK)*nodestride + offset];
+        return nodebuffers[node >>> NODE_PAGE_BITS].get((node & NODE_PAGE_MASK)*__node_size + offset);
+    }
+
+    private final void SETNODE(int node, int offset, int v) {
+        node &= NODE_MASK;
+        int[] nodes = bddnodes;
+        if (nodes != null)
+            nodes[node*nodestride + offset] = v;
+        else if (nodepages != null)
+            nodepages[node >>> NODE_PAGE_BITS][(node & NODE_PAGE_MASK)*nodestride + offset] = v;
+        else
+            nodebuffers[node >>> NODE_PAGE_BITS].put((node & NODE_PAGE_MASK)*__node_size + offset, v);
+    }
+
+    private final boolean HASREF(int node) {
+        boolean r = (GETNODE(node, offset__refcou_and_level) & REF_MASK) != 0;
+        return r;
+    }
+
+    private final void SETMAXREF(int node) {
+        SETNODE(node, offset__refcou_and_level, GETNODE(node, offset__refcou_and_level) | REF_MASK);
+    }
+
+    private final void CLEARREF(int node) {
+        SETNODE(node, offset__refcou_and_level, GETNODE(node, offset__refcou_and_level) & ~REF_MASK);
+    }
+
+    private final void INCREF(int node) {
+        int w = GETNODE(node, offset__refcou_and_level);
+        if ((w & REF_MASK) != REF_MASK)
+            SETNODE(node, offset__refcou_and_level, w + REF_INC);
+    }
+
+    private final void DECREF(int node) {
+        int w = GETNODE(node, offset__refcou_and_level);
+        int rc = w & REF_MASK;
+        if (rc != REF_MASK && rc != 0)
+            SETNODE(node, offset__refcou_and_level, w - REF_INC);
+    }
+
+    private final int GETREF(int node) {
+        return GETNODE(node, offset__refcou_and_level) >>> 22;
+    }
+
+    private final int LEVEL(int node) {
+        return GETNODE(node, offset__refcou_and_level) & LEV_MASK;
+    }
+
+    private final int LEVELANDMARK(int node) {
+        return GETNODE(node, offset__refcou_and_level) & (LEV_MASK | MARK_MASK);
+    }
+
+    private final void SETLEVEL(int node, int val) {
+        if (VERIFY_ASSERTIONS) _assert(val == (val & LEV_MASK));
+        int w = GETNODE(node, offset__refcou_and_level);
+        SETNODE(node, offset__refcou_and_level, (w & ~LEV_MASK) | val);
+    }
+
+    private final void SETLEVELANDMARK(int node, int val) {
+        if (VERIFY_ASSERTIONS) _assert(val == (val & (LEV_MASK | MARK_MASK)));
+        int w = GETNODE(node, offset__refcou_and_level);
+        SETNODE(node, offset__refcou_and_level, (w & ~(LEV_MASK | MARK_MASK)) | val);
+    }
+
+    private final void SETMARK(int n) {
+        SETNODE(n, offset__refcou_and_level, GETNODE(n, offset__refcou_and_level) | MARK_MASK);
+    }
+    
+    private final void UNMARK(int n) {
+        SETNODE(n, offset__refcou_and_level, GETNODE(n, offset__refcou_and_level) & ~MARK_MASK);
+    }
+    
+    private final boolean MARKED(int n) {
+        return (GETNODE(n, offset__refcou_and_level) & MARK_MASK) != 0;
+    }
+
+    private final int LOW(int r) {
+        int v = GETNODE(r, offset__low);
+        return r < 0 ? NEG(v) : v;
+    }
+
+    private final void SETLOW(int r, int v) {
+        SETNODE(r, offset__low, v);
+    }
+    
+    private final int HIGH(int r) {
+        int v = GETNODE(r, offset__high);
+        return r < 0 ? NEG(v) : v;
+    }
+
+    /* Negation of a reference with complement edges; the constants are
+     * never tagged */
+    static final int NEG(int r) {
+        return (r >>> 1) == 0 ? r ^ 1 : r ^ CMPL_MASK;
+    }
+
+    private final void SETHIGH(int r, int v) {
+        SETNODE(r, offset__high, v);
+    }
+    
+    private final int HASH(int r) {
+        if (uniquetable != null)
+            return uniquetable.get(r);
+        return GETNODE(r, offset__hash);
+    }
+    
+    private final void SETHASH(int r, int v) {
+        if (uniquetable != null)
+            uniquetable.lazySet(r, v);
+        else
+            SETNODE(r, offset__hash, v);
+    }
+    
+    private final int NEXT(int r) {
+        return GETNODE(r, nextoffset);
+    }
+    
+    private final void SETNEXT(int r, int v) {
+        SETNODE(r, nextoffset, v);
+    }
+    
+    private final int VARr(int n) {
+        return LEVELANDMARK(n);
+    }
+    
+    void SETVARr(int n, int val) {
+        SETLEVELANDMARK(n, val);
+    }
+
+    static final void _assert(boolean b) {
+        if (!b)
+            throw new InternalError();
+    }
+
+    /* Operation cache entries are packed into primitive arrays: five ints
+     * (a, b, c, res, tag) per entry for the integer caches, and three longs
+     * (key, result, tag) per entry for the counting caches, so an entry and
+     * its epoch tag are read together. */
+    static final int __cache_entry_size = 5;
+    static final int offset__cache_a = 0;
+    static final int offset__cache_b = 1;
+    static final int offset__cache_c = 2;
+    static final int offset__cache_res = 3;
+    static final int offset__cache_tag = 4;
+
+    static final int __dcache_entry_size = 3;
+    static final int offset__cache_key = 0;
+    static final int offset__cache_dres = 1;
+    static final int offset__cache_dtag = 2;
+
+    private static final long CACHEKEY(int a, int c) {
+        return ((long) a << 32) | (c & 0xFFFFFFFFL);
+    }
+
+    /* Fields of an integer cache entry that hold nodes, besides a and res */
+    static final int CACHE_NODES_A = 0;
+    static final int CACHE_NODES_AB = 1;
+    static final int CACHE_NODES_ABC = 2;
+
+    /* The caches of the factory tag each entry with the cache epoch in which
+     * it was last looked up.  Each garbage collection starts a new epoch,
+     * and stores the epoch in which a node was freed in the reference count
+     * and level word of the free node.  When a free node is reused, the
+     * epoch goes to nodereused[], which keeps the highest such epoch for
+     * each block of REUSE_BLOCK nodes.  An entry from an older epoch is
+     * still valid if none of its nodes has been freed since its tag, which
+     * is checked the first time it is looked up in the new epoch.  A reset
+     * only raises the floor below which tags are invalid.  Caches of the
+     * concurrent workers have no tags, and are cleared instead. */
+    private static class BddCache {
+        int table[];
+        long dtable[];
+        int tablesize;
+        boolean tagged; /* Whether the entries carry epoch tags */
+        int floor; /* Entries tagged before this epoch are invalid */
+        int nodes; /* CACHE_NODES_* */
+        
+        BddCache copy() {
+            BddCache that = new BddCache();
+            if (this.table != null) {
+                that.table = new int[this.table.length];
+                System.arraycopy(this.table, 0, that.table, 0, this.table.length);
+            }
+            if (this.dtable != null) {
+                that.dtable = new long[this.dtable.length];
+                System.arraycopy(this.dtable, 0, that.dtable, 0, this.dtable.length);
+            }
+            that.tablesize = this.tablesize;
+            that.tagged = this.tagged;
+            that.floor = this.floor;
+            that.nodes = this.nodes;
+            return that;
+        }
+    }
+
+    private static class JavaBDDException extends BDDException {
+        /**
+         * Version ID for serialization.
+         */
+        private static final long serialVersionUID = 3257289144995952950L;
+
+        public JavaBDDException(int x) {
+            super(errorstrings[-x]);
+        }
+    }
+
+    private static class ReorderException extends RuntimeException {
+        /**
+         * Version ID for serialization.
+         */
+        private static final long serialVersionUID = 3256727264505772345L;
+    }
+    
+    static final int bddtrue = 1;
+    static final int bddfalse = 0;
+
+    static final int BDDONE = 1;
+    static final int BDDZERO = 0;
 
     boolean bddrunning; /* Flag - package initialized */
     int bdderrorcond; /* Some error condition */
@@ -627,6 +1148,10 @@ public class JFactory extends BDDFactory {
     int bddmaxnodesize; /* Maximum allowed number of nodes */
     int bddmaxnodeincrease; /* Max. # of nodes used to inc. table */
     int[] bddnodes; /* All of the bdd nodes */
+    IntBuffer[] nodebuffers; /* Off-heap node pages, or null */
+    int[][] nodepages; /* Heap node pages of a segmented table, or null */
+    int snapbase; /* Nodes below this belong to a mapped snapshot */
+    int[] snaproots; /* Root nodes of the mapped snapshot */
     int bddfreepos; /* First free node */
     int bddfreenum; /* Number of free nodes */
     int bddproduced; /* Number of new nodes ever produced */
@@ -636,6 +1161,8 @@ public class JFactory extends BDDFactory {
     int[] bddvar2level; /* Variable -> level table */
     int[] bddlevel2var; /* Level -> variable table */
     boolean bddresized; /* Flag indicating a resize of the nodetable */
+    boolean bddconcurrent; /* Flag - concurrent mode enabled */
+    AtomicIntegerArray uniquetable; /* Unique table heads in concurrent mode */
 
     int minfreenodes = 20;
 
@@ -646,6 +1173,29 @@ public class JFactory extends BDDFactory {
     int cachesize; /* Size of the operator caches */
     long gbcclock; /* Clock ticks used in GBC */
     int usednodes_nextreorder; /* When to do reorder next time */
+    ReentrantReadWriteLock kernellock; /* Guards the kernel in concurrent mode */
+    Object freelock; /* Guards the free list in concurrent mode */
+    Object reflock; /* Guards reference counts in concurrent mode */
+    BddWorkers workers; /* Per-thread state in concurrent mode */
+    int workerepoch; /* Changed whenever free nodes are reshuffled */
+    ExecutorService parallelpool; /* Threads for parallel apply/relprod */
+    int parallelthreads = 1; /* Number of threads in parallelpool */
+    boolean parallelconcurrent; /* Concurrent mode was enabled for parallelpool */
+    int paralleldepth; /* Recursion depth below which work is not split */
+    volatile boolean concurrentprogress; /* A concurrent operation finished */
+    ExecutorService reorderpool; /* Threads for parallel reordering */
+    int reorderthreads = 1; /* Number of threads in reorderpool */
+    Object[] reorderstripes; /* Guards reference counts in parallel reordering */
+    ReorderWorker[] reorderworkers; /* Blocks being reordered in parallel */
+    BddThreadSlot reorderworker; /* Block of the current reordering thread */
+    ReentrantReadWriteLock reorderlock; /* Held by a block during a level swap */
+    int[] gcyoung; /* Bitmap of the nodes built since the last collection */
+    int gcyoungfreed; /* Young nodes freed by the last collection */
+    boolean bddcomplement; /* References carry a complement tag */
+    int refmask = -1; /* Strips the complement tag off a reference */
+    int nodestride = __node_size; /* Ints per node in bddnodes */
+    int nextoffset = offset__next; /* Field holding the next node link */
+    int[] uniqueindex; /* Open-addressing unique table of the compact layout */
 
     static final int BDD_MEMORY = (-1); /* Out of memory */
     static final int BDD_VAR = (-2); /* Unknown variable */
@@ -681,8 +1231,18 @@ public class JFactory extends BDDFactory {
     static final int BVEC_SHIFT = (-21);
     /* Illegal shift-left/right parameter */
     static final int BVEC_DIVZERO = (-22); /* Division by zero */
-
-    static final int BDD_ERRNUM = 24;
+    static final int BDD_SNAPSHOT = (-23);
+    /* Reordering with a mapped snapshot */
+    static final int BDD_COMPLEMENT = (-24);
+    /* Mode not available with complement edges */
+    static final int BDD_LAYOUT = (-25);
+    /* Mode not available with the compact node layout */
+    static final int BDD_DIAGRAM = (-26);
+    /* Reordering while ZDDs or ADDs are in use */
+    static final int BDD_COMPACT = (-27);
+    /* Compaction in concurrent mode or with a mapped snapshot */
+
+    static final int BDD_ERRNUM = 28;
 
     /* Strings for all error mesages */
     static String errorstrings[] =
@@ -709,7 +1269,12 @@ public class JFactory extends BDDFactory {
             "Bad size argument",
             "Mismatch in bitvector size",
             "Illegal shift-left/right parameter",
-            "Division by zero" };
+            "Division by zero",
+            "Cannot reorder variables of a mapped snapshot",
+            "Not available with complement edges, which are set before the variables",
+            "Not available with the compact node layout",
+            "Cannot reorder variables while ZDDs or ADDs are in use",
+            "Cannot compact the node table in concurrent mode or with a mapped snapshot" };
 
     static final int DEFAULTMAXNODEINC = 10000000;
 
@@ -725,6 +1290,8 @@ public class JFactory extends BDDFactory {
     }
 
     final int NODEHASH(int lvl, int l, int h) {
+        if (snapbase > 0)
+            return snapbase + Math.abs(TRIPLE(lvl, l, h) % (bddnodesize - snapbase));
         return Math.abs(TRIPLE(lvl, l, h) % bddnodesize);
     }
 
@@ -778,15 +1345,17 @@ public class JFactory extends BDDFactory {
 
     static boolean ISCONST(int r) {
         //return r == bddfalse || r == bddtrue;
-        return r < 2;
+        return (r >>> 1) == 0;
     }
 
     void CHECK(int r) {
+        /* A complemented reference must be to a node */
+        int n = r & refmask;
         if (!bddrunning)
             bdd_error(BDD_RUNNING);
-        else if (r < 0 || r >= bddnodesize)
+        else if (n < 0 || n >= bddnodesize || (n < 2 && n != r))
             bdd_error(BDD_ILLBDD);
-        else if (r >= 2 && LOW(r) == INVALID_BDD)
+        else if (n >= 2 && LOW(n) == INVALID_BDD)
             bdd_error(BDD_ILLBDD);
     }
     void CHECKa(int r, int x) {
@@ -795,7 +1364,7 @@ public class JFactory extends BDDFactory {
 
     int bdd_var(int root) {
         CHECK(root);
-        if (root < 2)
+        if (ISCONST(root))
             bdd_error(BDD_ILLBDD);
 
         return (bddlevel2var[LEVEL(root)]);
@@ -803,7 +1372,7 @@ public class JFactory extends BDDFactory {
 
     int bdd_low(int root) {
         CHECK(root);
-        if (root < 2)
+        if (ISCONST(root))
             return bdd_error(BDD_ILLBDD);
 
         return (LOW(root));
@@ -811,7 +1380,7 @@ public class JFactory extends BDDFactory {
 
     int bdd_high(int root) {
         CHECK(root);
-        if (root < 2)
+        if (ISCONST(root))
             return bdd_error(BDD_ILLBDD);
 
         return (HIGH(root));
@@ -821,6 +1390,8 @@ public class JFactory extends BDDFactory {
         if (bddresized)
             bdd_operator_noderesize();
         bddresized = false;
+        if (cachebudget > 0)
+            bdd_cache_adapt();
     }
 
     static final int NOTHASH(int r) {
@@ -893,7 +1464,10 @@ public class JFactory extends BDDFactory {
         firstReorder = 1;
         CHECKa(r, bddfalse);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
+        if (bddcomplement)
+            return NEG(r);
+
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
         again : for (;;) {
             try {
                 INITREF();
@@ -918,32 +1492,35 @@ public class JFactory extends BDDFactory {
     }
 
     int not_rec(int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (ISZERO(r))
             return bddtrue;
         if (ISONE(r))
             return bddfalse;
+        if (bddcomplement)
+            return NEG(r);
+
+        table = applycache.table;
 
         entry = BddCache_lookupI(applycache, NOTHASH(r));
 
-        if (entry.a == r && entry.c == bddop_not) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == r && table[entry + offset__cache_c] == bddop_not) {
+            counters.cacheHit[CACHE_APPLY]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_APPLY]++;
 
         PUSHREF(not_rec(LOW(r)));
         PUSHREF(not_rec(HIGH(r)));
         res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
         POPREF(2);
 
-        entry.a = r;
-        entry.c = bddop_not;
-        entry.res = res;
+        table[entry + offset__cache_a] = r;
+        table[entry + offset__cache_c] = bddop_not;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -956,8 +1533,8 @@ public class JFactory extends BDDFactory {
         CHECKa(g, bddfalse);
         CHECKa(h, bddfalse);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (itecache == null) itecache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (itecache == null) itecache = BddCacheI_init(cachesize, CACHE_NODES_ABC);
         
         again : for (;;) {
             try {
@@ -984,7 +1561,8 @@ public class JFactory extends BDDFactory {
     }
 
     int ite_rec(int f, int g, int h) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (ISONE(f))
@@ -998,14 +1576,16 @@ public class JFactory extends BDDFactory {
         if (ISZERO(g) && ISONE(h))
             return not_rec(f);
 
+        table = itecache.table;
+
         entry = BddCache_lookupI(itecache, ITEHASH(f, g, h));
-        if (entry.a == f && entry.b == g && entry.c == h) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == g &&
+            table[entry + offset__cache_c] == h) {
+            counters.cacheHit[CACHE_ITE]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_ITE]++;
 
         if (LEVEL(f) == LEVEL(g)) {
             if (LEVEL(f) == LEVEL(h)) {
@@ -1053,10 +1633,10 @@ public class JFactory extends BDDFactory {
 
         POPREF(2);
 
-        entry.a = f;
-        entry.b = g;
-        entry.c = h;
-        entry.res = res;
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = g;
+        table[entry + offset__cache_c] = h;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -1067,7 +1647,7 @@ public class JFactory extends BDDFactory {
 
         CHECKa(r, bddfalse);
 
-        if (replacecache == null) replacecache = BddCacheI_init(cachesize);
+        if (replacecache == null) replacecache = BddCacheI_init(cachesize, CACHE_NODES_AB);
         
         again : for (;;) {
             try {
@@ -1097,20 +1677,23 @@ public class JFactory extends BDDFactory {
     }
 
     int replace_rec(int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (ISCONST(r) || LEVEL(r) > replacelast)
             return r;
+        if (r < 0) /* replace(~x) == ~replace(x) */
+            return NEG(replace_rec(NEG(r)));
+
+        table = replacecache.table;
 
         entry = BddCache_lookupI(replacecache, REPLACEHASH(r));
-        if (entry.a == r && entry.c == replaceid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == r && table[entry + offset__cache_c] == replaceid) {
+            counters.cacheHit[CACHE_REPLACE]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_REPLACE]++;
 
         PUSHREF(replace_rec(LOW(r)));
         PUSHREF(replace_rec(HIGH(r)));
@@ -1122,9 +1705,9 @@ public class JFactory extends BDDFactory {
                 READREF(1));
         POPREF(2);
 
-        entry.a = r;
-        entry.c = replaceid;
-        entry.res = res;
+        table[entry + offset__cache_a] = r;
+        table[entry + offset__cache_c] = replaceid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -1170,7 +1753,26 @@ public class JFactory extends BDDFactory {
             return bddfalse;
         }
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+
+        if (bfsapply)
+            return bdd_apply_bfs(l, r, op);
+
+        /* With complement edges, negation is free, so every operator is
+         * done as an and or an xor */
+        boolean negres = false;
+        if (bddcomplement) {
+            switch (op) {
+                case bddop_or: l = NEG(l); r = NEG(r); op = bddop_and; negres = true; break;
+                case bddop_nand: op = bddop_and; negres = true; break;
+                case bddop_nor: l = NEG(l); r = NEG(r); op = bddop_and; break;
+                case bddop_imp: r = NEG(r); op = bddop_and; negres = true; break;
+                case bddop_biimp: op = bddop_xor; negres = true; break;
+                case bddop_diff: r = NEG(r); op = bddop_and; break;
+                case bddop_less: l = NEG(l); op = bddop_and; break;
+                case bddop_invimp: l = NEG(l); op = bddop_and; negres = true; break;
+            }
+        }
         
         again : for (;;) {
             try {
@@ -1200,11 +1802,12 @@ public class JFactory extends BDDFactory {
         //validate(res);
         
         checkresize();
-        return res;
+        return negres ? NEG(res) : res;
     }
 
     int apply_rec(int l, int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (VERIFY_ASSERTIONS) _assert(applyop != bddop_and && applyop != bddop_or);
@@ -1217,6 +1820,18 @@ public class JFactory extends BDDFactory {
                     return r;
                 if (ISZERO(r))
                     return l;
+                if (bddcomplement) {
+                    /* x xor ~y == ~(x xor y), so only regular operands
+                     * go into the cache */
+                    if (ISONE(l))
+                        return NEG(r);
+                    if (ISONE(r))
+                        return NEG(l);
+                    if ((l | r) < 0) {
+                        res = apply_rec(l & NODE_MASK, r & NODE_MASK);
+                        return (l ^ r) < 0 ? NEG(res) : res;
+                    }
+                }
                 break;
             case bddop_nand :
                 if (ISZERO(l) || ISZERO(r))
@@ -1239,15 +1854,16 @@ public class JFactory extends BDDFactory {
         if (ISCONST(l) && ISCONST(r))
             res = oprres[applyop][l << 1 | r];
         else {
+            table = applycache.table;
             entry = BddCache_lookupI(applycache, APPLYHASH(l, r, applyop));
 
-            if (entry.a == l && entry.b == r && entry.c == applyop) {
-                if (CACHESTATS)
-                    cachestats.opHit++;
-                return entry.res;
+            if (table[entry + offset__cache_a] == l &&
+                table[entry + offset__cache_b] == r &&
+                table[entry + offset__cache_c] == applyop) {
+                counters.cacheHit[CACHE_APPLY]++;
+                return table[entry + offset__cache_res];
             }
-            if (CACHESTATS)
-                cachestats.opMiss++;
+            counters.cacheMiss[CACHE_APPLY]++;
 
             if (LEVEL(l) == LEVEL(r)) {
                 PUSHREF(apply_rec(LOW(l), LOW(r)));
@@ -1265,17 +1881,18 @@ public class JFactory extends BDDFactory {
 
             POPREF(2);
 
-            entry.a = l;
-            entry.b = r;
-            entry.c = applyop;
-            entry.res = res;
+            table[entry + offset__cache_a] = l;
+            table[entry + offset__cache_b] = r;
+            table[entry + offset__cache_c] = applyop;
+            table[entry + offset__cache_res] = res;
         }
 
         return res;
     }
 
     int and_rec(int l, int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (l == r)
@@ -1286,15 +1903,18 @@ public class JFactory extends BDDFactory {
             return r;
         if (ISONE(r))
             return l;
+        if ((l ^ r) == CMPL_MASK) /* x and ~x */
+            return 0;
+        table = applycache.table;
         entry = BddCache_lookupI(applycache, APPLYHASH(l, r, bddop_and));
 
-        if (entry.a == l && entry.b == r && entry.c == bddop_and) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == l &&
+            table[entry + offset__cache_b] == r &&
+            table[entry + offset__cache_c] == bddop_and) {
+            counters.cacheHit[CACHE_APPLY]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_APPLY]++;
 
         if (LEVEL(l) == LEVEL(r)) {
             PUSHREF(and_rec(LOW(l), LOW(r)));
@@ -1312,16 +1932,17 @@ public class JFactory extends BDDFactory {
 
         POPREF(2);
 
-        entry.a = l;
-        entry.b = r;
-        entry.c = bddop_and;
-        entry.res = res;
+        table[entry + offset__cache_a] = l;
+        table[entry + offset__cache_b] = r;
+        table[entry + offset__cache_c] = bddop_and;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
     
     int or_rec(int l, int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (l == r)
@@ -1332,15 +1953,18 @@ public class JFactory extends BDDFactory {
             return r;
         if (ISZERO(r))
             return l;
+        if ((l ^ r) == CMPL_MASK) /* x or ~x */
+            return 1;
+        table = applycache.table;
         entry = BddCache_lookupI(applycache, APPLYHASH(l, r, bddop_or));
 
-        if (entry.a == l && entry.b == r && entry.c == bddop_or) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == l &&
+            table[entry + offset__cache_b] == r &&
+            table[entry + offset__cache_c] == bddop_or) {
+            counters.cacheHit[CACHE_APPLY]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_APPLY]++;
 
         if (LEVEL(l) == LEVEL(r)) {
             PUSHREF(or_rec(LOW(l), LOW(r)));
@@ -1358,19 +1982,20 @@ public class JFactory extends BDDFactory {
 
         POPREF(2);
 
-        entry.a = l;
-        entry.b = r;
-        entry.c = bddop_or;
-        entry.res = res;
+        table[entry + offset__cache_a] = l;
+        table[entry + offset__cache_b] = r;
+        table[entry + offset__cache_c] = bddop_or;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
 
     int relprod_rec(int l, int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
-        if (l == 0 || r == 0)
+        if (l == 0 || r == 0 || (l ^ r) == CMPL_MASK)
             return 0;
         if (l == r)
             return quant_rec(l);
@@ -1386,14 +2011,15 @@ public class JFactory extends BDDFactory {
             res = and_rec(l, r);
             applyop = bddop_or;
         } else {
+            table = appexcache.table;
             entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
-                if (CACHESTATS)
-                    cachestats.opHit++;
-                return entry.res;
+            if (table[entry + offset__cache_a] == l &&
+                table[entry + offset__cache_b] == r &&
+                table[entry + offset__cache_c] == appexid) {
+                counters.cacheHit[CACHE_APPEX]++;
+                return table[entry + offset__cache_res];
             }
-            if (CACHESTATS)
-                cachestats.opMiss++;
+            counters.cacheMiss[CACHE_APPEX]++;
 
             if (LEVEL_l == LEVEL_r) {
                 PUSHREF(relprod_rec(LOW(l), LOW(r)));
@@ -1420,10 +2046,10 @@ public class JFactory extends BDDFactory {
 
             POPREF(2);
 
-            entry.a = l;
-            entry.b = r;
-            entry.c = appexid;
-            entry.res = res;
+            table[entry + offset__cache_a] = l;
+            table[entry + offset__cache_b] = r;
+            table[entry + offset__cache_c] = appexid;
+            table[entry + offset__cache_res] = res;
         }
 
         return res;
@@ -1446,12 +2072,12 @@ public class JFactory extends BDDFactory {
             return bddfalse;
         }
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return bdd_apply(l, r, opr);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (appexcache == null) appexcache = BddCacheI_init(cachesize);
-        if (quantcache == null) quantcache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (appexcache == null) appexcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             if (varset2vartable(var) < 0)
@@ -1484,10 +2110,68 @@ public class JFactory extends BDDFactory {
         return res;
     }
 
+    int bdd_appex_set(int l, int r, int opr, bddQuantSet q) {
+        int res;
+        firstReorder = 1;
+
+        int var = ((bdd) q.set)._index;
+        CHECKa(l, bddfalse);
+        CHECKa(r, bddfalse);
+        CHECKa(var, bddfalse);
+
+        if (opr < 0 || opr > bddop_invimp) {
+            bdd_error(BDD_OP);
+            return bddfalse;
+        }
+
+        if (ISCONST(var)) /* Empty set */
+            return bdd_apply(l, r, opr);
+
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (appexcache == null) appexcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
+
+        int[] oldvarset = quantvarset;
+        int oldvarsetID = quantvarsetID;
+        try {
+            again : for (;;) {
+                quantset2vartable(q);
+                try {
+                    INITREF();
+
+                    applyop = bddop_or;
+                    appexop = opr;
+                    appexid = (q.id << 5) | (appexop << 1);
+                    quantid = (appexid << 3) | CACHEID_APPEX;
+
+                    if (firstReorder == 0)
+                        bdd_disable_reorder();
+                    res = opr == bddop_and ? relprod_rec(l, r) : appquant_rec(l, r);
+                    if (firstReorder == 0)
+                        bdd_enable_reorder();
+                } catch (ReorderException x) {
+                    bdd_checkreorder();
+
+                    if (firstReorder-- == 1)
+                        continue again;
+                    res = BDDZERO;
+                    /* avoid warning about res being uninitialized */
+                }
+                break;
+            }
+        } finally {
+            quantvarset = oldvarset;
+            quantvarsetID = oldvarsetID;
+        }
+
+        checkresize();
+        return res;
+    }
+
     int varset2vartable(int r) {
         int n;
 
-        if (r < 2)
+        if (ISCONST(r))
             return bdd_error(BDD_VARSET);
 
         quantvarsetID++;
@@ -1499,7 +2183,7 @@ public class JFactory extends BDDFactory {
         }
 
         quantlast = -1;
-        for (n = r; n > 1; n = HIGH(n)) {
+        for (n = r; !ISCONST(n); n = HIGH(n)) {
             quantvarset[LEVEL(n)] = quantvarsetID;
             if (VERIFY_ASSERTIONS) _assert(quantlast < LEVEL(n));
             quantlast = LEVEL(n);
@@ -1513,7 +2197,7 @@ public class JFactory extends BDDFactory {
     int varset2svartable(int r) {
         int n;
 
-        if (r < 2)
+        if (ISCONST(r))
             return bdd_error(BDD_VARSET);
 
         quantvarsetID++;
@@ -1541,7 +2225,8 @@ public class JFactory extends BDDFactory {
     }
 
     int appquant_rec(int l, int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (VERIFY_ASSERTIONS) _assert(appexop != bddop_and);
@@ -1587,14 +2272,15 @@ public class JFactory extends BDDFactory {
             }
             applyop = oldop;
         } else {
+            table = appexcache.table;
             entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
-                if (CACHESTATS)
-                    cachestats.opHit++;
-                return entry.res;
+            if (table[entry + offset__cache_a] == l &&
+                table[entry + offset__cache_b] == r &&
+                table[entry + offset__cache_c] == appexid) {
+                counters.cacheHit[CACHE_APPEX]++;
+                return table[entry + offset__cache_res];
             }
-            if (CACHESTATS)
-                cachestats.opMiss++;
+            counters.cacheMiss[CACHE_APPEX]++;
 
             int lev;
             if (LEVEL(l) == LEVEL(r)) {
@@ -1623,17 +2309,18 @@ public class JFactory extends BDDFactory {
 
             POPREF(2);
 
-            entry.a = l;
-            entry.b = r;
-            entry.c = appexid;
-            entry.res = res;
+            table[entry + offset__cache_a] = l;
+            table[entry + offset__cache_b] = r;
+            table[entry + offset__cache_c] = appexid;
+            table[entry + offset__cache_res] = res;
         }
 
         return res;
     }
 
     int appuni_rec(int l, int r, int var) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         int LEVEL_l, LEVEL_r, LEVEL_var;
@@ -1658,14 +2345,15 @@ public class JFactory extends BDDFactory {
             }
             applyop = oldop;
         } else {
+            table = appexcache.table;
             entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
-                if (CACHESTATS)
-                    cachestats.opHit++;
-                return entry.res;
+            if (table[entry + offset__cache_a] == l &&
+                table[entry + offset__cache_b] == r &&
+                table[entry + offset__cache_c] == appexid) {
+                counters.cacheHit[CACHE_APPEX]++;
+                return table[entry + offset__cache_res];
             }
-            if (CACHESTATS)
-                cachestats.opMiss++;
+            counters.cacheMiss[CACHE_APPEX]++;
 
             int lev;
             if (LEVEL_l == LEVEL_r) {
@@ -1710,17 +2398,18 @@ public class JFactory extends BDDFactory {
 
             POPREF(2);
 
-            entry.a = l;
-            entry.b = r;
-            entry.c = appexid;
-            entry.res = res;
+            table[entry + offset__cache_a] = l;
+            table[entry + offset__cache_b] = r;
+            table[entry + offset__cache_c] = appexid;
+            table[entry + offset__cache_res] = res;
         }
 
         return res;
     }
     
     int unique_rec(int r, int q) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
         int LEVEL_r, LEVEL_q;
 
@@ -1731,17 +2420,17 @@ public class JFactory extends BDDFactory {
             return BDDZERO;
         }
         
-        if (r < 2 || q < 2)
+        if (ISCONST(r) || ISCONST(q))
             return r;
         
+        table = quantcache.table;
+        
         entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == r && table[entry + offset__cache_c] == quantid) {
+            counters.cacheHit[CACHE_QUANT]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_QUANT]++;
 
         if (LEVEL_r == LEVEL_q) {
             PUSHREF(unique_rec(LOW(r), HIGH(q)));
@@ -1755,28 +2444,29 @@ public class JFactory extends BDDFactory {
 
         POPREF(2);
 
-        entry.a = r;
-        entry.c = quantid;
-        entry.res = res;
+        table[entry + offset__cache_a] = r;
+        table[entry + offset__cache_c] = quantid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
     
     int quant_rec(int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
-        if (r < 2 || LEVEL(r) > quantlast)
+        if (ISCONST(r) || LEVEL(r) > quantlast)
             return r;
 
+        table = quantcache.table;
+
         entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == r && table[entry + offset__cache_c] == quantid) {
+            counters.cacheHit[CACHE_QUANT]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_QUANT]++;
 
         PUSHREF(quant_rec(LOW(r)));
         PUSHREF(quant_rec(HIGH(r)));
@@ -1794,9 +2484,9 @@ public class JFactory extends BDDFactory {
 
         POPREF(2);
 
-        entry.a = r;
-        entry.c = quantid;
-        entry.res = res;
+        table[entry + offset__cache_a] = r;
+        table[entry + offset__cache_c] = quantid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -1808,7 +2498,7 @@ public class JFactory extends BDDFactory {
         CHECKa(f, bddfalse);
         CHECKa(c, bddfalse);
 
-        if (misccache == null) misccache = BddCacheI_init(cachesize);
+        if (misccache == null) misccache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             try {
@@ -1836,7 +2526,8 @@ public class JFactory extends BDDFactory {
     }
 
     int constrain_rec(int f, int c) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (ISONE(c))
@@ -1848,14 +2539,16 @@ public class JFactory extends BDDFactory {
         if (ISZERO(c))
             return BDDZERO;
 
+        table = misccache.table;
+
         entry = BddCache_lookupI(misccache, CONSTRAINHASH(f, c));
-        if (entry.a == f && entry.b == c && entry.c == miscid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == c &&
+            table[entry + offset__cache_c] == miscid) {
+            counters.cacheHit[CACHE_MISC]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_MISC]++;
 
         if (LEVEL(f) == LEVEL(c)) {
             if (ISZERO(LOW(c)))
@@ -1886,10 +2579,10 @@ public class JFactory extends BDDFactory {
             }
         }
 
-        entry.a = f;
-        entry.b = c;
-        entry.c = miscid;
-        entry.res = res;
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = c;
+        table[entry + offset__cache_c] = miscid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -1905,8 +2598,9 @@ public class JFactory extends BDDFactory {
             return bddfalse;
         }
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (itecache == null) itecache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (itecache == null) itecache = BddCacheI_init(cachesize, CACHE_NODES_ABC);
+        if (replacecache == null) replacecache = BddCacheI_init(cachesize, CACHE_NODES_AB);
         
         again : for (;;) {
             try {
@@ -1935,20 +2629,23 @@ public class JFactory extends BDDFactory {
     }
 
     int compose_rec(int f, int g) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (LEVEL(f) > composelevel)
             return f;
 
+        table = replacecache.table;
+
         entry = BddCache_lookupI(replacecache, COMPOSEHASH(f, g));
-        if (entry.a == f && entry.b == g && entry.c == replaceid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == g &&
+            table[entry + offset__cache_c] == replaceid) {
+            counters.cacheHit[CACHE_REPLACE]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_REPLACE]++;
 
         if (LEVEL(f) < composelevel) {
             if (LEVEL(f) == LEVEL(g)) {
@@ -1970,10 +2667,10 @@ public class JFactory extends BDDFactory {
             res = ite_rec(g, HIGH(f), LOW(f));
         }
 
-        entry.a = f;
-        entry.b = g;
-        entry.c = replaceid;
-        entry.res = res;
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = g;
+        table[entry + offset__cache_c] = replaceid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -1984,9 +2681,9 @@ public class JFactory extends BDDFactory {
 
         CHECKa(f, bddfalse);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (itecache == null) itecache = BddCacheI_init(cachesize);
-        if (replacecache == null) replacecache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (itecache == null) itecache = BddCacheI_init(cachesize, CACHE_NODES_ABC);
+        if (replacecache == null) replacecache = BddCacheI_init(cachesize, CACHE_NODES_AB);
         
         again : for (;;) {
             try {
@@ -2016,29 +2713,30 @@ public class JFactory extends BDDFactory {
     }
 
     int veccompose_rec(int f) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (LEVEL(f) > replacelast)
             return f;
 
+        table = replacecache.table;
+
         entry = BddCache_lookupI(replacecache, VECCOMPOSEHASH(f));
-        if (entry.a == f && entry.c == replaceid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == f && table[entry + offset__cache_c] == replaceid) {
+            counters.cacheHit[CACHE_REPLACE]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_REPLACE]++;
 
         PUSHREF(veccompose_rec(LOW(f)));
         PUSHREF(veccompose_rec(HIGH(f)));
         res = ite_rec(replacepair[LEVEL(f)], READREF(1), READREF(2));
         POPREF(2);
 
-        entry.a = f;
-        entry.c = replaceid;
-        entry.res = res;
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_c] = replaceid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -2050,11 +2748,11 @@ public class JFactory extends BDDFactory {
         CHECKa(r, bddfalse);
         CHECKa(var, bddfalse);
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return r;
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (quantcache == null) quantcache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             if (varset2vartable(var) < 0)
@@ -2092,11 +2790,11 @@ public class JFactory extends BDDFactory {
         CHECKa(r, bddfalse);
         CHECKa(var, bddfalse);
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return r;
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (quantcache == null) quantcache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             if (varset2vartable(var) < 0)
@@ -2126,6 +2824,54 @@ public class JFactory extends BDDFactory {
         return res;
     }
 
+    int bdd_quant_set(int r, bddQuantSet q, boolean forall) {
+        int res;
+        firstReorder = 1;
+
+        int var = ((bdd) q.set)._index;
+        CHECKa(r, bddfalse);
+        CHECKa(var, bddfalse);
+
+        if (ISCONST(var)) /* Empty set */
+            return r;
+
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
+
+        int[] oldvarset = quantvarset;
+        int oldvarsetID = quantvarsetID;
+        try {
+            again : for (;;) {
+                quantset2vartable(q);
+                try {
+                    INITREF();
+                    quantid = (q.id << 3) | (forall ? CACHEID_FORALL : CACHEID_EXIST);
+                    applyop = forall ? bddop_and : bddop_or;
+
+                    if (firstReorder == 0)
+                        bdd_disable_reorder();
+                    res = quant_rec(r);
+                    if (firstReorder == 0)
+                        bdd_enable_reorder();
+                } catch (ReorderException x) {
+                    bdd_checkreorder();
+
+                    if (firstReorder-- == 1)
+                        continue again;
+                    res = BDDZERO;
+                    /* avoid warning about res being uninitialized */
+                }
+                break;
+            }
+        } finally {
+            quantvarset = oldvarset;
+            quantvarsetID = oldvarsetID;
+        }
+
+        checkresize();
+        return res;
+    }
+
     int bdd_unique(int r, int var) {
         int res;
         firstReorder = 1;
@@ -2133,11 +2879,11 @@ public class JFactory extends BDDFactory {
         CHECKa(r, bddfalse);
         CHECKa(var, bddfalse);
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return r;
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (quantcache == null) quantcache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             try {
@@ -2172,17 +2918,18 @@ public class JFactory extends BDDFactory {
         CHECKa(r, bddfalse);
         CHECKa(var, bddfalse);
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return r;
 
-        if (misccache == null) misccache = BddCacheI_init(cachesize);
+        if (misccache == null) misccache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             if (varset2svartable(var) < 0)
                 return bddfalse;
             try {
                 INITREF();
-                miscid = (var << 3) | CACHEID_RESTRICT;
+                /* The complement tag flips the polarities in the set */
+                miscid = (var << 3) | (var & CMPL_MASK) | CACHEID_RESTRICT;
 
                 if (firstReorder == 0)
                     bdd_disable_reorder();
@@ -2205,20 +2952,21 @@ public class JFactory extends BDDFactory {
     }
 
     int restrict_rec(int r) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (ISCONST(r) || LEVEL(r) > quantlast)
             return r;
 
+        table = misccache.table;
+
         entry = BddCache_lookupI(misccache, RESTRHASH(r, miscid));
-        if (entry.a == r && entry.c == miscid) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == r && table[entry + offset__cache_c] == miscid) {
+            counters.cacheHit[CACHE_MISC]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_MISC]++;
 
         if (INSVARSET(LEVEL(r))) {
             if (quantvarset[LEVEL(r)] > 0) {
@@ -2233,9 +2981,9 @@ public class JFactory extends BDDFactory {
             POPREF(2);
         }
 
-        entry.a = r;
-        entry.c = miscid;
-        entry.res = res;
+        table[entry + offset__cache_a] = r;
+        table[entry + offset__cache_c] = miscid;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
@@ -2247,7 +2995,7 @@ public class JFactory extends BDDFactory {
         CHECKa(f, bddfalse);
         CHECKa(d, bddfalse);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
         
         again : for (;;) {
             try {
@@ -2275,7 +3023,8 @@ public class JFactory extends BDDFactory {
     }
 
     int simplify_rec(int f, int d) {
-        BddCacheDataI entry;
+        int[] table;
+        int entry;
         int res;
 
         if (ISONE(d) || ISCONST(f))
@@ -2285,15 +3034,17 @@ public class JFactory extends BDDFactory {
         if (ISZERO(d))
             return BDDZERO;
 
+        table = applycache.table;
+
         entry = BddCache_lookupI(applycache, APPLYHASH(f, d, bddop_simplify));
 
-        if (entry.a == f && entry.b == d && entry.c == bddop_simplify) {
-            if (CACHESTATS)
-                cachestats.opHit++;
-            return entry.res;
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == d &&
+            table[entry + offset__cache_c] == bddop_simplify) {
+            counters.cacheHit[CACHE_APPLY]++;
+            return table[entry + offset__cache_res];
         }
-        if (CACHESTATS)
-            cachestats.opMiss++;
+        counters.cacheMiss[CACHE_APPLY]++;
 
         if (LEVEL(f) == LEVEL(d)) {
             if (ISZERO(LOW(d)))
@@ -2317,15 +3068,15 @@ public class JFactory extends BDDFactory {
             POPREF(1);
         }
 
-        entry.a = f;
-        entry.b = d;
-        entry.c = bddop_simplify;
-        entry.res = res;
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = d;
+        table[entry + offset__cache_c] = bddop_simplify;
+        table[entry + offset__cache_res] = res;
 
         return res;
     }
 
-    static int supportSize = 0;
+    int supportSize = 0;
 
     int bdd_support(int r) {
         int n;
@@ -2333,7 +3084,7 @@ public class JFactory extends BDDFactory {
 
         CHECKa(r, bddfalse);
 
-        if (r < 2)
+        if (ISCONST(r))
             return bddtrue;
 
         /* On-demand allocation of support set */
@@ -2381,6 +3132,7 @@ public class JFactory extends BDDFactory {
 
     void support_rec(int r, int[] support) {
 
+        r &= refmask;
         if (r < 2)
             return;
 
@@ -2411,12 +3163,12 @@ public class JFactory extends BDDFactory {
             return bddfalse;
         }
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return bdd_apply(l, r, opr);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (appexcache == null) appexcache = BddCacheI_init(cachesize);
-        if (quantcache == null) quantcache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (appexcache == null) appexcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             if (varset2vartable(var) < 0)
@@ -2461,12 +3213,12 @@ public class JFactory extends BDDFactory {
             return bddfalse;
         }
 
-        if (var < 2) /* Empty set */
+        if (ISCONST(var)) /* Empty set */
             return bdd_apply(l, r, opr);
 
-        if (applycache == null) applycache = BddCacheI_init(cachesize);
-        if (appexcache == null) appexcache = BddCacheI_init(cachesize);
-        if (quantcache == null) quantcache = BddCacheI_init(cachesize);
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (appexcache == null) appexcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+        if (quantcache == null) quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
         
         again : for (;;) {
             try {
@@ -2499,7 +3251,7 @@ public class JFactory extends BDDFactory {
         int res;
 
         CHECKa(r, bddfalse);
-        if (r < 2)
+        if (ISCONST(r))
             return r;
 
         bdd_disable_reorder();
@@ -2620,7 +3372,7 @@ public class JFactory extends BDDFactory {
     }
 
     int fullsatone_rec(int r) {
-        if (r < 2)
+        if (ISCONST(r))
             return r;
 
         if (LOW(r) != 0) {
@@ -2649,14 +3401,12 @@ public class JFactory extends BDDFactory {
 
         bddfreepos = 0;
         bddfreenum = 0;
+        if (uniqueindex != null)
+            Arrays.fill(uniqueindex, 0);
 
-        for (n = bddnodesize - 1; n >= 2; n--) {
+        for (n = bddnodesize - 1; n >= 2 && n >= snapbase; n--) {
             if (LOW(n) != INVALID_BDD) {
-                int hash2;
-
-                hash2 = NODEHASH(LEVEL(n), LOW(n), HIGH(n));
-                SETNEXT(n, HASH(hash2));
-                SETHASH(hash2, n);
+                bdd_uniqueinsert(n);
             } else {
                 SETNEXT(n, bddfreepos);
                 bddfreepos = n;
@@ -2719,6 +3469,7 @@ public class JFactory extends BDDFactory {
 
     void varprofile_rec(int r, int[] varprofile) {
 
+        r &= refmask;
         if (r < 2)
             return;
 
@@ -2743,7 +3494,8 @@ public class JFactory extends BDDFactory {
     }
 
     double bdd_pathcount_rec(int r) {
-        BddCacheDataD entry;
+        long[] table;
+        int entry;
         double size;
 
         if (ISZERO(r))
@@ -2751,15 +3503,18 @@ public class JFactory extends BDDFactory {
         if (ISONE(r))
             return 1.0;
 
+        table = countcache.dtable;
         entry = BddCache_lookupD(countcache, PATHCOUHASH(r));
-        if (entry.a == r && entry.c == miscid)
-            return entry.dres;
+        if (table[entry + offset__cache_key] == CACHEKEY(r, miscid)) {
+            counters.cacheHit[CACHE_COUNT]++;
+            return Double.longBitsToDouble(table[entry + offset__cache_dres]);
+        }
+        counters.cacheMiss[CACHE_COUNT]++;
 
         size = bdd_pathcount_rec(LOW(r)) + bdd_pathcount_rec(HIGH(r));
 
-        entry.a = r;
-        entry.c = miscid;
-        entry.dres = size;
+        table[entry + offset__cache_key] = CACHEKEY(r, miscid);
+        table[entry + offset__cache_dres] = Double.doubleToRawLongBits(size);
 
         return size;
     }
@@ -2793,15 +3548,20 @@ public class JFactory extends BDDFactory {
     }
 
     double satcount_rec(int root) {
-        BddCacheDataD entry;
+        long[] table;
+        int entry;
         double size, s;
 
-        if (root < 2)
+        if (ISCONST(root))
             return root;
 
+        table = countcache.dtable;
         entry = BddCache_lookupD(countcache, SATCOUHASH(root));
-        if (entry.a == root && entry.c == miscid)
-            return entry.dres;
+        if (table[entry + offset__cache_key] == CACHEKEY(root, miscid)) {
+            counters.cacheHit[CACHE_COUNT]++;
+            return Double.longBitsToDouble(table[entry + offset__cache_dres]);
+        }
+        counters.cacheMiss[CACHE_COUNT]++;
 
         size = 0;
         s = 1;
@@ -2813,9 +3573,8 @@ public class JFactory extends BDDFactory {
         s *= Math.pow(2.0, (float) (LEVEL(HIGH(root)) - LEVEL(root) - 1));
         size += s * satcount_rec(HIGH(root));
 
-        entry.a = root;
-        entry.c = miscid;
-        entry.dres = size;
+        table[entry + offset__cache_key] = CACHEKEY(root, miscid);
+        table[entry + offset__cache_dres] = Double.doubleToRawLongBits(size);
 
         return size;
     }
@@ -2838,31 +3597,38 @@ public class JFactory extends BDDFactory {
         for (r = 0; r < bddrefstacktop; r++)
             bdd_mark(bddrefstack[r]);
 
-        for (n = 0; n < bddnodesize; n++) {
+        for (n = snapbase; n < bddnodesize; n++) {
             if (HASREF(n))
                 bdd_mark(n);
-            SETHASH(n, 0);
+            if (uniqueindex == null)
+                SETHASH(n, 0);
         }
+        if (uniqueindex != null)
+            Arrays.fill(uniqueindex, 0);
 
         bddfreepos = 0;
         bddfreenum = 0;
+        workerepoch++;
+        gcyoungfreed = 0;
+        bdd_nextepoch();
 
-        for (n = bddnodesize - 1; n >= 2; n--) {
+        for (n = bddnodesize - 1; n >= 2 && n >= snapbase; n--) {
 
             if (MARKED(n) && LOW(n) != INVALID_BDD) {
-                int hash2;
-
                 UNMARK(n);
-                hash2 = NODEHASH(LEVEL(n), LOW(n), HIGH(n));
-                SETNEXT(n, HASH(hash2));
-                SETHASH(hash2, n);
+                bdd_uniqueinsert(n);
             } else {
+                if (gcyoung != null && YOUNG(n))
+                    gcyoungfreed++;
+                if (LOW(n) != INVALID_BDD)
+                    SETNODE(n, offset__refcou_and_level, cacheepoch);
                 SETLOW(n, INVALID_BDD);
                 SETNEXT(n, bddfreepos);
                 bddfreepos = n;
                 bddfreenum++;
             }
         }
+        bdd_tenureall();
 
         if (FLUSH_CACHE_ON_GC) {
             bdd_operator_reset();
@@ -2888,42 +3654,50 @@ public class JFactory extends BDDFactory {
     }
 
     int bdd_addref(int root) {
+        if (bddconcurrent && root >= 2)
+            return concurrent_addref(root, true);
         if (root == INVALID_BDD)
             bdd_error(BDD_BREAK); /* distinctive */
-        if (root < 2 || !bddrunning)
+        int n = root & refmask;
+        if (n < 2 || !bddrunning)
             return root;
-        if (root >= bddnodesize)
+        if (n >= bddnodesize)
             return bdd_error(BDD_ILLBDD);
-        if (LOW(root) == INVALID_BDD)
+        if (LOW(n) == INVALID_BDD)
             return bdd_error(BDD_ILLBDD);
 
-        INCREF(root);
+        INCREF(n);
         if (false) System.out.println("INCREF("+root+") = "+GETREF(root));
         return root;
     }
 
     int bdd_delref(int root) {
+        if (bddconcurrent && root >= 2)
+            return concurrent_addref(root, false);
         if (root == INVALID_BDD)
             bdd_error(BDD_BREAK); /* distinctive */
-        if (root < 2 || !bddrunning)
+        int n = root & refmask;
+        if (n < 2 || !bddrunning)
             return root;
-        if (root >= bddnodesize)
+        if (n >= bddnodesize)
             return bdd_error(BDD_ILLBDD);
-        if (LOW(root) == INVALID_BDD)
+        if (LOW(n) == INVALID_BDD)
             return bdd_error(BDD_ILLBDD);
 
         /* if the following line is present, fails there much earlier */
-        if (!HASREF(root))
+        if (!HASREF(n))
             bdd_error(BDD_BREAK); /* distinctive */
 
-        DECREF(root);
+        DECREF(n);
         if (false) System.out.println("DECREF("+root+") = "+GETREF(root));
         return root;
     }
 
     void bdd_mark(int i) {
 
-        if (i < 2)
+        /* Snapshot nodes are always live */
+        i &= refmask;
+        if (i < 2 || i < snapbase)
             return;
 
         if (MARKED(i) || LOW(i) == INVALID_BDD)
@@ -2937,6 +3711,7 @@ public class JFactory extends BDDFactory {
 
     void bdd_markcount(int i, int[] cou) {
 
+        i &= refmask;
         if (i < 2)
             return;
 
@@ -2952,6 +3727,7 @@ public class JFactory extends BDDFactory {
 
     void bdd_unmark(int i) {
 
+        i &= refmask;
         if (i < 2)
             return;
 
@@ -2965,44 +3741,146 @@ public class JFactory extends BDDFactory {
 
     public static final boolean CACHESTATS = false;
 
-    int bdd_makenode(int level, int low, int high) {
-        int hash2;
-        int res;
+    /*=== STATISTICS COUNTERS ==============================================*/
+
+    static final int CACHE_APPLY = 0;
+    static final int CACHE_ITE = 1;
+    static final int CACHE_QUANT = 2;
+    static final int CACHE_APPEX = 3;
+    static final int CACHE_REPLACE = 4;
+    static final int CACHE_MISC = 5;
+    static final int CACHE_COUNT = 6;
+    static final int CACHE_ZDD = 7;
+    static final int CACHE_ADD = 8;
+    static final int CACHE_NUM = 9;
+
+    static final String[] CACHE_NAMES = {
+        "apply", "ite", "quant", "appex", "replace", "misc", "count", "zdd",
+        "add"
+    };
 
-        if (CACHESTATS)
-            cachestats.uniqueAccess++;
+    /**
+     * Unique table and operator cache counters.  They are always kept; they
+     * are plain longs updated by a single thread, so counting costs no more
+     * than an increment and they do not wrap around on long runs.  In
+     * concurrent mode every worker thread has its own
+     * set, which is summed up when the statistics are read.
+     */
+    static class BddCounters {
+        long uniqueAccess; /* Calls to makenode */
+        long uniqueChain; /* Chain links followed in the unique table */
+        long uniqueHit; /* Nodes found in the unique table */
+        long uniqueMiss; /* Nodes that had to be built */
+        long[] cacheHit = new long[CACHE_NUM]; /* Hits, by CACHE_* */
+        long[] cacheMiss = new long[CACHE_NUM]; /* Misses, by CACHE_* */
+
+        void add(BddCounters that) {
+            uniqueAccess += that.uniqueAccess;
+            uniqueChain += that.uniqueChain;
+            uniqueHit += that.uniqueHit;
+            uniqueMiss += that.uniqueMiss;
+            for (int n = 0; n < CACHE_NUM; n++) {
+                cacheHit[n] += that.cacheHit[n];
+                cacheMiss[n] += that.cacheMiss[n];
+            }
+        }
+    }
+
+    /* Counters of the (non-concurrent) kernel */
+    BddCounters counters = new BddCounters();
+
+    /* (non-Javadoc)
+     * Returns a new snapshot on every call, so that a caller may keep one
+     * while another thread reads the statistics.
+     * @see net.sf.javabdd.BDDFactory#getCacheStats()
+     */
+    public CacheStats getCacheStats() {
+        BddCounters c = new BddCounters();
+        c.add(counters);
+        BddWorkers ws = workers;
+        if (ws != null) {
+            synchronized (ws) {
+                for (int i = 0; i < ws.num; i++)
+                    c.add(ws.list[i].counters);
+            }
+        }
+        CacheStats s = new CacheStats();
+        s.uniqueAccess = c.uniqueAccess;
+        s.uniqueChain = c.uniqueChain;
+        s.uniqueHit = c.uniqueHit;
+        s.uniqueMiss = c.uniqueMiss;
+        s.opHit = 0;
+        s.opMiss = 0;
+        for (int n = 0; n < CACHE_NUM; n++) {
+            s.opHit += c.cacheHit[n];
+            s.opMiss += c.cacheMiss[n];
+        }
+        s.cacheName = CACHE_NAMES;
+        s.cacheHit = c.cacheHit;
+        s.cacheMiss = c.cacheMiss;
+        s.swapCount = cachestats.swapCount;
+        return s;
+    }
+
+    int bdd_makenode(int level, int low, int high) {
+        counters.uniqueAccess++;
 
         /* check whether childs are equal */
         if (low == high)
             return low;
 
-        /* Try to find an existing node of this kind */
-        hash2 = NODEHASH(level, low, high);
-        res = HASH(hash2);
+        /* With complement edges the high edge is never complemented */
+        if (bddcomplement && high <= 0)
+            return NEG(bdd_findnode(level, NEG(low), NEG(high)));
 
-        while (res != 0) {
-            if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
-                if (CACHESTATS)
-                    cachestats.uniqueHit++;
+        return bdd_findnode(level, low, high);
+    }
+
+    /* Finds or builds the node, without any reduction rule */
+    int bdd_findnode(int level, int low, int high) {
+        int hash2;
+        int res;
+
+        /* Snapshot nodes only have snapshot children */
+        if (snapbase > 0 && low < snapbase && high < snapbase) {
+            res = bdd_findbase(level, low, high);
+            if (res != 0)
                 return res;
-            }
+        }
 
-            res = NEXT(res);
-            if (CACHESTATS)
-                cachestats.uniqueChain++;
+        /* Try to find an existing node of this kind */
+        if (uniqueindex != null) {
+            hash2 = 0;
+            res = bdd_uniquefind(level, low, high);
+            if (res != 0)
+                return res;
+        } else {
+            hash2 = NODEHASH(level, low, high);
+            res = HASH(hash2);
+
+            while (res != 0) {
+                if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
+                    counters.uniqueHit++;
+                    return res;
+                }
+
+                res = NEXT(res);
+                counters.uniqueChain++;
+            }
         }
 
         /* No existing node => build one */
-        if (CACHESTATS)
-            cachestats.uniqueMiss++;
+        counters.uniqueMiss++;
 
         /* Any free nodes to use ? */
         if (bddfreepos == 0) {
             if (bdderrorcond != 0)
                 return 0;
 
-            /* Try to allocate more nodes */
-            bdd_gbc();
+            /* Try to allocate more nodes, if possible by only collecting
+             * the young generation */
+            if (!bdd_gbc_young())
+                bdd_gbc();
 
             if ((bddnodesize-bddfreenum) >= usednodes_nextreorder  &&
                 bdd_reorder_ready())
@@ -3028,1187 +3906,3412 @@ public class JFactory extends BDDFactory {
         bddfreepos = NEXT(bddfreepos);
         bddfreenum--;
         bddproduced++;
+        REUSE(res);
 
         SETLEVELANDMARK(res, level);
         SETLOW(res, low);
         SETHIGH(res, high);
+        if (gcyoung != null)
+            SETYOUNG(res);
 
         /* Insert node */
-        SETNEXT(res, HASH(hash2));
-        SETHASH(hash2, res);
+        if (uniqueindex != null) {
+            /* The table may have been rebuilt above */
+            bdd_uniqueinsert(res);
+        } else {
+            SETNEXT(res, HASH(hash2));
+            SETHASH(hash2, res);
+        }
 
         return res;
     }
 
-    int bdd_noderesize(boolean doRehash) {
-        int oldsize = bddnodesize;
-        int newsize = bddnodesize;
+    /*=== COMPACT NODE LAYOUT ==============================================*/
 
-        if (bddmaxnodesize > 0) {
-            if (newsize >= bddmaxnodesize)
-                return -1;
+    /**
+     * <p>Switches between the normal and the compact node layout.  Returns
+     * the old setting.</p>
+     * 
+     * <p>Normally a node takes five ints: two of them only serve the hash
+     * chains of the unique table.  In the compact layout a node takes three
+     * ints (reference count and level, low, high), and the unique table is a
+     * separate open-addressing table with linear probing, holding one int per
+     * slot at a load of at most 3/4.  Since every node of the table may be in
+     * use, the unique table has 4/3 slots per node, so the two take about
+     * 4.33 ints per node instead of 5: a saving of about 13%, not the 40% of
+     * the node records alone.  Lookups probe consecutive ints instead of
+     * following chains through the node table.</p>
+     * 
+     * <p>Reordering and duplicateVar temporarily switch to the normal layout,
+     * which needs the memory for both during the switch.  Generational
+     * collection is allowed, but all collections are then full
+     * collections.</p>
+     * 
+     * <p>The compact layout cannot be combined with concurrent mode, an
+     * off-heap node table or a mapped snapshot.  Enabling it in one of these
+     * modes, or enabling one of them in the compact layout, fails with a
+     * BDD_LAYOUT error.</p>
+     * 
+     * @param b  whether to use the compact layout
+     * @return  old setting
+     */
+    public boolean setCompactLayout(boolean b) {
+        boolean old = uniqueindex != null;
+        if (b == old || bddnodesize == 0)
+            return old;
+        if (b && (bddconcurrent || nodebuffers != null || snapbase > 0)) {
+            bdd_error(BDD_LAYOUT);
+            return old;
         }
+        bdd_relayout(b);
+        return old;
+    }
 
-        if (increasefactor > 0) {
-            newsize += (int)(newsize * increasefactor);
+    /**
+     * Returns true if the compact node layout is used.
+     * 
+     * @return  whether the compact node layout is used
+     * @see #setCompactLayout(boolean)
+     */
+    public boolean isCompactLayout() {
+        return uniqueindex != null;
+    }
+
+    /* Copies the nodes into the given layout and rebuilds the unique table
+     * and the free list.  Node numbers do not change. */
+    void bdd_relayout(boolean compact) {
+        int stride = compact ? __compact_node_size : __node_size;
+        if (nodepages != null || (long) bddnodesize * stride > MAXARRAYSIZE) {
+            int[][] newpages = bdd_allocheappages(null, bddnodesize, stride);
+            for (int n = 0; n < bddnodesize; n++) {
+                int[] page = newpages[n >>> NODE_PAGE_BITS];
+                int i = (n & NODE_PAGE_MASK)*stride;
+                page[i + offset__refcou_and_level] = GETNODE(n, offset__refcou_and_level);
+                page[i + offset__low] = GETNODE(n, offset__low);
+                page[i + offset__high] = GETNODE(n, offset__high);
+            }
+            bddnodes = null;
+            nodepages = newpages;
         } else {
-            newsize = newsize << 1;
+            int[] newnodes = new int[bddnodesize*stride];
+            for (int n = 0; n < bddnodesize; n++) {
+                newnodes[n*stride + offset__refcou_and_level] = GETNODE(n, offset__refcou_and_level);
+                newnodes[n*stride + offset__low] = GETNODE(n, offset__low);
+                newnodes[n*stride + offset__high] = GETNODE(n, offset__high);
+            }
+            bddnodes = newnodes;
         }
+        nodestride = stride;
+        nextoffset = compact ? offset__high : offset__next;
+        uniqueindex = compact ? new int[UNIQUESIZE(bddnodesize)] : null;
+        bdd_gbc_rehash();
+    }
 
-        if (bddmaxnodeincrease > 0) {
-            if (newsize > oldsize + bddmaxnodeincrease)
-                newsize = oldsize + bddmaxnodeincrease;
-        }
+    /* Slots of the compact unique table, keeping its load at most 3/4 */
+    final int UNIQUESIZE(int nodesize) {
+        return bdd_prime_gte(nodesize + nodesize / 3);
+    }
 
-        if (bddmaxnodesize > 0) {
-            if (newsize > bddmaxnodesize)
-                newsize = bddmaxnodesize;
+    /* Adds a node to the unique table */
+    private final void bdd_uniqueinsert(int n) {
+        int level = LEVEL(n), low = LOW(n), high = HIGH(n);
+        if (uniqueindex == null) {
+            int hash2 = NODEHASH(level, low, high);
+            SETNEXT(n, HASH(hash2));
+            SETHASH(hash2, n);
+            return;
         }
 
-        return doResize(doRehash, oldsize, newsize);
-    }
-    
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setNodeTableSize(int)
-     */
-    public int setNodeTableSize(int size) {
-        int old = bddnodesize;
-        doResize(true, old, size);
-        return old;
+        int[] index = uniqueindex;
+        int i = Math.abs(TRIPLE(level, low, high) % index.length);
+        while (index[i] != 0)
+            if (++i == index.length)
+                i = 0;
+        index[i] = n;
     }
-    
-    int doResize(boolean doRehash, int oldsize, int newsize) {
-        
-        newsize = bdd_prime_lte(newsize);
-
-        if (oldsize > newsize) return 0;
-        
-        resize_handler(oldsize, newsize);
-        
-        int[] newnodes;
-        int n;
-        newnodes = new int[newsize*__node_size];
-        System.arraycopy(bddnodes, 0, newnodes, 0, bddnodes.length);
-        bddnodes = newnodes;
-        bddnodesize = newsize;
 
-        if (doRehash)
-            for (n = 0; n < oldsize; n++)
-                SETHASH(n, 0);
+    /* Looks up a node in the compact unique table, or returns 0 */
+    private final int bdd_uniquefind(int level, int low, int high) {
+        int[] index = uniqueindex;
+        int i = Math.abs(TRIPLE(level, low, high) % index.length);
+        int res;
 
-        for (n = oldsize; n < bddnodesize; n++) {
-            SETLOW(n, INVALID_BDD);
-            //SETREFCOU(n, 0);
-            //SETHASH(n, 0);
-            //SETLEVEL(n, 0);
-            SETNEXT(n, n+1);
+        while ((res = index[i]) != 0) {
+            if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
+                counters.uniqueHit++;
+                return res;
+            }
+            counters.uniqueChain++;
+            if (++i == index.length)
+                i = 0;
         }
-        SETNEXT(bddnodesize-1, bddfreepos);
-        bddfreepos = oldsize;
-        bddfreenum += bddnodesize - oldsize;
+        return 0;
+    }
 
-        if (doRehash)
-            bdd_gbc_rehash();
+    /*=== NODE TABLE COMPACTION ============================================*/
 
-        bddresized = true;
+    /** Numbers the live nodes depth-first, from the roots. */
+    public static final int COMPACT_DEPTH_FIRST = 0;
+    /** Numbers the live nodes level by level, top level first. */
+    public static final int COMPACT_LEVEL = 1;
 
-        return 0;
-    }
+    BddTracker trackedbdds; /* Weak references to the BDD objects, or null */
+    double compactslack = 0.5; /* Free nodes left by compact(), per live node */
+    int[] compactmap; /* New number of each node during compaction, or 0 */
+    boolean[] compactpinned; /* Nodes that keep their number */
+    int compactpos; /* Next number to hand out */
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#initialize(int, int)
+    /**
+     * <p>Starts or stops keeping track of the BDD objects of this factory.
+     * Returns the old setting.</p>
+     * 
+     * <p>compact() can only renumber a node if it knows every reference to
+     * it.  While tracking is on, every BDD object made by this factory is
+     * remembered through a weak reference, so that compact() can change the
+     * node it refers to.  BDD objects made while tracking is off, ZDD and ADD
+     * objects and integer handles are not known; the nodes they refer to
+     * keep their numbers, which may keep compact() from shrinking the node
+     * table as far as it could.</p>
+     * 
+     * @param b  whether to keep track of BDD objects
+     * @return  old setting
      */
-    protected void initialize(int initnodesize, int cs) {
-        int n;
+    public boolean setTrackBDDs(boolean b) {
+        boolean old = trackedbdds != null;
+        if (b && !old) {
+            trackedbdds = new BddTracker();
+        } else if (!b) {
+            trackedbdds = null;
+        }
+        return old;
+    }
 
-        if (bddrunning)
-            bdd_error(BDD_RUNNING);
+    /**
+     * <p>Sets the number of free nodes that compact() leaves in the node
+     * table, as a fraction of the live nodes.  Returns the old value.</p>
+     * 
+     * @param x  free nodes per live node after compaction
+     * @return  old value
+     */
+    public double setCompactSlack(double x) {
+        if (x < 0)
+            return bdd_error(BDD_RANGE);
+        double old = compactslack;
+        compactslack = x;
+        return old;
+    }
 
-        bddnodesize = bdd_prime_gte(initnodesize);
+    /**
+     * <p>Renumbers the live nodes into a dense prefix of the node table and
+     * shrinks the table, giving back the memory of a past peak.  Returns the
+     * new size of the node table.</p>
+     * 
+     * <p>The node table only ever grows, and after a peak the live nodes end
+     * up scattered over a mostly free table.  Compaction first collects
+     * garbage, then gives the live nodes new numbers, either depth-first from
+     * the roots, so that a node lies next to its low descendants as the
+     * recursive operations visit them, or level by level.  The nodes are
+     * copied into a new table that has room for the live nodes plus the
+     * slack set by {@link #setCompactSlack(double)}, and the unique table is
+     * rebuilt.  Tracked BDD objects, pairings, quant sets and the variables
+     * are changed to the new numbers, and the operator caches are
+     * cleared.</p>
+     * 
+     * <p>A node that has references from objects that are not tracked (see
+     * {@link #setTrackBDDs(boolean)}), and the nodes with a saturated
+     * reference count, such as the variables, keep their numbers.  The table
+     * is not shrunk below the highest of them.  Compaction is not available
+     * in concurrent mode or with a mapped snapshot.</p>
+     * 
+     * @param order  COMPACT_DEPTH_FIRST or COMPACT_LEVEL
+     * @return  new size of the node table
+     */
+    public int compact(int order) {
+        if (order != COMPACT_DEPTH_FIRST && order != COMPACT_LEVEL)
+            return bdd_error(BDD_RANGE);
+        if (!bddrunning)
+            return bdd_error(BDD_RUNNING);
+        if (bddconcurrent || snapbase > 0)
+            return bdd_error(BDD_COMPACT);
 
-        bddnodes = new int[bddnodesize*__node_size];
+        bdd_gbc();
 
-        bddresized = false;
-
-        for (n = 0; n < bddnodesize; n++) {
-            SETLOW(n, INVALID_BDD);
-            //SETREFCOU(n, 0);
-            //SETHASH(n, 0);
-            //SETLEVEL(n, 0);
-            SETNEXT(n, n+1);
+        int n;
+        int size = bddnodesize;
+        int[] map = compactmap = new int[size];
+        boolean[] pinned = compactpinned = new boolean[size];
+
+        /* References that can be changed: tracked objects and pairings */
+        int[] known = new int[size];
+        bdd[] tracked = bdd_tracked();
+        for (int i = 0; i < tracked.length; i++) {
+            n = tracked[i]._index & refmask;
+            if (n >= 2) known[n]++;
+        }
+        for (bddPair p = pairs; p != null; p = p.next)
+            for (int k = 0; k < p.result.length; k++)
+                if ((n = p.result[k] & refmask) >= 2) known[n]++;
+
+        map[0] = 0;
+        map[1] = 1;
+        int live = 0;
+        for (n = 2; n < size; n++) {
+            if (LOW(n) == INVALID_BDD) continue;
+            live++;
+            int ref = GETREF(n);
+            if (ref == (REF_MASK >>> 22) || ref != known[n]) {
+                pinned[n] = true;
+                map[n] = n;
+            }
         }
-        SETNEXT(bddnodesize-1, 0);
-
-        SETMAXREF(0);
-        SETMAXREF(1);
-        SETLOW(0, 0); SETHIGH(0, 0);
-        SETLOW(1, 1); SETHIGH(1, 1);
+        known = null;
 
-        bdd_operator_init(cs);
-
-        bddfreepos = 2;
-        bddfreenum = bddnodesize - 2;
-        bddrunning = true;
-        bddvarnum = 0;
-        gbcollectnum = 0;
-        gbcclock = 0;
-        cachesize = cs;
-        usednodes_nextreorder = bddnodesize;
-        bddmaxnodeincrease = DEFAULTMAXNODEINC;
-
-        bdderrorcond = 0;
-
-        if (CACHESTATS) {
-            //cachestats = new CacheStats();
+        compactpos = 2;
+        if (order == COMPACT_DEPTH_FIRST) {
+            for (n = 2; n < size; n++)
+                if (LOW(n) != INVALID_BDD && HASREF(n))
+                    bdd_compact_dfs(n);
+        } else {
+            /* Counting sort by level */
+            int levels = bddvarnum + 1;
+            int[] start = new int[levels + 1];
+            for (n = 2; n < size; n++)
+                if (LOW(n) != INVALID_BDD && !pinned[n])
+                    start[Math.min(LEVEL(n), bddvarnum) + 1]++;
+            for (int l = 0; l < levels; l++)
+                start[l + 1] += start[l];
+            int[] sorted = new int[start[levels]];
+            for (n = 2; n < size; n++)
+                if (LOW(n) != INVALID_BDD && !pinned[n])
+                    sorted[start[Math.min(LEVEL(n), bddvarnum)]++] = n;
+            for (int k = 0; k < sorted.length; k++)
+                map[sorted[k]] = bdd_compact_next();
+        }
+        /* Live nodes that no root reaches */
+        for (n = 2; n < size; n++)
+            if (LOW(n) != INVALID_BDD && map[n] == 0)
+                map[n] = bdd_compact_next();
+
+        int top = compactpos;
+        for (n = size - 1; n >= top; n--)
+            if (pinned[n]) {
+                top = n + 1;
+                break;
+            }
+        long want = 2 + live + (long) (live * compactslack);
+        int newsize = size;
+        if (want < size) {
+            newsize = bdd_prime_gte((int) Math.max(want, top));
+            if (newsize > size)
+                newsize = size;
+        }
+
+        /* Copy the nodes out under their new numbers */
+        int[][] nodes = bdd_allocheappages(null, newsize, 3);
+        for (n = 0; n < newsize; n++)
+            nodes[n >>> NODE_PAGE_BITS][(n & NODE_PAGE_MASK)*3 + offset__low] = INVALID_BDD;
+        for (n = 0; n < size; n++) {
+            if (n >= 2 && LOW(n) == INVALID_BDD) continue;
+            int m = map[n];
+            int[] page = nodes[m >>> NODE_PAGE_BITS];
+            int i = (m & NODE_PAGE_MASK)*3;
+            page[i + offset__refcou_and_level] = GETNODE(n, offset__refcou_and_level) & ~MARK_MASK;
+            page[i + offset__low] = bdd_compact_remap(LOW(n));
+            page[i + offset__high] = bdd_compact_remap(HIGH(n));
+        }
+
+        if (addnodes != null) {
+            for (int k = 0; k < addslotnum; k++) {
+                n = addnodes[k];
+                if (n < size && n >= 2 && LOW(n) == -2 - k)
+                    addnodes[k] = map[n];
+                else
+                    addnodes[k] = 0;
+            }
         }
 
-        //bdd_gbc_hook(bdd_default_gbchandler);
-        //bdd_error_hook(bdd_default_errhandler);
-        //bdd_resize_hook(NULL);
-        bdd_pairs_init();
-        bdd_reorder_init();
-
-        return;
+        /* Move to the new table */
+        if (nodebuffers != null) {
+            nodebuffers = bdd_allocpages(null, newsize);
+        } else if (nodepages != null) {
+            nodepages = bdd_allocheappages(null, newsize, nodestride);
+        } else {
+            bddnodes = new int[newsize*nodestride];
+        }
+        bddnodesize = newsize;
+        for (n = 0; n < newsize; n++) {
+            int[] page = nodes[n >>> NODE_PAGE_BITS];
+            int i = (n & NODE_PAGE_MASK)*3;
+            SETNODE(n, offset__refcou_and_level, page[i + offset__refcou_and_level]);
+            SETNODE(n, offset__low, page[i + offset__low]);
+            SETNODE(n, offset__high, page[i + offset__high]);
+        }
+        nodes = null;
+        if (uniqueindex != null)
+            uniqueindex = new int[UNIQUESIZE(newsize)];
+        bdd_gbc_rehash();
+
+        nodereused = new int[REUSESIZE(newsize)];
+        if (gcyoung != null)
+            gcyoung = new int[(newsize + 31) >> 5];
+        workerepoch++;
+
+        /* Change the references */
+        for (int i = 0; i < tracked.length; i++)
+            tracked[i]._index = bdd_compact_remap(tracked[i]._index);
+        for (bddPair p = pairs; p != null; p = p.next)
+            for (int k = 0; k < p.result.length; k++)
+                p.result[k] = bdd_compact_remap(p.result[k]);
+        for (n = 0; n < bddvarset.length; n++)
+            bddvarset[n] = bdd_compact_remap(bddvarset[n]);
+
+        compactmap = null;
+        compactpinned = null;
+        bdd_operator_reset();
+        bdd_operator_noderesize();
+        return newsize;
     }
 
-    /* Hash value modifiers to distinguish between entries in misccache */
-    static final int CACHEID_CONSTRAIN = 0x0;
-    static final int CACHEID_RESTRICT = 0x1;
-    static final int CACHEID_SATCOU = 0x2;
-    static final int CACHEID_SATCOULN = 0x3;
-    static final int CACHEID_PATHCOU = 0x4;
-
-    /* Hash value modifiers for replace/compose */
-    static final int CACHEID_REPLACE = 0x0;
-    static final int CACHEID_COMPOSE = 0x1;
-    static final int CACHEID_VECCOMPOSE = 0x2;
-
-    /* Hash value modifiers for quantification */
-    static final int CACHEID_EXIST = 0x0;
-    static final int CACHEID_FORALL = 0x1;
-    static final int CACHEID_UNIQUE = 0x2;
-    static final int CACHEID_APPEX = 0x3;
-    static final int CACHEID_APPAL = 0x4;
-    static final int CACHEID_APPUN = 0x5;
-
-    /* Number of boolean operators */
-    static final int OPERATOR_NUM = 11;
+    /* Numbers the nodes below n in depth-first order */
+    void bdd_compact_dfs(int n) {
+        n &= refmask;
+        if (n < 2 || MARKED(n))
+            return;
+        SETMARK(n);
+        if (compactmap[n] == 0)
+            compactmap[n] = bdd_compact_next();
+        bdd_compact_dfs(LOW(n));
+        bdd_compact_dfs(HIGH(n));
+    }
 
-    /* Operator results - entry = left<<1 | right  (left,right in {0,1}) */
-    static int oprres[][] =
-        { { 0, 0, 0, 1 }, /* and                       ( & )         */ {
-            0, 1, 1, 0 }, /* xor                       ( ^ )         */ {
-            0, 1, 1, 1 }, /* or                        ( | )         */ {
-            1, 1, 1, 0 }, /* nand                                    */ {
-            1, 0, 0, 0 }, /* nor                                     */ {
-            1, 1, 0, 1 }, /* implication               ( >> )        */ {
-            1, 0, 0, 1 }, /* bi-implication                          */ {
-            0, 0, 1, 0 }, /* difference /greater than  ( - ) ( > )   */ {
-            0, 1, 0, 0 }, /* less than                 ( < )         */ {
-            1, 0, 1, 1 }, /* inverse implication       ( << )        */ {
-            1, 1, 0, 0 } /* not                       ( ! )         */
-    };
+    /* Returns the next number that is not kept by a pinned node */
+    int bdd_compact_next() {
+        while (compactpos < compactpinned.length && compactpinned[compactpos])
+            compactpos++;
+        return compactpos++;
+    }
 
-    int applyop; /* Current operator for apply */
-    int appexop; /* Current operator for appex */
-    int appexid; /* Current cache id for appex */
-    int quantid; /* Current cache id for quantifications */
-    int[] quantvarset; /* Current variable set for quant. */
-    int quantvarsetID; /* Current id used in quantvarset */
-    int quantlast; /* Current last variable to be quant. */
-    int replaceid; /* Current cache id for replace */
-    int[] replacepair; /* Current replace pair */
-    int replacelast; /* Current last var. level to replace */
-    int composelevel; /* Current variable used for compose */
-    int miscid; /* Current cache id for other results */
-    int supportID; /* Current ID (true value) for support */
-    int supportMin; /* Min. used level in support calc. */
-    int supportMax; /* Max. used level in support calc. */
-    int[] supportSet; /* The found support set */
-    BddCache applycache; /* Cache for apply results */
-    BddCache itecache; /* Cache for ITE results */
-    BddCache quantcache; /* Cache for exist/forall results */
-    BddCache appexcache; /* Cache for appex/appall results */
-    BddCache replacecache; /* Cache for replace results */
-    BddCache misccache; /* Cache for other results */
-    BddCache countcache; /* Cache for count results */
-    int cacheratio;
-    int satPolarity;
-    int firstReorder;
-    /* Used instead of local variable in order
-                   to avoid compiler warning about 'first'
-                   being clobbered by setjmp */
+    /* New number of a reference; ADD terminals have negative children,
+     * and complemented references keep their tag */
+    final int bdd_compact_remap(int n) {
+        int m = n & refmask;
+        return m < 2 ? n : compactmap[m] | (n & ~refmask);
+    }
 
-    void bdd_operator_init(int cachesize) {
-        if (false) {
-            applycache = BddCacheI_init(cachesize);
-            itecache = BddCacheI_init(cachesize);
-            quantcache = BddCacheI_init(cachesize);
-            appexcache = BddCacheI_init(cachesize);
-            replacecache = BddCacheI_init(cachesize);
-            misccache = BddCacheI_init(cachesize);
-            countcache = BddCacheD_init(cachesize);
-        }
+    /* Remembers a BDD object for compact() */
+    void bdd_track(bdd b) {
+        trackedbdds.add(b);
+    }
 
-        quantvarsetID = 0;
-        quantvarset = null;
-        cacheratio = 0;
-        supportSet = null;
-        supportSize = 0;
+    /* Returns the live tracked BDD objects */
+    bdd[] bdd_tracked() {
+        BddTracker t = trackedbdds;
+        return t != null ? t.live() : new bdd[0];
     }
 
-    void bdd_operator_done() {
-        if (quantvarset != null) {
-            free(quantvarset);
-            quantvarset = null;
+    /**
+     * Weak references to the BDD objects made while tracking is on.  Only
+     * this class uses the raw WeakReference type.
+     */
+    static class BddTracker {
+        WeakReference[] refs = new WeakReference[1024];
+        int num;
+
+        synchronized void add(bdd b) {
+            if (num == refs.length) {
+                purge();
+                if (num * 2 > refs.length) {
+                    WeakReference[] r = new WeakReference[refs.length * 2];
+                    System.arraycopy(refs, 0, r, 0, num);
+                    refs = r;
+                }
+            }
+            refs[num++] = new WeakReference(b);
         }
 
-        BddCache_done(applycache); applycache = null;
-        BddCache_done(itecache); itecache = null;
-        BddCache_done(quantcache); quantcache = null;
-        BddCache_done(appexcache); appexcache = null;
-        BddCache_done(replacecache); replacecache = null;
-        BddCache_done(misccache); misccache = null;
-        BddCache_done(countcache); countcache = null;
-
-        if (supportSet != null) {
-            free(supportSet);
-            supportSet = null;
-            supportSize = 0;
+        /* Drops the references to collected and freed BDD objects */
+        void purge() {
+            int k = 0;
+            for (int i = 0; i < num; i++) {
+                bdd b = (bdd) refs[i].get();
+                if (b != null && b._index != INVALID_BDD)
+                    refs[k++] = refs[i];
+            }
+            for (int i = k; i < num; i++)
+                refs[i] = null;
+            num = k;
+        }
+
+        synchronized bdd[] live() {
+            purge();
+            bdd[] res = new bdd[num];
+            int k = 0;
+            for (int i = 0; i < num; i++) {
+                bdd b = (bdd) refs[i].get();
+                if (b != null)
+                    res[k++] = b;
+            }
+            if (k == num)
+                return res;
+            bdd[] r = new bdd[k];
+            System.arraycopy(res, 0, r, 0, k);
+            return r;
         }
     }
 
-    void bdd_operator_reset() {
-        BddCache_reset(applycache);
-        BddCache_reset(itecache);
-        BddCache_reset(quantcache);
-        BddCache_reset(appexcache);
-        BddCache_reset(replacecache);
-        BddCache_reset(misccache);
-        BddCache_reset(countcache);
-    }
+    /*=== GENERATIONAL GARBAGE COLLECTION ==================================*/
 
-    void bdd_operator_clean() {
-        BddCache_clean_ab(applycache);
-        BddCache_clean_abc(itecache);
-        BddCache_clean_a(quantcache);
-        BddCache_clean_ab(appexcache);
-        BddCache_clean_ab(replacecache);
-        BddCache_clean_ab(misccache);
-        BddCache_clean_d(countcache);
+    /**
+     * <p>Enables or disables generational garbage collection.  Returns the
+     * old setting.</p>
+     * 
+     * <p>Nodes never change once built, so a node can only point to nodes
+     * that are older than itself.  The nodes created since the last
+     * collection (the young generation) can therefore be collected without
+     * looking at the rest of the table: only they are marked, only they are
+     * swept, and only the dead ones are unlinked from their hash chains.
+     * The operator caches are cleaned instead of flushed, so results that
+     * are still valid survive the collection.  A full collection is done
+     * when the young generation does not free enough nodes, and before
+     * deciding on an automatic reordering.  If the young generation held
+     * too little garbage the last time it was collected, the next
+     * collection is a full one.</p>
+     * 
+     * <p>In concurrent mode and with the compact node layout, all
+     * collections are full collections.</p>
+     * 
+     * @param b  whether to collect the young generation separately
+     * @return  old setting
+     */
+    public boolean setGenerational(boolean b) {
+        boolean old = gcyoung != null;
+        if (b && !old) {
+            gcyoung = new int[(bddnodesize + 31) >> 5];
+            gcyoungfreed = bddnodesize;
+        } else if (!b)
+            gcyoung = null;
+        return old;
     }
-    
-    void bdd_operator_varresize() {
-        if (quantvarset != null)
-            free(quantvarset);
 
-        quantvarset = new int[bddvarnum];
+    /**
+     * Returns true if generational garbage collection is enabled.
+     * 
+     * @return  whether generational garbage collection is enabled
+     * @see #setGenerational(boolean)
+     */
+    public boolean isGenerational() {
+        return gcyoung != null;
+    }
 
-        //memset(quantvarset, 0, sizeof(int)*bddvarnum);
-        quantvarsetID = 0;
-        
-        BddCache_reset(countcache);
+    private final boolean YOUNG(int n) {
+        return (gcyoung[n >> 5] & (1 << (n & 31))) != 0;
     }
 
-    public int setCacheSize(int newcachesize) {
-        int old = cachesize;
-        BddCache_resize(applycache, newcachesize);
-        BddCache_resize(itecache, newcachesize);
-        BddCache_resize(quantcache, newcachesize);
-        BddCache_resize(appexcache, newcachesize);
-        BddCache_resize(replacecache, newcachesize);
-        BddCache_resize(misccache, newcachesize);
-        BddCache_resize(countcache, newcachesize);
-        return old;
+    private final void SETYOUNG(int n) {
+        gcyoung[n >> 5] |= 1 << (n & 31);
     }
-    
-    void bdd_operator_noderesize() {
-        if (cacheratio > 0) {
-            int newcachesize = bddnodesize / cacheratio;
 
-            BddCache_resize(applycache, newcachesize);
-            BddCache_resize(itecache, newcachesize);
-            BddCache_resize(quantcache, newcachesize);
-            BddCache_resize(appexcache, newcachesize);
-            BddCache_resize(replacecache, newcachesize);
-            BddCache_resize(misccache, newcachesize);
-            BddCache_resize(countcache, newcachesize);
-        }
+    /* Makes all nodes old, needed whenever an old node is changed to point
+     * to a node that may be young. */
+    void bdd_tenureall() {
+        if (gcyoung != null)
+            Arrays.fill(gcyoung, 0);
     }
 
-    BddCache BddCacheI_init(int size) {
-        int n;
+    /**
+     * Collects the young generation.  Returns false if a full collection is
+     * still needed.
+     */
+    boolean bdd_gbc_young() {
+        int r, n, w;
+        long c2, c1;
 
-        size = bdd_prime_gte(size);
+        if (gcyoung == null || bddconcurrent || uniqueindex != null)
+            return false;
 
-        BddCache cache = new BddCache();
-        cache.table = new BddCacheDataI[size];
+        /* Only worth it if the young generation held enough garbage the
+         * last time it was collected */
+        if ((gcyoungfreed * 100) / bddnodesize <= minfreenodes)
+            return false;
 
-        for (n = 0; n < size; n++) {
-            cache.table[n] = new BddCacheDataI();
-            cache.table[n].a = -1;
+        c1 = clock();
+        gcyoungfreed = bddfreenum;
+
+        //if (gbc_handler != NULL)
+        {
+            gcstats.nodes = bddnodesize;
+            gcstats.freenodes = bddfreenum;
+            gcstats.time = 0;
+            gcstats.sumtime = gbcclock;
+            gcstats.num = gbcollectnum;
+            gbc_handler(true, gcstats);
         }
-        cache.tablesize = size;
 
-        return cache;
-    }
+        for (r = 0; r < bddrefstacktop; r++)
+            bdd_markyoung(bddrefstack[r]);
+
+        for (w = 0; w < gcyoung.length; w++) {
+            int bits = gcyoung[w];
+            while (bits != 0) {
+                n = (w << 5) + Integer.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (HASREF(n))
+                    bdd_markyoung(n);
+            }
+        }
 
-    BddCache BddCacheD_init(int size) {
-        int n;
+        bdd_nextepoch();
+        for (w = 0; w < gcyoung.length; w++) {
+            int bits = gcyoung[w];
+            gcyoung[w] = 0;
+            while (bits != 0) {
+                n = (w << 5) + Integer.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
 
-        size = bdd_prime_gte(size);
+                if (MARKED(n)) {
+                    /* Survivors become old */
+                    UNMARK(n);
+                } else {
+                    int hash2 = NODEHASH(LEVEL(n), LOW(n), HIGH(n));
+                    int p = HASH(hash2);
+
+                    if (p == n)
+                        SETHASH(hash2, NEXT(n));
+                    else {
+                        while (NEXT(p) != n)
+                            p = NEXT(p);
+                        SETNEXT(p, NEXT(n));
+                    }
 
-        BddCache cache = new BddCache();
-        cache.table = new BddCacheDataD[size];
+                    SETNODE(n, offset__refcou_and_level, cacheepoch);
+                    SETLOW(n, INVALID_BDD);
+                    SETNEXT(n, bddfreepos);
+                    bddfreepos = n;
+                    bddfreenum++;
+                }
+            }
+        }
 
-        for (n = 0; n < size; n++) {
-            cache.table[n] = new BddCacheDataD();
-            cache.table[n].a = -1;
+        bdd_operator_clean();
+        gcyoungfreed = bddfreenum - gcyoungfreed;
+
+        c2 = clock();
+        gbcclock += c2 - c1;
+        gbcollectnum++;
+
+        //if (gbc_handler != NULL)
+        {
+            gcstats.nodes = bddnodesize;
+            gcstats.freenodes = bddfreenum;
+            gcstats.time = c2 - c1;
+            gcstats.sumtime = gbcclock;
+            gcstats.num = gbcollectnum;
+            gbc_handler(false, gcstats);
         }
-        cache.tablesize = size;
 
-        return cache;
+        /* The old generation may hold garbage, so the node count is only
+         * exact after a full collection */
+        return (bddfreenum * 100) / bddnodesize > minfreenodes
+            && (bddnodesize - bddfreenum < usednodes_nextreorder
+                || !bdd_reorder_ready());
     }
 
-    void BddCache_done(BddCache cache) {
-        if (cache == null) return;
-        
-        free(cache.table);
-        cache.table = null;
-        cache.tablesize = 0;
-    }
+    void bdd_markyoung(int i) {
 
-    int BddCache_resize(BddCache cache, int newsize) {
-        if (cache == null) return 0;
-        int n;
+        /* Old nodes only point to old nodes */
+        i &= refmask;
+        if (i < 2 || !YOUNG(i))
+            return;
 
-        boolean is_d = cache.table instanceof BddCacheDataD[];
+        if (MARKED(i) || LOW(i) == INVALID_BDD)
+            return;
 
-        free(cache.table);
-        cache.table = null;
+        SETMARK(i);
 
-        newsize = bdd_prime_gte(newsize);
+        bdd_markyoung(LOW(i));
+        bdd_markyoung(HIGH(i));
+    }
 
-        if (is_d)
-            cache.table = new BddCacheDataD[newsize];
-        else
-            cache.table = new BddCacheDataI[newsize];
+    /*=== COMPLEMENT EDGES =================================================*/
 
-        for (n = 0; n < newsize; n++) {
-            if (is_d)
-                cache.table[n] = new BddCacheDataD();
-            else
-                cache.table[n] = new BddCacheDataI();
-            cache.table[n].a = -1;
+    /**
+     * <p>Enables or disables complement edges.  Returns the old setting.</p>
+     * 
+     * <p>With complement edges, a reference to a node carries a tag that
+     * negates the function of the node, so a function and its negation
+     * share all of their nodes.  <tt>not()</tt> then costs O(1) and takes no
+     * cache entries, every binary operator is done as an and or an xor of
+     * operands that are negated for free, and functions built with xor and
+     * biimp take up to half as many nodes.  The high edge of a node is never
+     * complemented: a node whose high child would be is stored as the
+     * complement of the node with both children negated, which keeps equal
+     * functions at equal references.</p>
+     * 
+     * <p>The tag is the sign bit of a reference, so a regular reference is
+     * still the number of its node, and the node table, the free list and
+     * the unique table are unchanged.  nodeCount() counts a node that is
+     * reached both regular and complemented once.  Files written by save()
+     * hold a BDD without complement edges, which any factory can load.</p>
+     * 
+     * <p>The setting can only be changed before the number of variables is
+     * set.  Complement edges cannot be combined with concurrent mode,
+     * parallel operations, the breadth-first engine, snapshots, ZDDs, ADDs
+     * or duplicateVar().</p>
+     * 
+     * @param b  whether to use complement edges
+     * @return  old setting
+     */
+    public boolean setComplementEdges(boolean b) {
+        boolean old = bddcomplement;
+        if (b == old)
+            return old;
+        if (bddvarnum > 0 || b && (bddconcurrent || parallelthreads > 1
+            || bfsapply || snapbase > 0 || zddfactory != null || addfactory != null)) {
+            bdd_error(BDD_COMPLEMENT);
+            return old;
         }
-        cache.tablesize = newsize;
-
-        return 0;
+        bddcomplement = b;
+        refmask = b ? NODE_MASK : -1;
+        return old;
     }
 
-    BddCacheDataI BddCache_lookupI(BddCache cache, int hash) {
-        return (BddCacheDataI) cache.table[Math.abs(hash % cache.tablesize)];
+    /**
+     * Returns true if complement edges are used.
+     * 
+     * @return  whether complement edges are used
+     * @see #setComplementEdges(boolean)
+     */
+    public boolean isComplementEdges() {
+        return bddcomplement;
     }
 
-    BddCacheDataD BddCache_lookupD(BddCache cache, int hash) {
-        return (BddCacheDataD) cache.table[Math.abs(hash % cache.tablesize)];
-    }
+    /*=== OFF-HEAP NODE TABLE ============================================*/
 
-    void BddCache_reset(BddCache cache) {
-        if (cache == null) return;
-        int n;
-        for (n = 0; n < cache.tablesize; n++)
-            cache.table[n].a = -1;
-    }
+    /**
+     * <p>Moves the node table between the Java heap and direct (off-heap)
+     * memory.  Returns the old setting.</p>
+     * 
+     * <p>Off-heap, the node table is split into fixed-size pages of
+     * direct memory, so it is neither scanned nor moved by the Java garbage
+     * collector, and growing the table only allocates the new pages instead
+     * of copying the whole table.  Large node tables are thus no longer
+     * limited by the size of a single Java array, and the heap only needs
+     * to hold the caches.  Access is slightly slower than with the on-heap
+     * array.</p>
+     * 
+     * <p>The off-heap table cannot be used with the compact node layout.</p>
+     * 
+     * @param b  whether to keep the node table off-heap
+     * @return  the old setting
+     */
+    public boolean setOffHeap(boolean b) {
+        boolean old = nodebuffers != null;
+        if (b == old || bddnodesize == 0)
+            return old;
+        if (uniqueindex != null) {
+            bdd_error(BDD_LAYOUT);
+            return old;
+        }
 
-    void BddCache_clean_d(BddCache cache) {
-        if (cache == null) return;
-        int n;
-        for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a >= 0 && LOW(a) == INVALID_BDD) {
-                cache.table[n].a = -1;
+        if (b) {
+            IntBuffer[] pages = bdd_allocpages(null, bddnodesize);
+            for (int p = 0; (p << NODE_PAGE_BITS) < bddnodesize; p++) {
+                int len = Math.min(NODE_PAGE_SIZE, bddnodesize - (p << NODE_PAGE_BITS)) * __node_size;
+                IntBuffer page = pages[p].duplicate();
+                page.clear();
+                if (nodepages != null)
+                    page.put(nodepages[p], 0, len);
+                else
+                    page.put(bddnodes, p*NODE_PAGE_SIZE*__node_size, len);
             }
+            nodebuffers = pages;
+            bddnodes = null;
+            nodepages = null;
+        } else {
+            /* Too large for one array: segmented */
+            if ((long) bddnodesize * __node_size > MAXARRAYSIZE)
+                nodepages = bdd_nodepages(bddnodesize);
+            else
+                bddnodes = bdd_nodearray();
+            nodebuffers = null;
         }
+        workerepoch++;
+        return old;
     }
-    
-    void BddCache_clean_a(BddCache cache) {
-        if (cache == null) return;
-        int n;
-        for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a < 0) continue;
-            if (LOW(a) == INVALID_BDD ||
-                LOW(((BddCacheDataI)cache.table[n]).res) == INVALID_BDD) {
-                cache.table[n].a = -1;
-            }
+
+    /**
+     * <p>Returns true if the node table is currently kept off-heap.</p>
+     * 
+     * @return  whether the node table is off-heap
+     * @see #setOffHeap(boolean)
+     */
+    public boolean isOffHeap() {
+        return nodebuffers != null;
+    }
+
+    /* Extends a page directory so that it can hold the given number of
+     * nodes.  Existing pages are kept as they are. */
+    static IntBuffer[] bdd_allocpages(IntBuffer[] old, int nodes) {
+        int num = (nodes + NODE_PAGE_SIZE - 1) >>> NODE_PAGE_BITS;
+        int oldnum = old == null ? 0 : old.length;
+        if (num <= oldnum)
+            return old;
+        IntBuffer[] pages = new IntBuffer[num];
+        if (old != null)
+            System.arraycopy(old, 0, pages, 0, oldnum);
+        for (int p = oldnum; p < num; p++) {
+            pages[p] = ByteBuffer.allocateDirect(NODE_PAGE_SIZE*__node_size*4)
+                                 .order(ByteOrder.nativeOrder()).asIntBuffer();
         }
+        return pages;
     }
-    
-    void BddCache_clean_ab(BddCache cache) {
-        if (cache == null) return;
-        int n;
-        for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a < 0) continue;
-            if (LOW(a) == INVALID_BDD ||
-                (cache.table[n].b != 0 && LOW(cache.table[n].b) == INVALID_BDD) ||
-                LOW(((BddCacheDataI)cache.table[n]).res) == INVALID_BDD) {
-                cache.table[n].a = -1;
-            }
+
+    /* Returns a copy of the node table as a single heap array */
+    int[] bdd_nodearray() {
+        int len = bddnodesize*nodestride;
+        int[] nodes = new int[len];
+        if (nodepages != null) {
+            for (int p = 0, off = 0; off < len; p++, off += NODE_PAGE_SIZE*nodestride)
+                System.arraycopy(nodepages[p], 0, nodes, off, Math.min(NODE_PAGE_SIZE*nodestride, len - off));
+            return nodes;
+        }
+        if (nodebuffers == null) {
+            System.arraycopy(bddnodes, 0, nodes, 0, len);
+            return nodes;
         }
+        for (int p = 0, off = 0; off < len; p++, off += NODE_PAGE_SIZE*__node_size) {
+            IntBuffer page = nodebuffers[p].duplicate();
+            page.clear();
+            page.get(nodes, off, Math.min(NODE_PAGE_SIZE*__node_size, len - off));
+        }
+        return nodes;
     }
-    
-    void BddCache_clean_abc(BddCache cache) {
-        if (cache == null) return;
-        int n;
-        for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a < 0) continue;
-            if (LOW(a) == -1 ||
-                LOW(cache.table[n].b) == INVALID_BDD ||
-                LOW(cache.table[n].c) == INVALID_BDD ||
-                LOW(((BddCacheDataI)cache.table[n]).res) == INVALID_BDD) {
-                cache.table[n].a = -1;
+
+    /*=== SEGMENTED NODE TABLE =============================================*/
+
+    /* Largest Java array */
+    static final int MAXARRAYSIZE = Integer.MAX_VALUE - 8;
+    /* Largest node table, leaving room for a last page */
+    static final int MAXNODESIZE = Integer.MAX_VALUE - NODE_PAGE_SIZE;
+
+    /**
+     * <p>Switches the node table on the Java heap between a single array and
+     * a segmented table.  Returns the old setting.</p>
+     * 
+     * <p>A Java array holds fewer than 2^31 ints, so with five ints per node
+     * a node table in one array ends at about 429 million nodes, and every
+     * resize allocates a new array for the whole table and copies the old
+     * one into it.  A segmented table is split into pages of NODE_PAGE_SIZE
+     * nodes, like the off-heap table: growing it only adds pages, and its
+     * size is only bounded by the heap and by the int node numbers, at about
+     * 2.1 billion nodes (1.6 billion with the compact layout, whose unique
+     * table is still one array).  Each node access goes through the page
+     * directory, which is slightly slower than a single array.  A node table
+     * that would outgrow a single array becomes segmented by itself.</p>
+     * 
+     * <p>The segmented table works with the compact layout, generational
+     * collection and concurrent mode.  An off-heap table is moved back to
+     * the heap as a single array if it fits in one, and as a segmented
+     * table otherwise.</p>
+     * 
+     * @param b  whether to split the node table into pages
+     * @return  old setting
+     */
+    public boolean setSegmented(boolean b) {
+        boolean old = nodepages != null;
+        if (b == old || bddnodesize == 0)
+            return old;
+        if (b) {
+            nodepages = bdd_nodepages(bddnodesize);
+            bddnodes = null;
+            nodebuffers = null;
+        } else {
+            if ((long) bddnodesize * nodestride > MAXARRAYSIZE) {
+                bdd_error(BDD_SIZE);
+                return old;
             }
+            bddnodes = bdd_nodearray();
+            nodepages = null;
         }
+        workerepoch++;
+        return old;
     }
-    
-    void bdd_setpair(bddPair pair, int oldvar, int newvar) {
-        if (pair == null)
-            return;
 
-        if (oldvar < 0 || oldvar > bddvarnum - 1)
-            bdd_error(BDD_VAR);
-        if (newvar < 0 || newvar > bddvarnum - 1)
-            bdd_error(BDD_VAR);
+    /**
+     * <p>Returns true if the node table is a segmented table on the
+     * heap.</p>
+     * 
+     * @return  whether the node table is segmented
+     * @see #setSegmented(boolean)
+     */
+    public boolean isSegmented() {
+        return nodepages != null;
+    }
 
-        bdd_delref(pair.result[bddvar2level[oldvar]]);
-        pair.result[bddvar2level[oldvar]] = bdd_ithvar(newvar);
-        pair.id = update_pairsid();
+    /* Largest number of nodes in the current layout */
+    int bdd_maxnodesize() {
+        if (uniqueindex != null)
+            return MAXARRAYSIZE / 4 * 3 - NODE_PAGE_SIZE;
+        return MAXNODESIZE;
+    }
 
-        if (bddvar2level[oldvar] > pair.last)
-            pair.last = bddvar2level[oldvar];
+    /* Extends a heap page directory so that it can hold the given number of
+     * nodes.  Existing pages are kept as they are. */
+    static int[][] bdd_allocheappages(int[][] old, int nodes, int stride) {
+        int num = (nodes + NODE_PAGE_SIZE - 1) >>> NODE_PAGE_BITS;
+        int oldnum = old == null ? 0 : old.length;
+        if (num <= oldnum)
+            return old;
+        int[][] pages = new int[num][];
+        if (old != null)
+            System.arraycopy(old, 0, pages, 0, oldnum);
+        for (int p = oldnum; p < num; p++)
+            pages[p] = new int[NODE_PAGE_SIZE*stride];
+        return pages;
+    }
+
+    /* Returns a copy of the node table as heap pages, with room for the
+     * given number of nodes */
+    int[][] bdd_nodepages(int nodes) {
+        int[][] pages = bdd_allocheappages(null, nodes, nodestride);
+        int pagelen = NODE_PAGE_SIZE*nodestride;
+        for (int p = 0; p < pages.length && (p << NODE_PAGE_BITS) < bddnodesize; p++) {
+            int len = Math.min(NODE_PAGE_SIZE, bddnodesize - (p << NODE_PAGE_BITS)) * nodestride;
+            if (nodepages != null) {
+                System.arraycopy(nodepages[p], 0, pages[p], 0, len);
+            } else if (nodebuffers != null) {
+                IntBuffer page = nodebuffers[p].duplicate();
+                page.clear();
+                page.get(pages[p], 0, len);
+            } else {
+                System.arraycopy(bddnodes, p*pagelen, pages[p], 0, len);
+            }
+        }
+        return pages;
+    }
 
-        return;
+    /*=== SNAPSHOTS ========================================================*/
+
+    /**
+     * <p>Writes a snapshot of the given BDDs to a file.  The snapshot holds
+     * the nodes of the BDDs and of all variables, renumbered into a compact
+     * node table together with its own unique table, so that
+     * {@link #initFromSnapshot(String, int, int)} can map the file into
+     * memory as it is instead of rebuilding the BDDs node by node.</p>
+     * 
+     * <p>The file is written in the native byte order of this machine, and
+     * is mapped in that byte order wherever it is loaded.  A machine with
+     * the other byte order can still map it, but then swaps the bytes of
+     * every node it reads, which makes operations on snapshot nodes
+     * slower.</p>
+     * 
+     * @param filename  file name
+     * @param roots  BDDs to save
+     * @see #initFromSnapshot(String, int, int)
+     */
+    public void saveSnapshot(String filename, BDD[] roots) throws IOException {
+        if (bddcomplement)
+            bdd_error(BDD_COMPLEMENT);
+        int[] r = new int[roots.length];
+        for (int i = 0; i < roots.length; i++)
+            r[i] = ((bdd) roots[i])._index;
+        RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        try {
+            file.setLength(0);
+            bdd_savesnapshot(file.getChannel(), r);
+        } finally {
+            file.close();
+        }
     }
 
-    void bdd_setbddpair(bddPair pair, int oldvar, int newvar) {
-        int oldlevel;
+    /**
+     * <p>Creates a factory whose node table starts out with the contents of
+     * a snapshot written by {@link #saveSnapshot(String, BDD[])}.  The
+     * snapshot nodes are mapped into memory as a read-only base layer and
+     * are paged in on first use, so this takes about the same time whatever
+     * the size of the snapshot.  New nodes are allocated above the base
+     * layer and may refer to snapshot nodes.</p>
+     * 
+     * <p>Snapshot nodes are permanent: they are never garbage collected, and
+     * the variable order is fixed, so variables cannot be reordered in the
+     * returned factory.  The node table is kept off-heap.  The number of
+     * variables and the variable order are those of the snapshot; more
+     * variables may be added with setVarNum().</p>
+     * 
+     * @param filename  file name
+     * @param nodenum  initial number of nodes besides the snapshot
+     * @param cachesize  operation cache size
+     * @return  the new factory
+     * @see #getSnapshotRoots()
+     */
+    public static JFactory initFromSnapshot(String filename, int nodenum, int cachesize) throws IOException {
+        JFactory f = new JFactory();
+        f.initialize(nodenum, cachesize);
+        RandomAccessFile file;
+        boolean writable = true;
+        try {
+            /* Private mappings need a channel open for writing, even though
+             * the file itself is never modified. */
+            file = new RandomAccessFile(filename, "rw");
+        } catch (IOException x) {
+            file = new RandomAccessFile(filename, "r");
+            writable = false;
+        }
+        try {
+            f.bdd_mapsnapshot(file.getChannel(), writable);
+        } finally {
+            file.close();
+        }
+        return f;
+    }
 
-        if (pair == null)
-            return;
+    /**
+     * <p>Returns the BDDs that were saved in the snapshot this factory was
+     * created from, in the order they were given to saveSnapshot().</p>
+     * 
+     * @return  snapshot BDDs, or null if there is no snapshot
+     * @see #initFromSnapshot(String, int, int)
+     */
+    public BDD[] getSnapshotRoots() {
+        if (snaproots == null)
+            return null;
+        BDD[] r = new BDD[snaproots.length];
+        for (int i = 0; i < r.length; i++)
+            r[i] = makeBDD(snaproots[i]);
+        return r;
+    }
 
-        CHECK(newvar);
-        if (oldvar < 0 || oldvar >= bddvarnum)
-            bdd_error(BDD_VAR);
-        oldlevel = bddvar2level[oldvar];
+    static final int SNAPSHOT_MAGIC = 0x4A424453; /* "JBDS" */
+    static final int SNAPSHOT_VERSION = 1;
+    static final int SNAPSHOT_ALIGN = 4096;
 
-        bdd_delref(pair.result[oldlevel]);
-        pair.result[oldlevel] = bdd_addref(newvar);
-        pair.id = update_pairsid();
+    /* Looks a node up in the mapped snapshot */
+    int bdd_findbase(int level, int low, int high) {
+        int res = HASH(Math.abs(TRIPLE(level, low, high) % snapbase));
 
-        if (oldlevel > pair.last)
-            pair.last = oldlevel;
+        while (res != 0) {
+            if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high)
+                return res;
+            res = NEXT(res);
+        }
+        return 0;
+    }
 
-        return;
+    /* Numbers the nodes of r, children first */
+    int bdd_snapshot_rec(int[] ids, int[] order, int next, int r) {
+        if (r < 2 || ids[r] != 0)
+            return next;
+        next = bdd_snapshot_rec(ids, order, next, LOW(r));
+        next = bdd_snapshot_rec(ids, order, next, HIGH(r));
+        ids[r] = next;
+        order[next] = r;
+        return next + 1;
     }
 
-    void bdd_resetpair(bddPair p) {
-        int n;
+    void bdd_savesnapshot(FileChannel ch, int[] roots) throws IOException {
+        int n, num;
 
+        /* Renumber all nodes reachable from the variables and the roots */
+        int[] ids = new int[bddnodesize];
+        int[] order = new int[bddnodesize];
+        ids[1] = 1;
+        num = 2;
+        for (n = 0; n < bddvarnum * 2; n++)
+            num = bdd_snapshot_rec(ids, order, num, bddvarset[n]);
+        for (n = 0; n < roots.length; n++) {
+            CHECK(roots[n]);
+            num = bdd_snapshot_rec(ids, order, num, roots[n]);
+        }
+
+        /* Build the unique table of the snapshot */
+        int[] heads = new int[num];
+        int[] next = new int[num];
+        for (n = 2; n < num; n++) {
+            int r = order[n];
+            int hash = Math.abs(TRIPLE(LEVEL(r), ids[LOW(r)], ids[HIGH(r)]) % num);
+            next[n] = heads[hash];
+            heads[hash] = n;
+        }
+
+        int headerlen = 4 * (6 + bddvarnum * 3 + roots.length);
+        long datastart = (headerlen + SNAPSHOT_ALIGN - 1) / SNAPSHOT_ALIGN * SNAPSHOT_ALIGN;
+        ByteBuffer header = ByteBuffer.allocate(headerlen).order(ByteOrder.nativeOrder());
+        header.putInt(SNAPSHOT_MAGIC);
+        header.putInt(SNAPSHOT_VERSION);
+        header.putInt(num);
+        header.putInt(bddvarnum);
+        header.putInt(roots.length);
+        header.putInt((int) datastart);
         for (n = 0; n < bddvarnum; n++)
-            p.result[n] = bdd_ithvar(bddlevel2var[n]);
-        p.last = 0;
+            header.putInt(bddvar2level[n]);
+        for (n = 0; n < bddvarnum * 2; n++)
+            header.putInt(ids[bddvarset[n]]);
+        for (n = 0; n < roots.length; n++)
+            header.putInt(ids[roots[n]]);
+        header.flip();
+        long pos = 0;
+        while (header.hasRemaining())
+            pos += ch.write(header, pos);
+
+        /* Node records, padded to whole pages */
+        ByteBuffer page = ByteBuffer.allocate(NODE_PAGE_SIZE*__node_size*4).order(ByteOrder.nativeOrder());
+        IntBuffer nodes = page.asIntBuffer();
+        pos = datastart;
+        for (int base = 0; base < num; base += NODE_PAGE_SIZE) {
+            page.clear();
+            nodes.clear();
+            for (n = base; n < base + NODE_PAGE_SIZE; n++) {
+                if (n < 2) {
+                    nodes.put(REF_MASK | LEVEL(n));
+                    nodes.put(n);
+                    nodes.put(n);
+                } else if (n < num) {
+                    int r = order[n];
+                    nodes.put(REF_MASK | LEVEL(r));
+                    nodes.put(ids[LOW(r)]);
+                    nodes.put(ids[HIGH(r)]);
+                } else {
+                    nodes.put(0);
+                    nodes.put(INVALID_BDD);
+                    nodes.put(0);
+                }
+                nodes.put(n < num ? heads[n] : 0);
+                nodes.put(n < num ? next[n] : 0);
+            }
+            while (page.hasRemaining())
+                pos += ch.write(page, pos);
+        }
+        ch.force(false);
     }
 
-    class bddPair extends BDDPairing {
-        int[] result;
-        int last;
-        int id;
-        bddPair next;
+    void bdd_mapsnapshot(FileChannel ch, boolean writable) throws IOException {
+        int n;
 
-        /* (non-Javadoc)
-         * @see net.sf.javabdd.BDDPairing#set(int, int)
-         */
-        public void set(int oldvar, int newvar) {
-            bdd_setpair(this, oldvar, newvar);
-        }
-        /* (non-Javadoc)
-         * @see net.sf.javabdd.BDDPairing#set(int, net.sf.javabdd.BDD)
-         */
-        public void set(int oldvar, BDD newvar) {
-            bdd_setbddpair(this, oldvar, ((bdd) newvar)._index);
-        }
-        /* (non-Javadoc)
-         * @see net.sf.javabdd.BDDPairing#reset()
-         */
-        public void reset() {
-            bdd_resetpair(this);
-        }
-        
-        public String toString() {
-            StringBuffer sb = new StringBuffer();
-            sb.append('{');
-            boolean any = false;
-            for (int i = 0; i < result.length; ++i) {
-                if (result[i] != bdd_ithvar(bddlevel2var[i])) {
-                    if (any) sb.append(", ");
-                    any = true;
-                    sb.append(bddlevel2var[i]);
-                    sb.append('=');
-                    bdd b = new bdd(result[i]);
-                    sb.append(b);
-                    b.free();
-                }
+        /* The magic number tells the byte order of the file */
+        ByteBuffer header = ByteBuffer.allocate(24);
+        while (header.hasRemaining())
+            if (ch.read(header, header.position()) < 0)
+                bdd_error(BDD_FORMAT);
+        header.flip();
+        ByteOrder fileorder = ByteOrder.BIG_ENDIAN;
+        if (header.getInt(0) != SNAPSHOT_MAGIC) {
+            fileorder = ByteOrder.LITTLE_ENDIAN;
+            header.order(fileorder);
+            if (header.getInt(0) != SNAPSHOT_MAGIC)
+                bdd_error(BDD_FORMAT);
+        }
+        if (header.getInt(4) != SNAPSHOT_VERSION)
+            bdd_error(BDD_FORMAT);
+        int num = header.getInt(8);
+        int vnum = header.getInt(12);
+        int rootnum = header.getInt(16);
+        long datastart = header.getInt(20);
+
+        IntBuffer meta = ch.map(FileChannel.MapMode.READ_ONLY, 24, 4 * (vnum * 3 + rootnum))
+                           .order(fileorder).asIntBuffer();
+
+        /* Sets up the variable tables; the nodes are replaced below */
+        if (vnum > 0)
+            bdd_setvarnum(vnum);
+        for (n = 0; n < vnum; n++) {
+            bddvar2level[n] = meta.get();
+            bddlevel2var[bddvar2level[n]] = n;
+        }
+        for (n = 0; n < vnum * 2; n++)
+            bddvarset[n] = meta.get();
+        snaproots = new int[rootnum];
+        for (n = 0; n < rootnum; n++)
+            snaproots[n] = meta.get();
+
+        /* Map the snapshot pages, and allocate the rest of the table */
+        int pagenum = (num + NODE_PAGE_SIZE - 1) >>> NODE_PAGE_BITS;
+        int pagebytes = NODE_PAGE_SIZE*__node_size*4;
+        IntBuffer[] pages = new IntBuffer[pagenum];
+        for (int p = 0; p < pagenum; p++) {
+            ByteBuffer b;
+            if (writable) {
+                b = ch.map(FileChannel.MapMode.PRIVATE, datastart + (long) p * pagebytes, pagebytes);
+            } else {
+                /* Cannot map privately; copy the page instead */
+                b = ByteBuffer.allocateDirect(pagebytes);
+                while (b.hasRemaining())
+                    if (ch.read(b, datastart + (long) p * pagebytes + b.position()) < 0)
+                        bdd_error(BDD_FORMAT);
+                b.clear();
             }
-            sb.append('}');
-            return sb.toString();
+            pages[p] = b.order(fileorder).asIntBuffer();
         }
-    }
 
-    bddPair pairs; /* List of all replacement pairs in use */
-    int pairsid; /* Pair identifier */
+        int oldsize = bddnodesize;
+        bddnodes = null;
+        nodepages = null;
+        nodebuffers = bdd_allocpages(pages, num + oldsize);
+        bddnodesize = num + oldsize;
+        snapbase = num;
+        workerepoch++;
+        nodereused = new int[REUSESIZE(bddnodesize)];
+
+        for (n = num; n < bddnodesize; n++) {
+            SETNODE(n, offset__refcou_and_level, 0);
+            SETLOW(n, INVALID_BDD);
+            SETHASH(n, 0);
+            SETNEXT(n, n+1);
+        }
+        SETNEXT(bddnodesize-1, 0);
+        bddfreepos = num;
+        bddfreenum = bddnodesize - num;
+        usednodes_nextreorder = bddnodesize;
 
-    static final void free(Object o) {
+        bdd_operator_reset();
+        bddresized = true;
     }
 
-    /*************************************************************************
-    *************************************************************************/
+    /*=== CONCURRENT MODE ==================================================*/
 
-    void bdd_pairs_init() {
-        pairsid = 0;
-        pairs = null;
-    }
+    /**
+     * <p>Enables or disables concurrent mode.  In concurrent mode, the
+     * <tt>apply</tt> family (<tt>and</tt>, <tt>or</tt>, ...), <tt>exist</tt>,
+     * <tt>forAll</tt>, <tt>relprod</tt> and <tt>applyEx</tt> may be called from
+     * many threads at the same time on shared BDDs.  They all build into the
+     * same node table: the unique table is updated with compare-and-swap and
+     * each thread allocates from its own chunk of the free list.  All other BDD
+     * operations are serialized with a lock.</p>
+     * 
+     * <p>Concurrent mode should be enabled right after the factory has been
+     * initialized; BDD objects created before that are not thread-safe.
+     * Factory-level operations (setting the number of variables, reordering,
+     * domains, loading and saving) must still be done while no other thread
+     * is using the factory.</p>
+     * 
+     * <p>Concurrent mode cannot be used with the compact node layout.</p>
+     * 
+     * @param b  whether to enable concurrent mode
+     * @return  the old setting
+     */
+    public boolean setConcurrent(boolean b) {
+        boolean old = bddconcurrent;
+        if (b == old)
+            return old;
+        if (uniqueindex != null) {
+            bdd_error(BDD_LAYOUT);
+            return old;
+        }
+        if (bddcomplement) {
+            bdd_error(BDD_COMPLEMENT);
+            return old;
+        }
 
-    void bdd_pairs_done() {
-        bddPair p = pairs;
         int n;
-
-        while (p != null) {
-            bddPair next = p.next;
-            for (n = 0; n < bddvarnum; n++)
-                bdd_delref(p.result[n]);
-            p.result = null;
-            free(p.result);
-            free(p);
-            p = next;
+        if (b) {
+            AtomicIntegerArray table = new AtomicIntegerArray(bddnodesize);
+            for (n = 0; n < bddnodesize; n++)
+                table.set(n, HASH(n));
+            uniquetable = table;
+            kernellock = new ReentrantReadWriteLock();
+            freelock = new Object();
+            reflock = new Object();
+            workers = new BddWorkers();
+            /* Nodes built by workers are not tracked as young */
+            bdd_tenureall();
+        } else {
+            uniquetable = null;
+            kernellock = null;
+            freelock = null;
+            reflock = null;
+            concurrent_done();
+            /* Give the per-thread free lists back to the kernel */
+            for (n = snapbase; n < bddnodesize; n++)
+                SETHASH(n, 0);
+            bdd_gbc_rehash();
         }
+        workerepoch++;
+        bddconcurrent = b;
+        parallelconcurrent = false;
+        return old;
     }
 
-    int update_pairsid() {
-        pairsid++;
+    /**
+     * Returns true if concurrent mode is enabled.
+     * 
+     * @return  whether concurrent mode is enabled
+     * @see #setConcurrent(boolean)
+     */
+    public boolean isConcurrent() {
+        return bddconcurrent;
+    }
 
-        if (pairsid == (INT_MAX >> 2)) {
-            bddPair p;
-            pairsid = 0;
-            for (p = pairs; p != null; p = p.next)
-                p.id = pairsid++;
-            //bdd_operator_reset();
-            BddCache_reset(replacecache);
-        }
-
-        return pairsid;
+    /**
+     * Thrown by a concurrent operation when the free list runs out.  The
+     * operation is restarted after a garbage collection.
+     */
+    private static class FreeListException extends RuntimeException {
+        /**
+         * Version ID for serialization.
+         */
+        private static final long serialVersionUID = 3977583605484238133L;
     }
 
-    void bdd_register_pair(bddPair p) {
-        p.next = pairs;
-        pairs = p;
+    /**
+     * Per-thread state for operations in concurrent mode.  Each thread has its
+     * own free list chunk, operator caches and quantification variable table.
+     */
+    private static class BddWorker {
+        int freepos; /* First node of the private free list */
+        int freenum; /* Number of nodes on the private free list */
+        int epoch; /* Value of workerepoch when this state was valid */
+        int applyop; /* Current operator for apply */
+        int appexop; /* Current operator for appex */
+        int appexid; /* Current cache id for appex */
+        int quantid; /* Current cache id for quantifications */
+        int[] quantvarset; /* Current variable set for quant. */
+        int quantvarsetID; /* Current id used in quantvarset */
+        int quantlast; /* Current last variable to be quant. */
+        BddCache applycache; /* Cache for apply results */
+        BddCache quantcache; /* Cache for exist/forall results */
+        BddCache appexcache; /* Cache for appex results */
+        BddCounters counters; /* Statistics of this thread */
     }
 
-    void bdd_pairs_vardown(int level) {
-        bddPair p;
-
-        for (p = pairs; p != null; p = p.next) {
-            int tmp;
-
-            tmp = p.result[level];
-            p.result[level] = p.result[level + 1];
-            p.result[level + 1] = tmp;
-
-            if (p.last == level)
-                p.last++;
+    /**
+     * The states of all threads that worked in concurrent mode, and the
+     * state of the current thread.
+     */
+    private static class BddWorkers {
+        final BddThreadSlot current = new BddThreadSlot();
+        BddWorker[] list = new BddWorker[8];
+        int num;
+
+        synchronized void add(BddWorker w) {
+            if (num == list.length) {
+                BddWorker[] l = new BddWorker[num * 2];
+                System.arraycopy(list, 0, l, 0, num);
+                list = l;
+            }
+            list[num++] = w;
         }
     }
 
-    int bdd_pairs_resize(int oldsize, int newsize) {
-        bddPair p;
-        int n;
-
-        for (p = pairs; p != null; p = p.next) {
-            int[] new_result = new int[newsize];
-            System.arraycopy(p.result, 0, new_result, 0, oldsize);
-            p.result = new_result;
+    /**
+     * Per-thread value.  Only this class uses the raw ThreadLocal type.
+     */
+    static class BddThreadSlot {
+        private final ThreadLocal local = new ThreadLocal();
 
-            for (n = oldsize; n < newsize; n++)
-                p.result[n] = bdd_ithvar(bddlevel2var[n]);
+        Object get() {
+            return local.get();
         }
 
-        return 0;
+        void set(Object o) {
+            local.set(o);
+        }
     }
 
-    void bdd_disable_reorder() {
-        reorderdisabled = 1;
-    }
-    void bdd_enable_reorder() {
-        reorderdisabled = 0;
+    /**
+     * A task for the parallel pools.  A task that no pool thread has started
+     * by the time it is joined is run by the joining thread.  Only this class
+     * uses the raw FutureTask and Callable types.
+     */
+    static abstract class BddTask implements Callable {
+        final FutureTask future = new FutureTask(this);
+
+        /* Runs the task here unless it was started, then waits for it */
+        Object join() throws InterruptedException, ExecutionException {
+            future.run();
+            return future.get();
+        }
+    }
+
+    /* Number of nodes a thread takes from the free list at a time */
+    static final int WORKER_CHUNK = 1024;
+
+    static final int CONCURRENT_APPLY = 0;
+    static final int CONCURRENT_EXIST = 1;
+    static final int CONCURRENT_FORALL = 2;
+    static final int CONCURRENT_APPEX = 3;
+
+    BddWorker concurrent_worker() {
+        BddWorker w = (BddWorker) workers.current.get();
+        if (w == null) {
+            w = new BddWorker();
+            w.epoch = workerepoch - 1;
+            w.counters = new BddCounters();
+            workers.add(w);
+            workers.current.set(w);
+        }
+        if (w.epoch != workerepoch) {
+            /* Nodes were collected or moved - drop everything */
+            w.freepos = 0;
+            w.freenum = 0;
+            BddCache_reset(w.applycache);
+            BddCache_reset(w.quantcache);
+            BddCache_reset(w.appexcache);
+            w.epoch = workerepoch;
+        }
+        if (w.quantvarset == null || w.quantvarset.length != bddvarnum) {
+            w.quantvarset = new int[bddvarnum];
+            w.quantvarsetID = 0;
+        }
+        return w;
+    }
+
+    /* Drops the states of the worker threads, keeping what they counted.
+     * A state stays reachable from the thread-local map of its thread until
+     * that thread ends, so its caches are freed here. */
+    void concurrent_done() {
+        BddWorkers ws = workers;
+        synchronized (ws) {
+            for (int i = 0; i < ws.num; i++) {
+                BddWorker w = ws.list[i];
+                counters.add(w.counters);
+                BddCache_done(w.applycache);
+                BddCache_done(w.quantcache);
+                BddCache_done(w.appexcache);
+                w.applycache = null;
+                w.quantcache = null;
+                w.appexcache = null;
+                w.quantvarset = null;
+                w.freenum = 0;
+            }
+        }
+        workers = null;
     }
-    void bdd_checkreorder() {
-        bdd_reorder_auto();
-
-        /* Do not reorder before twice as many nodes have been used */
-        usednodes_nextreorder = 2 * (bddnodesize - bddfreenum);
 
-        /* And if very little was gained this time (< 20%) then wait until
-         * even more nodes (upto twice as many again) have been used */
-        if (bdd_reorder_gain() < 20)
-            usednodes_nextreorder
-                += (usednodes_nextreorder * (20 - bdd_reorder_gain()))
-                / 20;
+    /* Nodes on the private free lists of the worker threads */
+    int concurrent_freenum() {
+        int num = 0;
+        BddWorkers ws = workers;
+        synchronized (ws) {
+            for (int i = 0; i < ws.num; i++) {
+                BddWorker w = ws.list[i];
+                /* Older chunks have been taken back by a collection */
+                if (w.epoch == workerepoch)
+                    num += w.freenum;
+            }
+        }
+        return num;
     }
 
-    boolean bdd_reorder_ready() {
-        if ((bddreordermethod == BDD_REORDER_NONE)
-            || (vartree == null)
-            || (bddreordertimes == 0)
-            || (reorderdisabled != 0))
-            return false;
-        return true;
+    int concurrent_addref(int root, boolean inc) {
+        kernellock.readLock().lock();
+        try {
+            synchronized (reflock) {
+                if (root >= bddnodesize)
+                    return bdd_error(BDD_ILLBDD);
+                if (LOW(root) == INVALID_BDD)
+                    return bdd_error(BDD_ILLBDD);
+                if (inc) {
+                    INCREF(root);
+                } else {
+                    if (!HASREF(root))
+                        bdd_error(BDD_BREAK); /* distinctive */
+                    DECREF(root);
+                }
+            }
+        } finally {
+            kernellock.readLock().unlock();
+        }
+        return root;
     }
 
-    void bdd_reorder(int method) {
-        BddTree top;
-        int savemethod = bddreordermethod;
-        int savetimes = bddreordertimes;
+    /**
+     * Runs one operation in concurrent mode.  The result is returned with an
+     * extra reference, so that it survives until the caller wraps it.
+     */
+    int concurrent_run(int kind, int l, int r, int op, int var) {
+        if (op < 0 || op > bddop_invimp)
+            return bdd_error(BDD_OP);
 
-        bddreordermethod = method;
-        bddreordertimes = 1;
+        for (;;) {
+            int epoch;
+            kernellock.readLock().lock();
+            try {
+                CHECKa(l, bddfalse);
+                CHECKa(r, bddfalse);
+                CHECKa(var, bddfalse);
+                BddWorker w = concurrent_worker();
+                epoch = w.epoch;
+                try {
+                    int res;
+                    switch (kind) {
+                        case CONCURRENT_APPLY:
+                            w.applyop = op;
+                            if (parallelpool != null)
+                                res = apply_p(w, l, r, 0);
+                            else
+                                res = apply_c(w, l, r);
+                            break;
+                        case CONCURRENT_EXIST:
+                        case CONCURRENT_FORALL:
+                            if (var < 2) {
+                                res = l;
+                                break;
+                            }
+                            varset2vartable_c(w, var);
+                            w.quantid = (var << 3) | (kind == CONCURRENT_EXIST ? CACHEID_EXIST : CACHEID_FORALL);
+                            w.applyop = op;
+                            res = quant_c(w, l);
+                            break;
+                        default:
+                            if (var < 2) {
+                                w.applyop = op;
+                                res = apply_c(w, l, r);
+                                break;
+                            }
+                            varset2vartable_c(w, var);
+                            w.applyop = bddop_or;
+                            w.appexop = op;
+                            w.appexid = (var << 5) | (op << 1);
+                            w.quantid = (w.appexid << 3) | CACHEID_APPEX;
+                            if (parallelpool != null)
+                                res = appquant_p(w, l, r, 0);
+                            else
+                                res = appquant_c(w, l, r);
+                            break;
+                    }
+                    concurrentprogress = true;
+                    return bdd_addref(res);
+                } catch (FreeListException x) {
+                }
+            } finally {
+                kernellock.readLock().unlock();
+            }
 
-        if ((top = bddtree_new(-1)) != null) {
-            if (reorder_init() >= 0) {
-                
-                usednum_before = bddnodesize - bddfreenum;
-        
-                top.firstVar = top.firstLevel = 0;
-                top.lastVar = top.lastLevel = bdd_varnum() - 1;
-                top.fixed = false;
-                top.interleaved = false;
-                top.next = null;
-                top.nextlevel = vartree;
-        
-                reorder_block(top, method);
-                vartree = top.nextlevel;
-                free(top);
-        
-                usednum_after = bddnodesize - bddfreenum;
-        
-                reorder_done();
-                bddreordermethod = savemethod;
-                bddreordertimes = savetimes;
+            kernellock.writeLock().lock();
+            try {
+                /* Only collect if no other thread did so in the meantime */
+                if (epoch == workerepoch)
+                    concurrent_gbc();
+            } finally {
+                kernellock.writeLock().unlock();
             }
         }
     }
 
-    BddTree bddtree_new(int id) {
-        BddTree t = new BddTree();
-
-        t.firstVar = t.lastVar = t.firstLevel = t.lastLevel = -1;
-        t.fixed = true;
-        //t.interleaved = false;
-        //t.next = t.prev = t.nextlevel = null;
-        //t.seq = null;
-        t.id = id;
-        return t;
+    void concurrent_gbc() {
+        bdd_gbc();
+        /* Aborted operations lose their intermediate results, so grow the
+         * table if nothing has finished since the last collection. */
+        if (!concurrentprogress || (bddfreenum * 100) / bddnodesize <= minfreenodes)
+            bdd_noderesize(true);
+        concurrentprogress = false;
+        if (bddfreepos == 0)
+            bdd_error(BDD_NODENUM);
+        checkresize();
     }
 
-    BddTree reorder_block(BddTree t, int method) {
-        BddTree dis;
-
-        if (t == null)
-            return null;
-
-        if (!t.fixed /*BDD_REORDER_FREE*/
-            && t.nextlevel != null) {
-            switch (method) {
-                case BDD_REORDER_WIN2 :
-                    t.nextlevel = reorder_win2(t.nextlevel);
-                    break;
-                case BDD_REORDER_WIN2ITE :
-                    t.nextlevel = reorder_win2ite(t.nextlevel);
-                    break;
-                case BDD_REORDER_SIFT :
-                    t.nextlevel = reorder_sift(t.nextlevel);
-                    break;
-                case BDD_REORDER_SIFTITE :
-                    t.nextlevel = reorder_siftite(t.nextlevel);
-                    break;
-                case BDD_REORDER_WIN3 :
-                    t.nextlevel = reorder_win3(t.nextlevel);
-                    break;
-                case BDD_REORDER_WIN3ITE :
-                    t.nextlevel = reorder_win3ite(t.nextlevel);
-                    break;
-                case BDD_REORDER_RANDOM :
-                    t.nextlevel = reorder_random(t.nextlevel);
-                    break;
+    void concurrent_refill(BddWorker w) {
+        synchronized (freelock) {
+            if (bddfreepos == 0)
+                throw new FreeListException();
+            int first = bddfreepos, last = first, num = 1;
+            REUSE(first);
+            while (num < WORKER_CHUNK && NEXT(last) != 0) {
+                last = NEXT(last);
+                REUSE(last);
+                num++;
             }
+            bddfreepos = NEXT(last);
+            bddfreenum -= num;
+            bddproduced += num;
+            SETNEXT(last, 0);
+            w.freepos = first;
+            w.freenum = num;
         }
+    }
 
-        for (dis = t.nextlevel; dis != null; dis = dis.next)
-            reorder_block(dis, method);
+    int bdd_makenode_c(BddWorker w, int level, int low, int high) {
+        int hash2;
+        int res, head, stop, node;
 
-        if (t.seq != null) {
-            //Arrays.sort(t.seq, 0, t.lastVar-t.firstVar + 1);
-            varseq_qsort(t.seq, 0, t.lastVar-t.firstVar + 1);
-            t.firstLevel = bddvar2level[t.seq[0]];
-            t.lastLevel = bddvar2level[t.seq[t.lastVar-t.firstVar]];
+        w.counters.uniqueAccess++;
+
+        /* check whether childs are equal */
+        if (low == high)
+            return low;
+
+        /* Snapshot nodes only have snapshot children */
+        if (low < snapbase && high < snapbase) {
+            res = bdd_findbase(level, low, high);
+            if (res != 0)
+                return res;
         }
 
-        return t;
-    }
-    
-    // due to Akihiko Tozawa
-    void varseq_qsort(int[] target, int from, int to) {
-        
-        int x, i, j;
-        
-        switch (to - from) {
-            case 0 :
-                return;
-    
-            case 1 :
-                return;
-    
-            case 2 :
-                if (bddvar2level[target[from]] <= bddvar2level[target[from + 1]])
-                    return;
-                else {
-                    x = target[from];
-                    target[from] = target[from + 1];
-                    target[from + 1] = x;
+        hash2 = NODEHASH(level, low, high);
+        head = uniquetable.get(hash2);
+        stop = 0;
+        node = 0;
+
+        for (;;) {
+            /* Try to find an existing node of this kind */
+            for (res = head; res != stop; res = NEXT(res)) {
+                if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
+                    if (node != 0) {
+                        /* Lost the race - give the node back */
+                        SETLOW(node, INVALID_BDD);
+                        SETNEXT(node, w.freepos);
+                        w.freepos = node;
+                        w.freenum++;
+                    } else
+                        w.counters.uniqueHit++;
+                    return res;
                 }
-                return;
-        }
-    
-        int r = target[from];
-        int s = target[(from + to) / 2];
-        int t = target[to - 1];
-    
-        if (bddvar2level[r] <= bddvar2level[s]) {
-            if (bddvar2level[s] <= bddvar2level[t]) {
-            } else if (bddvar2level[r] <= bddvar2level[t]) {
-                target[to - 1] = s;
-                target[(from + to) / 2] = t;
-            } else {
-                target[to - 1] = s;
-                target[from] = t;
-                target[(from + to) / 2] = r;
-            }
-        } else {
-            if (bddvar2level[r] <= bddvar2level[t]) {
-                target[(from + to) / 2] = r;
-                target[from] = s;
-            } else if (bddvar2level[s] <= bddvar2level[t]) {
-                target[to - 1] = r;
-                target[(from + to) / 2] = t;
-                target[from] = s;
-            } else {
-                target[to - 1] = r;
-                target[from] = t;
-            }
-        }
-        
-        int mid = target[(from + to) / 2];
-        
-        for (i = from + 1, j = to - 1; i + 1 != j;) {
-            if (target[i] == mid) {
-                target[i] = target[i + 1];
-                target[i + 1] = mid;
+                w.counters.uniqueChain++;
             }
-            
-            x = target[i];
-            
-            if (x <= mid)
-                i++;
-            else {
-                x = target[--j];
-                target[j] = target[i];
-                target[i] = x;
+
+            /* No existing node => build one */
+            if (node == 0) {
+                w.counters.uniqueMiss++;
+                if (w.freepos == 0)
+                    concurrent_refill(w);
+                node = w.freepos;
+                w.freepos = NEXT(node);
+                w.freenum--;
+
+                SETLEVELANDMARK(node, level);
+                SETLOW(node, low);
+                SETHIGH(node, high);
             }
+
+            /* Publish it, unless another thread changed the chain */
+            SETNEXT(node, head);
+            if (uniquetable.compareAndSet(hash2, head, node))
+                return node;
+            stop = head;
+            head = uniquetable.get(hash2);
         }
-    
-        varseq_qsort(target, from, i);
-        varseq_qsort(target, i + 1, to);
     }
-         
-    BddTree reorder_win2(BddTree t) {
-        BddTree dis = t, first = t;
 
-        if (t == null)
-            return t;
+    void varset2vartable_c(BddWorker w, int r) {
+        int n;
 
-        if (verbose > 1) {
-            System.out.println("Win2 start: " + reorder_nodenum() + " nodes");
-            System.out.flush();
+        w.quantvarsetID++;
+
+        if (w.quantvarsetID == INT_MAX) {
+            for (int i = 0; i < bddvarnum; ++i)
+                w.quantvarset[i] = 0;
+            w.quantvarsetID = 1;
         }
 
-        while (dis.next != null) {
-            int best = reorder_nodenum();
-            blockdown(dis);
+        w.quantlast = -1;
+        for (n = r; n > 1; n = HIGH(n)) {
+            w.quantvarset[LEVEL(n)] = w.quantvarsetID;
+            w.quantlast = LEVEL(n);
+        }
+    }
 
-            if (best < reorder_nodenum()) {
-                blockdown(dis.prev);
-                dis = dis.next;
-            } else if (first == dis)
-                first = dis.prev;
+    int apply_c(BddWorker w, int l, int r) {
+        int[] table;
+        int entry;
+        int res;
 
-            if (verbose > 1) {
-                System.out.print(".");
-                System.out.flush();
-            }
+        switch (w.applyop) {
+            case bddop_and :
+                if (l == r)
+                    return l;
+                if (ISZERO(l) || ISZERO(r))
+                    return 0;
+                if (ISONE(l))
+                    return r;
+                if (ISONE(r))
+                    return l;
+                break;
+            case bddop_or :
+                if (l == r)
+                    return l;
+                if (ISONE(l) || ISONE(r))
+                    return 1;
+                if (ISZERO(l))
+                    return r;
+                if (ISZERO(r))
+                    return l;
+                break;
+            case bddop_xor :
+                if (l == r)
+                    return 0;
+                if (ISZERO(l))
+                    return r;
+                if (ISZERO(r))
+                    return l;
+                break;
+            case bddop_nand :
+                if (ISZERO(l) || ISZERO(r))
+                    return 1;
+                break;
+            case bddop_nor :
+                if (ISONE(l) || ISONE(r))
+                    return 0;
+                break;
+            case bddop_imp :
+                if (ISZERO(l))
+                    return 1;
+                if (ISONE(l))
+                    return r;
+                if (ISONE(r))
+                    return 1;
+                break;
         }
 
-        if (verbose > 1) {
-            System.out.println();
-            System.out.println("Win2 end: " + reorder_nodenum() + " nodes");
-            System.out.flush();
+        if (ISCONST(l) && ISCONST(r))
+            return oprres[w.applyop][l << 1 | r];
+
+        if (w.applycache == null) w.applycache = BddCacheI_init(cachesize);
+        table = w.applycache.table;
+        entry = BddCache_lookupI(w.applycache, APPLYHASH(l, r, w.applyop));
+        if (table[entry + offset__cache_a] == l &&
+            table[entry + offset__cache_b] == r &&
+            table[entry + offset__cache_c] == w.applyop) {
+            w.counters.cacheHit[CACHE_APPLY]++;
+            return table[entry + offset__cache_res];
         }
+        w.counters.cacheMiss[CACHE_APPLY]++;
 
-        return first;
+        int lev, lo, hi;
+        if (LEVEL(l) == LEVEL(r)) {
+            lev = LEVEL(l);
+            lo = apply_c(w, LOW(l), LOW(r));
+            hi = apply_c(w, HIGH(l), HIGH(r));
+        } else if (LEVEL(l) < LEVEL(r)) {
+            lev = LEVEL(l);
+            lo = apply_c(w, LOW(l), r);
+            hi = apply_c(w, HIGH(l), r);
+        } else {
+            lev = LEVEL(r);
+            lo = apply_c(w, l, LOW(r));
+            hi = apply_c(w, l, HIGH(r));
+        }
+        res = bdd_makenode_c(w, lev, lo, hi);
+
+        table[entry + offset__cache_a] = l;
+        table[entry + offset__cache_b] = r;
+        table[entry + offset__cache_c] = w.applyop;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
 
-    BddTree reorder_win3(BddTree t) {
-        BddTree dis = t, first = t;
+    int quant_c(BddWorker w, int r) {
+        int[] table;
+        int entry;
+        int res;
 
-        if (t == null)
-            return t;
+        if (r < 2 || LEVEL(r) > w.quantlast)
+            return r;
 
-        if (verbose > 1) {
-            System.out.println("Win3 start: " + reorder_nodenum() + " nodes");
-            System.out.flush();
+        if (w.quantcache == null) w.quantcache = BddCacheI_init(cachesize);
+        table = w.quantcache.table;
+        entry = BddCache_lookupI(w.quantcache, QUANTHASH(r));
+        if (table[entry + offset__cache_a] == r && table[entry + offset__cache_c] == w.quantid) {
+            w.counters.cacheHit[CACHE_QUANT]++;
+            return table[entry + offset__cache_res];
         }
+        w.counters.cacheMiss[CACHE_QUANT]++;
 
-        while (dis.next != null) {
-            BddTree[] f = new BddTree[1];
-            f[0] = first;
-            dis = reorder_swapwin3(dis, f);
-            first = f[0];
+        int lo = quant_c(w, LOW(r));
+        int hi = quant_c(w, HIGH(r));
 
-            if (verbose > 1) {
-                System.out.print(".");
-                System.out.flush();
-            }
-        }
+        if (w.quantvarset[LEVEL(r)] == w.quantvarsetID)
+            res = apply_c(w, lo, hi);
+        else
+            res = bdd_makenode_c(w, LEVEL(r), lo, hi);
 
-        if (verbose > 1) {
-            System.out.println();
-            System.out.println("Win3 end: " + reorder_nodenum() + " nodes");
-            System.out.flush();
-        }
+        table[entry + offset__cache_a] = r;
+        table[entry + offset__cache_c] = w.quantid;
+        table[entry + offset__cache_res] = res;
 
-        return first;
+        return res;
     }
 
-    BddTree reorder_win3ite(BddTree t) {
-        BddTree dis = t, first = t;
-        int lastsize;
-
-        if (t == null)
-            return t;
+    int appquant_c(BddWorker w, int l, int r) {
+        int[] table;
+        int entry;
+        int res;
 
-        if (verbose > 1)
-            System.out.println(
-                "Win3ite start: " + reorder_nodenum() + " nodes");
+        switch (w.appexop) {
+            case bddop_and :
+                if (l == 0 || r == 0)
+                    return 0;
+                if (l == r || r == 1)
+                    return quant_c(w, l);
+                if (l == 1)
+                    return quant_c(w, r);
+                break;
+            case bddop_or :
+                if (l == 1 || r == 1)
+                    return 1;
+                if (l == r || r == 0)
+                    return quant_c(w, l);
+                if (l == 0)
+                    return quant_c(w, r);
+                break;
+            case bddop_xor :
+                if (l == r)
+                    return 0;
+                if (l == 0)
+                    return quant_c(w, r);
+                if (r == 0)
+                    return quant_c(w, l);
+                break;
+            case bddop_nand :
+                if (l == 0 || r == 0)
+                    return 1;
+                break;
+            case bddop_nor :
+                if (l == 1 || r == 1)
+                    return 0;
+                break;
+        }
 
-        do {
-            lastsize = reorder_nodenum();
-            dis = first;
+        if (ISCONST(l) && ISCONST(r))
+            return oprres[w.appexop][(l << 1) | r];
 
-            while (dis.next != null && dis.next.next != null) {
-                BddTree[] f = new BddTree[1];
-                f[0] = first;
-                dis = reorder_swapwin3(dis, f);
-                first = f[0];
+        if (LEVEL(l) > w.quantlast && LEVEL(r) > w.quantlast) {
+            int oldop = w.applyop;
+            w.applyop = w.appexop;
+            res = apply_c(w, l, r);
+            w.applyop = oldop;
+            return res;
+        }
 
-                if (verbose > 1) {
-                    System.out.print(".");
-                    System.out.flush();
-                }
-            }
+        if (w.appexcache == null) w.appexcache = BddCacheI_init(cachesize);
+        table = w.appexcache.table;
+        entry = BddCache_lookupI(w.appexcache, APPEXHASH(l, r, w.appexop));
+        if (table[entry + offset__cache_a] == l &&
+            table[entry + offset__cache_b] == r &&
+            table[entry + offset__cache_c] == w.appexid) {
+            w.counters.cacheHit[CACHE_APPEX]++;
+            return table[entry + offset__cache_res];
+        }
+        w.counters.cacheMiss[CACHE_APPEX]++;
 
-            if (verbose > 1)
-                System.out.println(" " + reorder_nodenum() + " nodes");
+        int lev, lo, hi;
+        if (LEVEL(l) == LEVEL(r)) {
+            lev = LEVEL(l);
+            lo = appquant_c(w, LOW(l), LOW(r));
+            hi = appquant_c(w, HIGH(l), HIGH(r));
+        } else if (LEVEL(l) < LEVEL(r)) {
+            lev = LEVEL(l);
+            lo = appquant_c(w, LOW(l), r);
+            hi = appquant_c(w, HIGH(l), r);
+        } else {
+            lev = LEVEL(r);
+            lo = appquant_c(w, l, LOW(r));
+            hi = appquant_c(w, l, HIGH(r));
         }
-        while (reorder_nodenum() != lastsize);
+        if (w.quantvarset[lev] == w.quantvarsetID)
+            res = apply_c(w, lo, hi);
+        else
+            res = bdd_makenode_c(w, lev, lo, hi);
 
-        if (verbose > 1)
-            System.out.println("Win3ite end: " + reorder_nodenum() + " nodes");
+        table[entry + offset__cache_a] = l;
+        table[entry + offset__cache_b] = r;
+        table[entry + offset__cache_c] = w.appexid;
+        table[entry + offset__cache_res] = res;
 
-        return first;
+        return res;
     }
 
-    BddTree reorder_swapwin3(BddTree dis, BddTree[] first) {
-        boolean setfirst = dis.prev == null;
-        BddTree next = dis;
-        int best = reorder_nodenum();
-
-        if (dis.next.next == null) /* Only two blocks left => win2 swap */ {
-            blockdown(dis.prev);
+    /*=== PARALLEL OPERATIONS ==============================================*/
 
-            if (best < reorder_nodenum()) {
-                blockdown(dis.prev);
-                next = dis.next;
-            } else {
-                next = dis;
-                if (setfirst)
-                    first[0] = dis.prev;
-            }
-        } else /* Real win3 swap */ {
-            int pos = 0;
-            blockdown(dis); /* B A* C (4) */
-            pos++;
-            if (best > reorder_nodenum()) {
-                pos = 0;
-                best = reorder_nodenum();
+    /**
+     * <p>Sets the number of threads used to parallelize a single <tt>apply</tt>,
+     * <tt>relprod</tt> or <tt>applyEx</tt> operation.  Above a recursion depth
+     * cutoff, the low and high cofactors are computed by different threads;
+     * below it the sequential recursion is used.  A value larger than one
+     * implies concurrent mode.  A value of one (the default) turns the parallel
+     * engine off, and concurrent mode too if it was only turned on by this
+     * method.</p>
+     * 
+     * @param n  number of threads
+     * @return  old number of threads
+     * @see #setConcurrent(boolean)
+     */
+    public int setParallelism(int n) {
+        if (n < 1)
+            return bdd_error(BDD_RANGE);
+        if (n > 1 && bddcomplement)
+            return bdd_error(BDD_COMPLEMENT);
+        int old = parallelthreads;
+        if (parallelpool != null) {
+            parallelpool.shutdown();
+            parallelpool = null;
+        }
+        parallelthreads = n;
+        if (n == 1 && parallelconcurrent) {
+            parallelconcurrent = false;
+            setConcurrent(false);
+        }
+        if (n > 1) {
+            if (!bddconcurrent) {
+                setConcurrent(true);
+                parallelconcurrent = true;
             }
+            /* Split the top levels into a few tasks per thread */
+            paralleldepth = 3;
+            while ((1 << paralleldepth) < n * 8)
+                paralleldepth++;
+            parallelpool = Executors.newFixedThreadPool(n, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JFactory worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return old;
+    }
 
-            blockdown(dis); /* B C A* (3) */
-            pos++;
-            if (best > reorder_nodenum()) {
-                pos = 0;
-                best = reorder_nodenum();
+    /**
+     * Starts computing one cofactor of a parallel operation on another thread.
+     * The operator state of the parent is copied into the worker that runs it.
+     */
+    BddTask parallel_spawn(final BddWorker parent, final int l, final int r,
+                              final int depth, final boolean appex) {
+        final int applyop = parent.applyop;
+        final int appexop = parent.appexop;
+        final int appexid = parent.appexid;
+        final int quantid = parent.quantid;
+        final int quantlast = parent.quantlast;
+        BddTask t = new BddTask() {
+            public Object call() {
+                BddWorker w = concurrent_worker();
+                if (w != parent) {
+                    w.quantvarsetID++;
+                    if (w.quantvarsetID == INT_MAX) {
+                        for (int i = 0; i < bddvarnum; ++i)
+                            w.quantvarset[i] = 0;
+                        w.quantvarsetID = 1;
+                    }
+                    for (int i = 0; i <= quantlast; ++i)
+                        if (parent.quantvarset[i] == parent.quantvarsetID)
+                            w.quantvarset[i] = w.quantvarsetID;
+                }
+                w.applyop = applyop;
+                w.appexop = appexop;
+                w.appexid = appexid;
+                w.quantid = quantid;
+                w.quantlast = quantlast;
+                int res = appex ? appquant_p(w, l, r, depth) : apply_p(w, l, r, depth);
+                return Integer.valueOf(res);
             }
+        };
+        parallelpool.execute(t.future);
+        return t;
+    }
 
-            dis = dis.prev.prev;
-            blockdown(dis); /* C B* A (2) */
-            pos++;
-            if (best > reorder_nodenum()) {
-                pos = 0;
-                best = reorder_nodenum();
-            }
+    /**
+     * Waits for a task started with parallel_spawn().  If no pool thread has
+     * picked it up yet, it is run by the calling thread instead.
+     */
+    int parallel_join(BddTask t) {
+        try {
+            return ((Integer) t.join()).intValue();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new BDDException("Interrupted during parallel operation");
+        } catch (ExecutionException x) {
+            Throwable c = x.getCause();
+            if (c instanceof RuntimeException)
+                throw (RuntimeException) c;
+            if (c instanceof Error)
+                throw (Error) c;
+            throw new BDDException(String.valueOf(c));
+        }
+    }
+
+    int apply_p(BddWorker w, int l, int r, int depth) {
+        int[] table;
+        int entry;
+        int res;
 
-            blockdown(dis); /* C A B* (1) */
-            pos++;
-            if (best > reorder_nodenum()) {
-                pos = 0;
-                best = reorder_nodenum();
-            }
+        if (depth >= paralleldepth || ISCONST(l) || ISCONST(r) || l == r)
+            return apply_c(w, l, r);
 
-            dis = dis.prev.prev;
-            blockdown(dis); /* A C* B (0)*/
-            pos++;
-            if (best > reorder_nodenum()) {
-                pos = 0;
-                best = reorder_nodenum();
-            }
+        if (w.applycache == null) w.applycache = BddCacheI_init(cachesize);
+        table = w.applycache.table;
+        entry = BddCache_lookupI(w.applycache, APPLYHASH(l, r, w.applyop));
+        if (table[entry + offset__cache_a] == l &&
+            table[entry + offset__cache_b] == r &&
+            table[entry + offset__cache_c] == w.applyop) {
+            w.counters.cacheHit[CACHE_APPLY]++;
+            return table[entry + offset__cache_res];
+        }
+        w.counters.cacheMiss[CACHE_APPLY]++;
 
-            if (pos >= 1) /* A C B -> C A* B */ {
-                dis = dis.prev;
-                blockdown(dis);
-                next = dis;
-                if (setfirst)
-                    first[0] = dis.prev;
+        int lev, lo, hi;
+        BddTask t;
+        RuntimeException fail = null;
+        if (LEVEL(l) == LEVEL(r)) {
+            lev = LEVEL(l);
+            t = parallel_spawn(w, HIGH(l), HIGH(r), depth + 1, false);
+            try {
+                lo = apply_p(w, LOW(l), LOW(r), depth + 1);
+            } catch (RuntimeException x) {
+                fail = x;
+                lo = 0;
             }
-
-            if (pos >= 2) /* C A B -> C B A* */ {
-                blockdown(dis);
-                next = dis.prev;
-                if (setfirst)
-                    first[0] = dis.prev.prev;
+        } else if (LEVEL(l) < LEVEL(r)) {
+            lev = LEVEL(l);
+            t = parallel_spawn(w, HIGH(l), r, depth + 1, false);
+            try {
+                lo = apply_p(w, LOW(l), r, depth + 1);
+            } catch (RuntimeException x) {
+                fail = x;
+                lo = 0;
             }
-
-            if (pos >= 3) /* C B A -> B C* A */ {
-                dis = dis.prev.prev;
-                blockdown(dis);
-                next = dis;
-                if (setfirst)
-                    first[0] = dis.prev;
+        } else {
+            lev = LEVEL(r);
+            t = parallel_spawn(w, l, HIGH(r), depth + 1, false);
+            try {
+                lo = apply_p(w, l, LOW(r), depth + 1);
+            } catch (RuntimeException x) {
+                fail = x;
+                lo = 0;
             }
+        }
+        /* Always wait for the other half, even if this one failed */
+        hi = parallel_join(t);
+        if (fail != null)
+            throw fail;
+        res = bdd_makenode_c(w, lev, lo, hi);
 
-            if (pos >= 4) /* B C A -> B A C* */ {
-                blockdown(dis);
-                next = dis.prev;
-                if (setfirst)
-                    first[0] = dis.prev.prev;
-            }
+        table[entry + offset__cache_a] = l;
+        table[entry + offset__cache_b] = r;
+        table[entry + offset__cache_c] = w.applyop;
+        table[entry + offset__cache_res] = res;
 
-            if (pos >= 5) /* B A C -> A B* C */ {
-                dis = dis.prev.prev;
-                blockdown(dis);
-                next = dis;
-                if (setfirst)
-                    first[0] = dis.prev;
-            }
-        }
-
-        return next;
+        return res;
     }
 
-    BddTree reorder_sift_seq(BddTree t, BddTree seq[], int num) {
-        BddTree dis;
-        int n;
+    int appquant_p(BddWorker w, int l, int r, int depth) {
+        int[] table;
+        int entry;
+        int res;
 
-        if (t == null)
-            return t;
+        if (depth >= paralleldepth || ISCONST(l) || ISCONST(r) || l == r)
+            return appquant_c(w, l, r);
+        if (LEVEL(l) > w.quantlast && LEVEL(r) > w.quantlast) {
+            int oldop = w.applyop;
+            w.applyop = w.appexop;
+            res = apply_p(w, l, r, depth);
+            w.applyop = oldop;
+            return res;
+        }
+
+        if (w.appexcache == null) w.appexcache = BddCacheI_init(cachesize);
+        table = w.appexcache.table;
+        entry = BddCache_lookupI(w.appexcache, APPEXHASH(l, r, w.appexop));
+        if (table[entry + offset__cache_a] == l &&
+            table[entry + offset__cache_b] == r &&
+            table[entry + offset__cache_c] == w.appexid) {
+            w.counters.cacheHit[CACHE_APPEX]++;
+            return table[entry + offset__cache_res];
+        }
+        w.counters.cacheMiss[CACHE_APPEX]++;
+
+        int lev, lo, hi;
+        BddTask t;
+        RuntimeException fail = null;
+        if (LEVEL(l) == LEVEL(r)) {
+            lev = LEVEL(l);
+            t = parallel_spawn(w, HIGH(l), HIGH(r), depth + 1, true);
+            try {
+                lo = appquant_p(w, LOW(l), LOW(r), depth + 1);
+            } catch (RuntimeException x) {
+                fail = x;
+                lo = 0;
+            }
+        } else if (LEVEL(l) < LEVEL(r)) {
+            lev = LEVEL(l);
+            t = parallel_spawn(w, HIGH(l), r, depth + 1, true);
+            try {
+                lo = appquant_p(w, LOW(l), r, depth + 1);
+            } catch (RuntimeException x) {
+                fail = x;
+                lo = 0;
+            }
+        } else {
+            lev = LEVEL(r);
+            t = parallel_spawn(w, l, HIGH(r), depth + 1, true);
+            try {
+                lo = appquant_p(w, l, LOW(r), depth + 1);
+            } catch (RuntimeException x) {
+                fail = x;
+                lo = 0;
+            }
+        }
+        /* Always wait for the other half, even if this one failed */
+        hi = parallel_join(t);
+        if (fail != null)
+            throw fail;
+        if (w.quantvarset[lev] == w.quantvarsetID)
+            res = apply_p(w, lo, hi, depth + 1);
+        else
+            res = bdd_makenode_c(w, lev, lo, hi);
 
-        for (n = 0; n < num; n++) {
-            long c2, c1 = clock();
+        table[entry + offset__cache_a] = l;
+        table[entry + offset__cache_b] = r;
+        table[entry + offset__cache_c] = w.appexid;
+        table[entry + offset__cache_res] = res;
 
-            if (verbose > 1) {
-                System.out.print("Sift ");
-                //if (reorder_filehandler)
-                //   reorder_filehandler(stdout, seq[n].id);
-                //else
-                System.out.print(seq[n].id);
-                System.out.print(": ");
-            }
+        return res;
+    }
 
-            reorder_sift_bestpos(seq[n], num / 2);
+    int bdd_noderesize(boolean doRehash) {
+        int oldsize = bddnodesize;
+        long newsize = bddnodesize;
 
-            if (verbose > 1) {
-                System.out.println();
-                System.out.print("> " + reorder_nodenum() + " nodes");
-            }
+        if (bddmaxnodesize > 0) {
+            if (newsize >= bddmaxnodesize)
+                return -1;
+        }
+        if (newsize >= bdd_maxnodesize())
+            return -1;
 
-            c2 = clock();
-            if (verbose > 1)
-                System.out.println(
-                    " (" + (float) (c2 - c1) / (float) 1000 + " sec)\n");
+        if (increasefactor > 0) {
+            newsize += (long)(newsize * increasefactor);
+        } else {
+            newsize = newsize << 1;
         }
+        if (newsize > bdd_maxnodesize())
+            newsize = bdd_maxnodesize();
 
-        /* Find first block */
-        for (dis = t; dis.prev != null; dis = dis.prev)
-            /* nil */;
+        if (bddmaxnodeincrease > 0) {
+            if (newsize > (long) oldsize + bddmaxnodeincrease)
+                newsize = (long) oldsize + bddmaxnodeincrease;
+        }
 
-        return dis;
+        if (bddmaxnodesize > 0) {
+            if (newsize > bddmaxnodesize)
+                newsize = bddmaxnodesize;
+        }
+
+        return doResize(doRehash, oldsize, (int) newsize);
+    }
+    
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setNodeTableSize(int)
+     */
+    public int setNodeTableSize(int size) {
+        int old = bddnodesize;
+        doResize(true, old, Math.min(size, bdd_maxnodesize()));
+        return old;
     }
+    
+    int doResize(boolean doRehash, int oldsize, int newsize) {
+        
+        newsize = bdd_prime_lte(newsize);
 
-    void reorder_sift_bestpos(BddTree blk, int middlePos) {
-        int best = reorder_nodenum();
-        int maxAllowed;
-        int bestpos = 0;
-        boolean dirIsUp = true;
+        if (oldsize > newsize) return 0;
+        
+        resize_handler(oldsize, newsize);
+        
         int n;
+        if (nodebuffers != null) {
+            /* Only the page directory is copied; live pages stay put */
+            nodebuffers = bdd_allocpages(nodebuffers, newsize);
+        } else if (nodepages != null) {
+            nodepages = bdd_allocheappages(nodepages, newsize, nodestride);
+        } else if ((long) newsize * nodestride > MAXARRAYSIZE) {
+            /* Too large for one array: segmented from now on */
+            nodepages = bdd_nodepages(newsize);
+            bddnodes = null;
+        } else {
+            int[] newnodes;
+            newnodes = new int[newsize*nodestride];
+            System.arraycopy(bddnodes, 0, newnodes, 0, bddnodes.length);
+            bddnodes = newnodes;
+        }
+        bddnodesize = newsize;
+        workerepoch++;
 
-        if (bddmaxnodesize > 0)
-            maxAllowed =
-                MIN(best / 5 + best, bddmaxnodesize - bddmaxnodeincrease - 2);
-        else
-            maxAllowed = best / 5 + best;
+        if (gcyoung != null) {
+            int[] newyoung = new int[(newsize + 31) >> 5];
+            System.arraycopy(gcyoung, 0, newyoung, 0, gcyoung.length);
+            gcyoung = newyoung;
+        }
 
-        /* Determine initial direction */
-        if (blk.pos > middlePos)
-            dirIsUp = false;
+        int[] newreused = new int[REUSESIZE(newsize)];
+        System.arraycopy(nodereused, 0, newreused, 0, nodereused.length);
+        nodereused = newreused;
 
-        /* Move block back and forth */
-        for (n = 0; n < 2; n++) {
-            int first = 1;
+        if (uniquetable != null) {
+            AtomicIntegerArray newtable = new AtomicIntegerArray(newsize);
+            if (!doRehash)
+                for (n = 0; n < oldsize; n++)
+                    newtable.set(n, uniquetable.get(n));
+            uniquetable = newtable;
+        }
 
-            if (dirIsUp) {
-                while (blk.prev != null
-                    && (reorder_nodenum() <= maxAllowed || first != 0)) {
-                    first = 0;
-                    blockdown(blk.prev);
-                    bestpos--;
+        if (uniqueindex != null) {
+            /* The open-addressing table is always rebuilt */
+            uniqueindex = new int[UNIQUESIZE(newsize)];
+            doRehash = true;
+        } else if (doRehash)
+            for (n = snapbase; n < oldsize; n++)
+                SETHASH(n, 0);
 
-                    if (verbose > 1) {
-                        System.out.print("-");
-                        System.out.flush();
-                    }
+        for (n = oldsize; n < bddnodesize; n++) {
+            SETLOW(n, INVALID_BDD);
+            //SETREFCOU(n, 0);
+            //SETHASH(n, 0);
+            //SETLEVEL(n, 0);
+            SETNEXT(n, n+1);
+        }
+        SETNEXT(bddnodesize-1, bddfreepos);
+        bddfreepos = oldsize;
+        bddfreenum += bddnodesize - oldsize;
 
-                    if (reorder_nodenum() < best) {
-                        best = reorder_nodenum();
-                        bestpos = 0;
+        if (doRehash)
+            bdd_gbc_rehash();
 
-                        if (bddmaxnodesize > 0)
-                            maxAllowed =
-                                MIN(
-                                    best / 5 + best,
-                                    bddmaxnodesize - bddmaxnodeincrease - 2);
-                        else
-                            maxAllowed = best / 5 + best;
-                    }
-                }
-            } else {
-                while (blk.next != null
-                    && (reorder_nodenum() <= maxAllowed || first != 0)) {
-                    first = 0;
-                    blockdown(blk);
-                    bestpos++;
+        bddresized = true;
 
-                    if (verbose > 1) {
-                        System.out.print("+");
-                        System.out.flush();
-                    }
+        return 0;
+    }
 
-                    if (reorder_nodenum() < best) {
-                        best = reorder_nodenum();
-                        bestpos = 0;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#initialize(int, int)
+     */
+    protected void initialize(int initnodesize, int cs) {
+        int n;
 
-                        if (bddmaxnodesize > 0)
-                            maxAllowed =
-                                MIN(
-                                    best / 5 + best,
-                                    bddmaxnodesize - bddmaxnodeincrease - 2);
-                        else
-                            maxAllowed = best / 5 + best;
-                    }
-                }
-            }
+        if (bddrunning)
+            bdd_error(BDD_RUNNING);
 
-            if (reorder_nodenum() > maxAllowed && verbose > 1) {
-                System.out.print("!");
-                System.out.flush();
-            }
+        bddnodesize = bdd_prime_gte(Math.min(initnodesize, bdd_maxnodesize() - 1000));
 
-            dirIsUp = !dirIsUp;
-        }
+        if ((long) bddnodesize * nodestride > MAXARRAYSIZE)
+            nodepages = bdd_allocheappages(null, bddnodesize, nodestride);
+        else
+            bddnodes = new int[bddnodesize*nodestride];
+        nodereused = new int[REUSESIZE(bddnodesize)];
 
-        /* Move to best pos */
-        while (bestpos < 0) {
-            blockdown(blk);
-            bestpos++;
-        }
-        while (bestpos > 0) {
-            blockdown(blk.prev);
-            bestpos--;
+        bddresized = false;
+
+        for (n = 0; n < bddnodesize; n++) {
+            SETLOW(n, INVALID_BDD);
+            //SETREFCOU(n, 0);
+            //SETHASH(n, 0);
+            //SETLEVEL(n, 0);
+            SETNEXT(n, n+1);
         }
-    }
+        SETNEXT(bddnodesize-1, 0);
 
-    BddTree reorder_random(BddTree t) {
-        BddTree dis;
-        BddTree[] seq;
-        int n, num = 0;
+        SETMAXREF(0);
+        SETMAXREF(1);
+        SETLOW(0, 0); SETHIGH(0, 0);
+        SETLOW(1, 1); SETHIGH(1, 1);
 
-        if (t == null)
-            return t;
+        bdd_operator_init(cs);
 
-        for (dis = t; dis != null; dis = dis.next)
-            num++;
-        seq = new BddTree[num];
-        for (dis = t, num = 0; dis != null; dis = dis.next)
-            seq[num++] = dis;
+        bddfreepos = 2;
+        bddfreenum = bddnodesize - 2;
+        bddrunning = true;
+        bddvarnum = 0;
+        gbcollectnum = 0;
+        gbcclock = 0;
+        cachesize = cs;
+        usednodes_nextreorder = bddnodesize;
+        bddmaxnodeincrease = DEFAULTMAXNODEINC;
 
-        for (n = 0; n < 4 * num; n++) {
-            int blk = rng.nextInt(num);
-            if (seq[blk].next != null)
-                blockdown(seq[blk]);
-        }
+        bdderrorcond = 0;
 
-        /* Find first block */
-        for (dis = t; dis.prev != null; dis = dis.prev)
-            /* nil */;
+        if (CACHESTATS) {
+            //cachestats = new CacheStats();
+        }
 
-        free(seq);
+        //bdd_gbc_hook(bdd_default_gbchandler);
+        //bdd_error_hook(bdd_default_errhandler);
+        //bdd_resize_hook(NULL);
+        bdd_pairs_init();
+        bdd_reorder_init();
 
-        if (verbose != 0)
-            System.out.println("Random order: " + reorder_nodenum() + " nodes");
-        return dis;
+        return;
     }
 
-    static int siftTestCmp(Object aa, Object bb) {
-        sizePair a = (sizePair) aa;
-        sizePair b = (sizePair) bb;
+    /* Hash value modifiers to distinguish between entries in misccache */
+    static final int CACHEID_CONSTRAIN = 0x0;
+    static final int CACHEID_RESTRICT = 0x1;
+    static final int CACHEID_SATCOU = 0x2;
+    static final int CACHEID_SATCOULN = 0x3;
+    static final int CACHEID_PATHCOU = 0x4;
+
+    /* Hash value modifiers for replace/compose */
+    static final int CACHEID_REPLACE = 0x0;
+    static final int CACHEID_COMPOSE = 0x1;
+    static final int CACHEID_VECCOMPOSE = 0x2;
+
+    /* Hash value modifiers for quantification */
+    static final int CACHEID_EXIST = 0x0;
+    static final int CACHEID_FORALL = 0x1;
+    static final int CACHEID_UNIQUE = 0x2;
+    static final int CACHEID_APPEX = 0x3;
+    static final int CACHEID_APPAL = 0x4;
+    static final int CACHEID_APPUN = 0x5;
+
+    /* Number of boolean operators */
+    static final int OPERATOR_NUM = 11;
+
+    /* Operator results - entry = left<<1 | right  (left,right in {0,1}) */
+    static int oprres[][] =
+        { { 0, 0, 0, 1 }, /* and                       ( & )         */ {
+            0, 1, 1, 0 }, /* xor                       ( ^ )         */ {
+            0, 1, 1, 1 }, /* or                        ( | )         */ {
+            1, 1, 1, 0 }, /* nand                                    */ {
+            1, 0, 0, 0 }, /* nor                                     */ {
+            1, 1, 0, 1 }, /* implication               ( >> )        */ {
+            1, 0, 0, 1 }, /* bi-implication                          */ {
+            0, 0, 1, 0 }, /* difference /greater than  ( - ) ( > )   */ {
+            0, 1, 0, 0 }, /* less than                 ( < )         */ {
+            1, 0, 1, 1 }, /* inverse implication       ( << )        */ {
+            1, 1, 0, 0 } /* not                       ( ! )         */
+    };
+
+    int applyop; /* Current operator for apply */
+    int appexop; /* Current operator for appex */
+    int appexid; /* Current cache id for appex */
+    int quantid; /* Current cache id for quantifications */
+    int[] quantvarset; /* Current variable set for quant. */
+    int quantvarsetID; /* Current id used in quantvarset */
+    int quantlast; /* Current last variable to be quant. */
+    int replaceid; /* Current cache id for replace */
+    int[] replacepair; /* Current replace pair */
+    int replacelast; /* Current last var. level to replace */
+    int composelevel; /* Current variable used for compose */
+    int miscid; /* Current cache id for other results */
+    int supportID; /* Current ID (true value) for support */
+    int supportMin; /* Min. used level in support calc. */
+    int supportMax; /* Max. used level in support calc. */
+    int[] supportSet; /* The found support set */
+    BddCache applycache; /* Cache for apply results */
+    BddCache itecache; /* Cache for ITE results */
+    BddCache quantcache; /* Cache for exist/forall results */
+    BddCache appexcache; /* Cache for appex/appall results */
+    BddCache replacecache; /* Cache for replace results */
+    BddCache misccache; /* Cache for other results */
+    BddCache countcache; /* Cache for count results */
+    BddCache zddcache; /* Cache for ZDD results */
+    BddCache addcache; /* Cache for ADD results */
+    int cacheratio;
+    int satPolarity;
+    int firstReorder;
+    /* Used instead of local variable in order
+                   to avoid compiler warning about 'first'
+                   being clobbered by setjmp */
+
+    void bdd_operator_init(int cachesize) {
+        if (false) {
+            applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+            itecache = BddCacheI_init(cachesize, CACHE_NODES_ABC);
+            quantcache = BddCacheI_init(cachesize, CACHE_NODES_A);
+            appexcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+            replacecache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+            misccache = BddCacheI_init(cachesize, CACHE_NODES_A);
+            countcache = BddCacheD_init(cachesize);
+        }
+
+        quantvarsetID = 0;
+        quantvarset = null;
+        cacheratio = 0;
+        supportSet = null;
+        supportSize = 0;
+    }
+
+    void bdd_operator_done() {
+        if (quantvarset != null) {
+            free(quantvarset);
+            quantvarset = null;
+        }
+
+        BddCache_done(applycache); applycache = null;
+        BddCache_done(itecache); itecache = null;
+        BddCache_done(quantcache); quantcache = null;
+        BddCache_done(appexcache); appexcache = null;
+        BddCache_done(replacecache); replacecache = null;
+        BddCache_done(misccache); misccache = null;
+        BddCache_done(countcache); countcache = null;
+        BddCache_done(zddcache); zddcache = null;
+        BddCache_done(addcache); addcache = null;
+
+        if (supportSet != null) {
+            free(supportSet);
+            supportSet = null;
+            supportSize = 0;
+        }
+    }
+
+    void bdd_operator_reset() {
+        quantsetversion++;
+        BddCache_reset(applycache);
+        BddCache_reset(itecache);
+        BddCache_reset(quantcache);
+        BddCache_reset(appexcache);
+        BddCache_reset(replacecache);
+        BddCache_reset(misccache);
+        BddCache_reset(countcache);
+        BddCache_reset(zddcache);
+        BddCache_reset(addcache);
+    }
+
+    /* Called after a collection.  The entries of the other caches are
+     * validated as they are looked up; these caches are keyed by ids made
+     * from the node of a variable set, which may have been freed and reused
+     * for another set. */
+    void bdd_operator_clean() {
+        quantsetversion++;
+        BddCache_reset(quantcache);
+        BddCache_reset(appexcache);
+        BddCache_reset(misccache);
+    }
+    
+    void bdd_operator_varresize() {
+        if (quantvarset != null)
+            free(quantvarset);
+
+        quantvarset = new int[bddvarnum];
+
+        //memset(quantvarset, 0, sizeof(int)*bddvarnum);
+        quantvarsetID = 0;
+        quantsetversion++;
+        
+        BddCache_reset(countcache);
+        /* BDD/ZDD conversions depend on the number of variables */
+        BddCache_reset(zddcache);
+    }
+
+    public int setCacheSize(int newcachesize) {
+        int old = cachesize;
+        BddCache_resize(applycache, newcachesize);
+        BddCache_resize(itecache, newcachesize);
+        BddCache_resize(quantcache, newcachesize);
+        BddCache_resize(appexcache, newcachesize);
+        BddCache_resize(replacecache, newcachesize);
+        BddCache_resize(misccache, newcachesize);
+        BddCache_resize(countcache, newcachesize);
+        BddCache_resize(zddcache, newcachesize);
+        BddCache_resize(addcache, newcachesize);
+        cachesize = newcachesize;
+        return old;
+    }
+    
+    void bdd_operator_noderesize() {
+        if (cacheratio > 0) {
+            int newcachesize = bddnodesize / cacheratio;
+
+            BddCache_resize(applycache, newcachesize);
+            BddCache_resize(itecache, newcachesize);
+            BddCache_resize(quantcache, newcachesize);
+            BddCache_resize(appexcache, newcachesize);
+            BddCache_resize(replacecache, newcachesize);
+            BddCache_resize(misccache, newcachesize);
+            BddCache_resize(countcache, newcachesize);
+            BddCache_resize(zddcache, newcachesize);
+            BddCache_resize(addcache, newcachesize);
+            cachesize = newcachesize;
+        }
+    }
+
+    BddCache BddCacheI_init(int size) {
+        size = bdd_prime_gte(size);
+
+        BddCache cache = new BddCache();
+        cache.table = new int[size*__cache_entry_size];
+        cache.tablesize = size;
+        BddCache_reset(cache);
+
+        return cache;
+    }
+
+    /* Makes a cache whose entries are tagged with the cache epoch */
+    BddCache BddCacheI_init(int size, int nodes) {
+        size = bdd_prime_gte(size);
+
+        BddCache cache = new BddCache();
+        cache.table = new int[size*__cache_entry_size];
+        cache.tablesize = size;
+        cache.tagged = true;
+        cache.nodes = nodes;
+        BddCache_reset(cache);
+
+        return cache;
+    }
+
+    BddCache BddCacheD_init(int size) {
+        size = bdd_prime_gte(size);
+
+        BddCache cache = new BddCache();
+        cache.dtable = new long[size*__dcache_entry_size];
+        cache.tablesize = size;
+        cache.tagged = true;
+        BddCache_reset(cache);
+
+        return cache;
+    }
+
+    void BddCache_done(BddCache cache) {
+        if (cache == null) return;
+        
+        free(cache.table);
+        free(cache.dtable);
+        cache.table = null;
+        cache.dtable = null;
+        cache.tablesize = 0;
+    }
+
+    int BddCache_resize(BddCache cache, int newsize) {
+        if (cache == null) return 0;
+
+        boolean is_d = cache.dtable != null;
+
+        free(cache.table);
+        free(cache.dtable);
+        cache.table = null;
+        cache.dtable = null;
+
+        newsize = bdd_prime_gte(newsize);
+
+        if (is_d)
+            cache.dtable = new long[newsize*__dcache_entry_size];
+        else
+            cache.table = new int[newsize*__cache_entry_size];
+        cache.tablesize = newsize;
+        BddCache_reset(cache);
+
+        return 0;
+    }
+
+    /* Returns the index of the entry for the given hash in cache.table */
+    int BddCache_lookupI(BddCache cache, int hash) {
+        int n = Math.abs(hash % cache.tablesize) * __cache_entry_size;
+        if (cache.tagged && cache.table[n + offset__cache_tag] != cacheepoch)
+            BddCache_validate(cache, n);
+        return n;
+    }
+
+    /* Returns the index of the entry for the given hash in cache.dtable */
+    int BddCache_lookupD(BddCache cache, int hash) {
+        int n = Math.abs(hash % cache.tablesize) * __dcache_entry_size;
+        if (cache.dtable[n + offset__cache_dtag] != cacheepoch)
+            BddCache_validate(cache, n);
+        return n;
+    }
+
+    /* Whether node n has been freed since the given epoch.  Negative
+     * numbers are empty entries, ADD terminals or, with complement edges,
+     * complemented references.  A live node is taken as freed if a node of
+     * its block has been reused since. */
+    final boolean FREEDSINCE(int n, int epoch) {
+        if (n < 2) {
+            if (n >= 0 || !bddcomplement || n == INVALID_BDD)
+                return false;
+            n &= NODE_MASK;
+        }
+        if (nodereused[n >>> REUSE_BITS] > epoch)
+            return true;
+        return LOW(n) == INVALID_BDD
+            && GETNODE(n, offset__refcou_and_level) > epoch;
+    }
+
+    /* Notes that the free node n is taken off the free list */
+    private final void REUSE(int n) {
+        int e = GETNODE(n, offset__refcou_and_level);
+        if (e > nodereused[n >>> REUSE_BITS])
+            nodereused[n >>> REUSE_BITS] = e;
+    }
+
+    static final int REUSE_BITS = 6;
+    static final int REUSE_BLOCK = 1 << REUSE_BITS;
+
+    static final int REUSESIZE(int nodesize) {
+        return (nodesize + REUSE_BLOCK - 1) >>> REUSE_BITS;
+    }
+
+    /* Drops the entry at index n if it is from before the last reset, or if
+     * one of its nodes has been freed since it was tagged, and tags it with
+     * the current epoch */
+    void BddCache_validate(BddCache cache, int n) {
+        if (cache.dtable != null) {
+            long[] table = cache.dtable;
+            int tag = (int) table[n + offset__cache_dtag];
+            table[n + offset__cache_dtag] = cacheepoch;
+            int a = (int) (table[n + offset__cache_key] >> 32);
+            if (a != INVALID_BDD && (tag < cache.floor || FREEDSINCE(a, tag)))
+                table[n + offset__cache_key] = CACHEKEY(-1, 0);
+        } else {
+            int[] table = cache.table;
+            int tag = table[n + offset__cache_tag];
+            table[n + offset__cache_tag] = cacheepoch;
+            int a = table[n + offset__cache_a];
+            if (a == INVALID_BDD) return;
+            if (tag < cache.floor ||
+                FREEDSINCE(a, tag) ||
+                FREEDSINCE(table[n + offset__cache_res], tag) ||
+                (cache.nodes >= CACHE_NODES_AB &&
+                 FREEDSINCE(table[n + offset__cache_b], tag)) ||
+                (cache.nodes == CACHE_NODES_ABC &&
+                 FREEDSINCE(table[n + offset__cache_c], tag)))
+                table[n + offset__cache_a] = -1;
+        }
+    }
+
+    int cacheepoch = 1; /* Current cache epoch */
+    int[] nodereused; /* Highest epoch freed and reused, by block of nodes */
+
+    /* Starts a new cache epoch.  When the epochs run out, all tagged
+     * caches are cleared for real and the epochs start over.  Epochs must
+     * fit in the level bits of a free node. */
+    void bdd_nextepoch() {
+        if (++cacheepoch < LEV_MASK)
+            return;
+        cacheepoch = 1;
+        if (nodereused != null) {
+            Arrays.fill(nodereused, 0);
+            for (int n = 2; n < bddnodesize; n++)
+                if (LOW(n) == INVALID_BDD)
+                    SETNODE(n, offset__refcou_and_level, 0);
+        }
+        BddCache[] caches = bdd_caches();
+        for (int i = 0; i < caches.length; i++) {
+            if (caches[i] == null) continue;
+            BddCache_untag(caches[i]);
+            caches[i].floor = 1;
+        }
+        cacheepoch = 2;
+    }
+
+    /* Sets the tags of all entries to epoch 0 */
+    static void BddCache_untag(BddCache cache) {
+        int n;
+        if (cache.dtable != null) {
+            long[] table = cache.dtable;
+            for (n = 0; n < table.length; n += __dcache_entry_size)
+                table[n + offset__cache_dtag] = 0;
+        } else {
+            int[] table = cache.table;
+            for (n = 0; n < table.length; n += __cache_entry_size)
+                table[n + offset__cache_tag] = 0;
+        }
+    }
+
+    void BddCache_reset(BddCache cache) {
+        if (cache == null) return;
+        int n;
+        if (cache.tagged) {
+            /* Entries need not be touched, older tags are below the floor */
+            bdd_nextepoch();
+            cache.floor = cacheepoch;
+            return;
+        }
+        if (cache.dtable != null) {
+            long[] table = cache.dtable;
+            for (n = 0; n < table.length; n += __dcache_entry_size)
+                table[n + offset__cache_key] = CACHEKEY(-1, 0);
+        } else {
+            int[] table = cache.table;
+            for (n = 0; n < table.length; n += __cache_entry_size)
+                table[n + offset__cache_a] = -1;
+        }
+    }
+
+    void bdd_setpair(bddPair pair, int oldvar, int newvar) {
+        if (pair == null)
+            return;
+
+        if (oldvar < 0 || oldvar > bddvarnum - 1)
+            bdd_error(BDD_VAR);
+        if (newvar < 0 || newvar > bddvarnum - 1)
+            bdd_error(BDD_VAR);
+
+        bdd_delref(pair.result[bddvar2level[oldvar]]);
+        pair.result[bddvar2level[oldvar]] = bdd_ithvar(newvar);
+        pair.id = update_pairsid();
+
+        if (bddvar2level[oldvar] > pair.last)
+            pair.last = bddvar2level[oldvar];
+
+        return;
+    }
+
+    void bdd_setbddpair(bddPair pair, int oldvar, int newvar) {
+        int oldlevel;
+
+        if (pair == null)
+            return;
+
+        CHECK(newvar);
+        if (oldvar < 0 || oldvar >= bddvarnum)
+            bdd_error(BDD_VAR);
+        oldlevel = bddvar2level[oldvar];
+
+        bdd_delref(pair.result[oldlevel]);
+        pair.result[oldlevel] = bdd_addref(newvar);
+        pair.id = update_pairsid();
+
+        if (oldlevel > pair.last)
+            pair.last = oldlevel;
+
+        return;
+    }
+
+    void bdd_resetpair(bddPair p) {
+        int n;
+
+        for (n = 0; n < bddvarnum; n++)
+            p.result[n] = bdd_ithvar(bddlevel2var[n]);
+        p.last = 0;
+    }
+
+    class bddPair extends BDDPairing {
+        int[] result;
+        int last;
+        int id;
+        bddPair next;
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDPairing#set(int, int)
+         */
+        public void set(int oldvar, int newvar) {
+            bdd_setpair(this, oldvar, newvar);
+        }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDPairing#set(int, net.sf.javabdd.BDD)
+         */
+        public void set(int oldvar, BDD newvar) {
+            bdd_setbddpair(this, oldvar, ((bdd) newvar)._index);
+        }
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDPairing#reset()
+         */
+        public void reset() {
+            bdd_resetpair(this);
+        }
+        
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            sb.append('{');
+            boolean any = false;
+            for (int i = 0; i < result.length; ++i) {
+                if (result[i] != bdd_ithvar(bddlevel2var[i])) {
+                    if (any) sb.append(", ");
+                    any = true;
+                    sb.append(bddlevel2var[i]);
+                    sb.append('=');
+                    bdd b = new bdd(result[i]);
+                    sb.append(b);
+                    b.free();
+                }
+            }
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    bddPair pairs; /* List of all replacement pairs in use */
+    int pairsid; /* Pair identifier */
+
+    /* Largest quant set id; ids are shifted left by 8 in the appex cache */
+    static final int QUANTSET_MAXID = 1 << 22;
+
+    class bddQuantSet extends BDDQuantSet {
+        int[] table; /* Quantified levels are 1 */
+        int last; /* Last quantified level */
+        int version = -1; /* Value of quantsetversion the table is for */
+        int id; /* Cache id, negative to stay apart from cube ids */
+        int epoch = -1; /* Value of quantsetepoch the id is from */
+
+        bddQuantSet(BDD set) {
+            super(set);
+        }
+    }
+
+    int quantsetversion; /* Changes whenever the levels may have */
+    int quantsetid; /* Last quant set id handed out */
+    int quantsetepoch; /* Changes when the quant set ids wrap around */
+
+    /* Makes the level table of q the current variable set, rebuilding it if
+     * the levels may have changed, and hands out a cache id if needed */
+    void quantset2vartable(bddQuantSet q) {
+        if (q.version != quantsetversion) {
+            if (q.table == null || q.table.length != bddvarnum)
+                q.table = new int[bddvarnum];
+            else
+                Arrays.fill(q.table, 0);
+            q.last = -1;
+            for (int n = ((bdd) q.set)._index; !ISCONST(n); n = HIGH(n)) {
+                q.table[LEVEL(n)] = 1;
+                q.last = LEVEL(n);
+            }
+            q.version = quantsetversion;
+        }
+        if (q.epoch != quantsetepoch) {
+            if (quantsetid == QUANTSET_MAXID) {
+                quantsetid = 0;
+                quantsetepoch++;
+                BddCache_reset(quantcache);
+                BddCache_reset(appexcache);
+            }
+            q.id = -(++quantsetid);
+            q.epoch = quantsetepoch;
+        }
+        quantvarset = q.table;
+        quantvarsetID = 1;
+        quantlast = q.last;
+    }
+
+    static final void free(Object o) {
+    }
+
+    /*************************************************************************
+    *************************************************************************/
+
+    void bdd_pairs_init() {
+        pairsid = 0;
+        pairs = null;
+    }
+
+    void bdd_pairs_done() {
+        bddPair p = pairs;
+        int n;
+
+        while (p != null) {
+            bddPair next = p.next;
+            for (n = 0; n < bddvarnum; n++)
+                bdd_delref(p.result[n]);
+            p.result = null;
+            free(p.result);
+            free(p);
+            p = next;
+        }
+    }
+
+    int update_pairsid() {
+        pairsid++;
+
+        if (pairsid == (INT_MAX >> 2)) {
+            bddPair p;
+            pairsid = 0;
+            for (p = pairs; p != null; p = p.next)
+                p.id = pairsid++;
+            //bdd_operator_reset();
+            BddCache_reset(replacecache);
+        }
+
+        return pairsid;
+    }
+
+    void bdd_register_pair(bddPair p) {
+        p.next = pairs;
+        pairs = p;
+    }
+
+    void bdd_pairs_vardown(int level) {
+        bddPair p;
+
+        for (p = pairs; p != null; p = p.next) {
+            int tmp;
+
+            tmp = p.result[level];
+            p.result[level] = p.result[level + 1];
+            p.result[level + 1] = tmp;
+
+            if (p.last == level)
+                p.last++;
+        }
+    }
+
+    int bdd_pairs_resize(int oldsize, int newsize) {
+        bddPair p;
+        int n;
+
+        for (p = pairs; p != null; p = p.next) {
+            int[] new_result = new int[newsize];
+            System.arraycopy(p.result, 0, new_result, 0, oldsize);
+            p.result = new_result;
+
+            for (n = oldsize; n < newsize; n++)
+                p.result[n] = bdd_ithvar(bddlevel2var[n]);
+        }
+
+        return 0;
+    }
+
+    void bdd_disable_reorder() {
+        reorderdisabled = 1;
+    }
+    void bdd_enable_reorder() {
+        reorderdisabled = 0;
+    }
+    void bdd_checkreorder() {
+        bdd_reorder_auto();
+
+        /* Do not reorder before twice as many nodes have been used */
+        usednodes_nextreorder = 2 * (bddnodesize - bddfreenum);
+
+        /* And if very little was gained this time (< 20%) then wait until
+         * even more nodes (upto twice as many again) have been used */
+        if (bdd_reorder_gain() < 20)
+            usednodes_nextreorder
+                += (usednodes_nextreorder * (20 - bdd_reorder_gain()))
+                / 20;
+    }
+
+    boolean bdd_reorder_ready() {
+        if ((bddreordermethod == BDD_REORDER_NONE)
+            || (vartree == null)
+            || (bddreordertimes == 0)
+            || (reorderdisabled != 0)
+            || (snapbase > 0)
+            || (diagramrefs > 0))
+            return false;
+        return true;
+    }
+
+    void bdd_reorder(int method) {
+        BddTree top;
+        int savemethod = bddreordermethod;
+        int savetimes = bddreordertimes;
+
+        if (snapbase > 0) {
+            bdd_error(BDD_SNAPSHOT);
+            return;
+        }
+        if (diagramrefs > 0) {
+            bdd_error(BDD_DIAGRAM);
+            return;
+        }
+
+        bddreordermethod = method;
+        bddreordertimes = 1;
+
+        if ((top = bddtree_new(-1)) != null) {
+            if (reorder_init() >= 0) {
+                
+                usednum_before = bddnodesize - bddfreenum;
+        
+                top.firstVar = top.firstLevel = 0;
+                top.lastVar = top.lastLevel = bdd_varnum() - 1;
+                top.fixed = false;
+                top.interleaved = false;
+                top.next = null;
+                top.nextlevel = vartree;
+        
+                reorder_block(top, method);
+                vartree = top.nextlevel;
+                free(top);
+        
+                usednum_after = bddnodesize - bddfreenum;
+        
+                reorder_done();
+                bddreordermethod = savemethod;
+                bddreordertimes = savetimes;
+            }
+        }
+    }
+
+    BddTree bddtree_new(int id) {
+        BddTree t = new BddTree();
+
+        t.firstVar = t.lastVar = t.firstLevel = t.lastLevel = -1;
+        t.fixed = true;
+        //t.interleaved = false;
+        //t.next = t.prev = t.nextlevel = null;
+        //t.seq = null;
+        t.id = id;
+        return t;
+    }
+
+    BddTree reorder_block(BddTree t, int method) {
+        BddTree dis;
+
+        if (t == null)
+            return null;
+
+        if (!t.fixed /*BDD_REORDER_FREE*/
+            && t.nextlevel != null) {
+            switch (method) {
+                case BDD_REORDER_WIN2 :
+                    t.nextlevel = reorder_win2(t.nextlevel);
+                    break;
+                case BDD_REORDER_WIN2ITE :
+                    t.nextlevel = reorder_win2ite(t.nextlevel);
+                    break;
+                case BDD_REORDER_SIFT :
+                    t.nextlevel = reorder_sift(t.nextlevel);
+                    break;
+                case BDD_REORDER_SIFTITE :
+                    t.nextlevel = reorder_siftite(t.nextlevel);
+                    break;
+                case BDD_REORDER_WIN3 :
+                    t.nextlevel = reorder_win3(t.nextlevel);
+                    break;
+                case BDD_REORDER_WIN3ITE :
+                    t.nextlevel = reorder_win3ite(t.nextlevel);
+                    break;
+                case BDD_REORDER_RANDOM :
+                    t.nextlevel = reorder_random(t.nextlevel);
+                    break;
+            }
+        }
+
+        if (reorderpool == null
+            || reorderworkers != null
+            || !reorder_parallel(t.nextlevel, method)) {
+            for (dis = t.nextlevel; dis != null; dis = dis.next)
+                reorder_block(dis, method);
+        }
+
+        if (t.seq != null) {
+            //Arrays.sort(t.seq, 0, t.lastVar-t.firstVar + 1);
+            varseq_qsort(t.seq, 0, t.lastVar-t.firstVar + 1);
+            t.firstLevel = bddvar2level[t.seq[0]];
+            t.lastLevel = bddvar2level[t.seq[t.lastVar-t.firstVar]];
+        }
+
+        return t;
+    }
+    
+    // due to Akihiko Tozawa
+    void varseq_qsort(int[] target, int from, int to) {
+        
+        int x, i, j;
+        
+        switch (to - from) {
+            case 0 :
+                return;
+    
+            case 1 :
+                return;
+    
+            case 2 :
+                if (bddvar2level[target[from]] <= bddvar2level[target[from + 1]])
+                    return;
+                else {
+                    x = target[from];
+                    target[from] = target[from + 1];
+                    target[from + 1] = x;
+                }
+                return;
+        }
+    
+        int r = target[from];
+        int s = target[(from + to) / 2];
+        int t = target[to - 1];
+    
+        if (bddvar2level[r] <= bddvar2level[s]) {
+            if (bddvar2level[s] <= bddvar2level[t]) {
+            } else if (bddvar2level[r] <= bddvar2level[t]) {
+                target[to - 1] = s;
+                target[(from + to) / 2] = t;
+            } else {
+                target[to - 1] = s;
+                target[from] = t;
+                target[(from + to) / 2] = r;
+            }
+        } else {
+            if (bddvar2level[r] <= bddvar2level[t]) {
+                target[(from + to) / 2] = r;
+                target[from] = s;
+            } else if (bddvar2level[s] <= bddvar2level[t]) {
+                target[to - 1] = r;
+                target[(from + to) / 2] = t;
+                target[from] = s;
+            } else {
+                target[to - 1] = r;
+                target[from] = t;
+            }
+        }
+        
+        int mid = target[(from + to) / 2];
+        
+        for (i = from + 1, j = to - 1; i + 1 != j;) {
+            if (target[i] == mid) {
+                target[i] = target[i + 1];
+                target[i + 1] = mid;
+            }
+            
+            x = target[i];
+            
+            if (x <= mid)
+                i++;
+            else {
+                x = target[--j];
+                target[j] = target[i];
+                target[i] = x;
+            }
+        }
+    
+        varseq_qsort(target, from, i);
+        varseq_qsort(target, i + 1, to);
+    }
+         
+    BddTree reorder_win2(BddTree t) {
+        BddTree dis = t, first = t;
+
+        if (t == null)
+            return t;
+
+        if (verbose > 1) {
+            System.out.println("Win2 start: " + reorder_nodenum() + " nodes");
+            System.out.flush();
+        }
+
+        while (dis.next != null) {
+            int best = reorder_nodenum();
+            blockdown(dis);
+
+            if (best < reorder_nodenum()) {
+                blockdown(dis.prev);
+                dis = dis.next;
+            } else if (first == dis)
+                first = dis.prev;
+
+            if (verbose > 1) {
+                System.out.print(".");
+                System.out.flush();
+            }
+        }
+
+        if (verbose > 1) {
+            System.out.println();
+            System.out.println("Win2 end: " + reorder_nodenum() + " nodes");
+            System.out.flush();
+        }
+
+        return first;
+    }
+
+    BddTree reorder_win3(BddTree t) {
+        BddTree dis = t, first = t;
+
+        if (t == null)
+            return t;
+
+        if (verbose > 1) {
+            System.out.println("Win3 start: " + reorder_nodenum() + " nodes");
+            System.out.flush();
+        }
+
+        while (dis.next != null) {
+            BddTree[] f = new BddTree[1];
+            f[0] = first;
+            dis = reorder_swapwin3(dis, f);
+            first = f[0];
+
+            if (verbose > 1) {
+                System.out.print(".");
+                System.out.flush();
+            }
+        }
+
+        if (verbose > 1) {
+            System.out.println();
+            System.out.println("Win3 end: " + reorder_nodenum() + " nodes");
+            System.out.flush();
+        }
+
+        return first;
+    }
+
+    BddTree reorder_win3ite(BddTree t) {
+        BddTree dis = t, first = t;
+        int lastsize;
+
+        if (t == null)
+            return t;
+
+        if (verbose > 1)
+            System.out.println(
+                "Win3ite start: " + reorder_nodenum() + " nodes");
+
+        do {
+            lastsize = reorder_nodenum();
+            dis = first;
+
+            while (dis.next != null && dis.next.next != null) {
+                BddTree[] f = new BddTree[1];
+                f[0] = first;
+                dis = reorder_swapwin3(dis, f);
+                first = f[0];
+
+                if (verbose > 1) {
+                    System.out.print(".");
+                    System.out.flush();
+                }
+            }
+
+            if (verbose > 1)
+                System.out.println(" " + reorder_nodenum() + " nodes");
+        }
+        while (reorder_nodenum() != lastsize);
+
+        if (verbose > 1)
+            System.out.println("Win3ite end: " + reorder_nodenum() + " nodes");
+
+        return first;
+    }
+
+    BddTree reorder_swapwin3(BddTree dis, BddTree[] first) {
+        boolean setfirst = dis.prev == null;
+        BddTree next = dis;
+        int best = reorder_nodenum();
+
+        if (dis.next.next == null) /* Only two blocks left => win2 swap */ {
+            blockdown(dis.prev);
+
+            if (best < reorder_nodenum()) {
+                blockdown(dis.prev);
+                next = dis.next;
+            } else {
+                next = dis;
+                if (setfirst)
+                    first[0] = dis.prev;
+            }
+        } else /* Real win3 swap */ {
+            int pos = 0;
+            blockdown(dis); /* B A* C (4) */
+            pos++;
+            if (best > reorder_nodenum()) {
+                pos = 0;
+                best = reorder_nodenum();
+            }
+
+            blockdown(dis); /* B C A* (3) */
+            pos++;
+            if (best > reorder_nodenum()) {
+                pos = 0;
+                best = reorder_nodenum();
+            }
+
+            dis = dis.prev.prev;
+            blockdown(dis); /* C B* A (2) */
+            pos++;
+            if (best > reorder_nodenum()) {
+                pos = 0;
+                best = reorder_nodenum();
+            }
+
+            blockdown(dis); /* C A B* (1) */
+            pos++;
+            if (best > reorder_nodenum()) {
+                pos = 0;
+                best = reorder_nodenum();
+            }
+
+            dis = dis.prev.prev;
+            blockdown(dis); /* A C* B (0)*/
+            pos++;
+            if (best > reorder_nodenum()) {
+                pos = 0;
+                best = reorder_nodenum();
+            }
+
+            if (pos >= 1) /* A C B -> C A* B */ {
+                dis = dis.prev;
+                blockdown(dis);
+                next = dis;
+                if (setfirst)
+                    first[0] = dis.prev;
+            }
+
+            if (pos >= 2) /* C A B -> C B A* */ {
+                blockdown(dis);
+                next = dis.prev;
+                if (setfirst)
+                    first[0] = dis.prev.prev;
+            }
+
+            if (pos >= 3) /* C B A -> B C* A */ {
+                dis = dis.prev.prev;
+                blockdown(dis);
+                next = dis;
+                if (setfirst)
+                    first[0] = dis.prev;
+            }
+
+            if (pos >= 4) /* B C A -> B A C* */ {
+                blockdown(dis);
+                next = dis.prev;
+                if (setfirst)
+                    first[0] = dis.prev.prev;
+            }
+
+            if (pos >= 5) /* B A C -> A B* C */ {
+                dis = dis.prev.prev;
+                blockdown(dis);
+                next = dis;
+                if (setfirst)
+                    first[0] = dis.prev;
+            }
+        }
+
+        return next;
+    }
+
+    BddTree reorder_sift_seq(BddTree t, BddTree seq[], int num) {
+        BddTree dis;
+        int n;
+
+        if (t == null)
+            return t;
+
+        for (n = 0; n < num; n++) {
+            long c2, c1 = clock();
+
+            if (verbose > 1) {
+                System.out.print("Sift ");
+                //if (reorder_filehandler)
+                //   reorder_filehandler(stdout, seq[n].id);
+                //else
+                System.out.print(seq[n].id);
+                System.out.print(": ");
+            }
+
+            reorder_sift_bestpos(seq[n], num / 2);
+
+            if (verbose > 1) {
+                System.out.println();
+                System.out.print("> " + reorder_nodenum() + " nodes");
+            }
+
+            c2 = clock();
+            if (verbose > 1)
+                System.out.println(
+                    " (" + (float) (c2 - c1) / (float) 1000 + " sec)\n");
+        }
+
+        /* Find first block */
+        for (dis = t; dis.prev != null; dis = dis.prev)
+            /* nil */;
+
+        return dis;
+    }
+
+    void reorder_sift_bestpos(BddTree blk, int middlePos) {
+        int best = reorder_nodenum();
+        int maxAllowed;
+        int bestpos = 0;
+        boolean dirIsUp = true;
+        int n;
+
+        if (bddmaxnodesize > 0)
+            maxAllowed =
+                MIN(best / 5 + best, bddmaxnodesize - bddmaxnodeincrease - 2);
+        else
+            maxAllowed = best / 5 + best;
+
+        /* Determine initial direction */
+        if (blk.pos > middlePos)
+            dirIsUp = false;
+
+        /* Move block back and forth */
+        for (n = 0; n < 2; n++) {
+            int first = 1;
+
+            if (dirIsUp) {
+                while (blk.prev != null
+                    && (reorder_nodenum() <= maxAllowed || first != 0)) {
+                    first = 0;
+                    blockdown(blk.prev);
+                    bestpos--;
+
+                    if (verbose > 1) {
+                        System.out.print("-");
+                        System.out.flush();
+                    }
+
+                    if (reorder_nodenum() < best) {
+                        best = reorder_nodenum();
+                        bestpos = 0;
+
+                        if (bddmaxnodesize > 0)
+                            maxAllowed =
+                                MIN(
+                                    best / 5 + best,
+                                    bddmaxnodesize - bddmaxnodeincrease - 2);
+                        else
+                            maxAllowed = best / 5 + best;
+                    }
+                }
+            } else {
+                while (blk.next != null
+                    && (reorder_nodenum() <= maxAllowed || first != 0)) {
+                    first = 0;
+                    blockdown(blk);
+                    bestpos++;
+
+                    if (verbose > 1) {
+                        System.out.print("+");
+                        System.out.flush();
+                    }
+
+                    if (reorder_nodenum() < best) {
+                        best = reorder_nodenum();
+                        bestpos = 0;
+
+                        if (bddmaxnodesize > 0)
+                            maxAllowed =
+                                MIN(
+                                    best / 5 + best,
+                                    bddmaxnodesize - bddmaxnodeincrease - 2);
+                        else
+                            maxAllowed = best / 5 + best;
+                    }
+                }
+            }
+
+            if (reorder_nodenum() > maxAllowed && verbose > 1) {
+                System.out.print("!");
+                System.out.flush();
+            }
+
+            dirIsUp = !dirIsUp;
+        }
+
+        /* Move to best pos */
+        while (bestpos < 0) {
+            blockdown(blk);
+            bestpos++;
+        }
+        while (bestpos > 0) {
+            blockdown(blk.prev);
+            bestpos--;
+        }
+    }
+
+    BddTree reorder_random(BddTree t) {
+        BddTree dis;
+        BddTree[] seq;
+        int n, num = 0;
+
+        if (t == null)
+            return t;
+
+        for (dis = t; dis != null; dis = dis.next)
+            num++;
+        seq = new BddTree[num];
+        for (dis = t, num = 0; dis != null; dis = dis.next)
+            seq[num++] = dis;
+
+        for (n = 0; n < 4 * num; n++) {
+            int blk = rng.nextInt(num);
+            if (seq[blk].next != null)
+                blockdown(seq[blk]);
+        }
+
+        /* Find first block */
+        for (dis = t; dis.prev != null; dis = dis.prev)
+            /* nil */;
+
+        free(seq);
+
+        if (verbose != 0)
+            System.out.println("Random order: " + reorder_nodenum() + " nodes");
+        return dis;
+    }
+
+    static int siftTestCmp(Object aa, Object bb) {
+        sizePair a = (sizePair) aa;
+        sizePair b = (sizePair) bb;
 
         if (a.val < b.val)
             return -1;
@@ -4217,708 +7320,2556 @@ public class JFactory extends BDDFactory {
         return 0;
     }
 
-    static class sizePair {
-        int val;
-        BddTree block;
+    static class sizePair {
+        int val;
+        BddTree block;
+    }
+
+    BddTree reorder_sift(BddTree t) {
+        BddTree dis, seq[];
+        sizePair[] p;
+        int n, num;
+
+        for (dis = t, num = 0; dis != null; dis = dis.next)
+            dis.pos = num++;
+
+        p = new sizePair[num];
+        seq = new BddTree[num];
+
+        for (dis = t, n = 0; dis != null; dis = dis.next, n++) {
+            int v;
+
+            /* Accumulate number of nodes for each block */
+            p[n] = new sizePair();
+            p[n].val = 0;
+            for (v = dis.firstVar; v <= dis.lastVar; v++)
+                p[n].val -= levels[v].nodenum;
+
+            p[n].block = dis;
+        }
+
+        /* Sort according to the number of nodes at each level */
+        Arrays.sort(p, 0, num, new Comparator() {
+
+            public int compare(Object o1, Object o2) {
+                return siftTestCmp(o1, o2);
+            }
+
+        });
+
+        /* Create sequence */
+        for (n = 0; n < num; n++)
+            seq[n] = p[n].block;
+
+        /* Do the sifting on this sequence */
+        t = reorder_sift_seq(t, seq, num);
+
+        free(seq);
+        free(p);
+
+        return t;
+    }
+
+    BddTree reorder_siftite(BddTree t) {
+        BddTree first = t;
+        int lastsize;
+        int c = 1;
+
+        if (t == null)
+            return t;
+
+        do {
+            if (verbose > 1)
+                System.out.println("Reorder " + (c++) + "\n");
+
+            lastsize = reorder_nodenum();
+            first = reorder_sift(first);
+        } while (reorder_nodenum() != lastsize);
+
+        return first;
+    }
+
+    public void reverseAllDomains() {
+        reorder_init();
+        for (int i = 0; i < fdvarnum; ++i) {
+            reverseDomain0(domain[i]);
+        }
+        reorder_done();
+    }
+    
+    public void reverseDomain(BDDDomain d) {
+        reorder_init();
+        reverseDomain0(d);
+        reorder_done();
+    }
+    
+    protected void reverseDomain0(BDDDomain d) {
+        int n = d.varNum();
+        BddTree[] trees = new BddTree[n];
+        int v = d.ivar[0];
+        addVarBlock(v, v, true);
+        trees[0] = getBlock(vartree, v, v);
+        BddTree parent = getParent(trees[0]);
+        for (int i = 1; i < n; ++i) {
+            v = d.ivar[i];
+            addVarBlock(v, v, true);
+            trees[i] = getBlock(vartree, v, v);
+            BddTree parent2 = getParent(trees[i]);
+            if (parent != parent2) {
+                throw new BDDException();
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                blockdown(trees[i]);
+            }
+        }
+        BddTree newchild = trees[n-1];
+        while (newchild.prev != null) newchild = newchild.prev;
+        if (parent == null) vartree = newchild;
+        else parent.nextlevel = newchild;
+    }
+    
+    public void setVarOrder(String ordering) {
+        List result = new LinkedList();
+        int nDomains = numberOfDomains();
+        StringTokenizer st = new StringTokenizer(ordering, "x_", true);
+        int numberOfDomains = 0, bitIndex = 0;
+        boolean[] done = new boolean[nDomains];
+        List last = null;
+        for (int i=0; ; ++i) {
+            String s = st.nextToken();
+            BDDDomain d;
+            for (int j=0; ; ++j) {
+                if (j == nDomains)
+                    throw new BDDException("bad domain: "+s);
+                d = getDomain(j);
+                if (s.equals(d.getName())) break;
+            }
+            if (done[d.getIndex()])
+                throw new BDDException("duplicate domain: "+s);
+            done[d.getIndex()] = true;
+            if (last != null) last.add(d);
+            if (st.hasMoreTokens()) {
+                s = st.nextToken();
+                if (s.equals("x")) {
+                    if (last == null) {
+                        last = new LinkedList();
+                        last.add(d);
+                        result.add(last);
+                    }
+                } else if (s.equals("_")) {
+                    if (last == null) {
+                        result.add(d);
+                    }
+                    last = null;
+                } else {
+                    throw new BDDException("bad token: "+s);
+                }
+            } else {
+                if (last == null) {
+                    result.add(d);
+                }
+                break;
+            }
+        }
+        
+        for (int i=0; i<done.length; ++i) {
+            if (!done[i]) {
+                throw new BDDException("missing domain #"+i+": "+getDomain(i));
+            }
+        }
+        
+        setVarOrder(result);
+    }
+    
+    /**
+     * <p>Set the variable order to be the given list of domains.</p>
+     * 
+     * @param domains  domain order
+     */
+    public void setVarOrder(List domains) {
+        BddTree[] my_vartree = new BddTree[fdvarnum];
+        boolean[] interleaved = new boolean[fdvarnum];
+        int k = 0;
+        for (Iterator i = domains.iterator(); i.hasNext(); ) {
+            Object o = i.next();
+            Collection c;
+            if (o instanceof BDDDomain) c = Collections.singleton(o);
+            else c = (Collection) o;
+            for (Iterator j = c.iterator(); j.hasNext(); ) {
+                BDDDomain d = (BDDDomain) j.next();
+                int low = d.ivar[0];
+                int high = d.ivar[d.ivar.length-1];
+                bdd_intaddvarblock(low, high, false);
+                BddTree b = getBlock(vartree, low, high);
+                my_vartree[k] = b;
+                interleaved[k] = j.hasNext();
+                k++;
+            }
+        }
+        if (k <= 1) return;
+        BddTree parent = getParent(my_vartree[0]);
+        for (int i = 0; i < k; ++i) {
+            if (parent != getParent(my_vartree[i])) {
+                throw new BDDException("var block "+my_vartree[i].firstVar+".."+my_vartree[i].lastVar+" is in wrong place in tree");
+            }
+        }
+        reorder_init();
+        BddTree prev = null; boolean prev_interleaved = false;
+        for (int i = 0; i < k; ++i) {
+            BddTree t = my_vartree[i];
+            while (t.prev != prev) {
+                blockdown(t.prev);
+            }
+            boolean inter = interleaved[i];
+            if (prev_interleaved) {
+                blockinterleave(t.prev);
+                //++i;
+                prev = t.prev;
+            } else {
+                prev = t;
+            }
+            prev_interleaved = inter;
+        }
+        BddTree newchild = my_vartree[0];
+        _assert(newchild.prev == null);
+        //while (newchild.prev != null) newchild = newchild.prev;
+        if (parent == null) vartree = newchild;
+        else parent.nextlevel = newchild;
+        reorder_done();
+    }
+    
+    protected BddTree getParent(BddTree child) {
+        for (BddTree p = vartree; p != null; p = p.next) {
+            if (p == child) return null;
+            BddTree q = getParent(p, child);
+            if (q != null) return q;
+        }
+        throw new BDDException("Cannot find tree node "+child);
+    }
+    
+    protected BddTree getParent(BddTree parent, BddTree child) {
+        if (parent.nextlevel == null) return null;
+        for (BddTree p = parent.nextlevel; p != null; p = p.next) {
+            if (p == child) return parent;
+            BddTree q = getParent(p, child);
+            if (q != null) return q;
+        }
+        return null;
+    }
+    
+    protected BddTree getBlock(BddTree t, int low, int high) {
+        if (t == null) return null;
+        for (BddTree p = t; p != null; p = p.next) {
+            if (p.firstVar == low && p.lastVar == high) return p;
+            BddTree q = getBlock(p.nextlevel, low, high);
+            if (q != null) return q;
+        }
+        return null;
+    }
+    
+    void blockinterleave(BddTree left) {
+        BddTree right = left.next;
+        //System.out.println("Interleaving "+left.first+".."+left.last+" and "+right.first+".."+right.last);
+        int n;
+        int leftsize = left.lastVar - left.firstVar;
+        int rightsize = right.lastVar - right.firstVar;
+        int[] lseq = left.seq;
+        int[] rseq = right.seq;
+        int minsize = Math.min(leftsize, rightsize);
+        for (n = 0; n <= minsize; ++n) {
+            while (bddvar2level[lseq[n]] + 1 < bddvar2level[rseq[n]]) {
+                reorder_varup(rseq[n]);
+            }
+        }
+    outer:
+        for ( ; n <= rightsize; ++n) {
+            for (;;) {
+                BddTree t = left.prev;
+                if (t == null || !t.interleaved) break outer;
+                int tsize = t.lastVar - t.firstVar;
+                if (n <= tsize) {
+                    int[] tseq = t.seq;
+                    while (bddvar2level[tseq[n]] + 1 < bddvar2level[rseq[n]]) {
+                        reorder_varup(rseq[n]);
+                    }
+                    break;
+                }
+            }
+        }
+        right.next.prev = left;
+        left.next = right.next;
+        left.firstVar = Math.min(left.firstVar, right.firstVar);
+        left.lastVar = Math.max(left.lastVar, right.lastVar);
+        left.seq = new int[left.lastVar - left.firstVar + 1];
+        update_seq(left);
+    }
+    
+    void blockdown(BddTree left) {
+        BddTree right = left.next;
+        //System.out.println("Swapping "+left.first+".."+left.last+" and "+right.first+".."+right.last);
+        int n;
+        int leftsize = left.lastVar - left.firstVar;
+        int rightsize = right.lastVar - right.firstVar;
+        int leftstart = bddvar2level[left.seq[0]];
+        int[] lseq = left.seq;
+        int[] rseq = right.seq;
+
+        /* Move left past right */
+        while (bddvar2level[lseq[0]] < bddvar2level[rseq[rightsize]]) {
+            for (n = 0; n < leftsize; n++) {
+                if (bddvar2level[lseq[n]] + 1 != bddvar2level[lseq[n + 1]]
+                    && bddvar2level[lseq[n]] < bddvar2level[rseq[rightsize]]) {
+                    reorder_vardown(lseq[n]);
+                }
+            }
+
+            if (bddvar2level[lseq[leftsize]] < bddvar2level[rseq[rightsize]]) {
+                reorder_vardown(lseq[leftsize]);
+            }
+        }
+
+        /* Move right to where left started */
+        while (bddvar2level[rseq[0]] > leftstart) {
+            for (n = rightsize; n > 0; n--) {
+                if (bddvar2level[rseq[n]] - 1 != bddvar2level[rseq[n - 1]]
+                    && bddvar2level[rseq[n]] > leftstart) {
+                    reorder_varup(rseq[n]);
+                }
+            }
+
+            if (bddvar2level[rseq[0]] > leftstart)
+                reorder_varup(rseq[0]);
+        }
+
+        /* Swap left and right data in the order */
+        left.next = right.next;
+        right.prev = left.prev;
+        left.prev = right;
+        right.next = left;
+
+        if (right.prev != null)
+            right.prev.next = right;
+        if (left.next != null)
+            left.next.prev = left;
+
+        n = left.pos;
+        left.pos = right.pos;
+        right.pos = n;
+        
+        left.interleaved = false;
+        right.interleaved = false;
+        
+        left.firstLevel = bddvar2level[lseq[0]];
+        left.lastLevel = bddvar2level[lseq[leftsize]];
+        right.firstLevel = bddvar2level[rseq[0]];
+        right.lastLevel = bddvar2level[rseq[rightsize]];
+    }
+
+    BddTree reorder_win2ite(BddTree t) {
+        BddTree dis, first = t;
+        int lastsize;
+        int c = 1;
+
+        if (t == null)
+            return t;
+
+        if (verbose > 1)
+            System.out.println(
+                "Win2ite start: " + reorder_nodenum() + " nodes");
+
+        do {
+            lastsize = reorder_nodenum();
+
+            dis = t;
+            while (dis.next != null) {
+                int best = reorder_nodenum();
+
+                blockdown(dis);
+
+                if (best < reorder_nodenum()) {
+                    blockdown(dis.prev);
+                    dis = dis.next;
+                } else if (first == dis)
+                    first = dis.prev;
+                if (verbose > 1) {
+                    System.out.print(".");
+                    System.out.flush();
+                }
+            }
+
+            if (verbose > 1)
+                System.out.println(" " + reorder_nodenum() + " nodes");
+            c++;
+        }
+        while (reorder_nodenum() != lastsize);
+
+        return first;
+    }
+
+    void bdd_reorder_auto() {
+        if (!bdd_reorder_ready())
+            return;
+
+        bdd_reorder(bddreordermethod);
+        bddreordertimes--;
+    }
+
+    int bdd_reorder_gain() {
+        if (usednum_before == 0)
+            return 0;
+
+        return (100 * (usednum_before - usednum_after)) / usednum_before;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#isInitialized()
+     */
+    public boolean isInitialized() {
+        return this.bddrunning;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#done()
+     */
+    public void done() {
+        unregisterMBean();
+        bdd_done();
+    }
+
+    void bdd_done() {
+        /*sanitycheck(); FIXME */
+        //bdd_fdd_done();
+        //bdd_reorder_done();
+        bdd_pairs_done();
+
+        free(bddnodes);
+        free(bddrefstack);
+        free(bddvarset);
+        free(bddvar2level);
+        free(bddlevel2var);
+
+        if (parallelpool != null) {
+            parallelpool.shutdown();
+            parallelpool = null;
+            parallelthreads = 1;
+        }
+        parallelconcurrent = false;
+        if (workers != null)
+            concurrent_done();
+        if (reorderpool != null) {
+            reorderpool.shutdown();
+            reorderpool = null;
+            reorderthreads = 1;
+        }
+
+        bddnodes = null;
+        nodebuffers = null;
+        nodepages = null;
+        snapbase = 0;
+        snaproots = null;
+        gcyoung = null;
+        bddcomplement = false;
+        refmask = -1;
+        nodereused = null;
+        uniqueindex = null;
+        nodestride = __node_size;
+        nextoffset = offset__next;
+        uniquetable = null;
+        bddconcurrent = false;
+        bddrefstack = null;
+        bddvarset = null;
+        bddvar2level = null;
+        bddlevel2var = null;
+
+        bdd_operator_done();
+
+        bddrunning = false;
+        bddnodesize = 0;
+        bddmaxnodesize = 0;
+        bddvarnum = 0;
+        bddproduced = 0;
+
+        //err_handler = null;
+        //gbc_handler = null;
+        //resize_handler = null;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setError(int)
+     */
+    public void setError(int code) {
+        bdderrorcond = code;
+    }
+    
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#clearError()
+     */
+    public void clearError() {
+        bdderrorcond = 0;
+    }
+   
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setMaxNodeNum(int)
+     */
+    public int setMaxNodeNum(int size) {
+        return bdd_setmaxnodenum(size);
+    }
+
+    int bdd_setmaxnodenum(int size) {
+        if (size > bddnodesize || size == 0) {
+            int old = bddmaxnodesize;
+            bddmaxnodesize = size;
+            return old;
+        }
+
+        return bdd_error(BDD_NODES);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setMinFreeNodes(double)
+     */
+    public double setMinFreeNodes(double x) {
+        return bdd_setminfreenodes((int)(x * 100.)) / 100.;
+    }
+
+    int bdd_setminfreenodes(int mf) {
+        int old = minfreenodes;
+
+        if (mf < 0 || mf > 100)
+            return bdd_error(BDD_RANGE);
+
+        minfreenodes = mf;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setMaxIncrease(int)
+     */
+    public int setMaxIncrease(int x) {
+        return bdd_setmaxincrease(x);
+    }
+
+    int bdd_setmaxincrease(int size) {
+        int old = bddmaxnodeincrease;
+
+        if (size < 0)
+            return bdd_error(BDD_SIZE);
+
+        bddmaxnodeincrease = size;
+        return old;
+    }
+
+    double increasefactor;
+    
+    public double setIncreaseFactor(double x) {
+        if (x < 0)
+            return bdd_error(BDD_RANGE);
+        double old = increasefactor;
+        increasefactor = x;
+        return old;
+    }
+    
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setCacheRatio(double)
+     */
+    public double setCacheRatio(double x) {
+        return bdd_setcacheratio((int)(x * 100)) / 100.;
+    }
+
+    int bdd_setcacheratio(int r) {
+        int old = cacheratio;
+
+        if (r <= 0)
+            return bdd_error(BDD_RANGE);
+        if (bddnodesize == 0)
+            return old;
+        if (cachebudget > 0) {
+            old = savedcacheratio;
+            savedcacheratio = r;
+            return old;
+        }
+
+        cacheratio = r;
+        bdd_operator_noderesize();
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#varNum()
+     */
+    public int varNum() {
+        return bdd_varnum();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setVarNum(int)
+     */
+    public int setVarNum(int num) {
+        return bdd_setvarnum(num);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#duplicateVar(int)
+     */
+    public int duplicateVar(int var) {
+        if (var < 0 || var >= bddvarnum) {
+            bdd_error(BDD_VAR);
+            return bddfalse;
+        }
+        /* Duplicated levels copy the nodes, which is wrong for ZDDs and
+         * would duplicate ADD terminals */
+        if (diagramrefs > 0) {
+            bdd_error(BDD_DIAGRAM);
+            return bddfalse;
+        }
+        /* The copies would have complemented high edges */
+        if (bddcomplement) {
+            bdd_error(BDD_COMPLEMENT);
+            return bddfalse;
+        }
+        
+        bdd_disable_reorder();
+        
+        int newVar = bddvarnum;
+        int lev = bddvar2level[var];
+        //System.out.println("Adding new variable "+newVar+" at level "+(lev+1));
+        // Increase the size of the various data structures.
+        bdd_setvarnum(bddvarnum+1);
+        // Actually duplicate the var in all BDDs.
+        // Old nodes are changed to point to new ones, so the young
+        // generation cannot be tracked while doing so.
+        boolean gen = setGenerational(false);
+        boolean compact = uniqueindex != null;
+        if (compact)
+            bdd_relayout(false);
+        /* Nodes are rewritten in place */
+        bdd_operator_reset();
+        insert_level(lev);
+        dup_level(lev, 0);
+        if (compact)
+            bdd_relayout(true);
+        setGenerational(gen);
+        // Fix up bddvar2level
+        for (int i = 0; i < bddvarnum; ++i) {
+            if (bddvar2level[i] > lev && bddvar2level[i] < bddvarnum)
+                ++bddvar2level[i];
+        }
+        bddvar2level[newVar] = lev+1;
+        // Fix up bddlevel2var
+        for (int i = bddvarnum-2; i > lev; --i) {
+            bddlevel2var[i+1] = bddlevel2var[i];
+        }
+        bddlevel2var[lev+1] = newVar;
+        // Fix up bddvarset
+        for (int bdv = 0; bdv < bddvarnum; bdv++) {
+            bddvarset[bdv * 2] = PUSHREF(bdd_makenode(bddvar2level[bdv], 0, 1));
+            bddvarset[bdv * 2 + 1] = bdd_makenode(bddvar2level[bdv], 1, 0);
+            POPREF(1);
+
+            SETMAXREF(bddvarset[bdv * 2]);
+            SETMAXREF(bddvarset[bdv * 2 + 1]);
+        }
+        // Fix up pairs
+        for (bddPair pair = pairs; pair != null; pair = pair.next) {
+            bdd_delref(pair.result[bddvarnum-1]);
+            for (int i = bddvarnum-1; i > lev+1; --i) {
+                pair.result[i] = pair.result[i-1];
+                if (i != LEVEL(pair.result[i]) && i > pair.last) {
+                    pair.last = i;
+                }
+            }
+            pair.result[lev+1] = bdd_ithvar(newVar);
+            //System.out.println("Pair "+pair);
+        }
+        
+        bdd_enable_reorder();
+        
+        return newVar;
+    }
+    
+    int bdd_setvarnum(int num) {
+        int bdv;
+        int oldbddvarnum = bddvarnum;
+
+        if (num < 1 || num > MAXVAR) {
+            bdd_error(BDD_RANGE);
+            return bddfalse;
+        }
+
+        if (num < bddvarnum)
+            return bdd_error(BDD_DECVNUM);
+        if (num == bddvarnum)
+            return 0;
+
+        bdd_disable_reorder();
+
+        if (bddvarset == null) {
+            bddvarset = new int[num * 2];
+            bddlevel2var = new int[num + 1];
+            bddvar2level = new int[num + 1];
+        } else {
+            int[] bddvarset2 = new int[num * 2];
+            System.arraycopy(bddvarset, 0, bddvarset2, 0, bddvarset.length);
+            bddvarset = bddvarset2;
+            int[] bddlevel2var2 = new int[num + 1];
+            System.arraycopy(
+                bddlevel2var,
+                0,
+                bddlevel2var2,
+                0,
+                bddlevel2var.length);
+            bddlevel2var = bddlevel2var2;
+            int[] bddvar2level2 = new int[num + 1];
+            System.arraycopy(
+                bddvar2level,
+                0,
+                bddvar2level2,
+                0,
+                bddvar2level.length);
+            bddvar2level = bddvar2level2;
+        }
+
+        if (bddrefstack != null)
+            free(bddrefstack);
+        bddrefstack = new int[num * 2 + 1];
+        bddrefstacktop = 0;
+
+        for (bdv = bddvarnum; bddvarnum < num; bddvarnum++) {
+            bddvarset[bddvarnum * 2] = PUSHREF(bdd_makenode(bddvarnum, 0, 1));
+            bddvarset[bddvarnum * 2 + 1] = bdd_makenode(bddvarnum, 1, 0);
+            POPREF(1);
+
+            if (bdderrorcond != 0) {
+                bddvarnum = bdv;
+                return -bdderrorcond;
+            }
+
+            SETMAXREF(bddvarset[bddvarnum * 2]);
+            SETMAXREF(bddvarset[bddvarnum * 2 + 1]);
+            bddlevel2var[bddvarnum] = bddvarnum;
+            bddvar2level[bddvarnum] = bddvarnum;
+        }
+
+        SETLEVELANDMARK(0, num);
+        SETLEVELANDMARK(1, num);
+        bddvar2level[num] = num;
+        bddlevel2var[num] = num;
+
+        bdd_pairs_resize(oldbddvarnum, bddvarnum);
+        bdd_operator_varresize();
+
+        bdd_enable_reorder();
+
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#ithVar(int)
+     */
+    public BDD ithVar(int var) {
+        return makeBDD(bdd_ithvar(var));
     }
 
-    BddTree reorder_sift(BddTree t) {
-        BddTree dis, seq[];
-        sizePair[] p;
-        int n, num;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nithVar(int)
+     */
+    public BDD nithVar(int var) {
+        return makeBDD(bdd_nithvar(var));
+    }
 
-        for (dis = t, num = 0; dis != null; dis = dis.next)
-            dis.pos = num++;
+    /*=== ADAPTIVE CACHE SIZING ============================================*/
 
-        p = new sizePair[num];
-        seq = new BddTree[num];
+    /**
+     * <p>Sets a memory budget, in bytes, for the operation caches and lets
+     * the factory size the caches itself within it.  A budget of 0 turns
+     * adaptive sizing off; the caches keep their size, or follow the cache
+     * ratio again if one was set.  Returns the old budget.</p>
+     * 
+     * <p>The caches are checked at the end of an operation, once they have
+     * been looked up about as often as they have entries in total, and at
+     * least every ADAPT_OPS operations.  Setting a budget only shrinks the
+     * caches that do not fit in it; they are judged later.  Each
+     * cache is judged on its hits and misses since the last check and on its
+     * occupancy, sampled from a few entries.  A cache that is mostly empty
+     * and little used is halved.  A cache that is mostly full, misses more
+     * often than it hits and was looked up more often than it has entries is
+     * doubled.  If the caches would then exceed the budget, the caches with
+     * the fewest lookups per entry are halved until they fit.  A resized cache
+     * starts out empty, which is why caches only change by a factor of two
+     * per check.  An entry takes about 20 bytes, including its tag.</p>
+     * 
+     * <p>Growing the caches pays off when results are reused across
+     * operations, as when the same relations are applied over and over;
+     * there a small initial cache grows to what a hand-tuned one would be.
+     * When little is reused, a small fixed cache is faster.</p>
+     * 
+     * <p>Adaptive sizing replaces the cache ratio; a ratio set while a
+     * budget is in effect is kept for later.  It is suspended in
+     * concurrent mode, where the worker threads have caches of their
+     * own.</p>
+     * 
+     * @param bytes  memory budget for the operation caches, or 0
+     * @return  old budget
+     */
+    public long setCacheBudget(long bytes) {
+        if (bytes < 0)
+            return bdd_error(BDD_RANGE);
+        long old = cachebudget;
+        cachebudget = bytes;
+        if (bytes > 0) {
+            if (old == 0) {
+                savedcacheratio = cacheratio;
+                cacheratio = 0;
+            }
+            cacheadapt = true;
+            cacheadaptops = 0;
+            for (int n = 0; n < CACHE_NUM; n++) {
+                cacheadapthit[n] = counters.cacheHit[n];
+                cacheadaptmiss[n] = counters.cacheMiss[n];
+            }
+        } else if (old > 0) {
+            cacheratio = savedcacheratio;
+            bdd_operator_noderesize();
+        }
+        return old;
+    }
 
-        for (dis = t, n = 0; dis != null; dis = dis.next, n++) {
-            int v;
+    static final int CACHE_ENTRY_BYTES = 20; /* Integer entry with its tag */
+    static final int CACHE_MINSIZE = 1009; /* Smallest adaptive cache */
+    static final int CACHE_SAMPLES = 256; /* Entries sampled for occupancy */
+    static final int ADAPT_OPS = 4096; /* Longest interval between checks */
 
-            /* Accumulate number of nodes for each block */
-            p[n] = new sizePair();
-            p[n].val = 0;
-            for (v = dis.firstVar; v <= dis.lastVar; v++)
-                p[n].val -= levels[v].nodenum;
+    long cachebudget; /* Memory budget of the caches, or 0 */
+    int savedcacheratio; /* Cache ratio to restore when the budget is 0 */
+    boolean cacheadapt; /* Check the caches at the end of this operation */
+    int cacheadaptops; /* Operations since the last check */
+    long[] cacheadapthit = new long[CACHE_NUM]; /* Hits at the last check */
+    long[] cacheadaptmiss = new long[CACHE_NUM]; /* Misses at the last check */
 
-            p[n].block = dis;
+    /* The operator caches, by CACHE_* */
+    BddCache[] bdd_caches() {
+        return new BddCache[] { applycache, itecache, quantcache, appexcache,
+                                replacecache, misccache, countcache, zddcache,
+                                addcache };
+    }
+
+    /* Called from checkresize() at the end of an operation, when no
+     * operation holds on to a cache entry. */
+    void bdd_cache_adapt() {
+        if (bddconcurrent)
+            return;
+        BddCache[] caches = bdd_caches();
+        long[] lookups = new long[CACHE_NUM];
+        long total = 0, slots = 0;
+        for (int n = 0; n < CACHE_NUM; n++) {
+            if (caches[n] == null) continue;
+            lookups[n] = counters.cacheHit[n] - cacheadapthit[n] +
+                         counters.cacheMiss[n] - cacheadaptmiss[n];
+            total += lookups[n];
+            slots += caches[n].tablesize;
+        }
+        /* A check forced by a new budget only enforces it; the caches are
+         * judged once they have seen enough lookups or operations. */
+        boolean judge = total >= slots || ++cacheadaptops >= ADAPT_OPS;
+        if (!judge && !cacheadapt)
+            return;
+        cacheadapt = false;
+        if (judge)
+            cacheadaptops = 0;
+
+        int[] size = new int[CACHE_NUM];
+        long used = 0;
+        for (int n = 0; n < CACHE_NUM; n++) {
+            BddCache cache = caches[n];
+            if (cache == null) continue;
+            int s = cache.tablesize;
+            long hit = counters.cacheHit[n] - cacheadapthit[n];
+            long miss = counters.cacheMiss[n] - cacheadaptmiss[n];
+            size[n] = s;
+            if (judge) {
+                double occ = BddCache_occupancy(cache);
+                if (occ < 0.25 && lookups[n] < s / 4)
+                    size[n] = Math.max(s / 2, CACHE_MINSIZE);
+                else if (occ > 0.75 && miss > hit && lookups[n] > s &&
+                         s < INT_MAX / (2 * __cache_entry_size))
+                    size[n] = s * 2;
+            }
+            used += (long) size[n] * CACHE_ENTRY_BYTES;
+        }
+
+        /* Over budget: halve the caches that are used least per entry. */
+        while (used > cachebudget) {
+            int victim = -1;
+            for (int n = 0; n < CACHE_NUM; n++) {
+                if (caches[n] == null || size[n] / 2 < CACHE_MINSIZE) continue;
+                if (victim < 0 ||
+                    (double) lookups[n] / size[n] <
+                    (double) lookups[victim] / size[victim])
+                    victim = n;
+            }
+            if (victim < 0)
+                break;
+            used -= (long) (size[victim] - size[victim] / 2) * CACHE_ENTRY_BYTES;
+            size[victim] /= 2;
         }
 
-        /* Sort according to the number of nodes at each level */
-        Arrays.sort(p, 0, num, new Comparator() {
+        for (int n = 0; n < CACHE_NUM; n++) {
+            if (caches[n] != null && size[n] != caches[n].tablesize)
+                BddCache_resize(caches[n], size[n]);
+            if (judge) {
+                cacheadapthit[n] = counters.cacheHit[n];
+                cacheadaptmiss[n] = counters.cacheMiss[n];
+            }
+        }
+    }
 
-            public int compare(Object o1, Object o2) {
-                return siftTestCmp(o1, o2);
+    /* Fraction of the sampled entries of the cache that hold a result */
+    double BddCache_occupancy(BddCache cache) {
+        int size = cache.tablesize;
+        int step = Math.max(size / CACHE_SAMPLES, 1);
+        int live = 0, sampled = 0;
+        for (int slot = 0; slot < size; slot += step) {
+            sampled++;
+            if (cache.dtable != null) {
+                int n = slot * __dcache_entry_size;
+                if (cache.dtable[n + offset__cache_dtag] >= cache.floor &&
+                    (cache.dtable[n + offset__cache_key] >> 32) != INVALID_BDD)
+                    live++;
+            } else {
+                int n = slot * __cache_entry_size;
+                if (cache.table[n + offset__cache_tag] >= cache.floor &&
+                    cache.table[n + offset__cache_a] != INVALID_BDD)
+                    live++;
             }
+        }
+        return (double) live / sampled;
+    }
 
-        });
+    /*=== BREADTH-FIRST APPLY ==============================================*/
+
+    /**
+     * <p>Enables or disables the breadth-first apply engine.  Returns the old
+     * setting.</p>
+     * 
+     * <p>The depth-first apply visits the nodes of its operands in the order
+     * of the recursion, which jumps all over a large node table.  The
+     * breadth-first engine works level by level instead, in two sweeps.  The
+     * first goes down the levels: each pending request (a pair of operand
+     * nodes) at a level is split into the requests for its two cofactors,
+     * which land on deeper levels, unless they are terminal cases, are found
+     * in the apply cache, or are already pending, so each level is read
+     * in one go.  The second sweep goes up the levels and builds
+     * the result node of each request from the results of its children.
+     * Independent operations given to {@link #applyBatch(BDD[], BDD[],
+     * BDDFactory.BDDOp)} share the same sweeps, and pairs they have in
+     * common are computed once.</p>
+     * 
+     * <p>The pending requests take about nine ints each, roughly what the
+     * depth-first apply would put in the apply cache.  When enabled, all
+     * binary operations of the kernel go through this engine, and so does
+     * applyBatch(); when disabled, applyBatch() applies the operations one
+     * by one.  Concurrent mode does not use it.</p>
+     * 
+     * <p>The engine pays off when the operands are large and their nodes
+     * lie level by level in the node table, as after
+     * {@link #compact(int) compact(COMPACT_LEVEL)}; on a scattered table
+     * it is about as fast as the depth-first apply.</p>
+     * 
+     * @param b  whether to apply breadth-first
+     * @return  old setting
+     */
+    public boolean setBreadthFirst(boolean b) {
+        boolean old = bfsapply;
+        if (b && bddcomplement) {
+            bdd_error(BDD_COMPLEMENT);
+            return old;
+        }
+        bfsapply = b;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#applyBatch(net.sf.javabdd.BDD[], net.sf.javabdd.BDD[], net.sf.javabdd.BDDFactory.BDDOp)
+     */
+    public BDD[] applyBatch(BDD[] left, BDD[] right, BDDOp op) {
+        if (!bfsapply || bddconcurrent)
+            return super.applyBatch(left, right, op);
+        if (left.length != right.length)
+            throw new BDDException("Operand arrays differ in length");
+        int[] l = new int[left.length];
+        int[] r = new int[right.length];
+        for (int i = 0; i < l.length; i++) {
+            l[i] = ((bdd) left[i])._index;
+            r[i] = ((bdd) right[i])._index;
+        }
+        int[] res = bfs_apply(l, r, op.id);
+        BDD[] result = new BDD[res.length];
+        for (int i = 0; i < res.length; i++) {
+            result[i] = makeBDD(res[i]);
+            bdd_delref(res[i]);
+        }
+        return result;
+    }
+
+    /* Fields of a request in bfsreq */
+    static final int BFS_F = 0;
+    static final int BFS_G = 1;
+    static final int BFS_OP = 2;
+    static final int BFS_LOW = 3; /* Child result, or -1-request */
+    static final int BFS_HIGH = 4;
+    static final int BFS_RES = 5;
+    static final int BFS_SIZE = 6;
+
+    boolean bfsapply; /* Route bdd_apply through the breadth-first engine */
+    int[] bfsreq; /* Pending requests, BFS_SIZE ints each */
+    int bfsnum; /* Number of requests */
+    int[] bfshash; /* Open addressing table of request+1 */
+    int[][] bfslevel; /* Requests of each level */
+    int[] bfslevelnum; /* Number of requests of each level */
+    int[] bfsrefs; /* Cached results that were referenced */
+    int bfsrefnum;
+
+    int bdd_apply_bfs(int l, int r, int op) {
+        int res = bfs_apply(new int[] { l }, new int[] { r }, op)[0];
+        bdd_delref(res);
+        return res;
+    }
+
+    /* Applies op to each pair, and returns the results with a reference
+     * taken */
+    int[] bfs_apply(int[] l, int[] r, int op) {
+        int[] res = new int[l.length];
+        int n;
+        firstReorder = 1;
+
+        for (n = 0; n < l.length; n++) {
+            CHECKa(l[n], bddfalse);
+            CHECKa(r[n], bddfalse);
+        }
+        if (op < 0 || op > bddop_invimp) {
+            bdd_error(BDD_OP);
+            return res;
+        }
+
+        if (applycache == null) applycache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+
+        again : for (;;) {
+            try {
+                if (firstReorder == 0)
+                    bdd_disable_reorder();
+                bfs_run(l, r, op, res);
+                if (firstReorder == 0)
+                    bdd_enable_reorder();
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                if (firstReorder-- == 1)
+                    continue again;
+            }
+            break;
+        }
+
+        checkresize();
+        return res;
+    }
+
+    void bfs_run(int[] l, int[] r, int op, int[] res) {
+        int level, n, i;
+        int[] roots = new int[l.length];
+
+        bfsnum = 0;
+        bfsrefnum = 0;
+        if (bfsreq == null) {
+            bfsreq = new int[1024 * BFS_SIZE];
+            bfshash = new int[2048];
+            bfsrefs = new int[64];
+        }
+        if (bfslevel == null || bfslevel.length < bddvarnum) {
+            bfslevel = new int[bddvarnum][];
+            bfslevelnum = new int[bddvarnum];
+        }
+
+        try {
+            /* Down: split the requests of each level */
+            for (n = 0; n < l.length; n++)
+                roots[n] = bfs_request(l[n], r[n], op);
+            for (level = 0; level < bddvarnum; level++) {
+                int num = bfslevelnum[level];
+                if (num == 0)
+                    continue;
+                int[] reqs = bfslevel[level];
+                for (i = 0; i < num; i++) {
+                    int q = reqs[i] * BFS_SIZE;
+                    int f = bfsreq[q + BFS_F], g = bfsreq[q + BFS_G];
+                    int fl = f, fh = f, gl = g, gh = g;
+                    if (LEVEL(f) == level) {
+                        fl = LOW(f);
+                        fh = HIGH(f);
+                    }
+                    if (LEVEL(g) == level) {
+                        gl = LOW(g);
+                        gh = HIGH(g);
+                    }
+                    int lo = bfs_request(fl, gl, bfsreq[q + BFS_OP]);
+                    bfsreq[q + BFS_LOW] = lo;
+                    int hi = bfs_request(fh, gh, bfsreq[q + BFS_OP]);
+                    bfsreq[q + BFS_HIGH] = hi;
+                }
+            }
+
+            /* Up: build the results, deepest level first.  Each result is
+             * referenced until the end, as a collection may happen. */
+            for (level = bddvarnum - 1; level >= 0; level--) {
+                int num = bfslevelnum[level];
+                int[] reqs = bfslevel[level];
+                for (i = 0; i < num; i++) {
+                    int q = reqs[i] * BFS_SIZE;
+                    int lo = bfs_result(bfsreq[q + BFS_LOW]);
+                    int hi = bfs_result(bfsreq[q + BFS_HIGH]);
+                    int res1 = bdd_makenode(level, lo, hi);
+                    bfsreq[q + BFS_RES] = bdd_addref(res1);
+
+                    int f = bfsreq[q + BFS_F], g = bfsreq[q + BFS_G];
+                    int o = bfsreq[q + BFS_OP];
+                    int[] table = applycache.table;
+                    int entry = BddCache_lookupI(applycache, APPLYHASH(f, g, o));
+                    table[entry + offset__cache_a] = f;
+                    table[entry + offset__cache_b] = g;
+                    table[entry + offset__cache_c] = o;
+                    table[entry + offset__cache_res] = res1;
+                }
+            }
+
+            for (n = 0; n < l.length; n++)
+                res[n] = bdd_addref(bfs_result(roots[n]));
+        } finally {
+            /* Drop the references of the requests, also after a reordering
+             * has been requested */
+            for (level = 0; level < bddvarnum; level++) {
+                int num = bfslevelnum[level];
+                int[] reqs = bfslevel[level];
+                for (i = 0; i < num; i++) {
+                    int q = reqs[i] * BFS_SIZE;
+                    if (bfsreq[q + BFS_RES] >= 0)
+                        bdd_delref(bfsreq[q + BFS_RES]);
+                }
+                bfslevelnum[level] = 0;
+            }
+            for (i = 0; i < bfsrefnum; i++)
+                bdd_delref(bfsrefs[i]);
+            Arrays.fill(bfshash, 0);
+            bfsnum = 0;
+            bfsrefnum = 0;
+        }
+    }
+
+    final int bfs_result(int x) {
+        return x >= 0 ? x : bfsreq[(-1 - x) * BFS_SIZE + BFS_RES];
+    }
+
+    /* Returns the result of (f op g) if it is known, or else the (new or
+     * pending) request for it as -1-request */
+    int bfs_request(int f, int g, int op) {
+        int res = bfs_terminal(f, g, op);
+        if (res >= 0)
+            return res;
+
+        switch (op) {
+            case bddop_and: case bddop_xor: case bddop_or:
+            case bddop_nand: case bddop_nor: case bddop_biimp:
+                if (f > g) {
+                    int t = f; f = g; g = t;
+                }
+                break;
+        }
+
+        int[] table = applycache.table;
+        int entry = BddCache_lookupI(applycache, APPLYHASH(f, g, op));
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == g &&
+            table[entry + offset__cache_c] == op) {
+            counters.cacheHit[CACHE_APPLY]++;
+            res = table[entry + offset__cache_res];
+            /* Cached results are not reachable from the operands */
+            if (bfsrefnum == bfsrefs.length) {
+                int[] refs = new int[bfsrefs.length * 2];
+                System.arraycopy(bfsrefs, 0, refs, 0, bfsrefnum);
+                bfsrefs = refs;
+            }
+            bfsrefs[bfsrefnum++] = bdd_addref(res);
+            return res;
+        }
+        counters.cacheMiss[CACHE_APPLY]++;
+
+        int mask = bfshash.length - 1;
+        int h = TRIPLE(f, g, op) & mask;
+        int q;
+        while ((q = bfshash[h]) != 0) {
+            int k = (q - 1) * BFS_SIZE;
+            if (bfsreq[k + BFS_F] == f && bfsreq[k + BFS_G] == g &&
+                bfsreq[k + BFS_OP] == op)
+                return -q;
+            h = (h + 1) & mask;
+        }
+
+        /* New request */
+        q = bfsnum++;
+        if (q * BFS_SIZE == bfsreq.length) {
+            int[] reqs = new int[bfsreq.length * 2];
+            System.arraycopy(bfsreq, 0, reqs, 0, bfsreq.length);
+            bfsreq = reqs;
+        }
+        int k = q * BFS_SIZE;
+        bfsreq[k + BFS_F] = f;
+        bfsreq[k + BFS_G] = g;
+        bfsreq[k + BFS_OP] = op;
+        bfsreq[k + BFS_RES] = -1;
+        bfshash[h] = q + 1;
+        if (bfsnum * 2 > bfshash.length)
+            bfs_rehash();
+
+        int level = Math.min(LEVEL(f), LEVEL(g));
+        int[] reqs = bfslevel[level];
+        int num = bfslevelnum[level];
+        if (reqs == null || num == reqs.length) {
+            int[] r = new int[reqs == null ? 16 : reqs.length * 2];
+            if (reqs != null)
+                System.arraycopy(reqs, 0, r, 0, num);
+            bfslevel[level] = reqs = r;
+        }
+        reqs[num] = q;
+        bfslevelnum[level] = num + 1;
+        return -1 - q;
+    }
+
+    void bfs_rehash() {
+        int[] hash = new int[bfshash.length * 2];
+        int mask = hash.length - 1;
+        for (int q = 0; q < bfsnum; q++) {
+            int k = q * BFS_SIZE;
+            int h = TRIPLE(bfsreq[k + BFS_F], bfsreq[k + BFS_G], bfsreq[k + BFS_OP]) & mask;
+            while (hash[h] != 0)
+                h = (h + 1) & mask;
+            hash[h] = q + 1;
+        }
+        bfshash = hash;
+    }
+
+    /* The terminal cases of apply_rec, and_rec and or_rec, or -1 */
+    int bfs_terminal(int l, int r, int op) {
+        switch (op) {
+            case bddop_and :
+                if (l == r)
+                    return l;
+                if (ISZERO(l) || ISZERO(r))
+                    return 0;
+                if (ISONE(l))
+                    return r;
+                if (ISONE(r))
+                    return l;
+                break;
+            case bddop_or :
+                if (l == r)
+                    return l;
+                if (ISONE(l) || ISONE(r))
+                    return 1;
+                if (ISZERO(l))
+                    return r;
+                if (ISZERO(r))
+                    return l;
+                break;
+            case bddop_xor :
+                if (l == r)
+                    return 0;
+                if (ISZERO(l))
+                    return r;
+                if (ISZERO(r))
+                    return l;
+                break;
+            case bddop_nand :
+                if (ISZERO(l) || ISZERO(r))
+                    return 1;
+                break;
+            case bddop_nor :
+                if (ISONE(l) || ISONE(r))
+                    return 0;
+                break;
+            case bddop_imp :
+                if (ISZERO(l))
+                    return 1;
+                if (ISONE(l))
+                    return r;
+                if (ISONE(r))
+                    return 1;
+                break;
+        }
+        if (ISCONST(l) && ISCONST(r))
+            return oprres[op][l << 1 | r];
+        return -1;
+    }
+
+    /*=== INTEGER HANDLES ==================================================*/
+
+    /* Handles are node numbers.  In concurrent mode the apply family and
+     * quantification run concurrently, as for BDD objects; the other
+     * operations hold the kernel write lock. */
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handle(net.sf.javabdd.BDD)
+     */
+    public int handle(BDD b) {
+        return bdd_addref(((bdd) b)._index);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleToBDD(int)
+     */
+    public BDD handleToBDD(int h) {
+        CHECKa(h, bddfalse);
+        return makeBDD(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleAddRef(int)
+     */
+    public int handleAddRef(int h) {
+        return bdd_addref(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleDelRef(int)
+     */
+    public void handleDelRef(int h) {
+        bdd_delref(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleZero()
+     */
+    public int handleZero() {
+        return bddfalse;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleOne()
+     */
+    public int handleOne() {
+        return bddtrue;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIthVar(int)
+     */
+    public int handleIthVar(int var) {
+        return bdd_ithvar(var);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNithVar(int)
+     */
+    public int handleNithVar(int var) {
+        return bdd_nithvar(var);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIsZero(int)
+     */
+    public boolean handleIsZero(int h) {
+        return h == bddfalse;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIsOne(int)
+     */
+    public boolean handleIsOne(int h) {
+        return h == bddtrue;
+    }
 
-        /* Create sequence */
-        for (n = 0; n < num; n++)
-            seq[n] = p[n].block;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleEquals(int, int)
+     */
+    public boolean handleEquals(int a, int b) {
+        return a == b;
+    }
 
-        /* Do the sifting on this sequence */
-        t = reorder_sift_seq(t, seq, num);
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleVar(int)
+     */
+    public int handleVar(int h) {
+        return bdd_var(h);
+    }
 
-        free(seq);
-        free(p);
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleLow(int)
+     */
+    public int handleLow(int h) {
+        return bdd_addref(bdd_low(h));
+    }
 
-        return t;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleHigh(int)
+     */
+    public int handleHigh(int h) {
+        return bdd_addref(bdd_high(h));
     }
 
-    BddTree reorder_siftite(BddTree t) {
-        BddTree first = t;
-        int lastsize;
-        int c = 1;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNot(int)
+     */
+    public int handleNot(int h) {
+        if (!bddconcurrent)
+            return bdd_addref(bdd_not(h));
+        kernellock.writeLock().lock();
+        try {
+            return bdd_addref(bdd_not(h));
+        } finally {
+            kernellock.writeLock().unlock();
+        }
+    }
 
-        if (t == null)
-            return t;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleApply(int, int, net.sf.javabdd.BDDFactory.BDDOp)
+     */
+    public int handleApply(int a, int b, BDDOp op) {
+        if (bddconcurrent)
+            return concurrent_run(CONCURRENT_APPLY, a, b, op.id, 0);
+        return bdd_addref(bdd_apply(a, b, op.id));
+    }
 
-        do {
-            if (verbose > 1)
-                System.out.println("Reorder " + (c++) + "\n");
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIte(int, int, int)
+     */
+    public int handleIte(int f, int g, int h) {
+        if (!bddconcurrent)
+            return bdd_addref(bdd_ite(f, g, h));
+        kernellock.writeLock().lock();
+        try {
+            return bdd_addref(bdd_ite(f, g, h));
+        } finally {
+            kernellock.writeLock().unlock();
+        }
+    }
 
-            lastsize = reorder_nodenum();
-            first = reorder_sift(first);
-        } while (reorder_nodenum() != lastsize);
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleExist(int, int)
+     */
+    public int handleExist(int h, int varset) {
+        if (bddconcurrent)
+            return concurrent_run(CONCURRENT_EXIST, h, 0, bddop_or, varset);
+        return bdd_addref(bdd_exist(h, varset));
+    }
 
-        return first;
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleForAll(int, int)
+     */
+    public int handleForAll(int h, int varset) {
+        if (bddconcurrent)
+            return concurrent_run(CONCURRENT_FORALL, h, 0, bddop_and, varset);
+        return bdd_addref(bdd_forall(h, varset));
     }
 
-    public void reverseAllDomains() {
-        reorder_init();
-        for (int i = 0; i < fdvarnum; ++i) {
-            reverseDomain0(domain[i]);
-        }
-        reorder_done();
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleApplyEx(int, int, net.sf.javabdd.BDDFactory.BDDOp, int)
+     */
+    public int handleApplyEx(int a, int b, BDDOp op, int varset) {
+        if (bddconcurrent)
+            return concurrent_run(CONCURRENT_APPEX, a, b, op.id, varset);
+        return bdd_addref(bdd_appex(a, b, op.id, varset));
     }
-    
-    public void reverseDomain(BDDDomain d) {
-        reorder_init();
-        reverseDomain0(d);
-        reorder_done();
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleRelprod(int, int, int)
+     */
+    public int handleRelprod(int a, int b, int varset) {
+        return handleApplyEx(a, b, and, varset);
     }
-    
-    protected void reverseDomain0(BDDDomain d) {
-        int n = d.varNum();
-        BddTree[] trees = new BddTree[n];
-        int v = d.ivar[0];
-        addVarBlock(v, v, true);
-        trees[0] = getBlock(vartree, v, v);
-        BddTree parent = getParent(trees[0]);
-        for (int i = 1; i < n; ++i) {
-            v = d.ivar[i];
-            addVarBlock(v, v, true);
-            trees[i] = getBlock(vartree, v, v);
-            BddTree parent2 = getParent(trees[i]);
-            if (parent != parent2) {
-                throw new BDDException();
-            }
-        }
-        for (int i = 0; i < n; ++i) {
-            for (int j = i + 1; j < n; ++j) {
-                blockdown(trees[i]);
-            }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleReplace(int, net.sf.javabdd.BDDPairing)
+     */
+    public int handleReplace(int h, BDDPairing pair) {
+        if (!bddconcurrent)
+            return bdd_addref(bdd_replace(h, (bddPair) pair));
+        kernellock.writeLock().lock();
+        try {
+            return bdd_addref(bdd_replace(h, (bddPair) pair));
+        } finally {
+            kernellock.writeLock().unlock();
         }
-        BddTree newchild = trees[n-1];
-        while (newchild.prev != null) newchild = newchild.prev;
-        if (parent == null) vartree = newchild;
-        else parent.nextlevel = newchild;
     }
-    
-    public void setVarOrder(String ordering) {
-        List result = new LinkedList();
-        int nDomains = numberOfDomains();
-        StringTokenizer st = new StringTokenizer(ordering, "x_", true);
-        int numberOfDomains = 0, bitIndex = 0;
-        boolean[] done = new boolean[nDomains];
-        List last = null;
-        for (int i=0; ; ++i) {
-            String s = st.nextToken();
-            BDDDomain d;
-            for (int j=0; ; ++j) {
-                if (j == nDomains)
-                    throw new BDDException("bad domain: "+s);
-                d = getDomain(j);
-                if (s.equals(d.getName())) break;
-            }
-            if (done[d.getIndex()])
-                throw new BDDException("duplicate domain: "+s);
-            done[d.getIndex()] = true;
-            if (last != null) last.add(d);
-            if (st.hasMoreTokens()) {
-                s = st.nextToken();
-                if (s.equals("x")) {
-                    if (last == null) {
-                        last = new LinkedList();
-                        last.add(d);
-                        result.add(last);
-                    }
-                } else if (s.equals("_")) {
-                    if (last == null) {
-                        result.add(d);
-                    }
-                    last = null;
-                } else {
-                    throw new BDDException("bad token: "+s);
-                }
-            } else {
-                if (last == null) {
-                    result.add(d);
-                }
-                break;
-            }
-        }
-        
-        for (int i=0; i<done.length; ++i) {
-            if (!done[i]) {
-                throw new BDDException("missing domain #"+i+": "+getDomain(i));
-            }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleSatCount(int)
+     */
+    public double handleSatCount(int h) {
+        if (!bddconcurrent)
+            return bdd_satcount(h);
+        kernellock.writeLock().lock();
+        try {
+            return bdd_satcount(h);
+        } finally {
+            kernellock.writeLock().unlock();
         }
-        
-        setVarOrder(result);
     }
-    
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNodeCount(int)
+     */
+    public int handleNodeCount(int h) {
+        if (!bddconcurrent)
+            return bdd_nodecount(h);
+        kernellock.writeLock().lock();
+        try {
+            return bdd_nodecount(h);
+        } finally {
+            kernellock.writeLock().unlock();
+        }
+    }
+
+    /*=== ZERO-SUPPRESSED DECISION DIAGRAMS ================================*/
+
+    /* ZDD nodes live in the node table next to BDD nodes, and share the
+     * unique table, the reference counts and the garbage collector.  Only
+     * the reduction rule differs: a node whose high child is the empty
+     * family (0) is left out, while a node with equal children is kept.  The
+     * other terminal (1) is the family holding just the empty set.  A
+     * skipped level means the variable is absent, so levels must not be
+     * swapped with BDD semantics: reordering and duplicateVar are refused
+     * while ZDD objects are alive. */
+
+    static final int ZDDOP_UNION = 0;
+    static final int ZDDOP_INTERSECT = 1;
+    static final int ZDDOP_DIFF = 2;
+    static final int ZDDOP_JOIN = 3;
+    static final int ZDDOP_CHANGE = 4;
+    static final int ZDDOP_ONSET = 5;
+    static final int ZDDOP_OFFSET = 6;
+    static final int ZDDOP_FROMBDD = 7;
+    static final int ZDDOP_TOBDD = 8;
+
+    ZDDFactory zddfactory; /* ZDD factory on this node table */
+    int diagramrefs; /* Number of live ZDD and ADD objects */
+    int zddop; /* Current operation for zdd_varop_rec */
+    int zddlevel; /* Current variable level for zdd_varop_rec */
+
     /**
-     * <p>Set the variable order to be the given list of domains.</p>
+     * <p>Returns the ZDD factory that shares the node table, the unique
+     * table and the operator caches of this factory.  ZDD variables are the
+     * variables of this factory.</p>
      * 
-     * @param domains  domain order
+     * @return  ZDD factory
      */
-    public void setVarOrder(List domains) {
-        BddTree[] my_vartree = new BddTree[fdvarnum];
-        boolean[] interleaved = new boolean[fdvarnum];
-        int k = 0;
-        for (Iterator i = domains.iterator(); i.hasNext(); ) {
-            Object o = i.next();
-            Collection c;
-            if (o instanceof BDDDomain) c = Collections.singleton(o);
-            else c = (Collection) o;
-            for (Iterator j = c.iterator(); j.hasNext(); ) {
-                BDDDomain d = (BDDDomain) j.next();
-                int low = d.ivar[0];
-                int high = d.ivar[d.ivar.length-1];
-                bdd_intaddvarblock(low, high, false);
-                BddTree b = getBlock(vartree, low, high);
-                my_vartree[k] = b;
-                interleaved[k] = j.hasNext();
-                k++;
-            }
-        }
-        if (k <= 1) return;
-        BddTree parent = getParent(my_vartree[0]);
-        for (int i = 0; i < k; ++i) {
-            if (parent != getParent(my_vartree[i])) {
-                throw new BDDException("var block "+my_vartree[i].firstVar+".."+my_vartree[i].lastVar+" is in wrong place in tree");
-            }
+    public ZDDFactory getZDDFactory() {
+        if (bddcomplement)
+            bdd_error(BDD_COMPLEMENT);
+        if (zddfactory == null)
+            zddfactory = new ZDDFactory(this);
+        return zddfactory;
+    }
+
+    int zdd_makenode(int level, int low, int high) {
+        counters.uniqueAccess++;
+
+        /* A variable that is never present is left out */
+        if (high == 0)
+            return low;
+
+        return bdd_findnode(level, low, high);
+    }
+
+    /* Takes a reference for a new ZDD or ADD object */
+    int diagram_addref(int r) {
+        if (!bddconcurrent) {
+            diagramrefs++;
+            return bdd_addref(r);
         }
-        reorder_init();
-        BddTree prev = null; boolean prev_interleaved = false;
-        for (int i = 0; i < k; ++i) {
-            BddTree t = my_vartree[i];
-            while (t.prev != prev) {
-                blockdown(t.prev);
-            }
-            boolean inter = interleaved[i];
-            if (prev_interleaved) {
-                blockinterleave(t.prev);
-                //++i;
-                prev = t.prev;
-            } else {
-                prev = t;
-            }
-            prev_interleaved = inter;
+        kernellock.writeLock().lock();
+        try {
+            diagramrefs++;
+            return bdd_addref(r);
+        } finally {
+            kernellock.writeLock().unlock();
         }
-        BddTree newchild = my_vartree[0];
-        _assert(newchild.prev == null);
-        //while (newchild.prev != null) newchild = newchild.prev;
-        if (parent == null) vartree = newchild;
-        else parent.nextlevel = newchild;
-        reorder_done();
     }
-    
-    protected BddTree getParent(BddTree child) {
-        for (BddTree p = vartree; p != null; p = p.next) {
-            if (p == child) return null;
-            BddTree q = getParent(p, child);
-            if (q != null) return q;
+
+    /* Drops the reference of a freed ZDD or ADD object */
+    void diagram_delref(int r) {
+        if (!bddconcurrent) {
+            diagramrefs--;
+            bdd_delref(r);
+            return;
         }
-        throw new BDDException("Cannot find tree node "+child);
-    }
-    
-    protected BddTree getParent(BddTree parent, BddTree child) {
-        if (parent.nextlevel == null) return null;
-        for (BddTree p = parent.nextlevel; p != null; p = p.next) {
-            if (p == child) return parent;
-            BddTree q = getParent(p, child);
-            if (q != null) return q;
+        kernellock.writeLock().lock();
+        try {
+            diagramrefs--;
+            bdd_delref(r);
+        } finally {
+            kernellock.writeLock().unlock();
         }
-        return null;
     }
-    
-    protected BddTree getBlock(BddTree t, int low, int high) {
-        if (t == null) return null;
-        for (BddTree p = t; p != null; p = p.next) {
-            if (p.firstVar == low && p.lastVar == high) return p;
-            BddTree q = getBlock(p.nextlevel, low, high);
-            if (q != null) return q;
+
+    /* Runs a ZDD operation and returns its result with a reference taken.
+     * b is the second operand, or the variable for change/onset/offset. */
+    int zdd_apply(int op, int a, int b) {
+        if (!bddconcurrent)
+            return zdd_apply0(op, a, b);
+        kernellock.writeLock().lock();
+        try {
+            return zdd_apply0(op, a, b);
+        } finally {
+            kernellock.writeLock().unlock();
         }
-        return null;
     }
-    
-    void blockinterleave(BddTree left) {
-        BddTree right = left.next;
-        //System.out.println("Interleaving "+left.first+".."+left.last+" and "+right.first+".."+right.last);
-        int n;
-        int leftsize = left.lastVar - left.firstVar;
-        int rightsize = right.lastVar - right.firstVar;
-        int[] lseq = left.seq;
-        int[] rseq = right.seq;
-        int minsize = Math.min(leftsize, rightsize);
-        for (n = 0; n <= minsize; ++n) {
-            while (bddvar2level[lseq[n]] + 1 < bddvar2level[rseq[n]]) {
-                reorder_varup(rseq[n]);
-            }
+
+    int zdd_apply0(int op, int a, int b) {
+        int res;
+        firstReorder = 1;
+
+        CHECKa(a, bddfalse);
+        if (op < ZDDOP_CHANGE) {
+            CHECKa(b, bddfalse);
+        } else if (op <= ZDDOP_OFFSET && (b < 0 || b >= bddvarnum)) {
+            bdd_error(BDD_VAR);
+            return bddfalse;
         }
-    outer:
-        for ( ; n <= rightsize; ++n) {
-            for (;;) {
-                BddTree t = left.prev;
-                if (t == null || !t.interleaved) break outer;
-                int tsize = t.lastVar - t.firstVar;
-                if (n <= tsize) {
-                    int[] tseq = t.seq;
-                    while (bddvar2level[tseq[n]] + 1 < bddvar2level[rseq[n]]) {
-                        reorder_varup(rseq[n]);
-                    }
-                    break;
+
+        if (zddcache == null) zddcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
+
+        again : for (;;) {
+            try {
+                INITREF();
+
+                if (firstReorder == 0)
+                    bdd_disable_reorder();
+                switch (op) {
+                    case ZDDOP_UNION: res = zdd_union_rec(a, b); break;
+                    case ZDDOP_INTERSECT: res = zdd_intersect_rec(a, b); break;
+                    case ZDDOP_DIFF: res = zdd_diff_rec(a, b); break;
+                    case ZDDOP_JOIN: res = zdd_join_rec(a, b); break;
+                    case ZDDOP_FROMBDD: res = zdd_frombdd_rec(a, 0); break;
+                    case ZDDOP_TOBDD: res = zdd_tobdd_rec(a, 0); break;
+                    default:
+                        zddop = op;
+                        zddlevel = bddvar2level[b];
+                        res = zdd_varop_rec(a);
+                        break;
                 }
+                if (firstReorder == 0)
+                    bdd_enable_reorder();
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                if (firstReorder-- == 1)
+                    continue again;
+                res = BDDZERO;
+                /* avoid warning about res being uninitialized */
             }
+            break;
         }
-        right.next.prev = left;
-        left.next = right.next;
-        left.firstVar = Math.min(left.firstVar, right.firstVar);
-        left.lastVar = Math.max(left.lastVar, right.lastVar);
-        left.seq = new int[left.lastVar - left.firstVar + 1];
-        update_seq(left);
+
+        checkresize();
+        if (op != ZDDOP_TOBDD)
+            diagramrefs++;
+        return bdd_addref(res);
     }
-    
-    void blockdown(BddTree left) {
-        BddTree right = left.next;
-        //System.out.println("Swapping "+left.first+".."+left.last+" and "+right.first+".."+right.last);
-        int n;
-        int leftsize = left.lastVar - left.firstVar;
-        int rightsize = right.lastVar - right.firstVar;
-        int leftstart = bddvar2level[left.seq[0]];
-        int[] lseq = left.seq;
-        int[] rseq = right.seq;
 
-        /* Move left past right */
-        while (bddvar2level[lseq[0]] < bddvar2level[rseq[rightsize]]) {
-            for (n = 0; n < leftsize; n++) {
-                if (bddvar2level[lseq[n]] + 1 != bddvar2level[lseq[n + 1]]
-                    && bddvar2level[lseq[n]] < bddvar2level[rseq[rightsize]]) {
-                    reorder_vardown(lseq[n]);
-                }
-            }
+    /* Converts a ZDD to a BDD object */
+    BDD zdd_tobdd(int r) {
+        int res = zdd_apply(ZDDOP_TOBDD, r, 0);
+        BDD b = makeBDD(res);
+        bdd_delref(res);
+        return b;
+    }
 
-            if (bddvar2level[lseq[leftsize]] < bddvar2level[rseq[rightsize]]) {
-                reorder_vardown(lseq[leftsize]);
-            }
+    double zdd_count(int r) {
+        if (!bddconcurrent)
+            return bdd_pathcount(r);
+        kernellock.writeLock().lock();
+        try {
+            return bdd_pathcount(r);
+        } finally {
+            kernellock.writeLock().unlock();
+        }
+    }
+
+    int diagram_nodecount(int r) {
+        if (!bddconcurrent)
+            return bdd_nodecount(r);
+        kernellock.writeLock().lock();
+        try {
+            return bdd_nodecount(r);
+        } finally {
+            kernellock.writeLock().unlock();
         }
+    }
 
-        /* Move right to where left started */
-        while (bddvar2level[rseq[0]] > leftstart) {
-            for (n = rightsize; n > 0; n--) {
-                if (bddvar2level[rseq[n]] - 1 != bddvar2level[rseq[n - 1]]
-                    && bddvar2level[rseq[n]] > leftstart) {
-                    reorder_varup(rseq[n]);
-                }
-            }
+    int zdd_union_rec(int p, int q) {
+        int[] table;
+        int entry;
+        int res;
 
-            if (bddvar2level[rseq[0]] > leftstart)
-                reorder_varup(rseq[0]);
+        if (p == 0)
+            return q;
+        if (q == 0 || p == q)
+            return p;
+        if (p > q) {
+            int t = p; p = q; q = t;
         }
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(p, q, ZDDOP_UNION));
 
-        /* Swap left and right data in the order */
-        left.next = right.next;
-        right.prev = left.prev;
-        left.prev = right;
-        right.next = left;
+        if (table[entry + offset__cache_a] == p &&
+            table[entry + offset__cache_b] == q &&
+            table[entry + offset__cache_c] == ZDDOP_UNION) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
 
-        if (right.prev != null)
-            right.prev.next = right;
-        if (left.next != null)
-            left.next.prev = left;
+        if (LEVEL(p) == LEVEL(q)) {
+            PUSHREF(zdd_union_rec(LOW(p), LOW(q)));
+            PUSHREF(zdd_union_rec(HIGH(p), HIGH(q)));
+            res = zdd_makenode(LEVEL(p), READREF(2), READREF(1));
+            POPREF(2);
+        } else if (LEVEL(p) < LEVEL(q)) {
+            PUSHREF(zdd_union_rec(LOW(p), q));
+            res = zdd_makenode(LEVEL(p), READREF(1), HIGH(p));
+            POPREF(1);
+        } else {
+            PUSHREF(zdd_union_rec(p, LOW(q)));
+            res = zdd_makenode(LEVEL(q), READREF(1), HIGH(q));
+            POPREF(1);
+        }
 
-        n = left.pos;
-        left.pos = right.pos;
-        right.pos = n;
-        
-        left.interleaved = false;
-        right.interleaved = false;
-        
-        left.firstLevel = bddvar2level[lseq[0]];
-        left.lastLevel = bddvar2level[lseq[leftsize]];
-        right.firstLevel = bddvar2level[rseq[0]];
-        right.lastLevel = bddvar2level[rseq[rightsize]];
+        table[entry + offset__cache_a] = p;
+        table[entry + offset__cache_b] = q;
+        table[entry + offset__cache_c] = ZDDOP_UNION;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
 
-    BddTree reorder_win2ite(BddTree t) {
-        BddTree dis, first = t;
-        int lastsize;
-        int c = 1;
+    int zdd_intersect_rec(int p, int q) {
+        int[] table;
+        int entry;
+        int res;
 
-        if (t == null)
-            return t;
+        if (p == 0 || q == 0)
+            return 0;
+        if (p == q)
+            return p;
+        if (p > q) {
+            int t = p; p = q; q = t;
+        }
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(p, q, ZDDOP_INTERSECT));
+
+        if (table[entry + offset__cache_a] == p &&
+            table[entry + offset__cache_b] == q &&
+            table[entry + offset__cache_c] == ZDDOP_INTERSECT) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
+
+        if (LEVEL(p) == LEVEL(q)) {
+            PUSHREF(zdd_intersect_rec(LOW(p), LOW(q)));
+            PUSHREF(zdd_intersect_rec(HIGH(p), HIGH(q)));
+            res = zdd_makenode(LEVEL(p), READREF(2), READREF(1));
+            POPREF(2);
+        } else if (LEVEL(p) < LEVEL(q)) {
+            /* No set of q has the variable of p */
+            res = zdd_intersect_rec(LOW(p), q);
+        } else {
+            res = zdd_intersect_rec(p, LOW(q));
+        }
 
-        if (verbose > 1)
-            System.out.println(
-                "Win2ite start: " + reorder_nodenum() + " nodes");
+        table[entry + offset__cache_a] = p;
+        table[entry + offset__cache_b] = q;
+        table[entry + offset__cache_c] = ZDDOP_INTERSECT;
+        table[entry + offset__cache_res] = res;
 
-        do {
-            lastsize = reorder_nodenum();
+        return res;
+    }
 
-            dis = t;
-            while (dis.next != null) {
-                int best = reorder_nodenum();
+    int zdd_diff_rec(int p, int q) {
+        int[] table;
+        int entry;
+        int res;
 
-                blockdown(dis);
+        if (p == 0 || p == q)
+            return 0;
+        if (q == 0)
+            return p;
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(p, q, ZDDOP_DIFF));
+
+        if (table[entry + offset__cache_a] == p &&
+            table[entry + offset__cache_b] == q &&
+            table[entry + offset__cache_c] == ZDDOP_DIFF) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
+
+        if (LEVEL(p) == LEVEL(q)) {
+            PUSHREF(zdd_diff_rec(LOW(p), LOW(q)));
+            PUSHREF(zdd_diff_rec(HIGH(p), HIGH(q)));
+            res = zdd_makenode(LEVEL(p), READREF(2), READREF(1));
+            POPREF(2);
+        } else if (LEVEL(p) < LEVEL(q)) {
+            PUSHREF(zdd_diff_rec(LOW(p), q));
+            res = zdd_makenode(LEVEL(p), READREF(1), HIGH(p));
+            POPREF(1);
+        } else {
+            res = zdd_diff_rec(p, LOW(q));
+        }
 
-                if (best < reorder_nodenum()) {
-                    blockdown(dis.prev);
-                    dis = dis.next;
-                } else if (first == dis)
-                    first = dis.prev;
-                if (verbose > 1) {
-                    System.out.print(".");
-                    System.out.flush();
-                }
-            }
+        table[entry + offset__cache_a] = p;
+        table[entry + offset__cache_b] = q;
+        table[entry + offset__cache_c] = ZDDOP_DIFF;
+        table[entry + offset__cache_res] = res;
 
-            if (verbose > 1)
-                System.out.println(" " + reorder_nodenum() + " nodes");
-            c++;
+        return res;
+    }
+
+    int zdd_join_rec(int p, int q) {
+        int[] table;
+        int entry;
+        int res;
+
+        if (p == 0 || q == 0)
+            return 0;
+        if (p == 1)
+            return q;
+        if (q == 1)
+            return p;
+        if (p > q) {
+            int t = p; p = q; q = t;
+        }
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(p, q, ZDDOP_JOIN));
+
+        if (table[entry + offset__cache_a] == p &&
+            table[entry + offset__cache_b] == q &&
+            table[entry + offset__cache_c] == ZDDOP_JOIN) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
+
+        if (LEVEL(p) == LEVEL(q)) {
+            /* The sets with the variable come from p1*q1, p1*q0 and p0*q1.
+             * At most two results are held at a time, as for appex. */
+            PUSHREF(zdd_join_rec(HIGH(p), HIGH(q)));
+            PUSHREF(zdd_join_rec(HIGH(p), LOW(q)));
+            res = zdd_union_rec(READREF(2), READREF(1));
+            POPREF(2);
+            PUSHREF(res);
+            PUSHREF(zdd_join_rec(LOW(p), HIGH(q)));
+            res = zdd_union_rec(READREF(2), READREF(1));
+            POPREF(2);
+            PUSHREF(res);
+            PUSHREF(zdd_join_rec(LOW(p), LOW(q)));
+            res = zdd_makenode(LEVEL(p), READREF(1), READREF(2));
+            POPREF(2);
+        } else if (LEVEL(p) < LEVEL(q)) {
+            PUSHREF(zdd_join_rec(LOW(p), q));
+            PUSHREF(zdd_join_rec(HIGH(p), q));
+            res = zdd_makenode(LEVEL(p), READREF(2), READREF(1));
+            POPREF(2);
+        } else {
+            PUSHREF(zdd_join_rec(p, LOW(q)));
+            PUSHREF(zdd_join_rec(p, HIGH(q)));
+            res = zdd_makenode(LEVEL(q), READREF(2), READREF(1));
+            POPREF(2);
         }
-        while (reorder_nodenum() != lastsize);
 
-        return first;
+        table[entry + offset__cache_a] = p;
+        table[entry + offset__cache_b] = q;
+        table[entry + offset__cache_c] = ZDDOP_JOIN;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
 
-    void bdd_reorder_auto() {
-        if (!bdd_reorder_ready())
-            return;
+    /* change, onset or offset (zddop) on the variable at zddlevel */
+    int zdd_varop_rec(int p) {
+        int[] table;
+        int entry;
+        int res;
+        int id;
 
-        bdd_reorder(bddreordermethod);
-        bddreordertimes--;
+        if (LEVEL(p) > zddlevel) {
+            /* No set of p has the variable (this includes the terminals) */
+            switch (zddop) {
+                case ZDDOP_CHANGE: return zdd_makenode(zddlevel, 0, p);
+                case ZDDOP_ONSET: return 0;
+                default: return p;
+            }
+        }
+        if (LEVEL(p) == zddlevel) {
+            switch (zddop) {
+                case ZDDOP_CHANGE: return zdd_makenode(zddlevel, HIGH(p), LOW(p));
+                case ZDDOP_ONSET: return HIGH(p);
+                default: return LOW(p);
+            }
+        }
+
+        id = zddop | zddlevel << 4;
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(p, 0, id));
+
+        if (table[entry + offset__cache_a] == p &&
+            table[entry + offset__cache_b] == 0 &&
+            table[entry + offset__cache_c] == id) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
+
+        PUSHREF(zdd_varop_rec(LOW(p)));
+        PUSHREF(zdd_varop_rec(HIGH(p)));
+        res = zdd_makenode(LEVEL(p), READREF(2), READREF(1));
+        POPREF(2);
+
+        table[entry + offset__cache_a] = p;
+        table[entry + offset__cache_b] = 0;
+        table[entry + offset__cache_c] = id;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
 
-    int bdd_reorder_gain() {
-        if (usednum_before == 0)
-            return 0;
+    /* The family of the sets of variables that are true in the satisfying
+     * assignments of the BDD f, below the given level */
+    int zdd_frombdd_rec(int f, int level) {
+        int[] table;
+        int entry;
+        int res;
+        int id;
 
-        return (100 * (usednum_before - usednum_after)) / usednum_before;
+        if (f == 0 || level == bddvarnum)
+            return f;
+
+        id = ZDDOP_FROMBDD | level << 4;
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(f, 0, id));
+
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == 0 &&
+            table[entry + offset__cache_c] == id) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
+
+        if (LEVEL(f) > level) {
+            /* f does not depend on the variable: it may or may not be in */
+            PUSHREF(zdd_frombdd_rec(f, level + 1));
+            res = zdd_makenode(level, READREF(1), READREF(1));
+            POPREF(1);
+        } else {
+            PUSHREF(zdd_frombdd_rec(LOW(f), level + 1));
+            PUSHREF(zdd_frombdd_rec(HIGH(f), level + 1));
+            res = zdd_makenode(level, READREF(2), READREF(1));
+            POPREF(2);
+        }
+
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = 0;
+        table[entry + offset__cache_c] = id;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#isInitialized()
-     */
-    public boolean isInitialized() {
-        return this.bddrunning;
+    /* The BDD whose satisfying assignments are the sets of the ZDD p, over
+     * the variables below the given level */
+    int zdd_tobdd_rec(int p, int level) {
+        int[] table;
+        int entry;
+        int res;
+        int id;
+
+        if (p == 0 || level == bddvarnum)
+            return p;
+
+        id = ZDDOP_TOBDD | level << 4;
+        table = zddcache.table;
+        entry = BddCache_lookupI(zddcache, APPLYHASH(p, 0, id));
+
+        if (table[entry + offset__cache_a] == p &&
+            table[entry + offset__cache_b] == 0 &&
+            table[entry + offset__cache_c] == id) {
+            counters.cacheHit[CACHE_ZDD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ZDD]++;
+
+        if (LEVEL(p) > level) {
+            /* The variable is in none of the sets */
+            PUSHREF(zdd_tobdd_rec(p, level + 1));
+            res = bdd_makenode(level, READREF(1), 0);
+            POPREF(1);
+        } else {
+            PUSHREF(zdd_tobdd_rec(LOW(p), level + 1));
+            PUSHREF(zdd_tobdd_rec(HIGH(p), level + 1));
+            res = bdd_makenode(level, READREF(2), READREF(1));
+            POPREF(2);
+        }
+
+        table[entry + offset__cache_a] = p;
+        table[entry + offset__cache_b] = 0;
+        table[entry + offset__cache_c] = id;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#done()
+    /*=== ALGEBRAIC DECISION DIAGRAMS ======================================*/
+
+    /* ADD nodes live in the node table and are reduced like BDD nodes, but
+     * their terminals carry values.  A terminal is a node whose children
+     * are both -2-k, where k is the slot of its value in addvalues; negative
+     * children are never followed by the marking, and never taken for a
+     * free node.  Terminals are found through the unique table like other
+     * nodes, so each value has one terminal, and they are collected like
+     * other nodes.  A slot whose terminal was collected is reused.
+     * Terminals are kept at level 0 so that they stay valid when variables
+     * are added; the ADD operations use ADDLEVEL instead. */
+
+    static final int ADDOP_PLUS = 0;
+    static final int ADDOP_MINUS = 1;
+    static final int ADDOP_TIMES = 2;
+    static final int ADDOP_MAX = 3;
+    static final int ADDOP_MIN = 4;
+    static final int ADDOP_SUMABSTRACT = 5;
+    static final int ADDOP_MAXABSTRACT = 6;
+    static final int ADDOP_THRESHOLD = 7;
+    static final int ADDOP_STRICTTHRESHOLD = 8;
+    static final int ADDOP_FROMBDD = 9;
+
+    /* Hash value modifiers for ADD results in countcache */
+    static final int CACHEID_ADDMIN = 0x5;
+    static final int CACHEID_ADDMAX = 0x6;
+
+    ADDFactory addfactory; /* ADD factory on this node table */
+    double[] addvalues; /* Value of each terminal slot */
+    int[] addnodes; /* Terminal node of each slot */
+    int addslotnum; /* Number of slots handed out */
+    int[] addfreeslots; /* Slots whose terminal was collected */
+    int addfreenum; /* Number of free slots */
+    int[] addslots; /* Hash table of the slot + 1 of each value, 0 if empty */
+    int addapplyop; /* Current operator for add_apply_rec */
+    int addop; /* Current abstraction or threshold operation */
+    double addthreshold; /* Current threshold */
+    int addthresholdnode; /* Terminal of the current threshold */
+
+    /**
+     * <p>Returns the ADD factory that shares the node table, the unique
+     * table and the operator caches of this factory.  ADD variables are the
+     * variables of this factory.</p>
+     * 
+     * @return  ADD factory
      */
-    public void done() {
-        bdd_done();
+    public ADDFactory getADDFactory() {
+        if (bddcomplement)
+            bdd_error(BDD_COMPLEMENT);
+        if (addfactory == null)
+            addfactory = new ADDFactory(this);
+        return addfactory;
     }
 
-    void bdd_done() {
-        /*sanitycheck(); FIXME */
-        //bdd_fdd_done();
-        //bdd_reorder_done();
-        bdd_pairs_done();
-
-        free(bddnodes);
-        free(bddrefstack);
-        free(bddvarset);
-        free(bddvar2level);
-        free(bddlevel2var);
+    final boolean ISADDTERM(int n) {
+        return LOW(n) < 0;
+    }
 
-        bddnodes = null;
-        bddrefstack = null;
-        bddvarset = null;
-        bddvar2level = null;
-        bddlevel2var = null;
+    final double ADDVALUE(int n) {
+        return addvalues[-2 - LOW(n)];
+    }
 
-        bdd_operator_done();
+    final int ADDLEVEL(int n) {
+        return LOW(n) < 0 ? bddvarnum : LEVEL(n);
+    }
 
-        bddrunning = false;
-        bddnodesize = 0;
-        bddmaxnodesize = 0;
-        bddvarnum = 0;
-        bddproduced = 0;
+    /* Returns the terminal for the given value */
+    int add_terminal(double v) {
+        int k, n;
 
-        //err_handler = null;
-        //gbc_handler = null;
-        //resize_handler = null;
+        if (v == 0.0)
+            v = 0.0; /* One terminal for 0.0 and -0.0 */
+        if (addslots == null) {
+            addslots = new int[32];
+            addvalues = new double[16];
+            addnodes = new int[16];
+            addfreeslots = new int[16];
+        }
+        k = addslots[add_slotpos(v)] - 1;
+        if (k >= 0) {
+            n = addnodes[k];
+            if (n < bddnodesize && LOW(n) == -2 - k)
+                return n;
+        } else {
+            k = add_newslot();
+            addvalues[k] = v;
+            /* add_newslot() may have rebuilt the table */
+            addslots[add_slotpos(v)] = k + 1;
+        }
+
+        counters.uniqueAccess++;
+        n = bdd_findnode(0, -2 - k, -2 - k);
+        addnodes[k] = n;
+        return n;
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setError(int)
-     */
-    public void setError(int code) {
-        bdderrorcond = code;
+    int add_newslot() {
+        int k;
+
+        if (addfreenum == 0 && addslotnum == addvalues.length) {
+            /* Give back the slots of collected terminals */
+            for (k = 0; k < addslotnum; k++) {
+                int n = addnodes[k];
+                if (n >= bddnodesize || LOW(n) != -2 - k)
+                    addfreeslots[addfreenum++] = k;
+            }
+            if (addfreenum < addslotnum / 4) {
+                int size = addvalues.length * 2;
+                double[] values = new double[size];
+                System.arraycopy(addvalues, 0, values, 0, addslotnum);
+                addvalues = values;
+                int[] nodes = new int[size];
+                System.arraycopy(addnodes, 0, nodes, 0, addslotnum);
+                addnodes = nodes;
+                int[] free = new int[size];
+                System.arraycopy(addfreeslots, 0, free, 0, addfreenum);
+                addfreeslots = free;
+            }
+            add_rehash();
+        }
+        if (addfreenum > 0)
+            return addfreeslots[--addfreenum];
+        return addslotnum++;
     }
-    
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#clearError()
-     */
-    public void clearError() {
-        bdderrorcond = 0;
+
+    /* Entry of addslots that holds v, or the empty entry where it goes */
+    int add_slotpos(double v) {
+        long bits = Double.doubleToLongBits(v);
+        int mask = addslots.length - 1;
+        int h = (int) (bits ^ (bits >>> 32)) * 0x9E3779B1;
+        for (int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+            int k = addslots[i] - 1;
+            if (k < 0 || Double.doubleToLongBits(addvalues[k]) == bits)
+                return i;
+        }
     }
-   
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setMaxNodeNum(int)
-     */
-    public int setMaxNodeNum(int size) {
-        return bdd_setmaxnodenum(size);
+
+    /* Rebuilds addslots from the slots in use, at most half full */
+    void add_rehash() {
+        boolean[] free = new boolean[addslotnum];
+        int size = 32;
+        for (int i = 0; i < addfreenum; i++)
+            free[addfreeslots[i]] = true;
+        while (size < 2 * addvalues.length)
+            size <<= 1;
+        addslots = new int[size];
+        for (int k = 0; k < addslotnum; k++)
+            if (!free[k])
+                addslots[add_slotpos(addvalues[k])] = k + 1;
     }
 
-    int bdd_setmaxnodenum(int size) {
-        if (size > bddnodesize || size == 0) {
-            int old = bddmaxnodesize;
-            bddmaxnodesize = size;
-            return old;
+    static double add_value(int op, double a, double b) {
+        switch (op) {
+            case ADDOP_PLUS: return a + b;
+            case ADDOP_MINUS: return a - b;
+            case ADDOP_TIMES: return a * b;
+            case ADDOP_MAX: return Math.max(a, b);
+            default: return Math.min(a, b);
         }
+    }
 
-        return bdd_error(BDD_NODES);
+    /* Returns the terminal for the given value, with a reference taken */
+    int add_constant(double v) {
+        if (!bddconcurrent) {
+            diagramrefs++;
+            return bdd_addref(add_terminal(v));
+        }
+        kernellock.writeLock().lock();
+        try {
+            diagramrefs++;
+            return bdd_addref(add_terminal(v));
+        } finally {
+            kernellock.writeLock().unlock();
+        }
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setMinFreeNodes(double)
-     */
-    public double setMinFreeNodes(double x) {
-        return bdd_setminfreenodes((int)(x * 100.)) / 100.;
+    /* Runs an ADD operation and returns its result with a reference taken.
+     * b is the second operand, the variable set for the abstractions, or
+     * unused; the thresholds take the value t and return a BDD. */
+    int add_apply(int op, int a, int b, double t) {
+        if (!bddconcurrent)
+            return add_apply0(op, a, b, t);
+        kernellock.writeLock().lock();
+        try {
+            return add_apply0(op, a, b, t);
+        } finally {
+            kernellock.writeLock().unlock();
+        }
     }
 
-    int bdd_setminfreenodes(int mf) {
-        int old = minfreenodes;
+    int add_apply0(int op, int a, int b, double t) {
+        int res;
+        firstReorder = 1;
 
-        if (mf < 0 || mf > 100)
-            return bdd_error(BDD_RANGE);
+        CHECKa(a, bddfalse);
+        if (op <= ADDOP_MAXABSTRACT)
+            CHECKa(b, bddfalse);
+        if ((op == ADDOP_SUMABSTRACT || op == ADDOP_MAXABSTRACT) && b == bddfalse) {
+            bdd_error(BDD_VARSET);
+            return bddfalse;
+        }
 
-        minfreenodes = mf;
-        return old;
-    }
+        if (addcache == null) addcache = BddCacheI_init(cachesize, CACHE_NODES_AB);
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setMaxIncrease(int)
-     */
-    public int setMaxIncrease(int x) {
-        return bdd_setmaxincrease(x);
-    }
+        again : for (;;) {
+            try {
+                INITREF();
 
-    int bdd_setmaxincrease(int size) {
-        int old = bddmaxnodeincrease;
+                if (firstReorder == 0)
+                    bdd_disable_reorder();
+                addop = op;
+                switch (op) {
+                    case ADDOP_SUMABSTRACT:
+                        addapplyop = ADDOP_PLUS;
+                        res = add_abstract_rec(a, b);
+                        break;
+                    case ADDOP_MAXABSTRACT:
+                        addapplyop = ADDOP_MAX;
+                        res = add_abstract_rec(a, b);
+                        break;
+                    case ADDOP_THRESHOLD:
+                    case ADDOP_STRICTTHRESHOLD:
+                        /* The threshold terminal is the cache key, so it
+                         * must live as long as the operation */
+                        addthreshold = t;
+                        addthresholdnode = bdd_addref(add_terminal(t));
+                        try {
+                            res = add_threshold_rec(a);
+                        } finally {
+                            bdd_delref(addthresholdnode);
+                        }
+                        break;
+                    case ADDOP_FROMBDD:
+                        res = add_frombdd_rec(a);
+                        break;
+                    default:
+                        addapplyop = op;
+                        res = add_apply_rec(a, b);
+                        break;
+                }
+                if (firstReorder == 0)
+                    bdd_enable_reorder();
+            } catch (ReorderException x) {
+                bdd_checkreorder();
 
-        if (size < 0)
-            return bdd_error(BDD_SIZE);
+                if (firstReorder-- == 1)
+                    continue again;
+                res = BDDZERO;
+                /* avoid warning about res being uninitialized */
+            }
+            break;
+        }
 
-        bddmaxnodeincrease = size;
-        return old;
+        checkresize();
+        if (op != ADDOP_THRESHOLD && op != ADDOP_STRICTTHRESHOLD)
+            diagramrefs++;
+        return bdd_addref(res);
     }
 
-    double increasefactor;
-    
-    public double setIncreaseFactor(double x) {
-        if (x < 0)
-            return bdd_error(BDD_RANGE);
-        double old = increasefactor;
-        increasefactor = x;
-        return old;
+    /* Computes a threshold of an ADD as a BDD object */
+    BDD add_tobdd(int op, int r, double t) {
+        int res = add_apply(op, r, 0, t);
+        BDD b = makeBDD(res);
+        bdd_delref(res);
+        return b;
     }
-    
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setCacheRatio(double)
-     */
-    public double setCacheRatio(double x) {
-        return bdd_setcacheratio((int)(x * 100)) / 100.;
+
+    /* Smallest or largest terminal value of an ADD */
+    double add_minmax(int r, boolean max) {
+        if (!bddconcurrent)
+            return add_minmax0(r, max);
+        kernellock.writeLock().lock();
+        try {
+            return add_minmax0(r, max);
+        } finally {
+            kernellock.writeLock().unlock();
+        }
     }
 
-    int bdd_setcacheratio(int r) {
-        int old = cacheratio;
+    double add_minmax0(int r, boolean max) {
+        CHECK(r);
 
-        if (r <= 0)
-            return bdd_error(BDD_RANGE);
-        if (bddnodesize == 0)
-            return old;
+        if (countcache == null) countcache = BddCacheD_init(cachesize);
 
-        cacheratio = r;
-        bdd_operator_noderesize();
-        return old;
+        miscid = max ? CACHEID_ADDMAX : CACHEID_ADDMIN;
+        return add_minmax_rec(r);
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#varNum()
-     */
-    public int varNum() {
-        return bdd_varnum();
-    }
+    double add_minmax_rec(int r) {
+        long[] table;
+        int entry;
+        double v;
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#setVarNum(int)
-     */
-    public int setVarNum(int num) {
-        return bdd_setvarnum(num);
+        if (ISADDTERM(r))
+            return ADDVALUE(r);
+
+        table = countcache.dtable;
+        entry = BddCache_lookupD(countcache, SATCOUHASH(r));
+        if (table[entry + offset__cache_key] == CACHEKEY(r, miscid)) {
+            counters.cacheHit[CACHE_COUNT]++;
+            return Double.longBitsToDouble(table[entry + offset__cache_dres]);
+        }
+        counters.cacheMiss[CACHE_COUNT]++;
+
+        if (miscid == CACHEID_ADDMAX)
+            v = Math.max(add_minmax_rec(LOW(r)), add_minmax_rec(HIGH(r)));
+        else
+            v = Math.min(add_minmax_rec(LOW(r)), add_minmax_rec(HIGH(r)));
+
+        table[entry + offset__cache_key] = CACHEKEY(r, miscid);
+        table[entry + offset__cache_dres] = Double.doubleToRawLongBits(v);
+
+        return v;
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#duplicateVar(int)
-     */
-    public int duplicateVar(int var) {
-        if (var < 0 || var >= bddvarnum) {
-            bdd_error(BDD_VAR);
-            return bddfalse;
+    int add_apply_rec(int f, int g) {
+        int[] table;
+        int entry;
+        int res;
+
+        if (ISADDTERM(f) && ISADDTERM(g))
+            return add_terminal(add_value(addapplyop, ADDVALUE(f), ADDVALUE(g)));
+
+        switch (addapplyop) {
+            case ADDOP_PLUS :
+                if (ISADDTERM(f) && ADDVALUE(f) == 0.0)
+                    return g;
+                if (ISADDTERM(g) && ADDVALUE(g) == 0.0)
+                    return f;
+                break;
+            case ADDOP_MINUS :
+                if (ISADDTERM(g) && ADDVALUE(g) == 0.0)
+                    return f;
+                break;
+            case ADDOP_TIMES :
+                if (ISADDTERM(f) && ADDVALUE(f) == 1.0)
+                    return g;
+                if (ISADDTERM(g) && ADDVALUE(g) == 1.0)
+                    return f;
+                break;
+            default :
+                if (f == g)
+                    return f;
+                break;
         }
-        
-        bdd_disable_reorder();
-        
-        int newVar = bddvarnum;
-        int lev = bddvar2level[var];
-        //System.out.println("Adding new variable "+newVar+" at level "+(lev+1));
-        // Increase the size of the various data structures.
-        bdd_setvarnum(bddvarnum+1);
-        // Actually duplicate the var in all BDDs.
-        insert_level(lev);
-        dup_level(lev, 0);
-        // Fix up bddvar2level
-        for (int i = 0; i < bddvarnum; ++i) {
-            if (bddvar2level[i] > lev && bddvar2level[i] < bddvarnum)
-                ++bddvar2level[i];
+
+        if (addapplyop != ADDOP_MINUS && f > g) {
+            int t = f; f = g; g = t;
         }
-        bddvar2level[newVar] = lev+1;
-        // Fix up bddlevel2var
-        for (int i = bddvarnum-2; i > lev; --i) {
-            bddlevel2var[i+1] = bddlevel2var[i];
+        table = addcache.table;
+        entry = BddCache_lookupI(addcache, APPLYHASH(f, g, addapplyop));
+
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == g &&
+            table[entry + offset__cache_c] == addapplyop) {
+            counters.cacheHit[CACHE_ADD]++;
+            return table[entry + offset__cache_res];
         }
-        bddlevel2var[lev+1] = newVar;
-        // Fix up bddvarset
-        for (int bdv = 0; bdv < bddvarnum; bdv++) {
-            bddvarset[bdv * 2] = PUSHREF(bdd_makenode(bddvar2level[bdv], 0, 1));
-            bddvarset[bdv * 2 + 1] = bdd_makenode(bddvar2level[bdv], 1, 0);
-            POPREF(1);
+        counters.cacheMiss[CACHE_ADD]++;
 
-            SETMAXREF(bddvarset[bdv * 2]);
-            SETMAXREF(bddvarset[bdv * 2 + 1]);
+        if (ADDLEVEL(f) == ADDLEVEL(g)) {
+            PUSHREF(add_apply_rec(LOW(f), LOW(g)));
+            PUSHREF(add_apply_rec(HIGH(f), HIGH(g)));
+            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+        } else if (ADDLEVEL(f) < ADDLEVEL(g)) {
+            PUSHREF(add_apply_rec(LOW(f), g));
+            PUSHREF(add_apply_rec(HIGH(f), g));
+            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+        } else {
+            PUSHREF(add_apply_rec(f, LOW(g)));
+            PUSHREF(add_apply_rec(f, HIGH(g)));
+            res = bdd_makenode(LEVEL(g), READREF(2), READREF(1));
         }
-        // Fix up pairs
-        for (bddPair pair = pairs; pair != null; pair = pair.next) {
-            bdd_delref(pair.result[bddvarnum-1]);
-            for (int i = bddvarnum-1; i > lev+1; --i) {
-                pair.result[i] = pair.result[i-1];
-                if (i != LEVEL(pair.result[i]) && i > pair.last) {
-                    pair.last = i;
-                }
+
+        POPREF(2);
+
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = g;
+        table[entry + offset__cache_c] = addapplyop;
+        table[entry + offset__cache_res] = res;
+
+        return res;
+    }
+
+    /* Sums (addop) or maximizes the ADD f over the variables of cube */
+    int add_abstract_rec(int f, int cube) {
+        int[] table;
+        int entry;
+        int res;
+
+        if (cube < 2)
+            return f;
+        if (ISADDTERM(f)) {
+            if (addop == ADDOP_MAXABSTRACT)
+                return f;
+            /* Each variable doubles the sum */
+            double v = ADDVALUE(f);
+            for (; cube >= 2; cube = HIGH(cube))
+                v *= 2;
+            return add_terminal(v);
+        }
+
+        table = addcache.table;
+        entry = BddCache_lookupI(addcache, APPLYHASH(f, cube, addop));
+
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == cube &&
+            table[entry + offset__cache_c] == addop) {
+            counters.cacheHit[CACHE_ADD]++;
+            return table[entry + offset__cache_res];
+        }
+        counters.cacheMiss[CACHE_ADD]++;
+
+        if (LEVEL(cube) < LEVEL(f)) {
+            /* f does not depend on the variable */
+            res = add_abstract_rec(f, HIGH(cube));
+            if (addop == ADDOP_SUMABSTRACT) {
+                PUSHREF(res);
+                res = add_apply_rec(res, res);
+                POPREF(1);
             }
-            pair.result[lev+1] = bdd_ithvar(newVar);
-            //System.out.println("Pair "+pair);
+        } else if (LEVEL(cube) == LEVEL(f)) {
+            PUSHREF(add_abstract_rec(LOW(f), HIGH(cube)));
+            PUSHREF(add_abstract_rec(HIGH(f), HIGH(cube)));
+            res = add_apply_rec(READREF(2), READREF(1));
+            POPREF(2);
+        } else {
+            PUSHREF(add_abstract_rec(LOW(f), cube));
+            PUSHREF(add_abstract_rec(HIGH(f), cube));
+            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+            POPREF(2);
         }
-        
-        bdd_enable_reorder();
-        
-        return newVar;
+
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = cube;
+        table[entry + offset__cache_c] = addop;
+        table[entry + offset__cache_res] = res;
+
+        return res;
     }
-    
-    int bdd_setvarnum(int num) {
-        int bdv;
-        int oldbddvarnum = bddvarnum;
 
-        if (num < 1 || num > MAXVAR) {
-            bdd_error(BDD_RANGE);
-            return bddfalse;
-        }
+    /* The BDD of the assignments where f reaches addthreshold */
+    int add_threshold_rec(int f) {
+        int[] table;
+        int entry;
+        int res;
 
-        if (num < bddvarnum)
-            return bdd_error(BDD_DECVNUM);
-        if (num == bddvarnum)
-            return 0;
+        if (ISADDTERM(f)) {
+            double v = ADDVALUE(f);
+            if (addop == ADDOP_STRICTTHRESHOLD)
+                return v > addthreshold ? 1 : 0;
+            return v >= addthreshold ? 1 : 0;
+        }
 
-        bdd_disable_reorder();
+        table = addcache.table;
+        entry = BddCache_lookupI(addcache, APPLYHASH(f, addthresholdnode, addop));
 
-        if (bddvarset == null) {
-            bddvarset = new int[num * 2];
-            bddlevel2var = new int[num + 1];
-            bddvar2level = new int[num + 1];
-        } else {
-            int[] bddvarset2 = new int[num * 2];
-            System.arraycopy(bddvarset, 0, bddvarset2, 0, bddvarset.length);
-            bddvarset = bddvarset2;
-            int[] bddlevel2var2 = new int[num + 1];
-            System.arraycopy(
-                bddlevel2var,
-                0,
-                bddlevel2var2,
-                0,
-                bddlevel2var.length);
-            bddlevel2var = bddlevel2var2;
-            int[] bddvar2level2 = new int[num + 1];
-            System.arraycopy(
-                bddvar2level,
-                0,
-                bddvar2level2,
-                0,
-                bddvar2level.length);
-            bddvar2level = bddvar2level2;
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == addthresholdnode &&
+            table[entry + offset__cache_c] == addop) {
+            counters.cacheHit[CACHE_ADD]++;
+            return table[entry + offset__cache_res];
         }
+        counters.cacheMiss[CACHE_ADD]++;
 
-        if (bddrefstack != null)
-            free(bddrefstack);
-        bddrefstack = new int[num * 2 + 1];
-        bddrefstacktop = 0;
+        PUSHREF(add_threshold_rec(LOW(f)));
+        PUSHREF(add_threshold_rec(HIGH(f)));
+        res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+        POPREF(2);
+
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = addthresholdnode;
+        table[entry + offset__cache_c] = addop;
+        table[entry + offset__cache_res] = res;
+
+        return res;
+    }
+
+    /* The 0/1 ADD of the BDD f */
+    int add_frombdd_rec(int f) {
+        int[] table;
+        int entry;
+        int res;
 
-        for (bdv = bddvarnum; bddvarnum < num; bddvarnum++) {
-            bddvarset[bddvarnum * 2] = PUSHREF(bdd_makenode(bddvarnum, 0, 1));
-            bddvarset[bddvarnum * 2 + 1] = bdd_makenode(bddvarnum, 1, 0);
-            POPREF(1);
+        if (f < 2)
+            return add_terminal(f);
 
-            if (bdderrorcond != 0) {
-                bddvarnum = bdv;
-                return -bdderrorcond;
-            }
+        table = addcache.table;
+        entry = BddCache_lookupI(addcache, APPLYHASH(f, 0, ADDOP_FROMBDD));
 
-            SETMAXREF(bddvarset[bddvarnum * 2]);
-            SETMAXREF(bddvarset[bddvarnum * 2 + 1]);
-            bddlevel2var[bddvarnum] = bddvarnum;
-            bddvar2level[bddvarnum] = bddvarnum;
+        if (table[entry + offset__cache_a] == f &&
+            table[entry + offset__cache_b] == 0 &&
+            table[entry + offset__cache_c] == ADDOP_FROMBDD) {
+            counters.cacheHit[CACHE_ADD]++;
+            return table[entry + offset__cache_res];
         }
+        counters.cacheMiss[CACHE_ADD]++;
 
-        SETLEVELANDMARK(0, num);
-        SETLEVELANDMARK(1, num);
-        bddvar2level[num] = num;
-        bddlevel2var[num] = num;
+        PUSHREF(add_frombdd_rec(LOW(f)));
+        PUSHREF(add_frombdd_rec(HIGH(f)));
+        res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+        POPREF(2);
 
-        bdd_pairs_resize(oldbddvarnum, bddvarnum);
-        bdd_operator_varresize();
+        table[entry + offset__cache_a] = f;
+        table[entry + offset__cache_b] = 0;
+        table[entry + offset__cache_c] = ADDOP_FROMBDD;
+        table[entry + offset__cache_res] = res;
 
-        bdd_enable_reorder();
+        return res;
+    }
 
-        return 0;
+    /*=== NODE TRAVERSAL ===================================================*/
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeRoot(net.sf.javabdd.BDD)
+     */
+    protected int nodeRoot(BDD r) {
+        /* Complemented references carry CMPL_MASK, which is NODE_COMPLEMENT,
+         * and LOW() and HIGH() pass it on to the children */
+        return ((bdd) r)._index;
     }
 
     /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#ithVar(int)
+     * @see net.sf.javabdd.BDDFactory#nodeLevel(int)
      */
-    public BDD ithVar(int var) {
-        return makeBDD(bdd_ithvar(var));
+    protected int nodeLevel(int n) {
+        return LEVEL(n);
     }
 
     /* (non-Javadoc)
-     * @see net.sf.javabdd.BDDFactory#nithVar(int)
+     * @see net.sf.javabdd.BDDFactory#nodeLow(int)
      */
-    public BDD nithVar(int var) {
-        return makeBDD(bdd_nithvar(var));
+    protected int nodeLow(int n) {
+        return LOW(n);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeHigh(int)
+     */
+    protected int nodeHigh(int n) {
+        return HIGH(n);
     }
 
     /* (non-Javadoc)
@@ -4952,6 +9903,22 @@ public class JFactory extends BDDFactory {
         bdd_save(out, x);
     }
 
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#load(java.nio.channels.ReadableByteChannel, int[])
+     */
+    public BDD load(ReadableByteChannel in, int[] translate) throws IOException {
+        int result = bdd_loadbinary(new BinaryReader(in), translate);
+        return makeBDD(result);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#save(java.nio.channels.WritableByteChannel, net.sf.javabdd.BDD)
+     */
+    public void save(WritableByteChannel out, BDD b) throws IOException {
+        int x = ((bdd) b)._index;
+        bdd_savebinary(new BinaryWriter(out), x);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#level2Var(int)
      */
@@ -5116,10 +10083,16 @@ public class JFactory extends BDDFactory {
     }
 
     int reorder_nodenum() {
+        if (reorderworkers != null) {
+            ReorderWorker w = (ReorderWorker) reorderworker.get();
+            return w.base + reorder_blocknodes(w.block);
+        }
         return bdd_getnodenum();
     }
 
     int bdd_getnodenum() {
+        if (bddconcurrent)
+            return bddnodesize - bddfreenum - concurrent_freenum();
         return bddnodesize - bddfreenum;
     }
 
@@ -5193,6 +10166,14 @@ public class JFactory extends BDDFactory {
             bdd_error(BDD_VARBLK);
             return;
         }
+        if (snapbase > 0) {
+            bdd_error(BDD_SNAPSHOT);
+            return;
+        }
+        if (diagramrefs > 0) {
+            bdd_error(BDD_DIAGRAM);
+            return;
+        }
 
         reorder_init();
 
@@ -5222,6 +10203,23 @@ public class JFactory extends BDDFactory {
         if ((level = bddvar2level[var]) >= bddvarnum - 1)
             return 0;
 
+        if (reorderworkers != null) {
+            ReorderWorker w = (ReorderWorker) reorderworker.get();
+            reorderlock.readLock().lock();
+            try {
+                reorder_swaplevel(w, var, level);
+            } finally {
+                reorderlock.readLock().unlock();
+            }
+        } else
+            reorder_swaplevel(null, var, level);
+
+        return 0;
+    }
+
+    void reorder_swaplevel(ReorderWorker w, int var, int level) {
+        int n;
+
         resizedInMakenode = false;
 
         if (imatrixDepends(iactmtx, var, bddlevel2var[level + 1])) {
@@ -5231,11 +10229,11 @@ public class JFactory extends BDDFactory {
             if (l.nodenum < (l.size) / 3
                 || l.nodenum >= (l.size * 3) / 2
                 && l.size < l.maxsize) {
-                reorder_swapResize(toBeProcessed, var);
-                reorder_localGbcResize(toBeProcessed, var);
+                reorder_swapResize(w, toBeProcessed, var);
+                reorder_localGbcResize(w, toBeProcessed, var);
             } else {
-                reorder_swap(toBeProcessed, var);
-                reorder_localGbc(var);
+                reorder_swap(w, toBeProcessed, var);
+                reorder_localGbc(w, var);
             }
         }
 
@@ -5249,13 +10247,17 @@ public class JFactory extends BDDFactory {
         bddvar2level[bddlevel2var[level]] = n;
 
         /* Update all rename pairs */
-        bdd_pairs_vardown(level);
+        if (w != null) {
+            synchronized (reorderworkers) {
+                bdd_pairs_vardown(level);
+            }
+        } else
+            bdd_pairs_vardown(level);
 
-        if (resizedInMakenode) {
+        /* Parallel blocks rehash once all of them are done */
+        if (resizedInMakenode && w == null) {
             reorder_rehashAll();
         }
-
-        return 0;
     }
 
     boolean imatrixDepends(imatrix mtx, int a, int b) {
@@ -5298,7 +10300,7 @@ public class JFactory extends BDDFactory {
         }
     }
 
-    void reorder_localGbc(int var0) {
+    void reorder_localGbc(ReorderWorker w, int var0) {
         int var1 = bddlevel2var[bddvar2level[var0] + 1];
         int vl1 = levels[var1].start;
         int size1 = levels[var1].size;
@@ -5316,14 +10318,12 @@ public class JFactory extends BDDFactory {
                     SETNEXT(r, HASH(hash));
                     SETHASH(hash, r);
                 } else {
-                    DECREF(LOW(r));
-                    DECREF(HIGH(r));
+                    reorder_decref(w, LOW(r));
+                    reorder_decref(w, HIGH(r));
 
                     SETLOW(r, INVALID_BDD);
-                    SETNEXT(r, bddfreepos);
-                    bddfreepos = r;
+                    reorder_free(w, r);
                     levels[var1].nodenum--;
-                    bddfreenum++;
                 }
 
                 r = next;
@@ -5380,7 +10380,7 @@ public class JFactory extends BDDFactory {
         return toBeProcessed;
     }
 
-    void reorder_swapResize(int toBeProcessed, int var0) {
+    void reorder_swapResize(ReorderWorker w, int toBeProcessed, int var0) {
         int var1 = bddlevel2var[bddvar2level[var0] + 1];
 
         while (toBeProcessed != 0) {
@@ -5403,8 +10403,8 @@ public class JFactory extends BDDFactory {
                 f10 = f11 = f1;
 
             /* Note: makenode does refcou. */
-            f0 = reorder_makenode(var0, f00, f10);
-            f1 = reorder_makenode(var0, f01, f11);
+            f0 = reorder_makenode(w, var0, f00, f10);
+            f1 = reorder_makenode(w, var0, f01, f11);
             //node = bddnodes[toBeProcessed]; /* Might change in makenode */
 
             /* We know that the refcou of the grandchilds of this node
@@ -5413,11 +10413,11 @@ public class JFactory extends BDDFactory {
             * possible for the node.low/high nodes to come alive again,
             * so deref. of the childs is delayed until the local GBC. */
 
-            DECREF(LOW(toBeProcessed));
-            DECREF(HIGH(toBeProcessed));
+            reorder_decref(w, LOW(toBeProcessed));
+            reorder_decref(w, HIGH(toBeProcessed));
 
             /* Update in-place */
-            SETVARr(toBeProcessed, var1);
+            reorder_setvar(w, toBeProcessed, var1);
             SETLOW(toBeProcessed, f0);
             SETHIGH(toBeProcessed, f1);
 
@@ -5433,7 +10433,7 @@ public class JFactory extends BDDFactory {
         return Math.min(a, b);
     }
 
-    void reorder_localGbcResize(int toBeProcessed, int var0) {
+    void reorder_localGbcResize(ReorderWorker w, int toBeProcessed, int var0) {
         int var1 = bddlevel2var[bddvar2level[var0] + 1];
         int vl1 = levels[var1].start;
         int size1 = levels[var1].size;
@@ -5451,14 +10451,12 @@ public class JFactory extends BDDFactory {
                     SETNEXT(r, toBeProcessed);
                     toBeProcessed = r;
                 } else {
-                    DECREF(LOW(r));
-                    DECREF(HIGH(r));
+                    reorder_decref(w, LOW(r));
+                    reorder_decref(w, HIGH(r));
 
                     SETLOW(r, INVALID_BDD);
-                    SETNEXT(r, bddfreepos);
-                    bddfreepos = r;
+                    reorder_free(w, r);
                     levels[var1].nodenum--;
-                    bddfreenum++;
                 }
 
                 r = next;
@@ -5488,7 +10486,7 @@ public class JFactory extends BDDFactory {
         }
     }
 
-    void reorder_swap(int toBeProcessed, int var0) {
+    void reorder_swap(ReorderWorker w, int toBeProcessed, int var0) {
         int var1 = bddlevel2var[bddvar2level[var0] + 1];
 
         while (toBeProcessed != 0) {
@@ -5511,8 +10509,8 @@ public class JFactory extends BDDFactory {
                 f10 = f11 = f1;
 
             /* Note: makenode does refcou. */
-            f0 = reorder_makenode(var0, f00, f10);
-            f1 = reorder_makenode(var0, f01, f11);
+            f0 = reorder_makenode(w, var0, f00, f10);
+            f1 = reorder_makenode(w, var0, f01, f11);
             //node = bddnodes[toBeProcessed]; /* Might change in makenode */
 
             /* We know that the refcou of the grandchilds of this node
@@ -5521,11 +10519,11 @@ public class JFactory extends BDDFactory {
             * possible for the node.low/high nodes to come alive again,
             * so deref. of the childs is delayed until the local GBC. */
 
-            DECREF(LOW(toBeProcessed));
-            DECREF(HIGH(toBeProcessed));
+            reorder_decref(w, LOW(toBeProcessed));
+            reorder_decref(w, HIGH(toBeProcessed));
 
             /* Update in-place */
-            SETVARr(toBeProcessed, var1);
+            reorder_setvar(w, toBeProcessed, var1);
             SETLOW(toBeProcessed, f0);
             SETHIGH(toBeProcessed, f1);
 
@@ -5546,7 +10544,7 @@ public class JFactory extends BDDFactory {
 
     boolean resizedInMakenode;
 
-    int reorder_makenode(int var, int low, int high) {
+    int reorder_makenode(ReorderWorker w, int var, int low, int high) {
         int hash;
         int res;
 
@@ -5558,10 +10556,14 @@ public class JFactory extends BDDFactory {
 
         /* check whether childs are equal */
         if (low == high) {
-            INCREF(low);
+            reorder_incref(w, low);
             return low;
         }
 
+        /* With complement edges the high edge is never complemented */
+        if (bddcomplement && high <= 0)
+            return NEG(reorder_makenode(w, var, NEG(low), NEG(high)));
+
         /* Try to find an existing node of this kind */
         hash = NODEHASH2(var, low, high);
         res = HASH(hash);
@@ -5570,7 +10572,7 @@ public class JFactory extends BDDFactory {
             if (LOW(res) == low && HIGH(res) == high) {
                 if (CACHESTATS)
                     cachestats.uniqueHit++;
-                INCREF(res);
+                reorder_incref(w, res);
                 return res;
             }
             res = NEXT(res);
@@ -5584,31 +10586,42 @@ public class JFactory extends BDDFactory {
             cachestats.uniqueMiss++;
 
         /* Any free nodes to use ? */
-        if (bddfreepos == 0) {
-            if (bdderrorcond != 0)
+        if (w != null) {
+            if (w.freepos == 0 && reorder_refill(w) < 0)
                 return 0;
 
-            /* Try to allocate more nodes - call noderesize without
-            * enabling rehashing.
-             * Note: if ever rehashing is allowed here, then remember to
-            * update local variable "hash" */
-            bdd_noderesize(false);
-            resizedInMakenode = true;
-
-            /* Panic if that is not possible */
+            res = w.freepos;
+            w.freepos = NEXT(res);
+            w.freenum--;
+            w.produced++;
+        } else {
             if (bddfreepos == 0) {
-                bdd_error(BDD_NODENUM);
-                bdderrorcond = Math.abs(BDD_NODENUM);
-                return 0;
+                if (bdderrorcond != 0)
+                    return 0;
+
+                /* Try to allocate more nodes - call noderesize without
+                * enabling rehashing.
+                 * Note: if ever rehashing is allowed here, then remember to
+                * update local variable "hash" */
+                bdd_noderesize(false);
+                resizedInMakenode = true;
+
+                /* Panic if that is not possible */
+                if (bddfreepos == 0) {
+                    bdd_error(BDD_NODENUM);
+                    bdderrorcond = Math.abs(BDD_NODENUM);
+                    return 0;
+                }
             }
+
+            res = bddfreepos;
+            bddfreepos = NEXT(bddfreepos);
+            bddproduced++;
+            bddfreenum--;
         }
 
         /* Build new node */
-        res = bddfreepos;
-        bddfreepos = NEXT(bddfreepos);
         levels[var].nodenum++;
-        bddproduced++;
-        bddfreenum--;
 
         SETVARr(res, var);
         SETLOW(res, low);
@@ -5621,16 +10634,23 @@ public class JFactory extends BDDFactory {
         /* Make sure it is reference counted */
         CLEARREF(res);
         INCREF(res);
-        INCREF(LOW(res));
-        INCREF(HIGH(res));
+        reorder_incref(w, LOW(res));
+        reorder_incref(w, HIGH(res));
 
         return res;
     }
 
+    boolean reordercompact; /* The compact layout was used before reordering */
+
     int reorder_init() {
         int n;
 
         reorder_handler(true, reorderstats);
+
+        /* Reordering works on the hash chains of the normal layout */
+        reordercompact = uniqueindex != null;
+        if (reordercompact)
+            bdd_relayout(false);
         
         levels = new levelData[bddvarnum];
 
@@ -5757,6 +10777,13 @@ public class JFactory extends BDDFactory {
         int n;
 
         for (n = 2, extrootsize = 0; n < bddnodesize; n++) {
+            /* Free nodes hold the epoch they were freed in, which does not
+             * matter any more as reordering resets the caches */
+            if (LOW(n) == INVALID_BDD) {
+                SETNODE(n, offset__refcou_and_level, 0);
+                continue;
+            }
+
             /* This is where we go from .level to .var!
             * - Do NOT use the LEVEL macro here. */
             SETLEVELANDMARK(n, bddlevel2var[LEVELANDMARK(n)]);
@@ -5816,6 +10843,7 @@ public class JFactory extends BDDFactory {
     }
 
     void addref_rec(int r, boolean[] dep) {
+        r &= refmask;
         if (r < 2)
             return;
 
@@ -5897,15 +10925,25 @@ public class JFactory extends BDDFactory {
             else
                 CLEARREF(n);
 
+            if (LOW(n) == INVALID_BDD) {
+                SETNODE(n, offset__refcou_and_level, 0);
+                continue;
+            }
+
             /* This is where we go from .var to .level again!
             * - Do NOT use the LEVEL macro here. */
             SETLEVELANDMARK(n, bddvar2level[LEVELANDMARK(n)]);
         }
 
+        /* Nodes were freed and reused while reordering */
+        bdd_operator_reset();
+
         free(extroots);
         free(levels);
         imatrixDelete(iactmtx);
         bdd_gbc();
+        if (reordercompact)
+            bdd_relayout(true);
         
         reorder_handler(false, reorderstats);
     }
@@ -5922,6 +10960,266 @@ public class JFactory extends BDDFactory {
         free(mtx);
     }
 
+    /*=== PARALLEL REORDERING ==============================================*/
+
+    /**
+     * <p>Sets the number of threads used for reordering.  Sibling blocks in
+     * the variable block tree occupy disjoint ranges of levels, so once their
+     * order among each other has been decided, the blocks nested inside each
+     * of them can be reordered independently.  With more than one thread,
+     * these blocks are reordered concurrently, each swapping only the levels
+     * in its own range.  Every block steers its sifting by the number of nodes
+     * in its own levels, so the resulting order does not depend on how the
+     * threads are scheduled.  A value of one (the default) reorders
+     * sequentially.</p>
+     * 
+     * <p>Only nested variable blocks can be reordered in parallel; the blocks
+     * of a single level of the tree are still sifted one at a time, and the
+     * candidate positions of a sifted block are tried one after the other.
+     * In particular, REORDER_SIFT, REORDER_SIFTITE and the other methods get
+     * no speedup on a flat order, one without variable blocks or with all
+     * variables in a single block: all of its variables are siblings, so
+     * they are sifted sequentially whatever the number of threads.  Use
+     * {@link #addVarBlock(int, int, boolean)} to split the order into
+     * nested blocks first.</p>
+     * 
+     * @param n  number of threads
+     * @return  old number of threads
+     * @see #addVarBlock(int, int, boolean)
+     */
+    public int setReorderThreads(int n) {
+        if (n < 1)
+            return bdd_error(BDD_RANGE);
+        int old = reorderthreads;
+        if (reorderpool != null) {
+            reorderpool.shutdown();
+            reorderpool = null;
+        }
+        reorderthreads = n;
+        if (n > 1) {
+            reorderstripes = new Object[REORDER_STRIPES];
+            for (int i = 0; i < REORDER_STRIPES; ++i)
+                reorderstripes[i] = new Object();
+            reorderpool = Executors.newFixedThreadPool(n, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JFactory reorder worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return old;
+    }
+
+    static final int REORDER_STRIPES = 256;
+
+    /**
+     * Per-thread state of a block that is reordered in parallel.
+     */
+    static class ReorderWorker {
+        BddTree block; /* Block being reordered */
+        int base; /* Nodes outside the block when reordering started */
+        int freepos; /* Private free list */
+        int freenum;
+        int produced;
+        boolean resized; /* Node table grew while swapping */
+    }
+
+    /**
+     * Reorders the nested blocks of the siblings starting at <tt>first</tt>
+     * concurrently.  Returns false without doing anything if fewer than two
+     * of them have nested blocks.
+     */
+    boolean reorder_parallel(BddTree first, final int method) {
+        BddTree dis;
+        BddTask[] tasks;
+        RuntimeException ex = null;
+        boolean resized = false, interrupted = false;
+        int n, num, used;
+
+        for (dis = first, num = 0; dis != null; dis = dis.next)
+            if (dis.nextlevel != null)
+                num++;
+        if (num < 2)
+            return false;
+
+        tasks = new BddTask[num];
+        reorderworkers = new ReorderWorker[num];
+        reorderworker = new BddThreadSlot();
+        reorderlock = new ReentrantReadWriteLock();
+        used = bdd_getnodenum();
+
+        for (dis = first, num = 0; dis != null; dis = dis.next) {
+            if (dis.nextlevel == null) {
+                /* Nothing to reorder, only the sequence is updated */
+                reorder_block(dis, method);
+                continue;
+            }
+
+            final ReorderWorker w = new ReorderWorker();
+            w.block = dis;
+            w.base = used - reorder_blocknodes(dis);
+            reorderworkers[num] = w;
+            tasks[num] = new BddTask() {
+                public Object call() {
+                    reorderworker.set(w);
+                    try {
+                        reorder_block(w.block, method);
+                    } finally {
+                        reorderworker.set(null);
+                    }
+                    return null;
+                }
+            };
+            reorderpool.execute(tasks[num++].future);
+        }
+
+        /* Wait for all blocks, even if one of them failed.  Blocks no pool
+         * thread has picked up yet are run by the calling thread. */
+        for (n = 0; n < num; n++) {
+            try {
+                tasks[n].join();
+            } catch (InterruptedException x) {
+                interrupted = true;
+                n--;
+            } catch (ExecutionException x) {
+                Throwable c = x.getCause();
+                if (c instanceof Error)
+                    throw (Error) c;
+                if (ex == null)
+                    ex = (c instanceof RuntimeException)
+                        ? (RuntimeException) c
+                        : new BDDException(String.valueOf(c));
+            }
+        }
+
+        /* Give the private free lists back */
+        for (n = 0; n < num; n++) {
+            ReorderWorker w = reorderworkers[n];
+            while (w.freepos != 0) {
+                int next = NEXT(w.freepos);
+                SETNEXT(w.freepos, bddfreepos);
+                bddfreepos = w.freepos;
+                w.freepos = next;
+            }
+            bddfreenum += w.freenum;
+            bddproduced += w.produced;
+            resized |= w.resized;
+        }
+        reorderworkers = null;
+        reorderworker = null;
+        reorderlock = null;
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (ex != null)
+            throw ex;
+        if (resized)
+            reorder_rehashAll();
+        return true;
+    }
+
+    int reorder_blocknodes(BddTree t) {
+        int v, num = 0;
+
+        for (v = t.firstVar; v <= t.lastVar; v++)
+            num += levels[v].nodenum;
+        return num;
+    }
+
+    /* Nodes below a block may be shared with the blocks below it, so their
+     * reference counts (which live in the same word as the variable) are only
+     * changed while holding a lock when reordering in parallel. */
+
+    void reorder_incref(ReorderWorker w, int n) {
+        if (w == null)
+            INCREF(n);
+        else {
+            synchronized (reorderstripes[n & (REORDER_STRIPES - 1)]) {
+                INCREF(n);
+            }
+        }
+    }
+
+    void reorder_decref(ReorderWorker w, int n) {
+        if (w == null)
+            DECREF(n);
+        else {
+            synchronized (reorderstripes[n & (REORDER_STRIPES - 1)]) {
+                DECREF(n);
+            }
+        }
+    }
+
+    void reorder_setvar(ReorderWorker w, int n, int var) {
+        if (w == null)
+            SETVARr(n, var);
+        else {
+            synchronized (reorderstripes[n & (REORDER_STRIPES - 1)]) {
+                SETVARr(n, var);
+            }
+        }
+    }
+
+    void reorder_free(ReorderWorker w, int n) {
+        if (w == null) {
+            SETNEXT(n, bddfreepos);
+            bddfreepos = n;
+            bddfreenum++;
+        } else {
+            SETNEXT(n, w.freepos);
+            w.freepos = n;
+            w.freenum++;
+        }
+    }
+
+    /**
+     * Moves a chunk of the shared free list to the private free list of a
+     * block, growing the node table if the shared list is empty.
+     */
+    int reorder_refill(ReorderWorker w) {
+        for (;;) {
+            synchronized (reorderworkers) {
+                if (bddfreepos != 0) {
+                    int first = bddfreepos, last = first, num = 1;
+                    while (num < WORKER_CHUNK && NEXT(last) != 0) {
+                        last = NEXT(last);
+                        num++;
+                    }
+                    bddfreepos = NEXT(last);
+                    bddfreenum -= num;
+                    SETNEXT(last, 0);
+                    w.freepos = first;
+                    w.freenum += num;
+                    return 0;
+                }
+            }
+
+            if (bdderrorcond != 0)
+                return -1;
+
+            /* Wait until the other blocks have finished their current swap.
+             * The table is not rehashed here, as the other blocks keep using
+             * their level tables; this is done when all blocks are done. */
+            reorderlock.readLock().unlock();
+            reorderlock.writeLock().lock();
+            try {
+                if (bddfreepos == 0) {
+                    bdd_noderesize(false);
+                    w.resized = true;
+
+                    if (bddfreepos == 0) {
+                        bdderrorcond = Math.abs(BDD_NODENUM);
+                        bdd_error(BDD_NODENUM);
+                    }
+                }
+            } finally {
+                reorderlock.readLock().lock();
+                reorderlock.writeLock().unlock();
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#addVarBlock(net.sf.javabdd.BDD, boolean)
      */
@@ -5994,6 +11292,9 @@ public class JFactory extends BDDFactory {
      * @see net.sf.javabdd.BDDFactory#getCacheSize()
      */
     public int getCacheSize() {
+        /* With a cache budget, the caches have sizes of their own */
+        if (applycache != null)
+            return applycache.tablesize;
         return cachesize;
     }
     
@@ -6028,6 +11329,13 @@ public class JFactory extends BDDFactory {
         return p;
     }
 
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#makeQuantSet(net.sf.javabdd.BDD)
+     */
+    public BDDQuantSet makeQuantSet(BDD var) {
+        return new bddQuantSet(var.id());
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#swapVar(int, int)
      */
@@ -6041,6 +11349,10 @@ public class JFactory extends BDDFactory {
         /* Do not swap when variable-blocks are used */
         if (vartree != null)
             return bdd_error(BDD_VARBLK);
+        if (snapbase > 0)
+            return bdd_error(BDD_SNAPSHOT);
+        if (diagramrefs > 0)
+            return bdd_error(BDD_DIAGRAM);
 
         /* Don't bother swapping x with x */
         if (v1 == v2)
@@ -6091,20 +11403,27 @@ public class JFactory extends BDDFactory {
                 // TODO: labelling of vars
                 out.print(right(bddlevel2var[LEVEL(n)], 3));
 
-                out.print(": " + right(LOW(n), 3));
-                out.println(" " + right(HIGH(n), 3));
+                out.print(": " + right(REFSTRING(LOW(n)), 3));
+                out.println(" " + right(REFSTRING(HIGH(n)), 3));
             }
         }
     }
 
+    /* A reference as printed, with complemented references as ~node */
+    String REFSTRING(int r) {
+        if (bddcomplement && r < 0)
+            return "~" + (r & NODE_MASK);
+        return Integer.toString(r);
+    }
+
     void bdd_fprinttable(PrintStream out, int r) {
         int n;
 
-        out.println("ROOT: " + r);
-        if (r < 2)
+        out.println("ROOT: " + REFSTRING(r));
+        if (ISCONST(r))
             return;
 
-        bdd_mark(r);
+        bdd_markcount(r, new int[1]);
 
         for (n = 0; n < bddnodesize; n++) {
             if (MARKED(n)) {
@@ -6114,8 +11433,8 @@ public class JFactory extends BDDFactory {
                 // TODO: labelling of vars
                 out.print(right(bddlevel2var[LEVEL(n)], 3));
 
-                out.print(": " + right(LOW(n), 3));
-                out.println(" " + right(HIGH(n), 3));
+                out.print(": " + right(REFSTRING(LOW(n)), 3));
+                out.println(" " + right(REFSTRING(HIGH(n)), 3));
             }
         }
     }
@@ -6189,12 +11508,17 @@ public class JFactory extends BDDFactory {
             low = Integer.parseInt(readNext(ifile));
             high = Integer.parseInt(readNext(ifile));
 
+            if (low < 0 || high < 0 || var < 0)
+                return bdd_error(BDD_FORMAT);
+
+            /* Loaded nodes may be complemented references, which are
+             * negative too */
             if (low >= 2)
                 low = loadhash_get(low);
             if (high >= 2)
                 high = loadhash_get(high);
 
-            if (low < 0 || high < 0 || var < 0)
+            if (low == -1 || high == -1)
                 return bdd_error(BDD_FORMAT);
 
             root = bdd_addref(bdd_ite(bdd_ithvar(var), high, low));
@@ -6230,22 +11554,32 @@ public class JFactory extends BDDFactory {
 
     void bdd_save(BufferedWriter out, int r) throws IOException {
         int[] n = new int[1];
+        SaveMap ids = null;
 
-        if (r < 2) {
+        if (ISCONST(r)) {
             out.write("0 0 " + r + "\n");
             return;
         }
 
-        bdd_markcount(r, n);
-        bdd_unmark(r);
+        if (bddcomplement) {
+            ids = new SaveMap(2 * bdd_nodecount(r));
+            n[0] = bdd_savecount(r, ids);
+        } else {
+            bdd_markcount(r, n);
+            bdd_unmark(r);
+        }
         out.write(n[0] + " " + bddvarnum + "\n");
 
         for (int x = 0; x < bddvarnum; x++)
             out.write(bddvar2level[x] + " ");
         out.write("\n");
 
-        bdd_save_rec(out, r);
-        bdd_unmark(r);
+        if (ids == null) {
+            bdd_save_rec(out, r);
+            bdd_unmark(r);
+        } else {
+            bdd_save_rec(out, ids, new int[] { 2 }, r);
+        }
 
         out.flush();
         return;
@@ -6271,6 +11605,185 @@ public class JFactory extends BDDFactory {
         return;
     }
 
+    /* The files hold BDDs without complement edges, so with complement
+     * edges, a node that is reached both regular and complemented is saved
+     * twice.  The saved nodes are numbered in the order they are written. */
+    int bdd_save_rec(BufferedWriter out, SaveMap ids, int[] next, int root) throws IOException {
+
+        if (ISCONST(root))
+            return root;
+
+        int v = ids.get(root);
+        if (v > 1)
+            return v;
+
+        int lo = bdd_save_rec(out, ids, next, LOW(root));
+        int hi = bdd_save_rec(out, ids, next, HIGH(root));
+
+        v = next[0]++;
+        ids.put(root, v);
+        out.write(v + " ");
+        out.write(bddlevel2var[LEVEL(root)] + " ");
+        out.write(lo + " ");
+        out.write(hi + "\n");
+
+        return v;
+    }
+
+    /* Number of nodes saved for r with complement edges.  Each of them is
+     * entered into seen with the number 1. */
+    int bdd_savecount(int r, SaveMap seen) {
+        if (ISCONST(r) || seen.get(r) != 0)
+            return 0;
+        seen.put(r, 1);
+        return 1 + bdd_savecount(LOW(r), seen) + bdd_savecount(HIGH(r), seen);
+    }
+
+    /* Maps the references saved so far to their number in the file.  An
+     * open addressing table sized to the BDD being saved rather than to the
+     * node table; constants are never entered, so 0 marks an empty slot. */
+    static class SaveMap {
+        int[] keys;
+        int[] values;
+        int shift;
+
+        SaveMap(int num) {
+            int bits = 2;
+            while (bits < 30 && (1L << bits) < 2L * num)
+                bits++;
+            keys = new int[1 << bits];
+            values = new int[1 << bits];
+            shift = 32 - bits;
+        }
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int h = (key * 0x9E3779B9) >>> shift; ; h = (h + 1) & mask) {
+                if (keys[h] == key)
+                    return values[h];
+                if (keys[h] == 0)
+                    return 0;
+            }
+        }
+
+        void put(int key, int value) {
+            int mask = keys.length - 1;
+            int h = (key * 0x9E3779B9) >>> shift;
+            while (keys[h] != key && keys[h] != 0)
+                h = (h + 1) & mask;
+            keys[h] = key;
+            values[h] = value;
+        }
+    }
+
+    int bdd_loadbinary(BinaryReader r, int[] translate) throws IOException {
+        int n, vnum, nodenum, num;
+        int[] nodes;
+
+        nodenum = r.readHeader();
+        vnum = r.readInt();
+
+        // Check for constant true / false
+        if (nodenum == 0 && vnum == 0)
+            return r.readInt() == 0 ? 0 : 1;
+
+        if (nodenum < 0 || nodenum > INT_MAX - 2 || vnum < 0)
+            return bdd_error(BDD_FORMAT);
+
+        // Not actually used.
+        for (n = 0; n < vnum; n++)
+            r.readInt();
+
+        if (vnum > bddvarnum)
+            bdd_setvarnum(vnum);
+
+        /* Node numbers are sequential, so a plain array replaces the load
+         * hash table of the text format.  It grows as the nodes are read,
+         * as the node count in the header may be bogus. */
+        num = nodenum + 2;
+        nodes = new int[Math.min(num, 1024)];
+        nodes[0] = 0;
+        nodes[1] = 1;
+        try {
+            for (n = 2; n < num; n++) {
+                if (n == nodes.length) {
+                    int[] t = new int[(int) Math.min(num, 2L * n)];
+                    System.arraycopy(nodes, 0, t, 0, n);
+                    nodes = t;
+                }
+                int var = r.readInt();
+                if (translate != null) {
+                    if (var < 0 || var >= translate.length)
+                        return bdd_error(BDD_FORMAT);
+                    var = translate[var];
+                }
+                int low = nodes[r.readRef(n)];
+                int high = nodes[r.readRef(n)];
+
+                if (var < 0 || var >= bddvarnum)
+                    return bdd_error(BDD_FORMAT);
+
+                nodes[n] = bdd_addref(bdd_ite(bdd_ithvar(var), high, low));
+            }
+            return nodes[num - 1];
+        } finally {
+            for (n = 2; n < nodes.length; n++)
+                if (nodes[n] != 0)
+                    bdd_delref(nodes[n]);
+        }
+    }
+
+    void bdd_savebinary(BinaryWriter w, int r) throws IOException {
+        int n;
+
+        if (ISCONST(r)) {
+            w.writeHeader(0, 0);
+            w.writeInt(r);
+            w.flush();
+            return;
+        }
+
+        /* Maps saved nodes to their number in the file */
+        SaveMap ids;
+        n = bdd_nodecount(r);
+        if (bddcomplement) {
+            ids = new SaveMap(2 * n);
+            n = bdd_savecount(r, ids);
+        } else {
+            ids = new SaveMap(n);
+        }
+        w.writeHeader(n, bddvarnum);
+
+        for (int x = 0; x < bddvarnum; x++)
+            w.writeInt(bddvar2level[x]);
+
+        bdd_savebinary_rec(w, ids, new int[] { 2 }, r);
+
+        w.flush();
+        return;
+    }
+
+    int bdd_savebinary_rec(BinaryWriter w, SaveMap ids, int[] next, int root) throws IOException {
+
+        if (ISCONST(root))
+            return root;
+
+        int v = ids.get(root);
+        if (v > 1)
+            return v;
+
+        int lo = bdd_savebinary_rec(w, ids, next, LOW(root));
+        int hi = bdd_savebinary_rec(w, ids, next, HIGH(root));
+
+        v = next[0]++;
+        ids.put(root, v);
+        w.writeInt(bddlevel2var[LEVEL(root)]);
+        w.writeRef(v, lo);
+        w.writeRef(v, hi);
+
+        return v;
+    }
+
     static String right(int x, int w) {
         return right(Integer.toString(x), w);
     }
@@ -6484,7 +11997,7 @@ public class JFactory extends BDDFactory {
     }
 
     void bdd_fprintstat(PrintStream out) {
-        CacheStats s = cachestats;
+        CacheStats s = getCacheStats();
         out.print(s.toString());
     }
     
@@ -6508,7 +12021,7 @@ public class JFactory extends BDDFactory {
         validate(k, -1);
     }
     void validate(int k, int lastLevel) {
-        if (k < 2) return;
+        if ((k & refmask) < 2) return;
         int lev = LEVEL(k);
         //System.out.println("Level("+k+") = "+lev);
         if (lev <= lastLevel)
@@ -6693,17 +12206,23 @@ public class JFactory extends BDDFactory {
             INSTANCE.itecache = this.itecache.copy();
         if (quantcache != null)
             INSTANCE.quantcache = this.quantcache.copy();
-        INSTANCE.appexcache = this.appexcache.copy();
+        if (appexcache != null)
+            INSTANCE.appexcache = this.appexcache.copy();
         if (replacecache != null)
             INSTANCE.replacecache = this.replacecache.copy();
         if (misccache != null)
             INSTANCE.misccache = this.misccache.copy();
         if (countcache != null)
             INSTANCE.countcache = this.countcache.copy();
+        if (zddcache != null)
+            INSTANCE.zddcache = this.zddcache.copy();
+        if (addcache != null)
+            INSTANCE.addcache = this.addcache.copy();
         // TODO: potential difference here (!)
         INSTANCE.rng = new Random();
         INSTANCE.verbose = this.verbose;
         INSTANCE.cachestats.copyFrom(this.cachestats);
+        INSTANCE.counters.add(this.counters);
         
         INSTANCE.bddrunning = this.bddrunning;
         INSTANCE.bdderrorcond = this.bdderrorcond;
@@ -6714,6 +12233,7 @@ public class JFactory extends BDDFactory {
         INSTANCE.bddfreenum = this.bddfreenum;
         INSTANCE.bddproduced = this.bddproduced;
         INSTANCE.bddvarnum = this.bddvarnum;
+        INSTANCE.quantvarset = new int[this.bddvarnum];
 
         INSTANCE.gbcollectnum = this.gbcollectnum;
         INSTANCE.cachesize = this.cachesize;
@@ -6723,8 +12243,38 @@ public class JFactory extends BDDFactory {
         INSTANCE.bddrefstacktop = this.bddrefstacktop;
         INSTANCE.bddresized = this.bddresized;
         INSTANCE.minfreenodes = this.minfreenodes;
-        INSTANCE.bddnodes = new int[this.bddnodes.length];
-        System.arraycopy(this.bddnodes, 0, INSTANCE.bddnodes, 0, this.bddnodes.length);
+        if (this.nodepages != null || (long) bddnodesize * nodestride > MAXARRAYSIZE)
+            INSTANCE.nodepages = bdd_nodepages(bddnodesize);
+        else
+            INSTANCE.bddnodes = bdd_nodearray();
+        INSTANCE.nodestride = this.nodestride;
+        INSTANCE.nextoffset = this.nextoffset;
+        if (this.uniqueindex != null) {
+            INSTANCE.uniqueindex = new int[this.uniqueindex.length];
+            System.arraycopy(this.uniqueindex, 0, INSTANCE.uniqueindex, 0, this.uniqueindex.length);
+        }
+        if (this.uniquetable != null) {
+            /* The clone starts out in sequential mode */
+            for (int n = 0; n < this.bddnodesize; n++)
+                INSTANCE.SETNODE(n, offset__hash, this.uniquetable.get(n));
+        }
+        if (this.nodebuffers != null)
+            INSTANCE.setOffHeap(true);
+        if (this.gcyoung != null)
+            INSTANCE.setGenerational(true);
+        INSTANCE.bddcomplement = this.bddcomplement;
+        INSTANCE.refmask = this.refmask;
+        INSTANCE.nodereused = new int[this.nodereused.length];
+        System.arraycopy(this.nodereused, 0, INSTANCE.nodereused, 0, this.nodereused.length);
+        INSTANCE.cacheepoch = this.cacheepoch;
+        INSTANCE.compactslack = this.compactslack;
+        if (this.trackedbdds != null)
+            INSTANCE.setTrackBDDs(true);
+        INSTANCE.snapbase = this.snapbase;
+        if (this.snaproots != null) {
+            INSTANCE.snaproots = new int[this.snaproots.length];
+            System.arraycopy(this.snaproots, 0, INSTANCE.snaproots, 0, this.snaproots.length);
+        }
         INSTANCE.bddrefstack = new int[this.bddrefstack.length];
         System.arraycopy(this.bddrefstack, 0, INSTANCE.bddrefstack, 0, this.bddrefstack.length);
         INSTANCE.bddvar2level = new int[this.bddvar2level.length];
@@ -6734,9 +12284,11 @@ public class JFactory extends BDDFactory {
         INSTANCE.bddvarset = new int[this.bddvarset.length];
         System.arraycopy(this.bddvarset, 0, INSTANCE.bddvarset, 0, this.bddvarset.length);
         
-        INSTANCE.domain = new BDDDomain[this.domain.length];
-        for (int i = 0; i < INSTANCE.domain.length; ++i) {
-            INSTANCE.domain[i] = INSTANCE.createDomain(i, this.domain[i].realsize);
+        if (this.domain != null) {
+            INSTANCE.domain = new BDDDomain[this.domain.length];
+            for (int i = 0; i < INSTANCE.domain.length; ++i) {
+                INSTANCE.domain[i] = INSTANCE.createDomain(i, this.domain[i].realsize);
+            }
         }
         return INSTANCE;
     }
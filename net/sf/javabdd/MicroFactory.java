@@ -5020,6 +5020,209 @@ public class MicroFactory extends BDDFactory {
         return makeBDD(bdd_nithvar(var));
     }
 
+    /*=== INTEGER HANDLES ==================================================*/
+
+    /* Handles are node numbers. */
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handle(net.sf.javabdd.BDD)
+     */
+    public int handle(BDD b) {
+        return bdd_addref(((bdd) b)._index);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleToBDD(int)
+     */
+    public BDD handleToBDD(int h) {
+        CHECKa(h, bddfalse);
+        return makeBDD(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleAddRef(int)
+     */
+    public int handleAddRef(int h) {
+        return bdd_addref(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleDelRef(int)
+     */
+    public void handleDelRef(int h) {
+        bdd_delref(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleZero()
+     */
+    public int handleZero() {
+        return bddfalse;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleOne()
+     */
+    public int handleOne() {
+        return bddtrue;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIthVar(int)
+     */
+    public int handleIthVar(int var) {
+        return bdd_ithvar(var);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNithVar(int)
+     */
+    public int handleNithVar(int var) {
+        return bdd_nithvar(var);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIsZero(int)
+     */
+    public boolean handleIsZero(int h) {
+        return h == bddfalse;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIsOne(int)
+     */
+    public boolean handleIsOne(int h) {
+        return h == bddtrue;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleEquals(int, int)
+     */
+    public boolean handleEquals(int a, int b) {
+        return a == b;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleVar(int)
+     */
+    public int handleVar(int h) {
+        return bdd_var(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleLow(int)
+     */
+    public int handleLow(int h) {
+        return bdd_addref(bdd_low(h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleHigh(int)
+     */
+    public int handleHigh(int h) {
+        return bdd_addref(bdd_high(h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNot(int)
+     */
+    public int handleNot(int h) {
+        return bdd_addref(bdd_not(h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleApply(int, int, net.sf.javabdd.BDDFactory.BDDOp)
+     */
+    public int handleApply(int a, int b, BDDOp op) {
+        return bdd_addref(bdd_apply(a, b, op.id));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleIte(int, int, int)
+     */
+    public int handleIte(int f, int g, int h) {
+        return bdd_addref(bdd_ite(f, g, h));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleExist(int, int)
+     */
+    public int handleExist(int h, int varset) {
+        return bdd_addref(bdd_exist(h, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleForAll(int, int)
+     */
+    public int handleForAll(int h, int varset) {
+        return bdd_addref(bdd_forall(h, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleApplyEx(int, int, net.sf.javabdd.BDDFactory.BDDOp, int)
+     */
+    public int handleApplyEx(int a, int b, BDDOp op, int varset) {
+        return bdd_addref(bdd_appex(a, b, op.id, varset));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleRelprod(int, int, int)
+     */
+    public int handleRelprod(int a, int b, int varset) {
+        return handleApplyEx(a, b, and, varset);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleReplace(int, net.sf.javabdd.BDDPairing)
+     */
+    public int handleReplace(int h, BDDPairing pair) {
+        return bdd_addref(bdd_replace(h, (bddPair) pair));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleSatCount(int)
+     */
+    public double handleSatCount(int h) {
+        return bdd_satcount(h);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#handleNodeCount(int)
+     */
+    public int handleNodeCount(int h) {
+        return bdd_nodecount(h);
+    }
+
+    /*=== NODE TRAVERSAL ===================================================*/
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeRoot(net.sf.javabdd.BDD)
+     */
+    protected int nodeRoot(BDD r) {
+        return ((bdd) r)._index;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeLevel(int)
+     */
+    protected int nodeLevel(int n) {
+        return LEVEL(n);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeLow(int)
+     */
+    protected int nodeLow(int n) {
+        return LOW(n);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeHigh(int)
+     */
+    protected int nodeHigh(int n) {
+        return HIGH(n);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#printAll()
      */
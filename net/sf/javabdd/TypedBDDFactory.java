@@ -14,6 +14,8 @@ import java.util.TreeSet;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.math.BigInteger;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * <p>This BDD factory keeps track of what domains each BDD uses, and complains
@@ -229,6 +231,23 @@ public class TypedBDDFactory extends BDDFactory {
         factory.save(filename, bdd1.bdd);
     }
 
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#load(java.nio.channels.ReadableByteChannel, int[])
+     */
+    public BDD load(ReadableByteChannel in, int[] translate) throws IOException {
+        // TODO domains?
+        Set d = makeSet();
+        return new TypedBDD(factory.load(in, translate), d);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#save(java.nio.channels.WritableByteChannel, net.sf.javabdd.BDD)
+     */
+    public void save(WritableByteChannel out, BDD var) throws IOException {
+        TypedBDD bdd1 = (TypedBDD) var;
+        factory.save(out, bdd1.bdd);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#level2Var(int)
      */
@@ -0,0 +1,227 @@
+// ZDD.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * <p>A zero-suppressed decision diagram, which represents a family of sets
+ * of variables.</p>
+ *
+ * <p>As with BDDs, operations return new objects and leave their operands
+ * alone.  A ZDD should be freed when it is no longer used, since the BDD
+ * factory cannot reorder while there are live ZDDs.</p>
+ *
+ * <p>Use a {@link ZDDFactory} to create ZDDs.</p>
+ *
+ * @version $Id$
+ */
+public class ZDD {
+
+    protected final ZDDFactory factory;
+    protected int _index;
+
+    /**
+     * <p>Create a ZDD for the given root, which must already carry a
+     * reference for this object.</p>
+     */
+    protected ZDD(ZDDFactory factory, int index) {
+        this.factory = factory;
+        this._index = index;
+    }
+
+    /**
+     * <p>Returns the factory of this ZDD.</p>
+     *
+     * @return  ZDD factory
+     */
+    public ZDDFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * <p>Returns true if this is the empty family.</p>
+     *
+     * @return  true if this is the empty family
+     */
+    public boolean isEmpty() {
+        return _index == 0;
+    }
+
+    /**
+     * <p>Returns true if this family holds only the empty set.</p>
+     *
+     * @return  true if this is the family {{}}
+     */
+    public boolean isBase() {
+        return _index == 1;
+    }
+
+    /**
+     * <p>Returns the union of this family and that one.</p>
+     *
+     * @param that  ZDD of the same factory
+     * @return  the sets that are in this family or in that one
+     */
+    public ZDD union(ZDD that) {
+        return factory.apply(JFactory.ZDDOP_UNION, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the intersection of this family and that one.</p>
+     *
+     * @param that  ZDD of the same factory
+     * @return  the sets that are in both families
+     */
+    public ZDD intersect(ZDD that) {
+        return factory.apply(JFactory.ZDDOP_INTERSECT, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the difference of this family and that one.</p>
+     *
+     * @param that  ZDD of the same factory
+     * @return  the sets of this family that are not in that one
+     */
+    public ZDD diff(ZDD that) {
+        return factory.apply(JFactory.ZDDOP_DIFF, _index, that._index);
+    }
+
+    /**
+     * <p>Returns the join of this family and that one, the family of all
+     * unions of a set of this family with a set of that one.</p>
+     *
+     * @param that  ZDD of the same factory
+     * @return  the family {p | q : p in this, q in that}
+     */
+    public ZDD join(ZDD that) {
+        return factory.apply(JFactory.ZDDOP_JOIN, _index, that._index);
+    }
+
+    /**
+     * <p>Toggles the given variable in every set of this family: it is
+     * removed from the sets that have it and added to the others.</p>
+     *
+     * @param var  variable
+     * @return  the family with var toggled
+     */
+    public ZDD change(int var) {
+        return factory.apply(JFactory.ZDDOP_CHANGE, _index, var);
+    }
+
+    /**
+     * <p>Returns the sets of this family that contain the given variable,
+     * with the variable removed.</p>
+     *
+     * @param var  variable
+     * @return  the family {s - {var} | s in this, var in s}
+     */
+    public ZDD onset(int var) {
+        return factory.apply(JFactory.ZDDOP_ONSET, _index, var);
+    }
+
+    /**
+     * <p>Returns the sets of this family that do not contain the given
+     * variable.</p>
+     *
+     * @param var  variable
+     * @return  the family {s | s in this, var not in s}
+     */
+    public ZDD offset(int var) {
+        return factory.apply(JFactory.ZDDOP_OFFSET, _index, var);
+    }
+
+    /**
+     * <p>Converts this ZDD to a BDD whose satisfying assignments are the
+     * sets of this family, over all variables of the factory.</p>
+     *
+     * @return  BDD of the BDD factory of the ZDD factory
+     */
+    public BDD toBDD() {
+        return factory.factory.zdd_tobdd(_index);
+    }
+
+    /**
+     * <p>Returns the number of sets in this family.</p>
+     *
+     * @return  number of sets
+     */
+    public double count() {
+        return factory.factory.zdd_count(_index);
+    }
+
+    /**
+     * <p>Returns the number of nodes of this ZDD, not counting the
+     * terminals.</p>
+     *
+     * @return  number of nodes
+     */
+    public int nodeCount() {
+        return factory.factory.diagram_nodecount(_index);
+    }
+
+    /**
+     * <p>Returns a copy of this ZDD.</p>
+     *
+     * @return  copy of this ZDD
+     */
+    public ZDD id() {
+        return factory.makeZDD(factory.factory.diagram_addref(_index));
+    }
+
+    /**
+     * <p>Frees this ZDD.  It must not be used afterwards.</p>
+     */
+    public void free() {
+        factory.factory.diagram_delref(_index);
+        _index = -1;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof ZDD))
+            return false;
+        ZDD that = (ZDD) o;
+        return factory == that.factory && _index == that._index;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return _index;
+    }
+
+    /**
+     * <p>Returns the sets of this family, for example "{{0, 2}, {1}}".  The
+     * variables of a set are listed in variable order.</p>
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append('{');
+        toString_rec(sb, _index, new int[factory.varNum()], 0);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private void toString_rec(StringBuffer sb, int p, int[] set, int n) {
+        if (p == 0)
+            return;
+        if (p == 1) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append('{');
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(set[i]);
+            }
+            sb.append('}');
+            return;
+        }
+        JFactory f = factory.factory;
+        toString_rec(sb, f.nodeLow(p), set, n);
+        set[n] = f.level2Var(f.nodeLevel(p));
+        toString_rec(sb, f.nodeHigh(p), set, n + 1);
+    }
+
+}
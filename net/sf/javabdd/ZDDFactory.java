@@ -0,0 +1,147 @@
+// ZDDFactory.java, created Oct 18, 2026
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * <p>Factory for zero-suppressed decision diagrams (ZDDs), in pure Java.</p>
+ *
+ * <p>A ZDD represents a family of sets of variables.  Its nodes differ from
+ * BDD nodes only in the reduction rule: a node whose high child is the empty
+ * family is left out, so a variable that a set does not contain costs
+ * nothing on its path.  For families of sparse sets, such as item sets or
+ * path sets, ZDDs are often much smaller than the equivalent BDDs.</p>
+ *
+ * <p>A ZDD factory runs on the node table of a {@link JFactory}: ZDD nodes
+ * share the unique table, the operator caches and the garbage collector with
+ * the BDD nodes, and the ZDD variables are the variables of that factory.
+ * Reordering would destroy the meaning of ZDDs, so the BDD factory refuses
+ * to reorder or duplicate variables as long as there are ZDD objects that
+ * have not been freed.</p>
+ *
+ * <p>Use {@link JFactory#getZDDFactory()} to get the ZDD factory of a BDD
+ * factory, or {@link #init(int, int)} to create both at once.</p>
+ *
+ * @see ZDD
+ * @version $Id$
+ */
+public class ZDDFactory {
+
+    protected final JFactory factory;
+
+    protected ZDDFactory(JFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * <p>Creates a new BDD factory and returns its ZDD factory.</p>
+     *
+     * @param nodenum  initial node table size
+     * @param cachesize  operator cache size
+     * @return  ZDD factory
+     */
+    public static ZDDFactory init(int nodenum, int cachesize) {
+        return ((JFactory) JFactory.init(nodenum, cachesize)).getZDDFactory();
+    }
+
+    /**
+     * <p>Returns the BDD factory that this ZDD factory runs on.</p>
+     *
+     * @return  BDD factory
+     */
+    public BDDFactory getBDDFactory() {
+        return factory;
+    }
+
+    /**
+     * <p>Sets the number of variables.  The number of variables can only be
+     * increased; existing ZDDs keep their meaning.</p>
+     *
+     * @param num  number of variables
+     * @return  old number of variables
+     */
+    public int setVarNum(int num) {
+        return factory.setVarNum(num);
+    }
+
+    /**
+     * <p>Returns the number of variables.</p>
+     *
+     * @return  number of variables
+     */
+    public int varNum() {
+        return factory.varNum();
+    }
+
+    /**
+     * <p>Returns the empty family.</p>
+     *
+     * @return  the empty family
+     */
+    public ZDD empty() {
+        return makeZDD(factory.diagram_addref(0));
+    }
+
+    /**
+     * <p>Returns the family that holds only the empty set.</p>
+     *
+     * @return  the family {{}}
+     */
+    public ZDD base() {
+        return makeZDD(factory.diagram_addref(1));
+    }
+
+    /**
+     * <p>Returns the family that holds only the set {var}.</p>
+     *
+     * @param var  variable
+     * @return  the family {{var}}
+     */
+    public ZDD ithVar(int var) {
+        return apply(JFactory.ZDDOP_CHANGE, 1, var);
+    }
+
+    /**
+     * <p>Returns the family that holds only the given set of
+     * variables.</p>
+     *
+     * @param vars  distinct variables
+     * @return  the family {vars}
+     */
+    public ZDD makeSet(int[] vars) {
+        ZDD r = base();
+        for (int i = 0; i < vars.length; i++) {
+            ZDD t = r.change(vars[i]);
+            r.free();
+            r = t;
+        }
+        return r;
+    }
+
+    /**
+     * <p>Converts a BDD to a ZDD.  The result is the family of the sets of
+     * variables that are true in the satisfying assignments of the BDD,
+     * over all variables of the factory.</p>
+     *
+     * @param b  BDD of the BDD factory of this ZDD factory
+     * @return  the family of the satisfying assignments of b
+     */
+    public ZDD fromBDD(BDD b) {
+        return apply(JFactory.ZDDOP_FROMBDD, factory.nodeRoot(b), 0);
+    }
+
+    /**
+     * Runs a ZDD operation of the BDD factory and wraps the result.
+     */
+    ZDD apply(int op, int a, int b) {
+        return makeZDD(factory.zdd_apply(op, a, b));
+    }
+
+    /**
+     * <p>Creates a ZDD object for a root that already carries a reference,
+     * which the new object takes over.</p>
+     */
+    protected ZDD makeZDD(int r) {
+        return new ZDD(this, r);
+    }
+
+}